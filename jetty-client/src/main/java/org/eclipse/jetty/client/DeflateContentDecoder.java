@@ -0,0 +1,137 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.client;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.component.Destroyable;
+
+/**
+ * {@link ContentDecoder} for the "deflate" encoding, that is the zlib format defined by RFC 1950.
+ */
+public class DeflateContentDecoder implements ContentDecoder, Destroyable
+{
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private final Inflater inflater = new Inflater();
+    private final ByteBufferPool byteBufferPool;
+    private final int bufferSize;
+
+    public DeflateContentDecoder()
+    {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    public DeflateContentDecoder(int bufferSize)
+    {
+        this(null, bufferSize);
+    }
+
+    public DeflateContentDecoder(ByteBufferPool byteBufferPool, int bufferSize)
+    {
+        this.byteBufferPool = byteBufferPool;
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    public ByteBuffer decode(ByteBuffer buffer)
+    {
+        if (inflater.finished())
+        {
+            // Ignore any bytes after the end of the compressed stream.
+            buffer.position(buffer.limit());
+            return BufferUtil.EMPTY_BUFFER;
+        }
+
+        ByteBuffer decoded = byteBufferPool == null ? BufferUtil.allocate(bufferSize) : byteBufferPool.acquire(bufferSize, false);
+        int pos = BufferUtil.flipToFill(decoded);
+        try
+        {
+            inflater.setInput(buffer);
+            inflater.inflate(decoded);
+            if (inflater.needsDictionary())
+                throw new ZipException("Unsupported deflate dictionary");
+        }
+        catch (DataFormatException | ZipException x)
+        {
+            release(decoded);
+            throw new RuntimeException(x);
+        }
+        finally
+        {
+            inflater.setInput(BufferUtil.EMPTY_BUFFER);
+            BufferUtil.flipToFlush(decoded, pos);
+        }
+
+        if (decoded.hasRemaining())
+            return decoded;
+        release(decoded);
+        return BufferUtil.EMPTY_BUFFER;
+    }
+
+    @Override
+    public void release(ByteBuffer decoded)
+    {
+        if (byteBufferPool != null && decoded != BufferUtil.EMPTY_BUFFER)
+            byteBufferPool.release(decoded);
+    }
+
+    @Override
+    public void destroy()
+    {
+        inflater.end();
+    }
+
+    /**
+     * Specialized {@link ContentDecoder.Factory} for the "deflate" encoding.
+     */
+    public static class Factory extends ContentDecoder.Factory
+    {
+        private final int bufferSize;
+        private final ByteBufferPool byteBufferPool;
+
+        public Factory()
+        {
+            this(DEFAULT_BUFFER_SIZE);
+        }
+
+        public Factory(int bufferSize)
+        {
+            this(null, bufferSize);
+        }
+
+        public Factory(ByteBufferPool byteBufferPool)
+        {
+            this(byteBufferPool, DEFAULT_BUFFER_SIZE);
+        }
+
+        public Factory(ByteBufferPool byteBufferPool, int bufferSize)
+        {
+            super("deflate");
+            this.byteBufferPool = byteBufferPool;
+            this.bufferSize = bufferSize;
+        }
+
+        @Override
+        public ContentDecoder newContentDecoder()
+        {
+            return new DeflateContentDecoder(byteBufferPool, bufferSize);
+        }
+    }
+}
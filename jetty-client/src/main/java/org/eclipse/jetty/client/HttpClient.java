@@ -33,6 +33,7 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
@@ -148,6 +149,9 @@ public class HttpClient extends ContainerLifeCycle
     private String defaultRequestContentType = "application/octet-stream";
     private boolean useInputDirectByteBuffers = true;
     private boolean useOutputDirectByteBuffers = true;
+    private boolean requestCoalescing = false;
+    private final Set<String> requestCoalescingHeaders = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+    private int requestCoalescingMaxContentLength = 2 * 1024 * 1024;
 
     /**
      * Creates a HttpClient instance that can perform HTTP/1.1 requests to non-TLS and TLS destinations.
@@ -164,6 +168,12 @@ public class HttpClient extends ContainerLifeCycle
         this.connector = ((AbstractHttpClientTransport)transport).getContainedBeans(ClientConnector.class).stream().findFirst().orElseThrow();
         addBean(handlers);
         addBean(decoderFactories);
+        requestCoalescingHeaders.addAll(List.of(
+            HttpHeader.ACCEPT.asString(),
+            HttpHeader.ACCEPT_ENCODING.asString(),
+            HttpHeader.ACCEPT_LANGUAGE.asString(),
+            HttpHeader.RANGE.asString()
+        ));
     }
 
     @Override
@@ -1111,6 +1121,77 @@ public class HttpClient extends ContainerLifeCycle
         this.useOutputDirectByteBuffers = useOutputDirectByteBuffers;
     }
 
+    /**
+     * @return whether identical in-flight requests are coalesced into a single exchange
+     * @see #setRequestCoalescing(boolean)
+     */
+    @ManagedAttribute("Whether identical in-flight requests are coalesced")
+    public boolean isRequestCoalescing()
+    {
+        return requestCoalescing;
+    }
+
+    /**
+     * <p>Whether identical in-flight requests are coalesced into a single exchange.</p>
+     * <p>When enabled, a {@code GET} or {@code HEAD} request without content sent while
+     * an identical request to the same destination is in-flight is not sent on the network;
+     * instead, it waits for the in-flight request to complete, and receives a copy of its
+     * response.
+     * Requests are identical if they have the same method, the same URI, and the same
+     * values for the {@link #getRequestCoalescingHeaders() coalescing headers}.
+     * Requests with their own credentials, that is {@link Request#cookie(java.net.HttpCookie) cookies}
+     * or {@code Cookie}, {@code Authorization} or {@code Proxy-Authorization} headers,
+     * are never coalesced, since their responses may be specific to the user.</p>
+     * <p>This avoids a burst of identical requests to the server when many callers need
+     * the same resource at the same time, for example when a cached resource expires.</p>
+     * <p>Coalesced requests only receive response events, and only once the in-flight request
+     * completes; their content is buffered up to {@link #getRequestCoalescingMaxContentLength()}
+     * bytes, and if the content is larger the coalesced requests are sent independently.</p>
+     * <p>The default value for this property is {@code false}.</p>
+     *
+     * @param requestCoalescing whether identical in-flight requests are coalesced into a single exchange
+     */
+    public void setRequestCoalescing(boolean requestCoalescing)
+    {
+        this.requestCoalescing = requestCoalescing;
+    }
+
+    /**
+     * <p>Returns the names of the request headers whose values must be equal
+     * for two requests to be coalesced.</p>
+     * <p>The returned set is mutable and case-insensitive, and it initially
+     * contains the headers that typically select a different representation:
+     * {@code Accept}, {@code Accept-Encoding}, {@code Accept-Language} and
+     * {@code Range}.
+     * Requests with credentials headers are never coalesced, so adding them
+     * to this set has no effect.</p>
+     *
+     * @return the names of the request headers that are part of the coalescing key
+     * @see #setRequestCoalescing(boolean)
+     */
+    public Set<String> getRequestCoalescingHeaders()
+    {
+        return requestCoalescingHeaders;
+    }
+
+    /**
+     * @return the max response content length that is buffered to be copied to coalesced requests
+     * @see #setRequestCoalescing(boolean)
+     */
+    @ManagedAttribute("The max response content length buffered for coalesced requests")
+    public int getRequestCoalescingMaxContentLength()
+    {
+        return requestCoalescingMaxContentLength;
+    }
+
+    /**
+     * @param maxContentLength the max response content length that is buffered to be copied to coalesced requests
+     */
+    public void setRequestCoalescingMaxContentLength(int maxContentLength)
+    {
+        this.requestCoalescingMaxContentLength = maxContentLength;
+    }
+
     /**
      * @return the forward proxy configuration
      */
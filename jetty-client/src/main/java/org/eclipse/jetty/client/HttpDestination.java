@@ -60,6 +60,7 @@ public abstract class HttpDestination extends ContainerLifeCycle implements Dest
     private final ClientConnectionFactory connectionFactory;
     private final HttpField hostField;
     private final RequestTimeouts requestTimeouts;
+    private final RequestCoalescer requestCoalescer;
     private ConnectionPool connectionPool;
 
     public HttpDestination(HttpClient client, Origin origin, boolean intrinsicallySecure)
@@ -73,6 +74,7 @@ public abstract class HttpDestination extends ContainerLifeCycle implements Dest
         this.responseNotifier = new ResponseNotifier();
 
         this.requestTimeouts = new RequestTimeouts(client.getScheduler());
+        this.requestCoalescer = new RequestCoalescer(this);
 
         String host = HostPort.normalizeHost(getHost());
         if (!client.isDefaultPort(getScheme(), getPort()))
@@ -244,7 +246,10 @@ public abstract class HttpDestination extends ContainerLifeCycle implements Dest
 
     protected void send(HttpRequest request, List<Response.ResponseListener> listeners)
     {
-        send(new HttpExchange(this, request, listeners));
+        if (client.isRequestCoalescing())
+            requestCoalescer.send(request, listeners);
+        else
+            send(new HttpExchange(this, request, listeners));
     }
 
     public void send(HttpExchange exchange)
@@ -38,6 +38,7 @@ import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.LongConsumer;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
 
 import org.eclipse.jetty.client.api.ContentProvider;
@@ -88,6 +89,7 @@ public class HttpRequest implements Request
     private String upgradeProtocol;
     private Object tag;
     private boolean normalized;
+    private volatile Predicate<Throwable> abortHandler;
 
     protected HttpRequest(HttpClient client, HttpConversation conversation, URI uri)
     {
@@ -857,10 +859,30 @@ public class HttpRequest implements Request
     public boolean abort(Throwable cause)
     {
         if (aborted.compareAndSet(null, Objects.requireNonNull(cause)))
+        {
+            Predicate<Throwable> handler = abortHandler;
+            if (handler != null && handler.test(cause))
+                return true;
             return conversation.abort(cause);
+        }
         return false;
     }
 
+    /**
+     * <p>Sets the handler invoked when this request is aborted while it
+     * is held back before being sent, so it has no exchange to abort.</p>
+     * <p>The handler returns whether it handled the abort; if it did not,
+     * the abort is forwarded to the conversation as usual.
+     * Callers must check {@link #getAbortCause()} after setting the handler,
+     * since the request may have been aborted before.</p>
+     *
+     * @param handler the abort handler, or null to remove it
+     */
+    void setAbortHandler(Predicate<Throwable> handler)
+    {
+        this.abortHandler = handler;
+    }
+
     @Override
     public Throwable getAbortCause()
     {
@@ -0,0 +1,249 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.client;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.client.api.Connection;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.Pool;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.thread.AutoLock;
+
+/**
+ * <p>A {@link ConnectionPool} that provides the connection that is expected
+ * to complete the next request sooner, based on observed latencies.</p>
+ * <p>For each connection, this class tracks the number of outstanding requests
+ * and an exponentially weighted moving average (EWMA) of the time each request
+ * held the connection, and computes a cost as the product of the two.</p>
+ * <p>Connections are chosen using the <em>power of two choices</em> algorithm:
+ * two connections are sampled randomly, and the one with the lower cost is provided.
+ * This avoids both the herding effect of always choosing the best connection,
+ * and the cost of scanning all the connections.</p>
+ * <p>The EWMA decays over time, with the {@link #getLatencyDecay() decay period}
+ * controlling how quickly old samples are forgotten, so that a connection that was
+ * slow in the past is eventually tried again.</p>
+ * <p>For multiplexed connections, requests are assumed to complete in the order
+ * they were sent, which is an approximation when responses complete out of order.</p>
+ */
+@ManagedObject
+public class LatencyAwareConnectionPool extends MultiplexConnectionPool
+{
+    private final LatencyPool pool;
+
+    public LatencyAwareConnectionPool(HttpDestination destination, int maxConnections, Callback requester)
+    {
+        this(destination, maxConnections, requester, 1);
+    }
+
+    public LatencyAwareConnectionPool(HttpDestination destination, int maxConnections, Callback requester, int maxMultiplex)
+    {
+        this(destination, new LatencyPool(maxConnections), requester, maxMultiplex);
+    }
+
+    private LatencyAwareConnectionPool(HttpDestination destination, LatencyPool pool, Callback requester, int maxMultiplex)
+    {
+        super(destination, pool, requester, maxMultiplex);
+        this.pool = pool;
+    }
+
+    /**
+     * @return the period, in milliseconds, after which the latency samples weigh about a third
+     */
+    @ManagedAttribute("The latency decay period in milliseconds")
+    public long getLatencyDecay()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(pool.decayNanos);
+    }
+
+    /**
+     * @param latencyDecay the period, in milliseconds, after which the latency samples weigh about a third
+     */
+    public void setLatencyDecay(long latencyDecay)
+    {
+        if (latencyDecay <= 0)
+            throw new IllegalArgumentException("Invalid latency decay " + latencyDecay);
+        pool.decayNanos = TimeUnit.MILLISECONDS.toNanos(latencyDecay);
+    }
+
+    /**
+     * @param connection the connection
+     * @return the latency EWMA of the given connection in nanoseconds, or -1 if the connection is not pooled
+     */
+    public long getLatency(Connection connection)
+    {
+        Latency latency = pool.latencies.get(connection);
+        return latency == null ? -1 : (long)latency.ewma;
+    }
+
+    @Override
+    protected void onCreated(Connection connection)
+    {
+        pool.latencies.put(connection, new Latency());
+        super.onCreated(connection);
+    }
+
+    @Override
+    protected void acquired(Connection connection)
+    {
+        Latency latency = pool.latencies.get(connection);
+        if (latency != null)
+            latency.onAcquired();
+        super.acquired(connection);
+    }
+
+    @Override
+    protected void released(Connection connection)
+    {
+        Latency latency = pool.latencies.get(connection);
+        if (latency != null)
+            latency.onReleased(pool.decayNanos);
+        super.released(connection);
+    }
+
+    @Override
+    protected void removed(Connection connection)
+    {
+        pool.latencies.remove(connection);
+        super.removed(connection);
+    }
+
+    private static class LatencyPool extends MultiplexPool
+    {
+        private final ConcurrentMap<Connection, Latency> latencies = new ConcurrentHashMap<>();
+        private volatile long decayNanos = TimeUnit.SECONDS.toNanos(10);
+
+        private LatencyPool(int maxConnections)
+        {
+            super(StrategyType.RANDOM, maxConnections, false);
+        }
+
+        @Override
+        public Entry acquire()
+        {
+            int size = size();
+            if (size < 2)
+                return super.acquire();
+
+            // Sample two distinct entries.
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int index1 = random.nextInt(size);
+            int index2 = random.nextInt(size - 1);
+            if (index2 >= index1)
+                ++index2;
+            Entry entry1 = null;
+            Entry entry2 = null;
+            int index = 0;
+            for (Entry entry : values())
+            {
+                if (index == index1)
+                    entry1 = entry;
+                else if (index == index2)
+                    entry2 = entry;
+                if (entry1 != null && entry2 != null)
+                    break;
+                ++index;
+            }
+
+            long now = System.nanoTime();
+            if (cost(entry2, now) < cost(entry1, now))
+            {
+                Entry entry = entry1;
+                entry1 = entry2;
+                entry2 = entry;
+            }
+            if (entry1 != null && acquire(entry1))
+                return entry1;
+            if (entry2 != null && acquire(entry2))
+                return entry2;
+
+            // Both candidates are busy, fall back to scanning all the entries.
+            return super.acquire();
+        }
+
+        private double cost(Entry entry, long now)
+        {
+            if (entry == null)
+                return Double.MAX_VALUE;
+            Connection connection = entry.getPooled();
+            // Reserved entries have no connection yet.
+            if (connection == null)
+                return Double.MAX_VALUE;
+            Latency latency = latencies.get(connection);
+            if (latency == null)
+                return Double.MAX_VALUE;
+            return latency.cost(now, decayNanos);
+        }
+    }
+
+    private static class Latency
+    {
+        private final AutoLock lock = new AutoLock();
+        private final Deque<Long> starts = new ArrayDeque<>();
+        private volatile int outstanding;
+        private volatile double ewma;
+        private volatile long lastSample = System.nanoTime();
+        private boolean sampled;
+
+        private void onAcquired()
+        {
+            long now = System.nanoTime();
+            try (AutoLock l = lock.lock())
+            {
+                starts.offer(now);
+                outstanding = starts.size();
+            }
+        }
+
+        private void onReleased(long decayNanos)
+        {
+            long now = System.nanoTime();
+            try (AutoLock l = lock.lock())
+            {
+                // A connection may be released without having been
+                // acquired, for example when it expired in the pool.
+                Long start = starts.poll();
+                if (start == null)
+                    return;
+                outstanding = starts.size();
+                double sample = now - start;
+                if (sampled)
+                {
+                    double weight = Math.exp(-(double)(now - lastSample) / decayNanos);
+                    ewma = ewma * weight + sample * (1 - weight);
+                }
+                else
+                {
+                    ewma = sample;
+                    sampled = true;
+                }
+                lastSample = now;
+            }
+        }
+
+        private double cost(long now, long decayNanos)
+        {
+            double latency = ewma * Math.exp(-(double)(now - lastSample) / decayNanos);
+            // Add one nanosecond so that connections without samples
+            // are still ranked by the number of outstanding requests.
+            return (latency + 1) * (outstanding + 1);
+        }
+    }
+}
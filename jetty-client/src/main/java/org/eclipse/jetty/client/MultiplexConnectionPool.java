@@ -34,26 +34,12 @@ public class MultiplexConnectionPool extends AbstractConnectionPool
 
     public MultiplexConnectionPool(HttpDestination destination, Pool.StrategyType strategy, int maxConnections, boolean cache, Callback requester, int maxMultiplex)
     {
-        super(destination, new Pool<>(strategy, maxConnections, cache)
-        {
-            @Override
-            protected int getMaxUsageCount(Connection connection)
-            {
-                int maxUsage = (connection instanceof MaxUsable)
-                    ? ((MaxUsable)connection).getMaxUsageCount()
-                    : super.getMaxUsageCount(connection);
-                return maxUsage > 0 ? maxUsage : -1;
-            }
+        this(destination, new MultiplexPool(strategy, maxConnections, cache), requester, maxMultiplex);
+    }
 
-            @Override
-            protected int getMaxMultiplex(Connection connection)
-            {
-                int multiplex = (connection instanceof Multiplexable)
-                    ? ((Multiplexable)connection).getMaxMultiplex()
-                    : super.getMaxMultiplex(connection);
-                return multiplex > 0 ? multiplex : 1;
-            }
-        }, requester);
+    MultiplexConnectionPool(HttpDestination destination, MultiplexPool pool, Callback requester, int maxMultiplex)
+    {
+        super(destination, pool, requester);
         setMaxMultiplex(maxMultiplex);
     }
 
@@ -89,4 +75,30 @@ public class MultiplexConnectionPool extends AbstractConnectionPool
     {
         super.setMaxUsageCount(maxUsageCount);
     }
+
+    static class MultiplexPool extends Pool<Connection>
+    {
+        MultiplexPool(StrategyType strategy, int maxConnections, boolean cache)
+        {
+            super(strategy, maxConnections, cache);
+        }
+
+        @Override
+        protected int getMaxUsageCount(Connection connection)
+        {
+            int maxUsage = (connection instanceof MaxUsable)
+                ? ((MaxUsable)connection).getMaxUsageCount()
+                : super.getMaxUsageCount(connection);
+            return maxUsage > 0 ? maxUsage : -1;
+        }
+
+        @Override
+        protected int getMaxMultiplex(Connection connection)
+        {
+            int multiplex = (connection instanceof Multiplexable)
+                ? ((Multiplexable)connection).getMaxMultiplex()
+                : super.getMaxMultiplex(connection);
+            return multiplex > 0 ? multiplex : 1;
+        }
+    }
 }
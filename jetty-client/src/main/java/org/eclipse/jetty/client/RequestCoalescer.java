@@ -0,0 +1,363 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.client;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.MimeTypes;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.thread.AutoLock;
+import org.eclipse.jetty.util.thread.Scheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Coalesces identical in-flight requests to a {@link HttpDestination} into a single exchange.</p>
+ * <p>The first request for a given key (method, URI and {@link HttpClient#getRequestCoalescingHeaders()
+ * coalescing headers}) is sent normally and becomes the <em>leader</em> of a flight; identical
+ * requests sent while the flight is in progress join it as <em>followers</em> and are not sent.
+ * When the leader completes, its buffered response is copied to the followers.</p>
+ * <p>Requests with per-request cookies, or with {@code Cookie}, {@code Authorization} or
+ * {@code Proxy-Authorization} headers, are never coalesced.</p>
+ *
+ * @see HttpClient#setRequestCoalescing(boolean)
+ */
+class RequestCoalescer
+{
+    private static final Logger LOG = LoggerFactory.getLogger(RequestCoalescer.class);
+
+    private final ConcurrentMap<String, Flight> flights = new ConcurrentHashMap<>();
+    private final HttpDestination destination;
+
+    RequestCoalescer(HttpDestination destination)
+    {
+        this.destination = destination;
+    }
+
+    void send(HttpRequest request, List<Response.ResponseListener> listeners)
+    {
+        if (!isCoalescible(request))
+        {
+            destination.send(new HttpExchange(destination, request, listeners));
+            return;
+        }
+
+        String key = key(request);
+        Follower follower = null;
+        while (true)
+        {
+            Flight flight = flights.get(key);
+            if (flight == null)
+            {
+                Flight newFlight = new Flight(key);
+                flight = flights.putIfAbsent(key, newFlight);
+                if (flight == null)
+                {
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("Leading {} with {}", newFlight, request);
+                    List<Response.ResponseListener> leaderListeners = new ArrayList<>(listeners);
+                    leaderListeners.add(newFlight);
+                    destination.send(new HttpExchange(destination, request, leaderListeners));
+                    return;
+                }
+            }
+
+            if (follower == null)
+                follower = new Follower(request, listeners);
+            if (flight.join(follower))
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Following {} with {}", flight, request);
+                return;
+            }
+            // The flight completed, try again.
+            flights.remove(key, flight);
+        }
+    }
+
+    private boolean isCoalescible(HttpRequest request)
+    {
+        String method = request.getMethod();
+        if (!HttpMethod.GET.is(method) && !HttpMethod.HEAD.is(method))
+            return false;
+        if (request.getBody() != null)
+            return false;
+        // Requests carrying their own credentials may get user-specific responses,
+        // which must not be shared with other requests.
+        if (!request.getCookies().isEmpty())
+            return false;
+        HttpFields headers = request.getHeaders();
+        if (headers.contains(HttpHeader.COOKIE) || headers.contains(HttpHeader.AUTHORIZATION) || headers.contains(HttpHeader.PROXY_AUTHORIZATION))
+            return false;
+        // Only coalesce new conversations, not redirects or authentication retries.
+        return request.getConversation().getExchanges().isEmpty();
+    }
+
+    private String key(HttpRequest request)
+    {
+        StringBuilder builder = new StringBuilder();
+        builder.append(request.getMethod()).append(' ').append(request.getURI());
+        HttpFields headers = request.getHeaders();
+        for (String name : destination.getHttpClient().getRequestCoalescingHeaders())
+        {
+            List<String> values = headers.getValuesList(name);
+            if (values.isEmpty())
+                continue;
+            builder.append('\n').append(name.toLowerCase(Locale.ENGLISH)).append(':');
+            for (String value : values)
+            {
+                builder.append(value).append(',');
+            }
+        }
+        return builder.toString();
+    }
+
+    private class Flight extends Response.Listener.Adapter
+    {
+        private final AutoLock lock = new AutoLock();
+        private final List<Follower> followers = new ArrayList<>();
+        private final String key;
+        private boolean complete;
+        private ByteBuffer buffer;
+        private boolean overflow;
+
+        private Flight(String key)
+        {
+            this.key = key;
+        }
+
+        private boolean join(Follower follower)
+        {
+            try (AutoLock l = lock.lock())
+            {
+                if (complete)
+                    return false;
+                followers.add(follower);
+            }
+            follower.schedule(this);
+            return true;
+        }
+
+        private boolean leave(Follower follower)
+        {
+            try (AutoLock l = lock.lock())
+            {
+                return followers.remove(follower);
+            }
+        }
+
+        @Override
+        public void onHeaders(Response response)
+        {
+            long length = response.getHeaders().getLongField(HttpHeader.CONTENT_LENGTH);
+            if (length > destination.getHttpClient().getRequestCoalescingMaxContentLength())
+                overflow = true;
+        }
+
+        @Override
+        public void onContent(Response response, ByteBuffer content)
+        {
+            if (overflow)
+                return;
+            int maxLength = destination.getHttpClient().getRequestCoalescingMaxContentLength();
+            int length = content.remaining();
+            if (length > BufferUtil.space(buffer))
+            {
+                int remaining = buffer == null ? 0 : buffer.remaining();
+                if (remaining + length > maxLength)
+                {
+                    overflow = true;
+                    buffer = null;
+                    return;
+                }
+                int requiredCapacity = buffer == null ? length : buffer.capacity() + length;
+                int newCapacity = Math.min(Integer.highestOneBit(requiredCapacity) << 1, maxLength);
+                buffer = BufferUtil.ensureCapacity(buffer, newCapacity);
+            }
+            BufferUtil.append(buffer, content);
+        }
+
+        @Override
+        public void onComplete(Result result)
+        {
+            flights.remove(key, this);
+            List<Follower> followers;
+            try (AutoLock l = lock.lock())
+            {
+                complete = true;
+                followers = new ArrayList<>(this.followers);
+                this.followers.clear();
+            }
+            if (followers.isEmpty())
+                return;
+
+            if (overflow)
+            {
+                // The content is too large to be buffered, send the followers independently.
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Content too large for {}, sending {} followers", this, followers.size());
+                followers.forEach(follower -> follower.send(false));
+                return;
+            }
+
+            if (result.getRequest().getAbortCause() != null)
+            {
+                // The leader was aborted, for example because of its own timeout,
+                // so its failure does not apply to the followers that must be sent.
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Leader aborted for {}, sending {} followers", this, followers.size());
+                followers.forEach(follower -> follower.send(true));
+                return;
+            }
+
+            byte[] content = BufferUtil.toArray(buffer);
+            if (LOG.isDebugEnabled())
+                LOG.debug("Completing {} followers of {}", followers.size(), this);
+            followers.forEach(follower -> follower.complete(result, content));
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x[%s]", getClass().getSimpleName(), hashCode(), key.replace('\n', ' '));
+        }
+    }
+
+    private class Follower
+    {
+        private final AtomicBoolean completed = new AtomicBoolean();
+        private final HttpRequest request;
+        private final List<Response.ResponseListener> listeners;
+        private volatile Scheduler.Task timeout;
+
+        private Follower(HttpRequest request, List<Response.ResponseListener> listeners)
+        {
+            this.request = request;
+            this.listeners = listeners;
+        }
+
+        private void schedule(Flight flight)
+        {
+            request.setAbortHandler(failure -> onAbort(flight, failure));
+            Throwable abort = request.getAbortCause();
+            if (abort != null)
+            {
+                onAbort(flight, abort);
+                return;
+            }
+
+            long timeoutAt = request.getTimeoutAt();
+            if (timeoutAt == Long.MAX_VALUE)
+                return;
+            long delay = Math.max(0, timeoutAt - System.nanoTime());
+            timeout = destination.getHttpClient().getScheduler().schedule(this::onTimeout, delay, TimeUnit.NANOSECONDS);
+        }
+
+        private void onTimeout()
+        {
+            request.abort(new TimeoutException("Total timeout " + request.getConversation().getTimeout() + " ms elapsed"));
+        }
+
+        private boolean onAbort(Flight flight, Throwable failure)
+        {
+            // Only fail the follower if it has not been handed over by the flight,
+            // otherwise the abort is handled by the exchange it is sent with.
+            if (!flight.leave(this))
+                return false;
+            if (!completed.compareAndSet(false, true))
+                return true;
+            cancelTimeout();
+            request.setAbortHandler(null);
+            if (LOG.isDebugEnabled())
+                LOG.debug("Aborted follower {} of {}", request, flight, failure);
+            HttpResponse response = new HttpResponse(request, listeners);
+            destination.getResponseNotifier().forwardFailureComplete(listeners, request, failure, response, failure);
+            return true;
+        }
+
+        private void send(boolean coalesce)
+        {
+            if (!completed.compareAndSet(false, true))
+                return;
+            cancelTimeout();
+            request.setAbortHandler(null);
+            if (coalesce)
+                RequestCoalescer.this.send(request, listeners);
+            else
+                destination.send(new HttpExchange(destination, request, listeners));
+        }
+
+        private void complete(Result result, byte[] content)
+        {
+            if (!completed.compareAndSet(false, true))
+                return;
+            cancelTimeout();
+            request.setAbortHandler(null);
+
+            Response leaderResponse = result.getResponse();
+            HttpResponse response = new HttpResponse(request, listeners)
+                .version(leaderResponse.getVersion())
+                .status(leaderResponse.getStatus())
+                .reason(leaderResponse.getReason())
+                .headers(headers -> headers.add(leaderResponse.getHeaders()));
+            HttpFields trailers = leaderResponse instanceof HttpResponse ? ((HttpResponse)leaderResponse).getTrailers() : null;
+            if (trailers != null)
+            {
+                for (HttpField trailer : trailers)
+                {
+                    response.trailer(trailer);
+                }
+            }
+
+            ResponseNotifier notifier = destination.getResponseNotifier();
+            Throwable abort = request.getAbortCause();
+            if (abort != null)
+            {
+                notifier.forwardFailureComplete(listeners, request, abort, response, abort);
+            }
+            else if (result.isFailed())
+            {
+                notifier.forwardFailureComplete(listeners, request, result.getRequestFailure(), response, result.getResponseFailure());
+            }
+            else
+            {
+                String contentType = leaderResponse.getHeaders().get(HttpHeader.CONTENT_TYPE);
+                String mediaType = contentType == null ? null : MimeTypes.getContentTypeWithoutCharset(contentType);
+                String encoding = contentType == null ? null : MimeTypes.getCharsetFromContentType(contentType);
+                notifier.forwardSuccessComplete(listeners, request, new HttpContentResponse(response, content, mediaType, encoding));
+            }
+        }
+
+        private void cancelTimeout()
+        {
+            Scheduler.Task task = timeout;
+            if (task != null)
+                task.cancel();
+        }
+    }
+}
@@ -19,11 +19,13 @@ import java.util.List;
 import java.util.concurrent.Flow;
 import java.util.function.LongConsumer;
 
+import org.eclipse.jetty.client.internal.RetainableResponseContent;
 import org.eclipse.jetty.client.util.BufferingResponseListener;
 import org.eclipse.jetty.http.HttpField;
 import org.eclipse.jetty.http.HttpFields;
 import org.eclipse.jetty.http.HttpVersion;
 import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.Retainable;
 
 /**
  * <p>{@link Response} represents an HTTP response and offers methods to retrieve status code, HTTP version
@@ -225,6 +227,86 @@ public interface Response
         void onContent(Response response, LongConsumer demand, ByteBuffer content, Callback callback);
     }
 
+    /**
+     * <p>A response content buffer that can be retained beyond the
+     * {@link RetainableContentListener#onContent(Response, LongConsumer, RetainableContent) content event}
+     * that delivers it, so that it can be passed on without copying it.</p>
+     * <p>The content buffer is typically a slice of a pooled network buffer; it is valid
+     * until all the references to it are released: a reference is implicitly held
+     * during the content event, and additional references are acquired via
+     * {@link #retain()} and must be released via {@link #release()}.</p>
+     */
+    interface RetainableContent extends Retainable
+    {
+        /**
+         * @param buffer the content bytes
+         * @param callback the callback to succeed when the last reference is released
+         * @return a new RetainableContent wrapping the given buffer
+         */
+        static RetainableContent from(ByteBuffer buffer, Callback callback)
+        {
+            return new RetainableResponseContent(buffer, callback);
+        }
+
+        /**
+         * @return the content bytes, that must not be accessed after the last reference is released
+         */
+        ByteBuffer getByteBuffer();
+
+        /**
+         * <p>Acquires a reference to this content, that must be released
+         * via {@link #release()} when the content buffer is not needed anymore.</p>
+         *
+         * @throws IllegalStateException if this content has already been released
+         */
+        @Override
+        void retain();
+
+        /**
+         * <p>Releases a reference to this content.</p>
+         *
+         * @return whether the last reference has been released, and the content buffer has been recycled
+         * @throws IllegalStateException if this content has already been released
+         */
+        boolean release();
+    }
+
+    /**
+     * <p>Asynchronous listener for the response content events, that can retain the
+     * content beyond the content event without copying it.</p>
+     * <p>Differently from {@link AsyncContentListener}, consuming the content and
+     * demanding more content are independent: the content may be retained while
+     * more content is demanded, and the retained content is recycled when it is released.</p>
+     */
+    interface RetainableContentListener extends DemandedContentListener
+    {
+        /**
+         * <p>Callback method invoked when the response content has been received, parsed and there is demand.</p>
+         * <p>The {@code content} is valid only during the call to this method, unless
+         * {@link RetainableContent#retain()} is called to use it afterwards.
+         * The {@code demand} object should be used to demand more content.</p>
+         *
+         * @param response the response containing the response line data and the headers
+         * @param demand the object that allows to demand content buffers
+         * @param content the content received
+         */
+        void onContent(Response response, LongConsumer demand, RetainableContent content);
+
+        @Override
+        default void onContent(Response response, LongConsumer demand, ByteBuffer content, Callback callback)
+        {
+            RetainableContent retainable = RetainableContent.from(content, callback);
+            try
+            {
+                onContent(response, demand, retainable);
+            }
+            finally
+            {
+                retainable.release();
+            }
+        }
+    }
+
     /**
      * Listener for the response succeeded event.
      */
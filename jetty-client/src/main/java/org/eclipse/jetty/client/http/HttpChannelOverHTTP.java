@@ -77,13 +77,16 @@ public class HttpChannelOverHTTP extends HttpChannel
     public void send(HttpExchange exchange)
     {
         outMessages.increment();
-        sender.send(exchange);
+        if (connection.isPipelining())
+            connection.enqueue(this);
+        else
+            sender.send(exchange);
     }
 
     @Override
     public void release()
     {
-        connection.release();
+        connection.release(this);
     }
 
     public void receive()
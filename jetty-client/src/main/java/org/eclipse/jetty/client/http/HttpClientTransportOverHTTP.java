@@ -19,10 +19,12 @@ import java.util.List;
 import java.util.Map;
 
 import org.eclipse.jetty.client.AbstractConnectorHttpClientTransport;
+import org.eclipse.jetty.client.ConnectionPool;
 import org.eclipse.jetty.client.DuplexConnectionPool;
 import org.eclipse.jetty.client.DuplexHttpDestination;
 import org.eclipse.jetty.client.HttpDestination;
 import org.eclipse.jetty.client.HttpRequest;
+import org.eclipse.jetty.client.MultiplexConnectionPool;
 import org.eclipse.jetty.client.Origin;
 import org.eclipse.jetty.io.ClientConnectionFactory;
 import org.eclipse.jetty.io.ClientConnector;
@@ -40,8 +42,11 @@ public class HttpClientTransportOverHTTP extends AbstractConnectorHttpClientTran
     private static final Logger LOG = LoggerFactory.getLogger(HttpClientTransportOverHTTP.class);
 
     private final ClientConnectionFactory factory = new HttpClientConnectionFactory();
+    private final ConnectionPool.Factory duplexPoolFactory = destination -> new DuplexConnectionPool(destination, getHttpClient().getMaxConnectionsPerDestination(), destination);
+    private ConnectionPool.Factory pipelinedPoolFactory;
     private int headerCacheSize = 1024;
     private boolean headerCacheCaseSensitive;
+    private int maxPipelinedRequests = 1;
 
     public HttpClientTransportOverHTTP()
     {
@@ -57,7 +62,7 @@ public class HttpClientTransportOverHTTP extends AbstractConnectorHttpClientTran
     public HttpClientTransportOverHTTP(ClientConnector connector)
     {
         super(connector);
-        setConnectionPoolFactory(destination -> new DuplexConnectionPool(destination, getHttpClient().getMaxConnectionsPerDestination(), destination));
+        setConnectionPoolFactory(duplexPoolFactory);
     }
 
     @Override
@@ -103,4 +108,53 @@ public class HttpClientTransportOverHTTP extends AbstractConnectorHttpClientTran
     {
         this.headerCacheCaseSensitive = headerCacheCaseSensitive;
     }
+
+    @ManagedAttribute("The maximum number of requests pipelined on a connection")
+    public int getMaxPipelinedRequests()
+    {
+        return maxPipelinedRequests;
+    }
+
+    /**
+     * <p>Sets the maximum number of requests that can be sent on a connection
+     * before the responses to the previous requests arrived.</p>
+     * <p>The default value is 1, meaning that HTTP/1.1 pipelining is disabled.
+     * When a value greater than 1 is set, a {@link MultiplexConnectionPool}
+     * replaces the default connection pool, so that requests are queued on
+     * existing connections up to this value before new connections are opened.</p>
+     * <p>A {@link #setConnectionPoolFactory(ConnectionPool.Factory) connection pool factory}
+     * set by the application is never replaced by this method; in that case, requests
+     * are pipelined only if the connection pool allows multiple requests per connection,
+     * for example a {@link MultiplexConnectionPool}.</p>
+     * <p>Only idempotent requests without content are pipelined; other requests
+     * are sent when all the previous responses have arrived, and no request is
+     * sent until their response has arrived.
+     * Since pipelined responses must arrive in order, any failure of a pipelined
+     * exchange closes the connection and fails all the other exchanges on that connection.</p>
+     *
+     * @param maxPipelinedRequests the maximum number of requests pipelined on a connection
+     */
+    public void setMaxPipelinedRequests(int maxPipelinedRequests)
+    {
+        if (maxPipelinedRequests < 1)
+            throw new IllegalArgumentException("Invalid max pipelined requests " + maxPipelinedRequests);
+        this.maxPipelinedRequests = maxPipelinedRequests;
+        ConnectionPool.Factory poolFactory = getConnectionPoolFactory();
+        if (poolFactory != duplexPoolFactory && poolFactory != pipelinedPoolFactory)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Retaining application connection pool factory {}", poolFactory);
+            return;
+        }
+        if (maxPipelinedRequests > 1)
+        {
+            pipelinedPoolFactory = destination -> new MultiplexConnectionPool(destination, getHttpClient().getMaxConnectionsPerDestination(), destination, maxPipelinedRequests);
+            setConnectionPoolFactory(pipelinedPoolFactory);
+        }
+        else
+        {
+            pipelinedPoolFactory = null;
+            setConnectionPoolFactory(duplexPoolFactory);
+        }
+    }
 }
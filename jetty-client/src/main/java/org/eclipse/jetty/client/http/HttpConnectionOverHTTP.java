@@ -15,9 +15,14 @@ package org.eclipse.jetty.client.http;
 
 import java.nio.ByteBuffer;
 import java.nio.channels.AsynchronousCloseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -39,11 +44,14 @@ import org.eclipse.jetty.client.api.Connection;
 import org.eclipse.jetty.client.api.Request;
 import org.eclipse.jetty.client.api.Response;
 import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpHeaderValue;
+import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.http.HttpVersion;
 import org.eclipse.jetty.io.AbstractConnection;
 import org.eclipse.jetty.io.EndPoint;
 import org.eclipse.jetty.util.Attachable;
 import org.eclipse.jetty.util.Promise;
+import org.eclipse.jetty.util.thread.AutoLock;
 import org.eclipse.jetty.util.thread.Sweeper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -59,6 +67,15 @@ public class HttpConnectionOverHTTP extends AbstractConnection implements IConne
     private final HttpChannelOverHTTP channel;
     private final LongAdder bytesIn = new LongAdder();
     private final LongAdder bytesOut = new LongAdder();
+    private final AutoLock lock = new AutoLock();
+    private final List<HttpChannelOverHTTP> channels = new ArrayList<>();
+    private final Queue<HttpChannelOverHTTP> idleChannels = new ArrayDeque<>();
+    private final List<HttpChannelOverHTTP> activeChannels = new ArrayList<>();
+    private final Queue<HttpChannelOverHTTP> queuedChannels = new ArrayDeque<>();
+    private final Deque<HttpChannelOverHTTP> respondingChannels = new ArrayDeque<>();
+    private final int maxPipelinedRequests;
+    private HttpChannelOverHTTP sendingChannel;
+    private boolean pipelineBlocked;
     private long idleTimeout;
 
     public HttpConnectionOverHTTP(EndPoint endPoint, Map<String, Object> context)
@@ -83,6 +100,10 @@ public class HttpConnectionOverHTTP extends AbstractConnection implements IConne
         this.promise = promise;
         this.delegate = new Delegate(destination);
         this.channel = newHttpChannel();
+        this.channels.add(channel);
+        this.idleChannels.offer(channel);
+        HttpClientTransport transport = destination.getHttpClient().getTransport();
+        this.maxPipelinedRequests = transport instanceof HttpClientTransportOverHTTP ? ((HttpClientTransportOverHTTP)transport).getMaxPipelinedRequests() : 1;
     }
 
     protected HttpChannelOverHTTP newHttpChannel()
@@ -100,6 +121,15 @@ public class HttpConnectionOverHTTP extends AbstractConnection implements IConne
         return delegate.getHttpDestination();
     }
 
+    /**
+     * @return whether this connection may send requests before the responses to the previous requests arrived
+     * @see HttpClientTransportOverHTTP#setMaxPipelinedRequests(int)
+     */
+    public boolean isPipelining()
+    {
+        return maxPipelinedRequests > 1;
+    }
+
     @Override
     public long getBytesIn()
     {
@@ -125,13 +155,19 @@ public class HttpConnectionOverHTTP extends AbstractConnection implements IConne
     @Override
     public long getMessagesIn()
     {
-        return getHttpChannel().getMessagesIn();
+        try (AutoLock l = lock.lock())
+        {
+            return channels.stream().mapToLong(HttpChannelOverHTTP::getMessagesIn).sum();
+        }
     }
 
     @Override
     public long getMessagesOut()
     {
-        return getHttpChannel().getMessagesOut();
+        try (AutoLock l = lock.lock())
+        {
+            return channels.stream().mapToLong(HttpChannelOverHTTP::getMessagesOut).sum();
+        }
     }
 
     @Override
@@ -191,16 +227,27 @@ public class HttpConnectionOverHTTP extends AbstractConnection implements IConne
     @Override
     public void onFillable()
     {
-        channel.receive();
+        getReceivingChannel().receive();
     }
 
     @Override
     public ByteBuffer onUpgradeFrom()
     {
-        HttpReceiverOverHTTP receiver = channel.getHttpReceiver();
+        HttpReceiverOverHTTP receiver = getReceivingChannel().getHttpReceiver();
         return receiver.onUpgradeFrom();
     }
 
+    private HttpChannelOverHTTP getReceivingChannel()
+    {
+        if (!isPipelining())
+            return channel;
+        try (AutoLock l = lock.lock())
+        {
+            HttpChannelOverHTTP receiving = respondingChannels.peek();
+            return receiving == null ? channel : receiving;
+        }
+    }
+
     public void release()
     {
         // Restore idle timeout
@@ -208,6 +255,158 @@ public class HttpConnectionOverHTTP extends AbstractConnection implements IConne
         getHttpDestination().release(this);
     }
 
+    void release(HttpChannelOverHTTP channel)
+    {
+        if (isPipelining())
+        {
+            try (AutoLock l = lock.lock())
+            {
+                activeChannels.remove(channel);
+                idleChannels.offer(channel);
+                // Restore the idle timeout only when all the exchanges completed.
+                if (activeChannels.isEmpty())
+                    getEndPoint().setIdleTimeout(idleTimeout);
+            }
+            getHttpDestination().release(this);
+        }
+        else
+        {
+            release();
+        }
+    }
+
+    private HttpChannelOverHTTP acquireHttpChannel()
+    {
+        try (AutoLock l = lock.lock())
+        {
+            HttpChannelOverHTTP channel = idleChannels.poll();
+            if (channel == null)
+            {
+                channel = newHttpChannel();
+                channels.add(channel);
+            }
+            activeChannels.add(channel);
+            return channel;
+        }
+    }
+
+    /**
+     * <p>Queues the request of the given channel to be sent after the requests
+     * of the channels that were queued before, when pipelining is enabled.</p>
+     *
+     * @param channel the channel whose request must be sent
+     */
+    void enqueue(HttpChannelOverHTTP channel)
+    {
+        try (AutoLock l = lock.lock())
+        {
+            queuedChannels.offer(channel);
+        }
+        sendNext();
+    }
+
+    private void sendNext()
+    {
+        while (true)
+        {
+            HttpChannelOverHTTP next;
+            HttpExchange exchange;
+            try (AutoLock l = lock.lock())
+            {
+                // Requests are written one at a time, and no request
+                // can be written after one that cannot be pipelined.
+                if (sendingChannel != null || pipelineBlocked || closed.get())
+                    return;
+                next = queuedChannels.peek();
+                if (next == null)
+                    return;
+                exchange = next.getHttpExchange();
+                if (exchange != null)
+                {
+                    boolean pipelinable = isPipelinable(exchange.getRequest());
+                    // A request that cannot be pipelined waits for the previous responses.
+                    if (!pipelinable && !respondingChannels.isEmpty())
+                        return;
+                    pipelineBlocked = !pipelinable;
+                    sendingChannel = next;
+                    respondingChannels.offer(next);
+                }
+                queuedChannels.poll();
+            }
+
+            // The exchange may have been aborted while queued.
+            if (exchange != null)
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Sending pipelined {} on {}", exchange, this);
+                next.getHttpSender().send(exchange);
+                return;
+            }
+        }
+    }
+
+    /**
+     * <p>Callback method invoked when the request of the given channel has been written.</p>
+     *
+     * @param channel the channel whose request has been written
+     */
+    void requestSent(HttpChannelOverHTTP channel)
+    {
+        if (!isPipelining())
+            return;
+        try (AutoLock l = lock.lock())
+        {
+            if (sendingChannel == channel)
+                sendingChannel = null;
+        }
+        sendNext();
+    }
+
+    /**
+     * <p>Callback method invoked when the response of the given channel has been received.</p>
+     *
+     * @param channel the channel whose response has been received
+     * @return the channel that must receive the next response, or null if there is no such channel
+     */
+    HttpChannelOverHTTP responseReceived(HttpChannelOverHTTP channel)
+    {
+        HttpChannelOverHTTP next;
+        try (AutoLock l = lock.lock())
+        {
+            respondingChannels.remove(channel);
+            if (respondingChannels.isEmpty())
+                pipelineBlocked = false;
+            next = respondingChannels.peek();
+        }
+        sendNext();
+        return next;
+    }
+
+    /**
+     * <p>Returns whether the given request can be sent before the responses to the
+     * previous requests arrived, or can be followed by other requests before its
+     * response arrived.</p>
+     * <p>Only idempotent requests without content that do not expect
+     * {@code 100 Continue}, nor upgrade or tunnel the connection, are pipelined.</p>
+     *
+     * @param request the request to check
+     * @return whether the given request can be pipelined
+     */
+    protected boolean isPipelinable(HttpRequest request)
+    {
+        HttpMethod method = HttpMethod.fromString(request.getMethod());
+        if (method == null || !method.isIdempotent() || method == HttpMethod.CONNECT)
+            return false;
+        if (request.getVersion() != HttpVersion.HTTP_1_1)
+            return false;
+        Request.Content content = request.getBody();
+        if (content != null && content.getLength() != 0)
+            return false;
+        if (request.getHeaders().contains(HttpHeader.EXPECT, HttpHeaderValue.CONTINUE.asString()))
+            return false;
+        return !request.getHeaders().contains(HttpHeader.UPGRADE) && !(request instanceof HttpUpgrader.Factory);
+    }
+
     @Override
     public void close()
     {
@@ -220,7 +419,7 @@ public class HttpConnectionOverHTTP extends AbstractConnection implements IConne
         {
             getHttpDestination().remove(this);
             abort(failure);
-            channel.destroy();
+            destroyHttpChannels();
             getEndPoint().shutdownOutput();
             if (LOG.isDebugEnabled())
                 LOG.debug("Shutdown {}", this);
@@ -232,8 +431,37 @@ public class HttpConnectionOverHTTP extends AbstractConnection implements IConne
 
     protected boolean abort(Throwable failure)
     {
-        HttpExchange exchange = channel.getHttpExchange();
-        return exchange != null && exchange.getRequest().abort(failure);
+        if (!isPipelining())
+        {
+            HttpExchange exchange = channel.getHttpExchange();
+            return exchange != null && exchange.getRequest().abort(failure);
+        }
+
+        // Abort all the pipelined exchanges, as their responses
+        // cannot be received after the connection is closed.
+        List<HttpChannelOverHTTP> active;
+        try (AutoLock l = lock.lock())
+        {
+            active = new ArrayList<>(activeChannels);
+        }
+        boolean aborted = false;
+        for (HttpChannelOverHTTP channel : active)
+        {
+            HttpExchange exchange = channel.getHttpExchange();
+            if (exchange != null)
+                aborted |= exchange.getRequest().abort(failure);
+        }
+        return aborted;
+    }
+
+    private void destroyHttpChannels()
+    {
+        List<HttpChannelOverHTTP> channels;
+        try (AutoLock l = lock.lock())
+        {
+            channels = new ArrayList<>(this.channels);
+        }
+        channels.forEach(HttpChannelOverHTTP::destroy);
     }
 
     @Override
@@ -273,7 +501,12 @@ public class HttpConnectionOverHTTP extends AbstractConnection implements IConne
         @Override
         protected Iterator<HttpChannel> getHttpChannels()
         {
-            return Collections.<HttpChannel>singleton(channel).iterator();
+            if (!isPipelining())
+                return Collections.<HttpChannel>singleton(channel).iterator();
+            try (AutoLock l = lock.lock())
+            {
+                return new ArrayList<HttpChannel>(activeChannels).iterator();
+            }
         }
 
         @Override
@@ -282,6 +515,9 @@ public class HttpConnectionOverHTTP extends AbstractConnection implements IConne
             HttpRequest request = exchange.getRequest();
             normalizeRequest(request);
 
+            if (isPipelining())
+                return sendPipelined(exchange);
+
             // Save the old idle timeout to restore it.
             EndPoint endPoint = getEndPoint();
             idleTimeout = endPoint.getIdleTimeout();
@@ -293,6 +529,23 @@ public class HttpConnectionOverHTTP extends AbstractConnection implements IConne
             return send(channel, exchange);
         }
 
+        private SendFailure sendPipelined(HttpExchange exchange)
+        {
+            EndPoint endPoint = getEndPoint();
+            try (AutoLock l = lock.lock())
+            {
+                // Save the old idle timeout to restore it when all exchanges complete.
+                if (activeChannels.isEmpty())
+                    idleTimeout = endPoint.getIdleTimeout();
+            }
+            long requestIdleTimeout = exchange.getRequest().getIdleTimeout();
+            if (requestIdleTimeout >= 0)
+                endPoint.setIdleTimeout(requestIdleTimeout);
+
+            // One channel per pipelined exchange.
+            return send(acquireHttpChannel(), exchange);
+        }
+
         @Override
         protected void normalizeRequest(HttpRequest request)
         {
@@ -15,6 +15,7 @@ package org.eclipse.jetty.client.http;
 
 import java.io.EOFException;
 import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
 import java.util.concurrent.atomic.LongAdder;
 
 import org.eclipse.jetty.client.HttpClient;
@@ -48,6 +49,7 @@ public class HttpReceiverOverHTTP extends HttpReceiver implements HttpParser.Res
     private boolean shutdown;
     private boolean complete;
     private boolean unsolicited;
+    private HttpChannelOverHTTP nextChannel;
     private String method;
     private int status;
 
@@ -91,6 +93,18 @@ public class HttpReceiverOverHTTP extends HttpReceiver implements HttpParser.Res
         process();
     }
 
+    /**
+     * <p>Receives a pipelined response, starting from the bytes
+     * already read by the receiver of the previous response.</p>
+     *
+     * @param buffer the buffer with the bytes of this response
+     */
+    void receive(RetainableByteBuffer buffer)
+    {
+        networkBuffer = buffer;
+        process();
+    }
+
     private void acquireNetworkBuffer()
     {
         networkBuffer = newNetworkBuffer();
@@ -226,7 +240,18 @@ public class HttpReceiverOverHTTP extends HttpReceiver implements HttpParser.Res
             if (failed)
                 parser.close();
             if (handle)
+            {
+                // The connection may have been closed by messageComplete(),
+                // let the caller release the buffer with the pipelined bytes.
+                if (this.complete && getHttpConnection().isClosed())
+                {
+                    this.complete = false;
+                    this.status = 0;
+                    this.method = null;
+                    return false;
+                }
                 return !failed;
+            }
 
             boolean complete = this.complete;
             this.complete = false;
@@ -245,6 +270,14 @@ public class HttpReceiverOverHTTP extends HttpReceiver implements HttpParser.Res
                 this.method = null;
                 if (getHttpChannel().isTunnel(method, status))
                     return true;
+                // Pipelined responses are parsed by the receiver of the next channel.
+                if (getHttpConnection().isPipelining())
+                {
+                    HttpChannelOverHTTP next = nextChannel;
+                    nextChannel = null;
+                    receiveNext(next);
+                    return true;
+                }
             }
 
             if (networkBuffer.isEmpty())
@@ -260,6 +293,30 @@ public class HttpReceiverOverHTTP extends HttpReceiver implements HttpParser.Res
         }
     }
 
+    private void receiveNext(HttpChannelOverHTTP next)
+    {
+        HttpConnectionOverHTTP connection = getHttpConnection();
+        RetainableByteBuffer buffer = networkBuffer;
+        networkBuffer = null;
+        if (next != null && buffer.hasRemaining() && !connection.isClosed())
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Receiving pipelined response on {} from {}", next, buffer);
+            next.getHttpReceiver().receive(buffer);
+            return;
+        }
+
+        if (buffer.hasRemaining())
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Discarding unexpected content after response: {}", buffer);
+            buffer.clear();
+        }
+        buffer.release();
+        if (!connection.isClosed())
+            connection.fillInterested();
+    }
+
     protected void fillInterested()
     {
         getHttpConnection().fillInterested();
@@ -376,9 +433,24 @@ public class HttpReceiverOverHTTP extends HttpReceiver implements HttpParser.Res
         {
             inMessages.increment();
             complete = true;
+            // Update the pipeline before the exchange is terminated and the channel released.
+            HttpConnectionOverHTTP connection = getHttpConnection();
+            if (connection.isPipelining())
+                nextChannel = connection.responseReceived(getHttpChannel());
         }
 
         boolean stopParsing = !responseSuccess(exchange);
+        if (stopParsing && complete && getHttpConnection().isPipelining())
+        {
+            // The exchange failed concurrently, for example it was aborted just
+            // as its response completed, so parsing stops before the pipelined
+            // responses are handed over to the next channel; since a failed
+            // exchange closes the connection anyway, close it now to fail the
+            // pipelined exchanges rather than leaving them waiting.
+            nextChannel = null;
+            Throwable failure = exchange.getResponseFailure();
+            getHttpConnection().close(failure != null ? failure : new AsynchronousCloseException());
+        }
         if (status == HttpStatus.SWITCHING_PROTOCOLS_101)
             stopParsing = true;
         return stopParsing;
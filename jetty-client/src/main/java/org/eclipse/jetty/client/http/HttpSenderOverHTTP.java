@@ -107,6 +107,16 @@ public class HttpSenderOverHTTP extends HttpSender
         }
     }
 
+    @Override
+    protected boolean someToSuccess(HttpExchange exchange)
+    {
+        boolean result = super.someToSuccess(exchange);
+        // Allow the next pipelined request to be sent.
+        HttpChannelOverHTTP channel = getHttpChannel();
+        channel.getHttpConnection().requestSent(channel);
+        return result;
+    }
+
     @Override
     protected void reset()
     {
@@ -0,0 +1,73 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.client.internal;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.Callback;
+
+/**
+ * <p>A reference counted {@link Response.RetainableContent} that succeeds
+ * the content callback, so that the transport can recycle the content
+ * buffer, only when the last reference is released.</p>
+ */
+public class RetainableResponseContent implements Response.RetainableContent
+{
+    private final AtomicInteger references = new AtomicInteger(1);
+    private final ByteBuffer buffer;
+    private final Callback callback;
+
+    public RetainableResponseContent(ByteBuffer buffer, Callback callback)
+    {
+        this.buffer = buffer;
+        this.callback = callback;
+    }
+
+    @Override
+    public ByteBuffer getByteBuffer()
+    {
+        return buffer;
+    }
+
+    @Override
+    public void retain()
+    {
+        if (references.getAndUpdate(c -> c == 0 ? 0 : c + 1) == 0)
+            throw new IllegalStateException("released " + this);
+    }
+
+    @Override
+    public boolean release()
+    {
+        int ref = references.updateAndGet(c ->
+        {
+            if (c == 0)
+                throw new IllegalStateException("already released " + this);
+            return c - 1;
+        });
+        if (ref > 0)
+            return false;
+        callback.succeeded();
+        return true;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{%s,r=%d}", getClass().getSimpleName(), hashCode(), BufferUtil.toDetailString(buffer), references.get());
+    }
+}
@@ -70,16 +70,17 @@ public class ConnectionPoolTest
         pool.setMaxDuration(10);
         return pool;
     });
+    private static final ConnectionPoolFactory LATENCY_AWARE = new ConnectionPoolFactory("latency-aware", destination -> new LatencyAwareConnectionPool(destination, destination.getHttpClient().getMaxConnectionsPerDestination(), destination));
     private static final ConnectionPoolFactory ROUND_ROBIN = new ConnectionPoolFactory("round-robin", destination -> new RoundRobinConnectionPool(destination, destination.getHttpClient().getMaxConnectionsPerDestination(), destination));
 
     public static Stream<ConnectionPoolFactory> pools()
     {
-        return Stream.of(DUPLEX, MULTIPLEX, RANDOM, DUPLEX_MAX_DURATION, ROUND_ROBIN);
+        return Stream.of(DUPLEX, MULTIPLEX, RANDOM, LATENCY_AWARE, DUPLEX_MAX_DURATION, ROUND_ROBIN);
     }
 
     public static Stream<ConnectionPoolFactory> poolsNoRoundRobin()
     {
-        return Stream.of(DUPLEX, MULTIPLEX, RANDOM, DUPLEX_MAX_DURATION);
+        return Stream.of(DUPLEX, MULTIPLEX, RANDOM, LATENCY_AWARE, DUPLEX_MAX_DURATION);
     }
 
     private Server server;
@@ -16,8 +16,11 @@ package org.eclipse.jetty.client;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -38,10 +41,13 @@ import org.eclipse.jetty.client.http.HttpReceiverOverHTTP;
 import org.eclipse.jetty.io.EndPoint;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.util.Callback;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ArgumentsSource;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class HttpClientAsyncContentTest extends AbstractHttpClientServerTest
@@ -396,4 +402,72 @@ public class HttpClientAsyncContentTest extends AbstractHttpClientServerTest
 
         assertTrue(resultLatch.await(555, TimeUnit.SECONDS));
     }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testRetainableContent(Scenario scenario) throws Exception
+    {
+        start(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, Request jettyRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                ServletOutputStream output = response.getOutputStream();
+                for (char c = 'A'; c <= 'C'; ++c)
+                {
+                    output.write(c);
+                    output.flush();
+                }
+            }
+        });
+
+        List<Response.RetainableContent> retained = new CopyOnWriteArrayList<>();
+        CountDownLatch completeLatch = new CountDownLatch(1);
+        client.newRequest("localhost", connector.getLocalPort())
+            .scheme(scenario.getScheme())
+            .onResponseContentDemanded((Response.RetainableContentListener)(response, demand, content) ->
+            {
+                // Keep the content without copying it, and demand more content.
+                content.retain();
+                retained.add(content);
+                demand.accept(1);
+            })
+            .send(result ->
+            {
+                if (result.isSucceeded())
+                    completeLatch.countDown();
+            });
+
+        assertTrue(completeLatch.await(5, TimeUnit.SECONDS));
+
+        // The retained content is still valid after the response is complete.
+        StringBuilder builder = new StringBuilder();
+        for (Response.RetainableContent content : retained)
+        {
+            builder.append(StandardCharsets.UTF_8.decode(content.getByteBuffer().slice()));
+        }
+        assertEquals("ABC", builder.toString());
+
+        for (Response.RetainableContent content : retained)
+        {
+            assertTrue(content.release());
+        }
+    }
+
+    @Test
+    public void testRetainableContentSucceedsCallbackOnLastRelease()
+    {
+        AtomicInteger succeeded = new AtomicInteger();
+        Response.RetainableContent content = Response.RetainableContent.from(ByteBuffer.allocate(1), Callback.from(succeeded::incrementAndGet));
+
+        content.retain();
+        assertFalse(content.release());
+        assertEquals(0, succeeded.get());
+
+        assertTrue(content.release());
+        assertEquals(1, succeeded.get());
+
+        assertThrows(IllegalStateException.class, content::retain);
+        assertThrows(IllegalStateException.class, content::release);
+    }
 }
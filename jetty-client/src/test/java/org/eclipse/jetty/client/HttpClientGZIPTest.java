@@ -22,6 +22,7 @@ import java.util.Arrays;
 import java.util.Random;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterOutputStream;
 import java.util.zip.GZIPOutputStream;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
@@ -110,6 +111,43 @@ public class HttpClientGZIPTest extends AbstractHttpClientServerTest
         assertArrayEquals(data, response.getContent());
     }
 
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testDeflateContentOneByteAtATime(Scenario scenario) throws Exception
+    {
+        final byte[] data = new byte[1024];
+        new Random().nextBytes(data);
+        start(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, Request jettyRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                response.setHeader("Content-Encoding", "deflate");
+
+                ByteArrayOutputStream deflateData = new ByteArrayOutputStream();
+                DeflaterOutputStream deflateOutput = new DeflaterOutputStream(deflateData);
+                deflateOutput.write(data);
+                deflateOutput.finish();
+
+                ServletOutputStream output = response.getOutputStream();
+                for (byte deflateByte : deflateData.toByteArray())
+                {
+                    output.write(deflateByte);
+                    output.flush();
+                }
+            }
+        });
+        client.getContentDecoderFactories().add(new DeflateContentDecoder.Factory(client.getByteBufferPool(), 64));
+
+        ContentResponse response = client.newRequest("localhost", connector.getLocalPort())
+            .scheme(scenario.getScheme())
+            .timeout(5, TimeUnit.SECONDS)
+            .send();
+
+        assertEquals(200, response.getStatus());
+        assertArrayEquals(data, response.getContent());
+    }
+
     @ParameterizedTest
     @ArgumentsSource(ScenarioProvider.class)
     public void testGZIPContentSentTwiceInOneWrite(Scenario scenario) throws Exception
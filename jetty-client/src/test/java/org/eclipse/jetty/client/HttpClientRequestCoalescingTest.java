@@ -0,0 +1,275 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.client;
+
+import java.io.IOException;
+import java.net.HttpCookie;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.BufferingResponseListener;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ArgumentsSource;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HttpClientRequestCoalescingTest extends AbstractHttpClientServerTest
+{
+    private final AtomicInteger requests = new AtomicInteger();
+    private final CountDownLatch serverLatch = new CountDownLatch(1);
+    private final CountDownLatch releaseLatch = new CountDownLatch(1);
+
+    private void start(Scenario scenario, String content, int maxContentLength) throws Exception
+    {
+        startServer(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, org.eclipse.jetty.server.Request jettyRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                requests.incrementAndGet();
+                serverLatch.countDown();
+                try
+                {
+                    assertTrue(releaseLatch.await(5, TimeUnit.SECONDS));
+                }
+                catch (InterruptedException x)
+                {
+                    throw new IOException(x);
+                }
+                response.setContentType("text/plain;charset=UTF-8");
+                response.getOutputStream().write(content.getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        startClient(scenario, httpClient ->
+        {
+            httpClient.setRequestCoalescing(true);
+            httpClient.setRequestCoalescingMaxContentLength(maxContentLength);
+        });
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testIdenticalRequestsAreCoalesced(Scenario scenario) throws Exception
+    {
+        String content = "coalesced";
+        start(scenario, content, 1024);
+
+        int count = 8;
+        List<Result> results = new CopyOnWriteArrayList<>();
+        List<String> contents = new CopyOnWriteArrayList<>();
+        CountDownLatch latch = new CountDownLatch(count);
+        for (int i = 0; i < count; ++i)
+        {
+            client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scenario.getScheme())
+                .path("/config")
+                .send(new BufferingResponseListener()
+                {
+                    @Override
+                    public void onComplete(Result result)
+                    {
+                        results.add(result);
+                        contents.add(getContentAsString());
+                        latch.countDown();
+                    }
+                });
+            if (i == 0)
+                assertTrue(serverLatch.await(5, TimeUnit.SECONDS));
+        }
+        releaseLatch.countDown();
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertThat(requests.get(), is(1));
+        for (Result result : results)
+        {
+            assertTrue(result.isSucceeded());
+            assertThat(result.getResponse().getStatus(), is(200));
+        }
+        for (String c : contents)
+        {
+            assertThat(c, is(content));
+        }
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testDifferentRequestsAreNotCoalesced(Scenario scenario) throws Exception
+    {
+        start(scenario, "", 1024);
+
+        CountDownLatch latch = new CountDownLatch(3);
+        client.newRequest("localhost", connector.getLocalPort())
+            .scheme(scenario.getScheme())
+            .path("/config")
+            .send(result -> latch.countDown());
+        assertTrue(serverLatch.await(5, TimeUnit.SECONDS));
+        client.newRequest("localhost", connector.getLocalPort())
+            .scheme(scenario.getScheme())
+            .path("/config")
+            .headers(headers -> headers.put(HttpHeader.ACCEPT, "application/json"))
+            .send(result -> latch.countDown());
+        client.newRequest("localhost", connector.getLocalPort())
+            .scheme(scenario.getScheme())
+            .method(HttpMethod.HEAD)
+            .path("/config")
+            .send(result -> latch.countDown());
+        releaseLatch.countDown();
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertThat(requests.get(), is(3));
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testRequestsWithCredentialsAreNotCoalesced(Scenario scenario) throws Exception
+    {
+        start(scenario, "", 1024);
+
+        CountDownLatch latch = new CountDownLatch(3);
+        client.newRequest("localhost", connector.getLocalPort())
+            .scheme(scenario.getScheme())
+            .path("/account")
+            .cookie(new HttpCookie("session", "alice"))
+            .send(result -> latch.countDown());
+        assertTrue(serverLatch.await(5, TimeUnit.SECONDS));
+        client.newRequest("localhost", connector.getLocalPort())
+            .scheme(scenario.getScheme())
+            .path("/account")
+            .cookie(new HttpCookie("session", "bob"))
+            .send(result -> latch.countDown());
+        client.newRequest("localhost", connector.getLocalPort())
+            .scheme(scenario.getScheme())
+            .path("/account")
+            .headers(headers -> headers.put(HttpHeader.AUTHORIZATION, "Bearer carol"))
+            .send(result -> latch.countDown());
+        releaseLatch.countDown();
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertThat(requests.get(), is(3));
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testLargeContentSendsFollowers(Scenario scenario) throws Exception
+    {
+        start(scenario, "X".repeat(1024), 16);
+
+        int count = 3;
+        CountDownLatch latch = new CountDownLatch(count);
+        for (int i = 0; i < count; ++i)
+        {
+            client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scenario.getScheme())
+                .path("/large")
+                .send(result ->
+                {
+                    if (result.isSucceeded())
+                        latch.countDown();
+                });
+            if (i == 0)
+                assertTrue(serverLatch.await(5, TimeUnit.SECONDS));
+        }
+        releaseLatch.countDown();
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertThat(requests.get(), is(count));
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testFollowerTimeout(Scenario scenario) throws Exception
+    {
+        start(scenario, "", 1024);
+
+        CountDownLatch leaderLatch = new CountDownLatch(1);
+        client.newRequest("localhost", connector.getLocalPort())
+            .scheme(scenario.getScheme())
+            .path("/config")
+            .send(result ->
+            {
+                if (result.isSucceeded())
+                    leaderLatch.countDown();
+            });
+        assertTrue(serverLatch.await(5, TimeUnit.SECONDS));
+
+        CountDownLatch followerLatch = new CountDownLatch(1);
+        client.newRequest("localhost", connector.getLocalPort())
+            .scheme(scenario.getScheme())
+            .path("/config")
+            .timeout(500, TimeUnit.MILLISECONDS)
+            .send(result ->
+            {
+                assertThat(result.getFailure(), instanceOf(TimeoutException.class));
+                followerLatch.countDown();
+            });
+
+        assertTrue(followerLatch.await(5, TimeUnit.SECONDS));
+        releaseLatch.countDown();
+        assertTrue(leaderLatch.await(5, TimeUnit.SECONDS));
+        assertThat(requests.get(), is(1));
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testAbortedFollowerFailsImmediately(Scenario scenario) throws Exception
+    {
+        start(scenario, "", 1024);
+
+        CountDownLatch leaderLatch = new CountDownLatch(1);
+        client.newRequest("localhost", connector.getLocalPort())
+            .scheme(scenario.getScheme())
+            .path("/config")
+            .send(result ->
+            {
+                if (result.isSucceeded())
+                    leaderLatch.countDown();
+            });
+        assertTrue(serverLatch.await(5, TimeUnit.SECONDS));
+
+        Throwable cause = new Exception("explicitly_aborted_by_test");
+        CountDownLatch followerLatch = new CountDownLatch(1);
+        Request follower = client.newRequest("localhost", connector.getLocalPort())
+            .scheme(scenario.getScheme())
+            .path("/config");
+        follower.send(result ->
+        {
+            assertThat(result.getFailure(), sameInstance(cause));
+            followerLatch.countDown();
+        });
+        assertTrue(follower.abort(cause));
+
+        // The follower fails while the leader is still in flight.
+        assertTrue(followerLatch.await(5, TimeUnit.SECONDS));
+        assertThat(leaderLatch.getCount(), is(1L));
+
+        releaseLatch.countDown();
+        assertTrue(leaderLatch.await(5, TimeUnit.SECONDS));
+        assertThat(requests.get(), is(1));
+    }
+}
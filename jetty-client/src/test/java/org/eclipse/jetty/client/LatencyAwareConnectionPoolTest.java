@@ -0,0 +1,141 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.client;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.client.api.Connection;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.util.Attachable;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.Promise;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class LatencyAwareConnectionPoolTest
+{
+    private LatencyAwareConnectionPool pool;
+
+    private void newPool(int maxConnections, int maxMultiplex) throws Exception
+    {
+        HttpClient httpClient = new HttpClient()
+        {
+            @Override
+            protected void newConnection(HttpDestination destination, Promise<Connection> promise)
+            {
+                promise.succeeded(new MockConnection());
+            }
+        };
+        HttpDestination destination = new HttpDestination(httpClient, new Origin("http", "localhost", 8080), false)
+        {
+        };
+        pool = new LatencyAwareConnectionPool(destination, maxConnections, Callback.NOOP, maxMultiplex);
+        pool.preCreateConnections(maxConnections).get(5, TimeUnit.SECONDS);
+    }
+
+    @AfterEach
+    public void dispose()
+    {
+        if (pool != null)
+            pool.close();
+    }
+
+    @Test
+    public void testFasterConnectionIsPreferred() throws Exception
+    {
+        newPool(2, 1);
+
+        Connection fast = pool.acquire(false);
+        Connection slow = pool.acquire(false);
+        assertThat(slow, not(sameInstance(fast)));
+        pool.release(fast);
+        Thread.sleep(50);
+        pool.release(slow);
+
+        assertThat(pool.getLatency(slow), greaterThan(pool.getLatency(fast)));
+
+        for (int i = 0; i < 16; ++i)
+        {
+            Connection connection = pool.acquire(false);
+            assertThat(connection, sameInstance(fast));
+            pool.release(connection);
+        }
+    }
+
+    @Test
+    public void testLeastOutstandingConnectionIsPreferred() throws Exception
+    {
+        newPool(2, 4);
+
+        Connection connection1 = pool.acquire(false);
+        Connection connection2 = pool.acquire(false);
+        assertThat(connection2, not(sameInstance(connection1)));
+
+        pool.release(connection1);
+        pool.release(connection2);
+    }
+
+    @Test
+    public void testRemovedConnectionIsNotTracked() throws Exception
+    {
+        newPool(2, 1);
+
+        Connection connection = pool.acquire(false);
+        pool.release(connection);
+        assertThat(pool.getLatency(connection), is(not(-1L)));
+
+        pool.remove(connection);
+        assertThat(pool.getLatency(connection), is(-1L));
+    }
+
+    private static class MockConnection implements Connection, Attachable
+    {
+        private Object attachment;
+
+        @Override
+        public void close()
+        {
+        }
+
+        @Override
+        public boolean isClosed()
+        {
+            return false;
+        }
+
+        @Override
+        public void send(Request request, Response.CompleteListener listener)
+        {
+        }
+
+        @Override
+        public void setAttachment(Object obj)
+        {
+            this.attachment = obj;
+        }
+
+        @Override
+        public Object getAttachment()
+        {
+            return attachment;
+        }
+    }
+}
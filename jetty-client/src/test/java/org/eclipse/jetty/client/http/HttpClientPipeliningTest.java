@@ -0,0 +1,307 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.client.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.client.ConnectionPool;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.HttpExchange;
+import org.eclipse.jetty.client.MultiplexConnectionPool;
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.util.FutureResponseListener;
+import org.eclipse.jetty.client.util.StringRequestContent;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.io.EndPoint;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class HttpClientPipeliningTest
+{
+    private HttpClient client;
+
+    private void startClient(int maxPipelinedRequests) throws Exception
+    {
+        HttpClientTransportOverHTTP transport = new HttpClientTransportOverHTTP(1);
+        transport.setMaxPipelinedRequests(maxPipelinedRequests);
+        client = new HttpClient(transport);
+        client.setMaxConnectionsPerDestination(1);
+        client.start();
+    }
+
+    @AfterEach
+    public void dispose() throws Exception
+    {
+        if (client != null)
+            client.stop();
+    }
+
+    @Test
+    public void testApplicationConnectionPoolFactoryIsRetained()
+    {
+        HttpClientTransportOverHTTP transport = new HttpClientTransportOverHTTP(1);
+        ConnectionPool.Factory defaultFactory = transport.getConnectionPoolFactory();
+
+        transport.setMaxPipelinedRequests(4);
+        assertNotSame(defaultFactory, transport.getConnectionPoolFactory());
+        transport.setMaxPipelinedRequests(1);
+        assertSame(defaultFactory, transport.getConnectionPoolFactory());
+
+        ConnectionPool.Factory factory = destination -> new MultiplexConnectionPool(destination, 1, destination, 8);
+        transport.setConnectionPoolFactory(factory);
+        transport.setMaxPipelinedRequests(4);
+        assertSame(factory, transport.getConnectionPoolFactory());
+        transport.setMaxPipelinedRequests(1);
+        assertSame(factory, transport.getConnectionPoolFactory());
+    }
+
+    @Test
+    public void testRequestsArePipelined() throws Exception
+    {
+        try (ServerSocket server = new ServerSocket(0))
+        {
+            startClient(4);
+
+            int count = 3;
+            List<FutureResponseListener> listeners = new ArrayList<>();
+            for (int i = 0; i < count; ++i)
+            {
+                Request request = client.newRequest("localhost", server.getLocalPort()).path("/" + i);
+                FutureResponseListener listener = new FutureResponseListener(request);
+                request.send(listener);
+                listeners.add(listener);
+            }
+
+            try (Socket socket = server.accept())
+            {
+                socket.setSoTimeout(5000);
+                InputStream input = socket.getInputStream();
+                // All the requests arrive before any response is sent.
+                for (int i = 0; i < count; ++i)
+                {
+                    assertThat(readRequestHeaders(input), startsWith("GET /" + i + " "));
+                }
+
+                // Write all the responses at once.
+                StringBuilder responses = new StringBuilder();
+                for (int i = 0; i < count; ++i)
+                {
+                    responses.append(response(String.valueOf(i)));
+                }
+                OutputStream output = socket.getOutputStream();
+                output.write(responses.toString().getBytes(StandardCharsets.UTF_8));
+                output.flush();
+
+                for (int i = 0; i < count; ++i)
+                {
+                    ContentResponse response = listeners.get(i).get(5, TimeUnit.SECONDS);
+                    assertEquals(HttpStatus.OK_200, response.getStatus());
+                    assertEquals(String.valueOf(i), response.getContentAsString());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRequestWithContentIsNotPipelined() throws Exception
+    {
+        try (ServerSocket server = new ServerSocket(0))
+        {
+            startClient(4);
+
+            Request request1 = client.newRequest("localhost", server.getLocalPort()).path("/0");
+            FutureResponseListener listener1 = new FutureResponseListener(request1);
+            request1.send(listener1);
+            String content = "hello";
+            Request request2 = client.newRequest("localhost", server.getLocalPort())
+                .method(HttpMethod.POST)
+                .path("/1")
+                .body(new StringRequestContent(content));
+            FutureResponseListener listener2 = new FutureResponseListener(request2);
+            request2.send(listener2);
+
+            try (Socket socket = server.accept())
+            {
+                InputStream input = socket.getInputStream();
+                OutputStream output = socket.getOutputStream();
+
+                socket.setSoTimeout(5000);
+                assertThat(readRequestHeaders(input), startsWith("GET /0 "));
+
+                // The POST request must not be sent until the previous response arrived.
+                socket.setSoTimeout(500);
+                assertThrows(SocketTimeoutException.class, input::read);
+
+                output.write(response("0").getBytes(StandardCharsets.UTF_8));
+                output.flush();
+                assertEquals("0", listener1.get(5, TimeUnit.SECONDS).getContentAsString());
+
+                socket.setSoTimeout(5000);
+                assertThat(readRequestHeaders(input), startsWith("POST /1 "));
+                assertEquals(content, new String(input.readNBytes(content.length()), StandardCharsets.UTF_8));
+
+                output.write(response("1").getBytes(StandardCharsets.UTF_8));
+                output.flush();
+                assertEquals("1", listener2.get(5, TimeUnit.SECONDS).getContentAsString());
+            }
+        }
+    }
+
+    @Test
+    public void testConnectionCloseFailsPipelinedRequests() throws Exception
+    {
+        try (ServerSocket server = new ServerSocket(0))
+        {
+            startClient(4);
+
+            Request request1 = client.newRequest("localhost", server.getLocalPort()).path("/0");
+            FutureResponseListener listener1 = new FutureResponseListener(request1);
+            request1.send(listener1);
+            Request request2 = client.newRequest("localhost", server.getLocalPort()).path("/1");
+            FutureResponseListener listener2 = new FutureResponseListener(request2);
+            request2.send(listener2);
+
+            try (Socket socket = server.accept())
+            {
+                socket.setSoTimeout(5000);
+                InputStream input = socket.getInputStream();
+                assertThat(readRequestHeaders(input), startsWith("GET /0 "));
+                assertThat(readRequestHeaders(input), startsWith("GET /1 "));
+
+                OutputStream output = socket.getOutputStream();
+                output.write(response("0").getBytes(StandardCharsets.UTF_8));
+                output.flush();
+                assertEquals("0", listener1.get(5, TimeUnit.SECONDS).getContentAsString());
+            }
+
+            // The server closed the connection without responding to the second request.
+            assertThrows(ExecutionException.class, () -> listener2.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testAbortWhileResponseCompletesFailsPipelinedRequests() throws Exception
+    {
+        try (ServerSocket server = new ServerSocket(0))
+        {
+            HttpClientTransportOverHTTP transport = new HttpClientTransportOverHTTP(1)
+            {
+                @Override
+                public org.eclipse.jetty.io.Connection newConnection(EndPoint endPoint, Map<String, Object> context) throws IOException
+                {
+                    return customize(new HttpConnectionOverHTTP(endPoint, context)
+                    {
+                        @Override
+                        protected HttpChannelOverHTTP newHttpChannel()
+                        {
+                            return new HttpChannelOverHTTP(this)
+                            {
+                                @Override
+                                protected HttpReceiverOverHTTP newHttpReceiver()
+                                {
+                                    return new HttpReceiverOverHTTP(this)
+                                    {
+                                        @Override
+                                        protected boolean responseSuccess(HttpExchange exchange)
+                                        {
+                                            // Simulate another thread that aborts the
+                                            // exchange just as its response completes.
+                                            if ("/0".equals(exchange.getRequest().getPath()))
+                                                exchange.responseComplete(new Exception("explicitly_aborted_by_test"));
+                                            return super.responseSuccess(exchange);
+                                        }
+                                    };
+                                }
+                            };
+                        }
+                    }, context);
+                }
+            };
+            transport.setMaxPipelinedRequests(4);
+            client = new HttpClient(transport);
+            client.setMaxConnectionsPerDestination(1);
+            client.start();
+
+            Request request1 = client.newRequest("localhost", server.getLocalPort()).path("/0");
+            request1.send(result -> {});
+            Request request2 = client.newRequest("localhost", server.getLocalPort()).path("/1");
+            FutureResponseListener listener2 = new FutureResponseListener(request2);
+            request2.send(listener2);
+
+            try (Socket socket = server.accept())
+            {
+                socket.setSoTimeout(5000);
+                InputStream input = socket.getInputStream();
+                assertThat(readRequestHeaders(input), startsWith("GET /0 "));
+                assertThat(readRequestHeaders(input), startsWith("GET /1 "));
+
+                // Write both responses at once, so that the second
+                // response must be handed over to the second channel.
+                OutputStream output = socket.getOutputStream();
+                output.write((response("0") + response("1")).getBytes(StandardCharsets.UTF_8));
+                output.flush();
+
+                // The connection is closed and the pipelined request fails, rather than waiting.
+                assertThrows(ExecutionException.class, () -> listener2.get(5, TimeUnit.SECONDS));
+            }
+        }
+    }
+
+    private static String response(String content)
+    {
+        return "HTTP/1.1 200 OK\r\n" +
+            "Content-Length: " + content.length() + "\r\n" +
+            "\r\n" +
+            content;
+    }
+
+    private static String readRequestHeaders(InputStream input) throws IOException
+    {
+        ByteArrayOutputStream headers = new ByteArrayOutputStream();
+        int crlfs = 0;
+        while (crlfs < 4)
+        {
+            int read = input.read();
+            if (read < 0)
+                throw new IOException("unexpected EOF");
+            headers.write(read);
+            if (read == '\r' || read == '\n')
+                ++crlfs;
+            else
+                crlfs = 0;
+        }
+        return headers.toString(StandardCharsets.UTF_8);
+    }
+}
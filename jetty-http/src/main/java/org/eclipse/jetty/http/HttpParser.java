@@ -16,6 +16,7 @@ package org.eclipse.jetty.http;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -220,6 +221,7 @@ public class HttpParser
     private final HttpCompliance _complianceMode;
     private final Utf8StringBuilder _uri = new Utf8StringBuilder(INITIAL_URI_LENGTH);
     private final FieldCache _fieldCache = new FieldCache();
+    private final FieldInterner _fieldInterner = new FieldInterner();
     private HttpField _field;
     private HttpHeader _header;
     private String _headerString;
@@ -322,6 +324,26 @@ public class HttpParser
         _fieldCache.setCaseSensitive(headerCacheCaseSensitive);
     }
 
+    public int getHeaderInterningSize()
+    {
+        return _fieldInterner.getSize();
+    }
+
+    /**
+     * <p>Sets the max number of header fields of a message that are remembered,
+     * so that the same {@link HttpField} instances can be reused by the next
+     * messages parsed, if the bytes of their header fields are the same.</p>
+     * <p>Unlike the header cache, which only caches the fields of some known headers,
+     * interning applies to all header fields, so that messages that repeat the
+     * same headers, like those of keep-alive API clients, produce less garbage.</p>
+     *
+     * @param headerInterningSize the max number of header fields remembered, or 0 to disable interning
+     */
+    public void setHeaderInterningSize(int headerInterningSize)
+    {
+        _fieldInterner.setSize(headerInterningSize);
+    }
+
     protected void checkViolation(Violation violation) throws BadMessageException
     {
         if (violation.isAllowedBy(_complianceMode))
@@ -1070,7 +1092,11 @@ public class HttpParser
                     _fieldCache.add(_field);
                 }
             }
-            _handler.parsedHeader(_field != null ? _field : new HttpField(_header, _headerString, _valueString));
+            HttpField field = _field != null ? _field : new HttpField(_header, _headerString, _valueString);
+            // Don't intern fields that must report a case sensitive field name violation.
+            boolean normative = _header == null || !CASE_SENSITIVE_FIELD_NAME.isAllowedBy(_complianceMode) || _header.asString().equals(field.getName());
+            _fieldInterner.add(normative ? field : null);
+            _handler.parsedHeader(field);
         }
 
         _headerString = _valueString = null;
@@ -1115,14 +1141,7 @@ public class HttpParser
             if (t == null)
                 break;
 
-            if (_maxHeaderBytes > 0 && ++_headerBytes > _maxHeaderBytes)
-            {
-                boolean header = _state == State.HEADER;
-                LOG.warn("{} is too large {}>{}", header ? "Header" : "Trailer", _headerBytes, _maxHeaderBytes);
-                throw new BadMessageException(header
-                    ? HttpStatus.REQUEST_HEADER_FIELDS_TOO_LARGE_431
-                    : HttpStatus.PAYLOAD_TOO_LARGE_413);
-            }
+            countFieldBytes(1);
 
             switch (_fieldState)
             {
@@ -1245,6 +1264,29 @@ public class HttpParser
                             // handle new header
                             if (buffer.hasRemaining())
                             {
+                                // Try to reuse the same field of a previous message.
+                                HttpField internedField = _state == State.HEADER ? _fieldInterner.match(buffer, buffer.position() - 1) : null;
+                                if (internedField != null)
+                                {
+                                    int length = FieldInterner.length(internedField);
+                                    countFieldBytes(length - 1);
+                                    _field = internedField;
+                                    _header = internedField.getHeader();
+                                    _headerString = internedField.getName();
+                                    _valueString = internedField.getValue();
+                                    setState(FieldState.IN_VALUE);
+
+                                    int pos = buffer.position() - 1 + length;
+                                    if (buffer.get(pos) == HttpTokens.CARRIAGE_RETURN)
+                                    {
+                                        _cr = true;
+                                        buffer.position(pos + 1);
+                                    }
+                                    else
+                                        buffer.position(pos);
+                                    break;
+                                }
+
                                 // Try a look ahead for the known header name and value.
                                 HttpField cachedField = _fieldCache.getBest(buffer, -1, buffer.remaining());
                                 if (cachedField == null)
@@ -1371,6 +1413,7 @@ public class HttpParser
                         case DIGIT:
                         case TCHAR:
                             _string.append(t.getChar());
+                            scanFieldName(buffer);
                             _length = _string.length();
                             break;
 
@@ -1451,6 +1494,7 @@ public class HttpParser
                         case SPACE:
                         case HTAB:
                             _string.append(t.getChar());
+                            scanFieldValue(buffer);
                             break;
 
                         case ALPHA:
@@ -1461,6 +1505,7 @@ public class HttpParser
                         case OTEXT: // TODO review? should this be a utf8 string?
                             _string.append(t.getChar());
                             _length = _string.length();
+                            scanFieldValue(buffer);
                             break;
 
                         default:
@@ -1476,6 +1521,65 @@ public class HttpParser
         return false;
     }
 
+    private void countFieldBytes(int bytes)
+    {
+        if (_maxHeaderBytes > 0 && (_headerBytes += bytes) > _maxHeaderBytes)
+        {
+            boolean header = _state == State.HEADER;
+            LOG.warn("{} is too large {}>{}", header ? "Header" : "Trailer", _headerBytes, _maxHeaderBytes);
+            throw new BadMessageException(header
+                ? HttpStatus.REQUEST_HEADER_FIELDS_TOO_LARGE_431
+                : HttpStatus.PAYLOAD_TOO_LARGE_413);
+        }
+    }
+
+    /*
+     * Fast path of the IN_NAME state: appends the following tchars of the field name,
+     * leaving the byte that ends the name to the state machine.
+     */
+    private void scanFieldName(ByteBuffer buffer)
+    {
+        int position = buffer.position();
+        int limit = buffer.limit();
+        int i = position;
+        while (i < limit)
+        {
+            byte b = buffer.get(i);
+            if (!HttpTokens.isTchar(b))
+                break;
+            _string.append((char)b);
+            i++;
+        }
+        if (i > position)
+        {
+            countFieldBytes(i - position);
+            buffer.position(i);
+        }
+    }
+
+    /*
+     * Fast path of the IN_VALUE state: appends the following SPACE, VCHAR and obs-text
+     * bytes of the field value, found a word at a time, leaving HTAB, CR, LF and
+     * the control characters to the state machine.
+     */
+    private void scanFieldValue(ByteBuffer buffer)
+    {
+        int position = buffer.position();
+        int length = HttpTokens.fieldValueLength(buffer, position, buffer.limit());
+        if (length == 0)
+            return;
+        countFieldBytes(length);
+        for (int i = position, end = position + length; i < end; i++)
+        {
+            byte b = buffer.get(i);
+            _string.append((char)(0xff & b));
+            // Trailing white space is trimmed from the value.
+            if (b != HttpTokens.SPACE)
+                _length = _string.length();
+        }
+        buffer.position(position + length);
+    }
+
     /**
      * Parse until next Event.
      *
@@ -1888,6 +1992,7 @@ public class HttpParser
         _headerBytes = 0;
         _host = false;
         _headerComplete = false;
+        _fieldInterner.reset();
     }
 
     public void servletUpgrade()
@@ -2093,4 +2198,101 @@ public class HttpParser
             }
         }
     }
+
+    /**
+     * <p>The header fields of the previous messages, with their bytes in the
+     * canonical {@code Name: value} form, indexed by their position in the message.</p>
+     * <p>The field at the same position of the previous message is tried first,
+     * as messages sent over the same connection usually have their headers in the same
+     * order, then the other fields are tried.
+     * A field is reused only if it is immediately followed by CR or LF, so that the
+     * reused field is the same that would be parsed.</p>
+     */
+    private static class FieldInterner
+    {
+        private HttpField[] _fields;
+        private byte[][] _bytes;
+        private int _index;
+
+        public int getSize()
+        {
+            return _fields == null ? 0 : _fields.length;
+        }
+
+        public void setSize(int size)
+        {
+            _fields = size > 0 ? new HttpField[size] : null;
+            _bytes = size > 0 ? new byte[size][] : null;
+            _index = 0;
+        }
+
+        public void reset()
+        {
+            _index = 0;
+        }
+
+        public HttpField match(ByteBuffer buffer, int position)
+        {
+            HttpField[] fields = _fields;
+            if (fields == null)
+                return null;
+            if (_index < fields.length && matches(_bytes[_index], buffer, position))
+                return fields[_index];
+            for (int i = 0; i < fields.length; i++)
+            {
+                if (i != _index && matches(_bytes[i], buffer, position))
+                    return fields[i];
+            }
+            return null;
+        }
+
+        public void add(HttpField field)
+        {
+            HttpField[] fields = _fields;
+            if (fields == null || _index >= fields.length)
+                return;
+            int index = _index++;
+            if (fields[index] == field)
+                return;
+
+            if (field == null || field.getValue() == null)
+            {
+                fields[index] = null;
+                _bytes[index] = null;
+                return;
+            }
+
+            fields[index] = field;
+            _bytes[index] = (field.getName() + ": " + field.getValue()).getBytes(StandardCharsets.ISO_8859_1);
+        }
+
+        private static int length(HttpField field)
+        {
+            return field.getName().length() + 2 + field.getValue().length();
+        }
+
+        private static boolean matches(byte[] bytes, ByteBuffer buffer, int position)
+        {
+            if (bytes == null)
+                return false;
+            int length = bytes.length;
+            // The field must be followed by CR or LF.
+            if (buffer.limit() - position <= length)
+                return false;
+            byte end = buffer.get(position + length);
+            if (end != HttpTokens.CARRIAGE_RETURN && end != HttpTokens.LINE_FEED)
+                return false;
+            if (buffer.hasArray())
+            {
+                int offset = buffer.arrayOffset() + position;
+                return Arrays.equals(buffer.array(), offset, offset + length, bytes, 0, length);
+            }
+            for (int i = 0; i < length; i++)
+            {
+                if (buffer.get(position + i) != bytes[i])
+                    return false;
+            }
+            return true;
+        }
+    }
 }
@@ -13,6 +13,8 @@
 
 package org.eclipse.jetty.http;
 
+import java.nio.ByteBuffer;
+
 import org.eclipse.jetty.util.TypeUtil;
 
 /**
@@ -27,6 +29,12 @@ public class HttpTokens
     static final byte SPACE = 0x20;
     static final byte[] CRLF = {CARRIAGE_RETURN, LINE_FEED};
 
+    // SWAR (SIMD within a register) constants to test 8 bytes at a time.
+    private static final long SWAR_ONES = 0x0101010101010101L;
+    private static final long SWAR_HIGH = 0x8080808080808080L;
+    private static final long SWAR_SPACES = 0x2020202020202020L;
+    private static final long SWAR_DELS = 0x7F7F7F7F7F7F7F7FL;
+
     public enum EndOfContent
     {
         UNKNOWN_CONTENT, NO_CONTENT, EOF_CONTENT, CONTENT_LENGTH, CHUNKED_CONTENT
@@ -114,6 +122,7 @@ public class HttpTokens
     }
 
     public static final Token[] TOKENS = new Token[256];
+    private static final boolean[] TCHARS = new boolean[256];
 
     static
     {
@@ -181,7 +190,57 @@ public class HttpTokens
                     else
                         TOKENS[b] = new Token((byte)b, Type.CNTL);
             }
+
+            Type type = TOKENS[b].getType();
+            TCHARS[b] = type == Type.ALPHA || type == Type.DIGIT || type == Type.TCHAR;
+        }
+    }
+
+    /**
+     * @param b the byte to test
+     * @return whether the byte is a {@code tchar}, i.e. an ALPHA, DIGIT or TCHAR token
+     */
+    static boolean isTchar(byte b)
+    {
+        return TCHARS[0xff & b];
+    }
+
+    /**
+     * <p>Returns the length of the run of SPACE, VCHAR and obs-text bytes
+     * starting at the given index, that is the bytes of a field value
+     * that need no special handling.</p>
+     * <p>Any other byte, namely HTAB, CR, LF, DEL and the other control
+     * characters, ends the run.
+     * The bytes are tested 8 at a time: a byte {@code x} ends the run if
+     * either {@code x - 0x20} or {@code (x ^ 0x7F) - 0x01} borrows, while
+     * {@code x} has its high bit clear.
+     * Only the position of the lowest byte ending the run is exact, so the
+     * word that contains it is scanned again a byte at a time.</p>
+     *
+     * @param buffer the buffer to scan
+     * @param index the index of the first byte to scan
+     * @param limit the index after the last byte to scan
+     * @return the length of the run of field value bytes
+     */
+    static int fieldValueLength(ByteBuffer buffer, int index, int limit)
+    {
+        int i = index;
+        while (limit - i >= 8)
+        {
+            long word = buffer.getLong(i);
+            long dels = word ^ SWAR_DELS;
+            if ((((word - SWAR_SPACES) | (dels - SWAR_ONES)) & ~word & SWAR_HIGH) != 0)
+                break;
+            i += 8;
+        }
+        while (i < limit)
+        {
+            byte b = buffer.get(i);
+            if (b >= 0 && b < SPACE || b == 0x7F)
+                break;
+            i++;
         }
+        return i - index;
     }
 }
 
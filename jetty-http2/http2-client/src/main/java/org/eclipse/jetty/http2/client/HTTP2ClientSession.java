@@ -22,6 +22,7 @@ import org.eclipse.jetty.http2.IStream;
 import org.eclipse.jetty.http2.api.Session;
 import org.eclipse.jetty.http2.api.Stream;
 import org.eclipse.jetty.http2.frames.HeadersFrame;
+import org.eclipse.jetty.http2.frames.PriorityUpdateFrame;
 import org.eclipse.jetty.http2.frames.PushPromiseFrame;
 import org.eclipse.jetty.http2.generator.Generator;
 import org.eclipse.jetty.io.EndPoint;
@@ -112,6 +113,15 @@ public class HTTP2ClientSession extends HTTP2Session
         }
     }
 
+    @Override
+    public void onPriorityUpdate(PriorityUpdateFrame frame)
+    {
+        if (LOG.isDebugEnabled())
+            LOG.debug("Received {}", frame);
+        // SPEC: servers must not send PRIORITY_UPDATE frames.
+        onConnectionFailure(ErrorCode.PROTOCOL_ERROR.code, "unexpected_priority_update_frame");
+    }
+
     private Stream.Listener notifyPush(IStream stream, IStream pushStream, PushPromiseFrame frame)
     {
         Stream.Listener listener = stream.getListener();
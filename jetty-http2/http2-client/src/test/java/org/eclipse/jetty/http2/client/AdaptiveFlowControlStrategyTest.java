@@ -0,0 +1,139 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.http2.client;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http.MetaData;
+import org.eclipse.jetty.http2.AdaptiveFlowControlStrategy;
+import org.eclipse.jetty.http2.FlowControlStrategy;
+import org.eclipse.jetty.http2.HTTP2Session;
+import org.eclipse.jetty.http2.api.Session;
+import org.eclipse.jetty.http2.api.Stream;
+import org.eclipse.jetty.http2.api.server.ServerSessionListener;
+import org.eclipse.jetty.http2.frames.DataFrame;
+import org.eclipse.jetty.http2.frames.HeadersFrame;
+import org.eclipse.jetty.http2.frames.PingFrame;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.FuturePromise;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AdaptiveFlowControlStrategyTest extends FlowControlStrategyTest
+{
+    private int maxSessionRecvWindowLimit = 16 * 1024 * 1024;
+    private int maxStreamRecvWindowLimit = 8 * 1024 * 1024;
+
+    @Override
+    protected FlowControlStrategy newFlowControlStrategy()
+    {
+        return new AdaptiveFlowControlStrategy(maxSessionRecvWindowLimit, maxStreamRecvWindowLimit);
+    }
+
+    @Test
+    public void testUploadGrowsReceiveWindows() throws Exception
+    {
+        AdaptiveFlowControlStrategy strategy = upload(32 * 1024 * 1024);
+
+        assertThat(strategy.getBandwidthDelayProduct(), greaterThan(0L));
+        assertThat(strategy.getMaxSessionRecvWindow(), greaterThan(FlowControlStrategy.DEFAULT_WINDOW_SIZE));
+        assertThat(strategy.getInitialStreamRecvWindow(), greaterThan(FlowControlStrategy.DEFAULT_WINDOW_SIZE));
+        assertThat(strategy.getMaxSessionRecvWindow(), lessThanOrEqualTo(maxSessionRecvWindowLimit));
+        assertThat(strategy.getInitialStreamRecvWindow(), lessThanOrEqualTo(maxStreamRecvWindowLimit));
+    }
+
+    @Test
+    public void testReceiveWindowsDoNotExceedLimits() throws Exception
+    {
+        maxSessionRecvWindowLimit = 128 * 1024;
+        maxStreamRecvWindowLimit = 96 * 1024;
+
+        AdaptiveFlowControlStrategy strategy = upload(16 * 1024 * 1024);
+
+        assertThat(strategy.getMaxSessionRecvWindow(), lessThanOrEqualTo(maxSessionRecvWindowLimit));
+        assertThat(strategy.getInitialStreamRecvWindow(), lessThanOrEqualTo(maxStreamRecvWindowLimit));
+    }
+
+    private AdaptiveFlowControlStrategy upload(int length) throws Exception
+    {
+        AtomicReference<AdaptiveFlowControlStrategy> strategyRef = new AtomicReference<>();
+        AtomicInteger pings = new AtomicInteger();
+        AtomicLong received = new AtomicLong();
+        CountDownLatch latch = new CountDownLatch(1);
+        start(new ServerSessionListener.Adapter()
+        {
+            @Override
+            public Stream.Listener onNewStream(Stream stream, HeadersFrame frame)
+            {
+                HTTP2Session session = (HTTP2Session)stream.getSession();
+                strategyRef.set((AdaptiveFlowControlStrategy)session.getFlowControlStrategy());
+                return new Stream.Listener.Adapter()
+                {
+                    @Override
+                    public void onData(Stream stream, DataFrame frame, Callback callback)
+                    {
+                        received.addAndGet(frame.remaining());
+                        callback.succeeded();
+                        if (frame.isEndStream())
+                        {
+                            MetaData.Response response = new MetaData.Response(HttpVersion.HTTP_2, 200, HttpFields.EMPTY);
+                            stream.headers(new HeadersFrame(stream.getId(), response, null, true), Callback.NOOP);
+                        }
+                    }
+                };
+            }
+
+            @Override
+            public void onPing(Session session, PingFrame frame)
+            {
+                pings.incrementAndGet();
+            }
+        });
+
+        Session session = newClient(new Session.Listener.Adapter());
+        MetaData.Request metaData = newRequest("POST", HttpFields.EMPTY);
+        FuturePromise<Stream> promise = new FuturePromise<>();
+        session.newStream(new HeadersFrame(metaData, null, false), promise, new Stream.Listener.Adapter()
+        {
+            @Override
+            public void onHeaders(Stream stream, HeadersFrame frame)
+            {
+                latch.countDown();
+            }
+        });
+        Stream stream = promise.get(5, TimeUnit.SECONDS);
+
+        Callback.Completable completable = new Callback.Completable();
+        stream.data(new DataFrame(stream.getId(), ByteBuffer.allocate(length), true), completable);
+        completable.get(15, TimeUnit.SECONDS);
+
+        assertTrue(latch.await(15, TimeUnit.SECONDS));
+        assertEquals(length, received.get());
+        // The PING frames of the strategy are not notified to the application.
+        assertEquals(0, pings.get());
+        return strategyRef.get();
+    }
+}
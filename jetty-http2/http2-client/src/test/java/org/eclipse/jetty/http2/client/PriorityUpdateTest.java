@@ -0,0 +1,163 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+
+package org.eclipse.jetty.http2.client;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http.MetaData;
+import org.eclipse.jetty.http2.ExtensiblePriority;
+import org.eclipse.jetty.http2.ExtensiblePriorityScheduler;
+import org.eclipse.jetty.http2.ISession;
+import org.eclipse.jetty.http2.IStream;
+import org.eclipse.jetty.http2.api.Session;
+import org.eclipse.jetty.http2.api.Stream;
+import org.eclipse.jetty.http2.api.server.ServerSessionListener;
+import org.eclipse.jetty.http2.frames.DataFrame;
+import org.eclipse.jetty.http2.frames.HeadersFrame;
+import org.eclipse.jetty.http2.frames.PriorityUpdateFrame;
+import org.eclipse.jetty.http2.frames.SettingsFrame;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.FuturePromise;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PriorityUpdateTest extends AbstractTest
+{
+    @Test
+    public void testPriorityHeaderThenPriorityUpdate() throws Exception
+    {
+        AtomicReference<IStream> serverStreamRef = new AtomicReference<>();
+        CountDownLatch serverLatch = new CountDownLatch(1);
+        start(new ServerSessionListener.Adapter()
+        {
+            @Override
+            public Stream.Listener onNewStream(Stream stream, HeadersFrame frame)
+            {
+                serverStreamRef.set((IStream)stream);
+                serverLatch.countDown();
+                return null;
+            }
+        });
+
+        Session session = newClient(new Session.Listener.Adapter());
+        HttpFields fields = HttpFields.build().put(ExtensiblePriority.PRIORITY_HEADER, "u=5");
+        MetaData.Request request = newRequest("GET", fields);
+        FuturePromise<Stream> promise = new FuturePromise<>();
+        session.newStream(new HeadersFrame(request, null, true), promise, new Stream.Listener.Adapter());
+        Stream stream = promise.get(5, TimeUnit.SECONDS);
+
+        assertTrue(serverLatch.await(5, TimeUnit.SECONDS));
+        IStream serverStream = serverStreamRef.get();
+        assertEquals(5, serverStream.getPriority().getUrgency());
+        assertFalse(serverStream.getPriority().isIncremental());
+
+        Callback.Completable callback = new Callback.Completable();
+        ((ISession)session).frames(null, List.of(new PriorityUpdateFrame(stream.getId(), "u=1, i")), callback);
+        callback.get(5, TimeUnit.SECONDS);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (serverStream.getPriority().getUrgency() != 1 && System.nanoTime() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(1, serverStream.getPriority().getUrgency());
+        assertTrue(serverStream.getPriority().isIncremental());
+    }
+
+    @Test
+    public void testNoRFC7540PrioritiesSetting() throws Exception
+    {
+        start(new ServerSessionListener.Adapter(), factory -> factory.setStreamScheduler(new ExtensiblePriorityScheduler()));
+
+        CountDownLatch settingsLatch = new CountDownLatch(1);
+        newClient(new Session.Listener.Adapter()
+        {
+            @Override
+            public void onSettings(Session session, SettingsFrame frame)
+            {
+                if (Integer.valueOf(1).equals(frame.getSettings().get(SettingsFrame.NO_RFC7540_PRIORITIES)))
+                    settingsLatch.countDown();
+            }
+        });
+
+        assertTrue(settingsLatch.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testMoreUrgentStreamIsServedFirst() throws Exception
+    {
+        int length = 512 * 1024;
+        CountDownLatch requestsLatch = new CountDownLatch(2);
+        Queue<Stream> serverStreams = new ConcurrentLinkedQueue<>();
+        start(new ServerSessionListener.Adapter()
+        {
+            @Override
+            public Stream.Listener onNewStream(Stream stream, HeadersFrame frame)
+            {
+                serverStreams.offer(stream);
+                requestsLatch.countDown();
+                return null;
+            }
+        }, factory -> factory.setStreamScheduler(new ExtensiblePriorityScheduler()));
+
+        Session session = newClient(new Session.Listener.Adapter());
+        Queue<String> completed = new ConcurrentLinkedQueue<>();
+        CountDownLatch responsesLatch = new CountDownLatch(2);
+        for (String priority : List.of("u=7", "u=0"))
+        {
+            HttpFields fields = HttpFields.build().put(ExtensiblePriority.PRIORITY_HEADER, priority);
+            MetaData.Request request = newRequest("GET", "/" + priority, fields);
+            session.newStream(new HeadersFrame(request, null, true), new FuturePromise<>(), new Stream.Listener.Adapter()
+            {
+                @Override
+                public void onData(Stream stream, DataFrame frame, Callback callback)
+                {
+                    callback.succeeded();
+                    if (frame.isEndStream())
+                    {
+                        completed.offer(priority);
+                        responsesLatch.countDown();
+                    }
+                }
+            });
+        }
+
+        assertTrue(requestsLatch.await(5, TimeUnit.SECONDS));
+        // Respond in stream order, so that the least urgent
+        // stream content is queued first in the flusher.
+        for (Stream stream : serverStreams)
+        {
+            MetaData.Response response = new MetaData.Response(HttpVersion.HTTP_2, 200, HttpFields.EMPTY);
+            stream.headers(new HeadersFrame(stream.getId(), response, null, false), Callback.NOOP);
+            stream.data(new DataFrame(stream.getId(), ByteBuffer.allocate(length), true), Callback.NOOP);
+        }
+
+        assertTrue(responsesLatch.await(15, TimeUnit.SECONDS));
+        assertThat(completed.poll(), is("u=0"));
+    }
+}
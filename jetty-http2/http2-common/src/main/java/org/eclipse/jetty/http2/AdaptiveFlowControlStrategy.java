@@ -0,0 +1,272 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.http2;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.http2.frames.PingFrame;
+import org.eclipse.jetty.http2.frames.SettingsFrame;
+import org.eclipse.jetty.http2.frames.WindowUpdateFrame;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.thread.AutoLock;
+
+/**
+ * <p>A flow control strategy that grows the receive windows to the
+ * bandwidth-delay product (BDP) of the connection.</p>
+ * <p>With the default receive windows of 64 KiB, a sender cannot send more than
+ * 64 KiB per round trip, so that on high latency links the throughput is limited
+ * by the round trip time rather than by the bandwidth, and the sender stalls
+ * waiting for WINDOW_UPDATE frames.</p>
+ * <p>This strategy measures the BDP in this way: when data is received and no
+ * measurement is in progress, a PING frame is sent and the data bytes received
+ * until the PING reply arrives are counted; that count is a sample of the BDP,
+ * since it is the data that the sender was able to send in one round trip.
+ * The data bytes consumed by the application in the same time are counted too,
+ * and the sample is the smaller of the two counts, so that the windows do not
+ * grow when the application does not keep up with the data it receives.</p>
+ * <p>When a sample is larger than 2/3 of the session receive window, the sender
+ * was likely limited by the window rather than by the bandwidth, so the session
+ * receive window is grown to twice the sample, by sending a WINDOW_UPDATE frame,
+ * and the stream receive window is grown likewise, by sending a SETTINGS frame
+ * with a new {@code INITIAL_WINDOW_SIZE}.</p>
+ * <p>The windows are never grown beyond {@link #getMaxSessionRecvWindowLimit()}
+ * and {@link #getMaxStreamRecvWindowLimit()}, that bound the memory that the
+ * sender may make this side buffer; once both limits are reached, no more
+ * PING frames are sent.
+ * PING frames are not sent more often than {@link #getPingInterval()}, since
+ * peers may treat frequent PING frames as an attack.</p>
+ * <p>The replenishment of the receive windows as data is consumed is performed
+ * as in {@link BufferingFlowControlStrategy}.</p>
+ */
+@ManagedObject
+public class AdaptiveFlowControlStrategy extends BufferingFlowControlStrategy
+{
+    private final AutoLock lock = new AutoLock();
+    private final long pingPayload = ThreadLocalRandom.current().nextLong();
+    private final int maxSessionRecvWindowLimit;
+    private final int maxStreamRecvWindowLimit;
+    private long pingInterval = TimeUnit.MILLISECONDS.toNanos(100);
+    private long pingNanoTime;
+    private long lastPingNanoTime;
+    private long pingBytes;
+    private long pingConsumedBytes;
+    private long roundTripTime;
+    private long bandwidth;
+    private long bdp;
+    private int sessionRecvWindow;
+    private int streamRecvWindow;
+
+    public AdaptiveFlowControlStrategy()
+    {
+        this(16 * 1024 * 1024, 8 * 1024 * 1024);
+    }
+
+    /**
+     * @param maxSessionRecvWindowLimit the max size the session receive window can grow to
+     * @param maxStreamRecvWindowLimit the max size the stream receive window can grow to
+     */
+    public AdaptiveFlowControlStrategy(int maxSessionRecvWindowLimit, int maxStreamRecvWindowLimit)
+    {
+        super(0.5F);
+        this.maxSessionRecvWindowLimit = maxSessionRecvWindowLimit;
+        this.maxStreamRecvWindowLimit = maxStreamRecvWindowLimit;
+    }
+
+    @ManagedAttribute(value = "The max size the session receive window can grow to", readonly = true)
+    public int getMaxSessionRecvWindowLimit()
+    {
+        return maxSessionRecvWindowLimit;
+    }
+
+    @ManagedAttribute(value = "The max size the stream receive window can grow to", readonly = true)
+    public int getMaxStreamRecvWindowLimit()
+    {
+        return maxStreamRecvWindowLimit;
+    }
+
+    @ManagedAttribute("The min interval between PING frames, in milliseconds")
+    public long getPingInterval()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(pingInterval);
+    }
+
+    /**
+     * @param pingInterval the min interval between PING frames sent to measure the bandwidth-delay product, in milliseconds
+     */
+    public void setPingInterval(long pingInterval)
+    {
+        this.pingInterval = TimeUnit.MILLISECONDS.toNanos(pingInterval);
+    }
+
+    @ManagedAttribute(value = "The smoothed round trip time, in microseconds", readonly = true)
+    public long getRoundTripTime()
+    {
+        try (AutoLock l = lock.lock())
+        {
+            return TimeUnit.NANOSECONDS.toMicros(roundTripTime);
+        }
+    }
+
+    @ManagedAttribute(value = "The max measured bandwidth, in bytes per second", readonly = true)
+    public long getBandwidth()
+    {
+        try (AutoLock l = lock.lock())
+        {
+            return bandwidth;
+        }
+    }
+
+    @ManagedAttribute(value = "The max measured bandwidth-delay product, in bytes", readonly = true)
+    public long getBandwidthDelayProduct()
+    {
+        try (AutoLock l = lock.lock())
+        {
+            return bdp;
+        }
+    }
+
+    @Override
+    public void onDataReceived(ISession session, IStream stream, int length)
+    {
+        super.onDataReceived(session, stream, length);
+        if (length <= 0)
+            return;
+        // Data that exceeds the receive windows fails the session,
+        // so it must not trigger a measurement.
+        if (stream == null || session.updateRecvWindow(0) < 0 || stream.updateRecvWindow(0) < 0)
+            return;
+
+        try (AutoLock l = lock.lock())
+        {
+            if (pingNanoTime != 0)
+            {
+                pingBytes += length;
+                return;
+            }
+            if (!canGrow())
+                return;
+            long now = System.nanoTime();
+            if (lastPingNanoTime != 0 && now - lastPingNanoTime < pingInterval)
+                return;
+            pingNanoTime = now;
+            lastPingNanoTime = now;
+            pingBytes = length;
+            pingConsumedBytes = 0;
+        }
+
+        if (LOG.isDebugEnabled())
+            LOG.debug("Measuring bandwidth-delay product for {}", session);
+        session.ping(new PingFrame(pingPayload, false), Callback.NOOP);
+    }
+
+    @Override
+    public void onDataConsumed(ISession session, IStream stream, int length)
+    {
+        super.onDataConsumed(session, stream, length);
+        if (length <= 0)
+            return;
+
+        try (AutoLock l = lock.lock())
+        {
+            if (pingNanoTime != 0)
+                pingConsumedBytes += length;
+        }
+    }
+
+    @Override
+    public boolean onPingReply(ISession session, PingFrame frame)
+    {
+        if (frame.getPayloadAsLong() != pingPayload)
+            return false;
+
+        int sessionDelta = 0;
+        int newStreamRecvWindow = 0;
+        try (AutoLock l = lock.lock())
+        {
+            if (pingNanoTime == 0)
+                return false;
+
+            long rtt = Math.max(1, System.nanoTime() - pingNanoTime);
+            long sample = Math.min(pingBytes, pingConsumedBytes);
+            pingNanoTime = 0;
+            pingBytes = 0;
+            pingConsumedBytes = 0;
+
+            roundTripTime = roundTripTime == 0 ? rtt : (7 * roundTripTime + rtt) / 8;
+            bandwidth = Math.max(bandwidth, sample * TimeUnit.SECONDS.toNanos(1) / rtt);
+            bdp = Math.max(bdp, sample);
+
+            int window = Math.max(sessionRecvWindow, getMaxSessionRecvWindow());
+            if (sample * 3 >= window * 2L)
+            {
+                int target = (int)Math.min(maxSessionRecvWindowLimit, 2 * sample);
+                if (target > window)
+                {
+                    sessionDelta = target - window;
+                    sessionRecvWindow = target;
+                }
+                target = (int)Math.min(maxStreamRecvWindowLimit, 2 * sample);
+                if (target > Math.max(streamRecvWindow, getInitialStreamRecvWindow()))
+                {
+                    newStreamRecvWindow = target;
+                    streamRecvWindow = target;
+                }
+            }
+
+            if (LOG.isDebugEnabled())
+                LOG.debug("Measured bandwidth-delay product {} bytes in {} us, session recv window {} -> {} for {}",
+                    sample, TimeUnit.NANOSECONDS.toMicros(rtt), window, window + sessionDelta, session);
+        }
+
+        if (sessionDelta > 0)
+        {
+            session.updateRecvWindow(sessionDelta);
+            sendWindowUpdate(null, session, new WindowUpdateFrame(0, sessionDelta));
+        }
+        if (newStreamRecvWindow > 0)
+        {
+            // The local stream receive windows are updated when the SETTINGS frame is sent.
+            session.settings(new SettingsFrame(Map.of(SettingsFrame.INITIAL_WINDOW_SIZE, newStreamRecvWindow), false), Callback.NOOP);
+        }
+        return true;
+    }
+
+    private boolean canGrow()
+    {
+        int sessionWindow = Math.max(sessionRecvWindow, getMaxSessionRecvWindow());
+        int streamWindow = Math.max(streamRecvWindow, getInitialStreamRecvWindow());
+        return sessionWindow < maxSessionRecvWindowLimit || streamWindow < maxStreamRecvWindowLimit;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[ratio=%.2f,rtt=%dus,bdp=%d,sessionRecvWindow=%d/%d,streamRecvWindow=%d/%d,sessionStallTime=%dms,streamsStallTime=%dms]",
+            getClass().getSimpleName(),
+            hashCode(),
+            getBufferRatio(),
+            getRoundTripTime(),
+            getBandwidthDelayProduct(),
+            getMaxSessionRecvWindow(),
+            maxSessionRecvWindowLimit,
+            getInitialStreamRecvWindow(),
+            maxStreamRecvWindowLimit,
+            getSessionStallTime(),
+            getStreamsStallTime());
+    }
+}
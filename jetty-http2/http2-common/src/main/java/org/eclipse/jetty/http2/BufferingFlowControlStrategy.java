@@ -87,6 +87,12 @@ public class BufferingFlowControlStrategy extends AbstractFlowControlStrategy
         this.bufferRatio = bufferRatio;
     }
 
+    @ManagedAttribute("The max size of the session's flow control receive window")
+    public int getMaxSessionRecvWindow()
+    {
+        return maxSessionRecvWindow.get();
+    }
+
     @Override
     public void onStreamCreated(IStream stream)
     {
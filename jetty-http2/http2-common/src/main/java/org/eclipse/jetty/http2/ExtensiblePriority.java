@@ -0,0 +1,133 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.http2;
+
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.MetaData;
+import org.eclipse.jetty.util.StringUtil;
+
+/**
+ * <p>The priority of a stream as defined by RFC 9218, made of an
+ * urgency, from 0 (most urgent) to 7 (least urgent), and of an
+ * incremental flag that tells whether the response content can be
+ * processed incrementally, and therefore interleaved with the content
+ * of other responses with the same urgency.</p>
+ * <p>The priority is carried by the {@code priority} request header
+ * and by PRIORITY_UPDATE frames.</p>
+ *
+ * @see ExtensiblePriorityScheduler
+ */
+public class ExtensiblePriority
+{
+    public static final String PRIORITY_HEADER = "priority";
+    public static final int DEFAULT_URGENCY = 3;
+    public static final ExtensiblePriority DEFAULT = new ExtensiblePriority(DEFAULT_URGENCY, false);
+
+    private final int urgency;
+    private final boolean incremental;
+
+    public ExtensiblePriority(int urgency, boolean incremental)
+    {
+        if (urgency < 0 || urgency > 7)
+            throw new IllegalArgumentException("Invalid urgency: " + urgency);
+        this.urgency = urgency;
+        this.incremental = incremental;
+    }
+
+    /**
+     * @return the urgency, from 0 (most urgent) to 7 (least urgent)
+     */
+    public int getUrgency()
+    {
+        return urgency;
+    }
+
+    /**
+     * @return whether the response content can be processed incrementally
+     */
+    public boolean isIncremental()
+    {
+        return incremental;
+    }
+
+    /**
+     * @param metaData the request metadata
+     * @return the priority carried by the {@code priority} header of the request,
+     * or {@link #DEFAULT} if the request has no {@code priority} header
+     */
+    public static ExtensiblePriority from(MetaData metaData)
+    {
+        HttpFields fields = metaData == null ? null : metaData.getFields();
+        if (fields == null)
+            return DEFAULT;
+        return from(fields.get(PRIORITY_HEADER));
+    }
+
+    /**
+     * <p>Parses the given priority field value, for example {@code u=1, i}.</p>
+     * <p>As required by RFC 9218, unknown parameters and invalid values are
+     * ignored, and missing parameters take their default value.</p>
+     *
+     * @param value the priority field value
+     * @return the priority represented by the given value
+     */
+    public static ExtensiblePriority from(String value)
+    {
+        if (StringUtil.isBlank(value))
+            return DEFAULT;
+
+        int urgency = DEFAULT_URGENCY;
+        boolean incremental = false;
+        for (String member : StringUtil.csvSplit(value))
+        {
+            // Ignore the member parameters.
+            int semicolon = member.indexOf(';');
+            if (semicolon >= 0)
+                member = member.substring(0, semicolon);
+            int equals = member.indexOf('=');
+            String key = (equals < 0 ? member : member.substring(0, equals)).trim();
+            String item = equals < 0 ? null : member.substring(equals + 1).trim();
+            switch (key)
+            {
+                case "u":
+                {
+                    if (item != null && item.length() == 1 && item.charAt(0) >= '0' && item.charAt(0) <= '7')
+                        urgency = item.charAt(0) - '0';
+                    break;
+                }
+                case "i":
+                {
+                    if (item == null || "?1".equals(item))
+                        incremental = true;
+                    else if ("?0".equals(item))
+                        incremental = false;
+                    break;
+                }
+                default:
+                {
+                    break;
+                }
+            }
+        }
+        if (urgency == DEFAULT_URGENCY && !incremental)
+            return DEFAULT;
+        return new ExtensiblePriority(urgency, incremental);
+    }
+
+    @Override
+    public String toString()
+    {
+        return incremental ? "u=" + urgency + ", i" : "u=" + urgency;
+    }
+}
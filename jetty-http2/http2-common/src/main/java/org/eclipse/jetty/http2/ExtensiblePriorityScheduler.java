@@ -0,0 +1,46 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.http2;
+
+/**
+ * <p>A {@link StreamScheduler} that implements the scheduling recommended by
+ * RFC 9218, based on the {@link ExtensiblePriority} of the streams.</p>
+ * <p>Streams with a lower urgency are served before streams with a higher urgency.
+ * Among streams with the same urgency, non-incremental streams are served first,
+ * one at a time in stream id order, while incremental streams are interleaved.</p>
+ */
+public class ExtensiblePriorityScheduler implements StreamScheduler
+{
+    @Override
+    public int compare(IStream stream1, IStream stream2)
+    {
+        ExtensiblePriority priority1 = stream1.getPriority();
+        ExtensiblePriority priority2 = stream2.getPriority();
+        int result = Integer.compare(priority1.getUrgency(), priority2.getUrgency());
+        if (result != 0)
+            return result;
+        result = Boolean.compare(priority1.isIncremental(), priority2.isIncremental());
+        if (result != 0)
+            return result;
+        if (priority1.isIncremental())
+            return 0;
+        return Integer.compare(stream1.getId(), stream2.getId());
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x", getClass().getSimpleName(), hashCode());
+    }
+}
@@ -18,12 +18,13 @@ import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Deque;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.jetty.http2.frames.Frame;
 import org.eclipse.jetty.http2.frames.FrameType;
@@ -34,25 +35,32 @@ import org.eclipse.jetty.io.EofException;
 import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.IteratingCallback;
 import org.eclipse.jetty.util.component.Dumpable;
-import org.eclipse.jetty.util.thread.AutoLock;
 import org.eclipse.jetty.util.thread.Invocable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * <p>Flushes the frames of a session.</p>
+ * <p>Frames are queued by any number of producer threads, with {@link #append(Entry)}
+ * and {@link #prepend(Entry)}, and are processed by the single thread that iterates
+ * this flusher; the queues are lock-free, so that concurrent streams do not contend
+ * on a lock to queue their frames, and only the iterating thread accesses the pending
+ * and processed entries.</p>
+ */
 public class HTTP2Flusher extends IteratingCallback implements Dumpable
 {
     private static final Logger LOG = LoggerFactory.getLogger(HTTP2Flusher.class);
     private static final ByteBuffer[] EMPTY_BYTE_BUFFERS = new ByteBuffer[0];
 
-    private final AutoLock lock = new AutoLock();
-    private final Queue<WindowEntry> windows = new ArrayDeque<>();
-    private final Deque<Entry> entries = new ArrayDeque<>();
+    private final AtomicReference<Throwable> terminated = new AtomicReference<>();
+    private final Queue<WindowEntry> windows = new ConcurrentLinkedQueue<>();
+    private final Queue<Entry> priorityEntries = new ConcurrentLinkedQueue<>();
+    private final Queue<Entry> entries = new ConcurrentLinkedQueue<>();
     private final Queue<Entry> pendingEntries = new ArrayDeque<>();
     private final Collection<Entry> processedEntries = new ArrayList<>();
     private final HTTP2Session session;
     private final ByteBufferPool.Lease lease;
     private InvocationType invocationType = InvocationType.NON_BLOCKING;
-    private Throwable terminated;
     private Entry stalledEntry;
 
     public HTTP2Flusher(HTTP2Session session)
@@ -69,89 +77,86 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
 
     public void window(IStream stream, WindowUpdateFrame frame)
     {
-        Throwable closed;
-        try (AutoLock l = lock.lock())
-        {
-            closed = terminated;
-            if (closed == null)
-                windows.offer(new WindowEntry(stream, frame));
-        }
+        if (terminated.get() != null)
+            return;
+        windows.offer(new WindowEntry(stream, frame));
         // Flush stalled data.
-        if (closed == null)
-            iterate();
+        iterate();
     }
 
+    /**
+     * <p>Queues the given entry to be processed before the entries queued by
+     * {@link #append(Entry)} that have not been processed yet.</p>
+     *
+     * @param entry the entry to queue
+     * @return whether the entry has been queued
+     */
     public boolean prepend(Entry entry)
     {
-        Throwable closed;
-        try (AutoLock l = lock.lock())
+        Throwable closed = terminated.get();
+        if (closed == null)
         {
-            closed = terminated;
-            if (closed == null)
-            {
-                entries.offerFirst(entry);
-                if (LOG.isDebugEnabled())
-                    LOG.debug("Prepended {}, entries={}", entry, entries.size());
-            }
+            priorityEntries.offer(entry);
+            if (LOG.isDebugEnabled())
+                LOG.debug("Prepended {}, entries={}", entry, priorityEntries.size());
+            return checkTerminated(priorityEntries);
         }
-        if (closed == null)
-            return true;
         closed(entry, closed);
         return false;
     }
 
     public boolean append(Entry entry)
     {
-        Throwable closed;
-        try (AutoLock l = lock.lock())
+        Throwable closed = terminated.get();
+        if (closed == null)
         {
-            closed = terminated;
-            if (closed == null)
-            {
-                entries.offer(entry);
-                if (LOG.isDebugEnabled())
-                    LOG.debug("Appended {}, entries={}", entry, entries.size());
-            }
+            entries.offer(entry);
+            if (LOG.isDebugEnabled())
+                LOG.debug("Appended {}, entries={}", entry, entries.size());
+            return checkTerminated(entries);
         }
-        if (closed == null)
-            return true;
         closed(entry, closed);
         return false;
     }
 
     public boolean append(List<Entry> list)
     {
-        Throwable closed;
-        try (AutoLock l = lock.lock())
+        Throwable closed = terminated.get();
+        if (closed == null)
         {
-            closed = terminated;
-            if (closed == null)
-            {
-                list.forEach(entries::offer);
-                if (LOG.isDebugEnabled())
-                    LOG.debug("Appended {}, entries={}", list, entries.size());
-            }
+            list.forEach(entries::offer);
+            if (LOG.isDebugEnabled())
+                LOG.debug("Appended {}, entries={}", list, entries.size());
+            return checkTerminated(entries);
         }
-        if (closed == null)
-            return true;
         list.forEach(entry -> closed(entry, closed));
         return false;
     }
 
-    private int getWindowQueueSize()
+    private boolean checkTerminated(Queue<Entry> queue)
     {
-        try (AutoLock l = lock.lock())
+        // The flusher may have been terminated concurrently,
+        // after the entries in the queue have been failed, so
+        // the entries just queued must be failed here.
+        Throwable closed = terminated.get();
+        if (closed == null)
+            return true;
+        Entry entry;
+        while ((entry = queue.poll()) != null)
         {
-            return windows.size();
+            closed(entry, closed);
         }
+        return false;
+    }
+
+    private int getWindowQueueSize()
+    {
+        return windows.size();
     }
 
     public int getFrameQueueSize()
     {
-        try (AutoLock l = lock.lock())
-        {
-            return entries.size();
-        }
+        return priorityEntries.size() + entries.size();
     }
 
     @Override
@@ -160,22 +165,24 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
         if (LOG.isDebugEnabled())
             LOG.debug("Flushing {}", session);
 
-        try (AutoLock l = lock.lock())
-        {
-            if (terminated != null)
-                throw terminated;
+        Throwable closed = terminated.get();
+        if (closed != null)
+            throw closed;
 
-            WindowEntry windowEntry;
-            while ((windowEntry = windows.poll()) != null)
-            {
-                windowEntry.perform();
-            }
+        WindowEntry windowEntry;
+        while ((windowEntry = windows.poll()) != null)
+        {
+            windowEntry.perform();
+        }
 
-            Entry entry;
-            while ((entry = entries.poll()) != null)
-            {
-                pendingEntries.offer(entry);
-            }
+        Entry queued;
+        while ((queued = priorityEntries.poll()) != null)
+        {
+            pendingEntries.offer(queued);
+        }
+        while ((queued = entries.poll()) != null)
+        {
+            pendingEntries.offer(queued);
         }
 
         if (pendingEntries.isEmpty())
@@ -185,6 +192,7 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
             return Action.IDLE;
         }
 
+        StreamScheduler scheduler = session.getStreamScheduler();
         while (true)
         {
             boolean progress = false;
@@ -192,6 +200,7 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
             if (pendingEntries.isEmpty())
                 break;
 
+            IStream first = scheduler == StreamScheduler.FIFO ? null : firstScheduledStream(scheduler);
             Iterator<Entry> pending = pendingEntries.iterator();
             while (pending.hasNext())
             {
@@ -210,6 +219,14 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
                     continue;
                 }
 
+                // Streams that come after the first are not processed in this round.
+                if (first != null && entry.isScheduled() && scheduler.compare(entry.stream, first) > 0)
+                {
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("Deferred {}", entry);
+                    continue;
+                }
+
                 try
                 {
                     if (entry.generate(lease))
@@ -293,6 +310,27 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
         return Action.SCHEDULED;
     }
 
+    private IStream firstScheduledStream(StreamScheduler scheduler)
+    {
+        if (session.getSendWindow() <= 0)
+            return null;
+        IStream first = null;
+        for (Entry entry : pendingEntries)
+        {
+            if (!entry.isScheduled())
+                continue;
+            IStream stream = entry.stream;
+            if (stream.isResetOrFailed())
+                continue;
+            // Streams stalled by flow control must not hold back other streams.
+            if (entry.getDataBytesRemaining() > 0 && stream.updateSendWindow(0) <= 0)
+                continue;
+            if (first == null || scheduler.compare(stream, first) < 0)
+                first = stream;
+        }
+        return first;
+    }
+
     void onFlushed(long bytes) throws IOException
     {
         // A single EndPoint write may be flushed multiple times (for example with SSL).
@@ -350,22 +388,26 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
     {
         lease.recycle();
 
-        Throwable closed;
-        Set<Entry> allEntries;
-        try (AutoLock l = lock.lock())
+        Throwable closed = terminated.getAndSet(x);
+        if (LOG.isDebugEnabled())
+            LOG.debug(String.format("%s, entries processed/pending/queued=%d/%d/%d",
+                closed != null ? "Closing" : "Failing",
+                processedEntries.size(),
+                pendingEntries.size(),
+                getFrameQueueSize()), x);
+
+        // Producers that queue entries concurrently fail them,
+        // see checkTerminated(), so entries are polled here.
+        Set<Entry> allEntries = new HashSet<>();
+        Entry queued;
+        while ((queued = priorityEntries.poll()) != null)
         {
-            closed = terminated;
-            terminated = x;
-            if (LOG.isDebugEnabled())
-                LOG.debug(String.format("%s, entries processed/pending/queued=%d/%d/%d",
-                    closed != null ? "Closing" : "Failing",
-                    processedEntries.size(),
-                    pendingEntries.size(),
-                    entries.size()), x);
-            allEntries = new HashSet<>(entries);
-            entries.clear();
+            allEntries.add(queued);
+        }
+        while ((queued = entries.poll()) != null)
+        {
+            allEntries.add(queued);
         }
-
         allEntries.addAll(processedEntries);
         processedEntries.clear();
         allEntries.addAll(pendingEntries);
@@ -380,14 +422,9 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
 
     void terminate(Throwable cause)
     {
-        Throwable closed;
-        try (AutoLock l = lock.lock())
-        {
-            closed = terminated;
-            terminated = cause;
-            if (LOG.isDebugEnabled())
-                LOG.debug("{} {}", closed != null ? "Terminated" : "Terminating", this);
-        }
+        Throwable closed = terminated.getAndSet(cause);
+        if (LOG.isDebugEnabled())
+            LOG.debug("{} {}", closed != null ? "Terminated" : "Terminating", this);
         if (closed == null)
             iterate();
     }
@@ -448,6 +485,14 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
             return false;
         }
 
+        /**
+         * @return whether the entry is subject to the {@link StreamScheduler}
+         */
+        boolean isScheduled()
+        {
+            return stream != null && frame.getType() == FrameType.DATA;
+        }
+
         @Override
         public void failed(Throwable x)
         {
@@ -472,6 +517,7 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
                 case PING:
                 case GO_AWAY:
                 case WINDOW_UPDATE:
+                case PRIORITY_UPDATE:
                 case PREFACE:
                 case DISCONNECT:
                     return false;
@@ -49,6 +49,7 @@ import org.eclipse.jetty.http2.frames.HeadersFrame;
 import org.eclipse.jetty.http2.frames.PingFrame;
 import org.eclipse.jetty.http2.frames.PrefaceFrame;
 import org.eclipse.jetty.http2.frames.PriorityFrame;
+import org.eclipse.jetty.http2.frames.PriorityUpdateFrame;
 import org.eclipse.jetty.http2.frames.PushPromiseFrame;
 import org.eclipse.jetty.http2.frames.ResetFrame;
 import org.eclipse.jetty.http2.frames.SettingsFrame;
@@ -104,6 +105,7 @@ public abstract class HTTP2Session extends ContainerLifeCycle implements ISessio
     private long streamIdleTimeout;
     private int initialSessionRecvWindow;
     private int writeThreshold;
+    private StreamScheduler streamScheduler = StreamScheduler.FIFO;
     private boolean pushEnabled;
     private boolean connectProtocolEnabled;
 
@@ -207,6 +209,20 @@ public abstract class HTTP2Session extends ContainerLifeCycle implements ISessio
         this.writeThreshold = writeThreshold;
     }
 
+    @ManagedAttribute("The scheduler of the DATA frames of the streams")
+    public StreamScheduler getStreamScheduler()
+    {
+        return streamScheduler;
+    }
+
+    /**
+     * @param streamScheduler the scheduler of the DATA frames of the streams
+     */
+    public void setStreamScheduler(StreamScheduler streamScheduler)
+    {
+        this.streamScheduler = streamScheduler == null ? StreamScheduler.FIFO : streamScheduler;
+    }
+
     public EndPoint getEndPoint()
     {
         return endPoint;
@@ -307,6 +323,23 @@ public abstract class HTTP2Session extends ContainerLifeCycle implements ISessio
             LOG.debug("Received {} on {}", frame, this);
     }
 
+    @Override
+    public void onPriorityUpdate(PriorityUpdateFrame frame)
+    {
+        if (LOG.isDebugEnabled())
+            LOG.debug("Received {} on {}", frame, this);
+
+        // Priorities of streams that are not open yet
+        // are ignored rather than buffered until open.
+        IStream stream = getStream(frame.getPrioritizedStreamId());
+        if (stream != null)
+        {
+            stream.setPriority(ExtensiblePriority.from(frame.getPriority()));
+            // The new priority may allow other streams to be flushed.
+            flusher.iterate();
+        }
+    }
+
     @Override
     public void onReset(ResetFrame frame)
     {
@@ -431,7 +464,8 @@ public abstract class HTTP2Session extends ContainerLifeCycle implements ISessio
 
         if (frame.isReply())
         {
-            notifyPing(this, frame);
+            if (!flowControl.onPingReply(this, frame))
+                notifyPing(this, frame);
         }
         else
         {
@@ -76,6 +76,7 @@ public class HTTP2Stream implements IStream, Callback, Dumpable, CyclicTimeouts.
     private boolean committed;
     private long idleTimeout;
     private long expireNanoTime = Long.MAX_VALUE;
+    private volatile ExtensiblePriority priority;
 
     public HTTP2Stream(ISession session, int streamId, MetaData.Request request, boolean local)
     {
@@ -83,6 +84,7 @@ public class HTTP2Stream implements IStream, Callback, Dumpable, CyclicTimeouts.
         this.streamId = streamId;
         this.request = request;
         this.local = local;
+        this.priority = ExtensiblePriority.from(request);
         this.dataLength = Long.MIN_VALUE;
         this.dataInitial = true;
     }
@@ -284,6 +286,18 @@ public class HTTP2Stream implements IStream, Callback, Dumpable, CyclicTimeouts.
         return committed;
     }
 
+    @Override
+    public ExtensiblePriority getPriority()
+    {
+        return priority;
+    }
+
+    @Override
+    public void setPriority(ExtensiblePriority priority)
+    {
+        this.priority = priority;
+    }
+
     public boolean isOpen()
     {
         return !isClosed();
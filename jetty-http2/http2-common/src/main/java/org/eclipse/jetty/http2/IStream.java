@@ -142,6 +142,21 @@ public interface IStream extends Stream, Attachable, Closeable
      */
     boolean isCommitted();
 
+    /**
+     * @return the priority of this stream
+     * @see #setPriority(ExtensiblePriority)
+     */
+    ExtensiblePriority getPriority();
+
+    /**
+     * <p>Sets the priority of this stream, used by the {@link StreamScheduler}
+     * to decide the order in which the DATA frames of streams are sent.</p>
+     *
+     * @param priority the priority of this stream
+     * @see #getPriority()
+     */
+    void setPriority(ExtensiblePriority priority);
+
     /**
      * <p>An ordered list of frames belonging to the same stream.</p>
      */
@@ -0,0 +1,42 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.http2;
+
+/**
+ * <p>Decides in which order the DATA frames of different streams are sent.</p>
+ * <p>The flusher generates frames in rounds, at most one DATA frame per stream
+ * per round, in the order the frames have been queued.
+ * At the beginning of each round, the flusher finds the stream that comes first,
+ * according to {@link #compare(IStream, IStream)}, among the streams that have
+ * DATA frames queued and that can send them; in that round, the DATA frames of
+ * the streams that compare after that stream are not generated, while the
+ * DATA frames of the streams that compare equal to it are interleaved.</p>
+ * <p>Frames other than DATA frames are not subject to scheduling.</p>
+ */
+public interface StreamScheduler
+{
+    /**
+     * <p>A scheduler that interleaves the DATA frames of all streams.</p>
+     */
+    public static final StreamScheduler FIFO = (stream1, stream2) -> 0;
+
+    /**
+     * @param stream1 the first stream
+     * @param stream2 the second stream
+     * @return a negative integer if the DATA frames of {@code stream1} must be sent
+     * before those of {@code stream2}, a positive integer if they must be sent after,
+     * or zero if they can be interleaved
+     */
+    public int compare(IStream stream1, IStream stream2);
+}
@@ -28,6 +28,8 @@ public enum FrameType
     GO_AWAY(7),
     WINDOW_UPDATE(8),
     CONTINUATION(9),
+    // RFC 9218.
+    PRIORITY_UPDATE(16),
     // Synthetic frames only needed by the implementation.
     PREFACE(10),
     DISCONNECT(11),
@@ -44,6 +46,7 @@ public enum FrameType
     {
         this.type = type;
         Types.types.put(type, this);
+        Types.size = Math.max(Types.size, type + 1);
     }
 
     public int getType()
@@ -51,8 +54,17 @@ public enum FrameType
         return type;
     }
 
+    /**
+     * @return the max frame type code, plus one
+     */
+    public static int size()
+    {
+        return Types.size;
+    }
+
     private static class Types
     {
         private static final Map<Integer, FrameType> types = new HashMap<>();
+        private static int size;
     }
 }
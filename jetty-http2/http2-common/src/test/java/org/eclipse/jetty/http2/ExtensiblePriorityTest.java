@@ -0,0 +1,57 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+
+package org.eclipse.jetty.http2;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ExtensiblePriorityTest
+{
+    @Test
+    public void testDefault()
+    {
+        assertSame(ExtensiblePriority.DEFAULT, ExtensiblePriority.from((String)null));
+        assertSame(ExtensiblePriority.DEFAULT, ExtensiblePriority.from(""));
+        assertSame(ExtensiblePriority.DEFAULT, ExtensiblePriority.from("u=3"));
+    }
+
+    @Test
+    public void testParse()
+    {
+        ExtensiblePriority priority = ExtensiblePriority.from("u=1, i");
+        assertEquals(1, priority.getUrgency());
+        assertTrue(priority.isIncremental());
+
+        priority = ExtensiblePriority.from("i=?0, u=6");
+        assertEquals(6, priority.getUrgency());
+        assertFalse(priority.isIncremental());
+
+        priority = ExtensiblePriority.from("u=0;foo=bar, i=?1");
+        assertEquals(0, priority.getUrgency());
+        assertTrue(priority.isIncremental());
+    }
+
+    @Test
+    public void testInvalidValuesAreIgnored()
+    {
+        ExtensiblePriority priority = ExtensiblePriority.from("u=9, x=1, i=maybe");
+        assertEquals(ExtensiblePriority.DEFAULT_URGENCY, priority.getUrgency());
+        assertFalse(priority.isIncremental());
+    }
+}
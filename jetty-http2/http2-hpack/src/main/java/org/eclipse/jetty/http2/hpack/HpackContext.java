@@ -186,6 +186,7 @@ public class HpackContext
     private final DynamicTable _dynamicTable;
     private final Map<HttpField, Entry> _fieldMap = new HashMap<>();
     private final Map<String, Entry> _nameMap = new HashMap<>();
+    private int _generation;
 
     HpackContext(int maxDynamicTableSize)
     {
@@ -201,6 +202,7 @@ public class HpackContext
         if (LOG.isDebugEnabled())
             LOG.debug(String.format("HdrTbl[%x] resized max=%d->%d", hashCode(), _maxDynamicTableSizeInBytes, newMaxDynamicTableSize));
         _maxDynamicTableSizeInBytes = newMaxDynamicTableSize;
+        _generation++;
         _dynamicTable.evict();
     }
 
@@ -243,6 +245,7 @@ public class HpackContext
 
     public Entry add(HttpField field)
     {
+        _generation++;
         Entry entry = new Entry(field);
         int size = entry.getSize();
         if (size > _maxDynamicTableSizeInBytes)
@@ -263,6 +266,18 @@ public class HpackContext
         return entry;
     }
 
+    /**
+     * <p>Returns a number that changes every time the dynamic table is modified.</p>
+     * <p>The dynamic table indexes of the entries, and therefore the encoding
+     * of header blocks, only change when the generation changes.</p>
+     *
+     * @return the generation of the dynamic table
+     */
+    int getGeneration()
+    {
+        return _generation;
+    }
+
     /**
      * @return Current dynamic table size in entries
      */
@@ -15,9 +15,12 @@ package org.eclipse.jetty.http2.hpack;
 
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.jetty.http.HttpField;
@@ -77,6 +80,12 @@ public class HpackEncoder
     private static final PreEncodedHttpField C_SCHEME_HTTP = new PreEncodedHttpField(HttpHeader.C_SCHEME, "http");
     private static final PreEncodedHttpField C_SCHEME_HTTPS = new PreEncodedHttpField(HttpHeader.C_SCHEME, "https");
     private static final EnumMap<HttpMethod, PreEncodedHttpField> C_METHODS = new EnumMap<>(HttpMethod.class);
+    // The number of literal values of a header after which the adaptive indexing may stop indexing it.
+    private static final int ADAPTIVE_SAMPLES = 8;
+    // The period, in literal values, of the indexing of headers that are not indexed by the adaptive indexing.
+    private static final int ADAPTIVE_PROBE_PERIOD = 16;
+    // The number of samples after which the adaptive indexing statistics decay.
+    private static final int ADAPTIVE_WINDOW = 1024;
 
     static
     {
@@ -97,6 +106,18 @@ public class HpackEncoder
     private int _maxHeaderListSize;
     private int _headerListSize;
     private boolean _validateEncoding = true;
+    private boolean _adaptiveIndexing = true;
+    private final int[] _indexedHits = new int[HttpHeader.values().length];
+    private final int[] _literals = new int[HttpHeader.values().length];
+    private int _maxHeaderBlocks = 16;
+    private final Map<HeaderBlockKey, HeaderBlock> _headerBlocks = new LinkedHashMap<>(16, 0.75F, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<HeaderBlockKey, HeaderBlock> eldest)
+        {
+            return size() > _maxHeaderBlocks;
+        }
+    };
 
     public HpackEncoder()
     {
@@ -157,6 +178,45 @@ public class HpackEncoder
         _validateEncoding = validateEncoding;
     }
 
+    public boolean isAdaptiveIndexing()
+    {
+        return _adaptiveIndexing;
+    }
+
+    /**
+     * <p>Sets whether the indexing of header values in the dynamic table adapts to the
+     * observed repetition of the values.</p>
+     * <p>When enabled, headers whose values are rarely repeated on this connection, such as
+     * request identifiers, are encoded as literals without indexing, so that they do not
+     * evict from the dynamic table the entries of headers whose values are repeated.</p>
+     *
+     * @param adaptiveIndexing whether the indexing of header values is adaptive
+     */
+    public void setAdaptiveIndexing(boolean adaptiveIndexing)
+    {
+        _adaptiveIndexing = adaptiveIndexing;
+    }
+
+    public int getMaxHeaderBlocks()
+    {
+        return _maxHeaderBlocks;
+    }
+
+    /**
+     * <p>Sets the max number of encoded response header blocks that are cached.</p>
+     * <p>Responses with the same status and fields as a previous response are encoded
+     * by copying the cached header block of the previous response, provided that the
+     * dynamic table has not been modified since.</p>
+     *
+     * @param maxHeaderBlocks the max number of cached header blocks, or 0 to disable the cache
+     */
+    public void setMaxHeaderBlocks(int maxHeaderBlocks)
+    {
+        _maxHeaderBlocks = maxHeaderBlocks;
+        if (maxHeaderBlocks <= 0)
+            _headerBlocks.clear();
+    }
+
     public void encode(ByteBuffer buffer, MetaData metadata) throws HpackException
     {
         try
@@ -185,75 +245,36 @@ public class HpackEncoder
             if (maxDynamicTableSize != _context.getMaxDynamicTableSize())
                 encodeMaxDynamicTableSize(buffer, maxDynamicTableSize);
 
-            // Add Request/response meta fields
-            if (metadata.isRequest())
+            int generation = _context.getGeneration();
+            HeaderBlockKey blockKey = null;
+            HeaderBlock block = null;
+            if (_maxHeaderBlocks > 0 && metadata.isResponse() && fields != null)
             {
-                MetaData.Request request = (MetaData.Request)metadata;
-
-                String method = request.getMethod();
-                HttpMethod httpMethod = method == null ? null : HttpMethod.fromString(method);
-                HttpField methodField = C_METHODS.get(httpMethod);
-                encode(buffer, methodField == null ? new HttpField(HttpHeader.C_METHOD, method) : methodField);
-                encode(buffer, new HttpField(HttpHeader.C_AUTHORITY, request.getURI().getAuthority()));
-                boolean isConnect = HttpMethod.CONNECT.is(request.getMethod());
-                String protocol = request.getProtocol();
-                if (!isConnect || protocol != null)
-                {
-                    String scheme = request.getURI().getScheme();
-                    encode(buffer, HttpScheme.HTTPS.is(scheme) ? C_SCHEME_HTTPS : C_SCHEME_HTTP);
-                    encode(buffer, new HttpField(HttpHeader.C_PATH, request.getURI().getPathQuery()));
-                    if (protocol != null)
-                        encode(buffer, new HttpField(HttpHeader.C_PROTOCOL, protocol));
-                }
+                blockKey = new HeaderBlockKey((MetaData.Response)metadata);
+                block = _headerBlocks.get(blockKey);
+                if (block != null && block._generation != generation)
+                    block = null;
             }
-            else if (metadata.isResponse())
+
+            if (block != null)
             {
-                MetaData.Response response = (MetaData.Response)metadata;
-                int code = response.getStatus();
-                HttpField status = code < STATUSES.length ? STATUSES[code] : null;
-                if (status == null)
-                    status = new HttpField.IntValueHttpField(HttpHeader.C_STATUS, code);
-                encode(buffer, status);
+                // The same fields have been encoded with the same dynamic table, so reuse the encoding.
+                buffer.put(block._bytes);
+                _headerListSize = block._headerListSize;
+                if (LOG.isDebugEnabled())
+                    LOG.debug(String.format("CtxTbl[%x] reused block %s", _context.hashCode(), blockKey));
             }
-
-            // Remove fields as specified in RFC 7540, 8.1.2.2.
-            if (fields != null)
+            else
             {
-                // Remove the headers specified in the Connection header,
-                // for example: Connection: Close, TE, Upgrade, Custom.
-                Set<String> hopHeaders = null;
-                for (String value : fields.getCSV(HttpHeader.CONNECTION, false))
-                {
-                    if (hopHeaders == null)
-                        hopHeaders = new HashSet<>();
-                    hopHeaders.add(StringUtil.asciiToLowerCase(value));
-                }
-
-                boolean contentLengthEncoded = false;
-                for (HttpField field : fields)
-                {
-                    HttpHeader header = field.getHeader();
-                    if (header != null && IGNORED_HEADERS.contains(header))
-                        continue;
-                    if (header == HttpHeader.TE)
-                    {
-                        if (field.contains("trailers"))
-                            encode(buffer, TE_TRAILERS);
-                        continue;
-                    }
-                    String name = field.getLowerCaseName();
-                    if (hopHeaders != null && hopHeaders.contains(name))
-                        continue;
-                    if (header == HttpHeader.CONTENT_LENGTH)
-                        contentLengthEncoded = true;
-                    encode(buffer, field);
-                }
+                int blockPos = buffer.position();
+                encodeHeaderBlock(buffer, metadata);
 
-                if (!contentLengthEncoded)
+                // The encoding can only be reused if it did not modify the dynamic table.
+                if (blockKey != null && _context.getGeneration() == generation)
                 {
-                    long contentLength = metadata.getContentLength();
-                    if (contentLength >= 0)
-                        encode(buffer, new HttpField(HttpHeader.CONTENT_LENGTH, String.valueOf(contentLength)));
+                    byte[] bytes = new byte[buffer.position() - blockPos];
+                    buffer.duplicate().position(blockPos).get(bytes);
+                    _headerBlocks.put(blockKey, new HeaderBlock(bytes, _headerListSize, generation));
                 }
             }
 
@@ -281,6 +302,83 @@ public class HpackEncoder
         }
     }
 
+    private void encodeHeaderBlock(ByteBuffer buffer, MetaData metadata)
+    {
+        HttpFields fields = metadata.getFields();
+
+        // Add Request/response meta fields
+        if (metadata.isRequest())
+        {
+            MetaData.Request request = (MetaData.Request)metadata;
+
+            String method = request.getMethod();
+            HttpMethod httpMethod = method == null ? null : HttpMethod.fromString(method);
+            HttpField methodField = C_METHODS.get(httpMethod);
+            encode(buffer, methodField == null ? new HttpField(HttpHeader.C_METHOD, method) : methodField);
+            encode(buffer, new HttpField(HttpHeader.C_AUTHORITY, request.getURI().getAuthority()));
+            boolean isConnect = HttpMethod.CONNECT.is(request.getMethod());
+            String protocol = request.getProtocol();
+            if (!isConnect || protocol != null)
+            {
+                String scheme = request.getURI().getScheme();
+                encode(buffer, HttpScheme.HTTPS.is(scheme) ? C_SCHEME_HTTPS : C_SCHEME_HTTP);
+                encode(buffer, new HttpField(HttpHeader.C_PATH, request.getURI().getPathQuery()));
+                if (protocol != null)
+                    encode(buffer, new HttpField(HttpHeader.C_PROTOCOL, protocol));
+            }
+        }
+        else if (metadata.isResponse())
+        {
+            MetaData.Response response = (MetaData.Response)metadata;
+            int code = response.getStatus();
+            HttpField status = code < STATUSES.length ? STATUSES[code] : null;
+            if (status == null)
+                status = new HttpField.IntValueHttpField(HttpHeader.C_STATUS, code);
+            encode(buffer, status);
+        }
+
+        // Remove fields as specified in RFC 7540, 8.1.2.2.
+        if (fields != null)
+        {
+            // Remove the headers specified in the Connection header,
+            // for example: Connection: Close, TE, Upgrade, Custom.
+            Set<String> hopHeaders = null;
+            for (String value : fields.getCSV(HttpHeader.CONNECTION, false))
+            {
+                if (hopHeaders == null)
+                    hopHeaders = new HashSet<>();
+                hopHeaders.add(StringUtil.asciiToLowerCase(value));
+            }
+
+            boolean contentLengthEncoded = false;
+            for (HttpField field : fields)
+            {
+                HttpHeader header = field.getHeader();
+                if (header != null && IGNORED_HEADERS.contains(header))
+                    continue;
+                if (header == HttpHeader.TE)
+                {
+                    if (field.contains("trailers"))
+                        encode(buffer, TE_TRAILERS);
+                    continue;
+                }
+                String name = field.getLowerCaseName();
+                if (hopHeaders != null && hopHeaders.contains(name))
+                    continue;
+                if (header == HttpHeader.CONTENT_LENGTH)
+                    contentLengthEncoded = true;
+                encode(buffer, field);
+            }
+
+            if (!contentLengthEncoded)
+            {
+                long contentLength = metadata.getContentLength();
+                if (contentLength >= 0)
+                    encode(buffer, new HttpField(HttpHeader.CONTENT_LENGTH, String.valueOf(contentLength)));
+            }
+        }
+    }
+
     public void encodeMaxDynamicTableSize(ByteBuffer buffer, int maxDynamicTableSize)
     {
         if (maxDynamicTableSize > _remoteMaxDynamicTableSize)
@@ -313,6 +411,8 @@ public class HpackEncoder
             }
             else
             {
+                if (field.getHeader() != null)
+                    _indexedHits[field.getHeader().ordinal()]++;
                 int index = _context.index(entry);
                 buffer.put((byte)0x80);
                 NBitInteger.encode(buffer, 7, index);
@@ -408,14 +508,16 @@ public class HpackEncoder
                 }
                 else
                 {
-                    // indexed
-                    indexed = true;
+                    // indexed, unless the values of this header are rarely repeated.
+                    indexed = shouldIndex(header);
+                    int bits = indexed ? 6 : 4;
                     boolean huffman = !DO_NOT_HUFFMAN.contains(header);
-                    encodeName(buffer, (byte)0x40, 6, header.asString(), name);
+                    encodeName(buffer, indexed ? (byte)0x40 : (byte)0x00, bits, header.asString(), name);
                     encodeValue(buffer, huffman, field.getValue());
                     if (_debug)
-                        encoding = ((name == null) ? "LitHuffN" : ("LitIdxN" + (name.isStatic() ? "S" : "") + (1 + NBitInteger.octectsNeeded(6, _context.index(name))))) +
-                            (huffman ? "HuffVIdx" : "LitVIdx");
+                        encoding = ((name == null) ? "LitHuffN" : ("LitIdxN" + (name.isStatic() ? "S" : "") + (1 + NBitInteger.octectsNeeded(bits, _context.index(name))))) +
+                            (huffman ? "HuffV" : "LitV") +
+                            (indexed ? "Idx" : "!Idx");
                 }
             }
 
@@ -431,6 +533,29 @@ public class HpackEncoder
         }
     }
 
+    private boolean shouldIndex(HttpHeader header)
+    {
+        if (!_adaptiveIndexing)
+            return true;
+
+        int index = header.ordinal();
+        int literals = ++_literals[index];
+        int hits = _indexedHits[index];
+        if (literals + hits > ADAPTIVE_WINDOW)
+        {
+            // Decay the statistics, so that the indexing adapts to changes.
+            _literals[index] = literals >>= 1;
+            _indexedHits[index] = hits >>= 1;
+        }
+
+        // Index the values if, on average, they are repeated at least once every two new values.
+        if (literals < ADAPTIVE_SAMPLES || 2 * hits >= literals)
+            return true;
+
+        // Occasionally index the values that are rarely repeated, to notice if they start repeating.
+        return literals % ADAPTIVE_PROBE_PERIOD == 0;
+    }
+
     private void encodeName(ByteBuffer buffer, byte mask, int bits, String name, Entry entry)
     {
         buffer.put(mask);
@@ -490,4 +615,75 @@ public class HpackEncoder
             }
         }
     }
+
+    private static class HeaderBlockKey
+    {
+        private final int _status;
+        private final long _contentLength;
+        private final HttpField[] _fields;
+        private final int _hash;
+
+        private HeaderBlockKey(MetaData.Response response)
+        {
+            _status = response.getStatus();
+            _contentLength = response.getContentLength();
+            HttpFields fields = response.getFields();
+            _fields = new HttpField[fields.size()];
+            int hash = 31 * _status + Long.hashCode(_contentLength);
+            int i = 0;
+            for (HttpField field : fields)
+            {
+                _fields[i++] = field;
+                hash = 31 * hash + field.hashCode();
+            }
+            _hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof HeaderBlockKey))
+                return false;
+            HeaderBlockKey that = (HeaderBlockKey)obj;
+            if (_hash != that._hash || _status != that._status || _contentLength != that._contentLength || _fields.length != that._fields.length)
+                return false;
+            for (int i = 0; i < _fields.length; ++i)
+            {
+                HttpField field = _fields[i];
+                HttpField other = that._fields[i];
+                // Pre encoded fields may be encoded differently from equal fields.
+                if (field.getClass() != other.getClass() || !field.equals(other))
+                    return false;
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return _hash;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%d%s", _status, Arrays.toString(_fields));
+        }
+    }
+
+    private static class HeaderBlock
+    {
+        private final byte[] _bytes;
+        private final int _headerListSize;
+        private final int _generation;
+
+        private HeaderBlock(byte[] bytes, int headerListSize, int generation)
+        {
+            _bytes = bytes;
+            _headerListSize = headerListSize;
+            _generation = generation;
+        }
+    }
 }
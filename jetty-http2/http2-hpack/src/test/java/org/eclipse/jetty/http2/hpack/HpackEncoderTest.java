@@ -20,12 +20,14 @@ import org.eclipse.jetty.http.HttpFields;
 import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpVersion;
 import org.eclipse.jetty.http.MetaData;
+import org.eclipse.jetty.http.PreEncodedHttpField;
 import org.eclipse.jetty.util.BufferUtil;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.Test;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 public class HpackEncoderTest
@@ -306,4 +308,74 @@ public class HpackEncoderTest
         assertThat(context.getMaxDynamicTableSize(), Matchers.is(50));
         assertThat(context.size(), Matchers.is(1));
     }
+
+    @Test
+    public void testHeaderBlockReuse() throws Exception
+    {
+        HpackEncoder encoder = new HpackEncoder();
+        HpackEncoder uncached = new HpackEncoder();
+        uncached.setMaxHeaderBlocks(0);
+        HpackDecoder decoder = new HpackDecoder(4096, 8192);
+
+        for (int i = 0; i < 6; ++i)
+        {
+            // A new, but equal, set of fields for every response, with a field that changes every 3 responses.
+            HttpFields fields = HttpFields.build()
+                .add(new PreEncodedHttpField(HttpHeader.SERVER, "jetty"))
+                .add(HttpHeader.CONTENT_TYPE, "application/json")
+                .add(HttpHeader.CACHE_CONTROL, "no-cache")
+                .add("x-custom", "value" + i / 3);
+            MetaData.Response response = new MetaData.Response(HttpVersion.HTTP_2, 200, fields, 42);
+
+            byte[] encoded = encode(encoder, response);
+            assertArrayEquals(encode(uncached, response), encoded);
+            assertEquals(uncached.getHpackContext().size(), encoder.getHpackContext().size());
+
+            MetaData.Response decoded = (MetaData.Response)decoder.decode(ByteBuffer.wrap(encoded));
+            assertEquals(200, decoded.getStatus());
+            assertEquals("jetty", decoded.getFields().get(HttpHeader.SERVER));
+            assertEquals("application/json", decoded.getFields().get(HttpHeader.CONTENT_TYPE));
+            assertEquals("value" + i / 3, decoded.getFields().get("x-custom"));
+            assertEquals("42", decoded.getFields().get(HttpHeader.CONTENT_LENGTH));
+        }
+    }
+
+    @Test
+    public void testAdaptiveIndexing() throws Exception
+    {
+        HpackEncoder adaptive = new HpackEncoder();
+        HpackEncoder indexing = new HpackEncoder();
+        indexing.setAdaptiveIndexing(false);
+        HpackDecoder decoder = new HpackDecoder(4096, 8192);
+
+        // Values that are never repeated are not indexed after a few samples.
+        for (int i = 0; i < 20; ++i)
+        {
+            HttpFields fields = HttpFields.build().add(HttpHeader.X_FORWARDED_FOR, "10.0.0." + i);
+            MetaData.Response response = new MetaData.Response(HttpVersion.HTTP_2, 200, fields);
+            MetaData.Response decoded = (MetaData.Response)decoder.decode(ByteBuffer.wrap(encode(adaptive, response)));
+            assertEquals("10.0.0." + i, decoded.getFields().get(HttpHeader.X_FORWARDED_FOR));
+            encode(indexing, response);
+        }
+        assertEquals(20, indexing.getHpackContext().size());
+        assertThat(adaptive.getHpackContext().size(), Matchers.lessThan(10));
+
+        // Values that are repeated are always indexed.
+        HpackEncoder repeated = new HpackEncoder();
+        for (int i = 0; i < 40; ++i)
+        {
+            HttpFields fields = HttpFields.build().add(HttpHeader.X_FORWARDED_FOR, "10.0.0." + i / 2);
+            encode(repeated, new MetaData.Response(HttpVersion.HTTP_2, 200, fields));
+        }
+        assertEquals(20, repeated.getHpackContext().size());
+    }
+
+    private static byte[] encode(HpackEncoder encoder, MetaData metaData) throws HpackException
+    {
+        ByteBuffer buffer = BufferUtil.allocate(4096);
+        int pos = BufferUtil.flipToFill(buffer);
+        encoder.encode(buffer, metaData);
+        BufferUtil.flipToFlush(buffer, pos);
+        return BufferUtil.toArray(buffer);
+    }
 }
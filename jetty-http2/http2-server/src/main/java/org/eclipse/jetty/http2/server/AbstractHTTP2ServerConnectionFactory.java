@@ -24,9 +24,11 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.jetty.http2.BufferingFlowControlStrategy;
+import org.eclipse.jetty.http2.ExtensiblePriorityScheduler;
 import org.eclipse.jetty.http2.FlowControlStrategy;
 import org.eclipse.jetty.http2.HTTP2Connection;
 import org.eclipse.jetty.http2.ISession;
+import org.eclipse.jetty.http2.StreamScheduler;
 import org.eclipse.jetty.http2.api.Session;
 import org.eclipse.jetty.http2.api.server.ServerSessionListener;
 import org.eclipse.jetty.http2.frames.Frame;
@@ -63,6 +65,7 @@ public abstract class AbstractHTTP2ServerConnectionFactory extends AbstractConne
     private boolean connectProtocolEnabled = true;
     private RateControl.Factory rateControlFactory = new WindowRateControl.Factory(50);
     private FlowControlStrategy.Factory flowControlStrategyFactory = () -> new BufferingFlowControlStrategy(0.5F);
+    private StreamScheduler streamScheduler = StreamScheduler.FIFO;
     private long streamIdleTimeout;
     private boolean useInputDirectByteBuffers;
     private boolean useOutputDirectByteBuffers;
@@ -197,6 +200,24 @@ public abstract class AbstractHTTP2ServerConnectionFactory extends AbstractConne
         this.connectProtocolEnabled = connectProtocolEnabled;
     }
 
+    @ManagedAttribute("The scheduler of the DATA frames of the streams")
+    public StreamScheduler getStreamScheduler()
+    {
+        return streamScheduler;
+    }
+
+    /**
+     * <p>Sets the scheduler that decides the order in which the DATA frames
+     * of the streams of a session are sent, for example
+     * {@link ExtensiblePriorityScheduler} to honor the RFC 9218 priorities.</p>
+     *
+     * @param streamScheduler the scheduler of the DATA frames of the streams
+     */
+    public void setStreamScheduler(StreamScheduler streamScheduler)
+    {
+        this.streamScheduler = streamScheduler == null ? StreamScheduler.FIFO : streamScheduler;
+    }
+
     /**
      * @return the factory that creates RateControl objects
      */
@@ -252,6 +273,9 @@ public abstract class AbstractHTTP2ServerConnectionFactory extends AbstractConne
             settings.put(SettingsFrame.MAX_CONCURRENT_STREAMS, maxConcurrentStreams);
         settings.put(SettingsFrame.MAX_HEADER_LIST_SIZE, getHttpConfiguration().getRequestHeaderSize());
         settings.put(SettingsFrame.ENABLE_CONNECT_PROTOCOL, isConnectProtocolEnabled() ? 1 : 0);
+        // SPEC: RFC 9218 priorities replace RFC 7540 priorities.
+        if (getStreamScheduler() instanceof ExtensiblePriorityScheduler)
+            settings.put(SettingsFrame.NO_RFC7540_PRIORITIES, 1);
         return settings;
     }
 
@@ -275,6 +299,7 @@ public abstract class AbstractHTTP2ServerConnectionFactory extends AbstractConne
         session.setInitialSessionRecvWindow(getInitialSessionRecvWindow());
         session.setWriteThreshold(getHttpConfiguration().getOutputBufferSize());
         session.setConnectProtocolEnabled(isConnectProtocolEnabled());
+        session.setStreamScheduler(getStreamScheduler());
 
         ServerParser parser = newServerParser(connector, session, getRateControlFactory().newRateControl(endPoint));
         parser.setMaxFrameLength(getMaxFrameLength());
@@ -28,6 +28,7 @@ public class HTTP3Configuration
     private boolean useInputDirectByteBuffers = true;
     private boolean useOutputDirectByteBuffers = true;
     private int maxBlockedStreams = 0;
+    private int insertionThreshold = 1;
     private int maxRequestHeadersSize = 8192;
     private int maxResponseHeadersSize = 8192;
 
@@ -97,6 +98,17 @@ public class HTTP3Configuration
         this.maxBlockedStreams = maxBlockedStreams;
     }
 
+    @ManagedAttribute("The number of times a field is encoded before QPACK inserts it in the dynamic table")
+    public int getInsertionThreshold()
+    {
+        return insertionThreshold;
+    }
+
+    public void setInsertionThreshold(int insertionThreshold)
+    {
+        this.insertionThreshold = insertionThreshold;
+    }
+
     @ManagedAttribute("The max size of the request headers")
     public int getMaxRequestHeadersSize()
     {
@@ -87,6 +87,9 @@ public class QpackEncoder implements Dumpable
             HttpHeader.SET_COOKIE,
             HttpHeader.SET_COOKIE2);
 
+    // The max number of distinct fields tracked to compute the insertion frequency.
+    private static final int MAX_TRACKED_FIELDS = 512;
+
     private final AutoLock lock = new AutoLock();
     private final List<Instruction> _instructions = new ArrayList<>();
     private final Instruction.Handler _handler;
@@ -97,6 +100,8 @@ public class QpackEncoder implements Dumpable
     private final InstructionHandler _instructionHandler = new InstructionHandler();
     private int _knownInsertCount = 0;
     private int _blockedStreams = 0;
+    private int _insertionThreshold = 1;
+    private final Map<HttpField, Integer> _fieldFrequencies = new HashMap<>();
 
     public QpackEncoder(Instruction.Handler handler, int maxBlockedStreams)
     {
@@ -116,6 +121,44 @@ public class QpackEncoder implements Dumpable
         _maxBlockedStreams = maxBlockedStreams;
     }
 
+    /**
+     * @return the number of times a field must be encoded before it is inserted into the Dynamic Table
+     * @see #setInsertionThreshold(int)
+     */
+    public int getInsertionThreshold()
+    {
+        return _insertionThreshold;
+    }
+
+    /**
+     * <p>Sets the number of times a field must be encoded before it is inserted into the Dynamic Table.</p>
+     * <p>With the default value of {@code 1} every indexable field is inserted the first time it is encoded.
+     * Larger values avoid filling the Dynamic Table, and the Encoder stream, with fields that are only
+     * encoded once, such as unique paths or dates, at the cost of encoding the first occurrences of the
+     * frequent fields as literals.</p>
+     *
+     * @param insertionThreshold the number of times a field must be encoded before it is inserted
+     */
+    public void setInsertionThreshold(int insertionThreshold)
+    {
+        try (AutoLock l = lock.lock())
+        {
+            _insertionThreshold = Math.max(1, insertionThreshold);
+            _fieldFrequencies.clear();
+        }
+    }
+
+    /**
+     * @return the number of streams that may currently be blocked by references to unacknowledged entries
+     */
+    public int getBlockedStreams()
+    {
+        try (AutoLock l = lock.lock())
+        {
+            return _blockedStreams;
+        }
+    }
+
     public int getCapacity()
     {
         return _context.getDynamicTable().getCapacity();
@@ -219,6 +262,9 @@ public class QpackEncoder implements Dumpable
                 notifyInstructionHandler();
                 streamInfo.remove(sectionInfo);
                 sectionInfo.release();
+                if (streamInfo.isEmpty())
+                    _streamInfoMap.remove(streamId);
+                updateBlockedStreams();
                 throw new QpackException.StreamException(H3_GENERAL_PROTOCOL_ERROR, "buffer_space_exceeded", e);
             }
             catch (Throwable t)
@@ -314,8 +360,11 @@ public class QpackEncoder implements Dumpable
      */
     public void streamCancellation(long streamId)
     {
-        _instructionHandler.onStreamCancellation(streamId);
-        notifyInstructionHandler();
+        try (AutoLock l = lock.lock())
+        {
+            _instructionHandler.onStreamCancellation(streamId);
+            notifyInstructionHandler();
+        }
     }
 
     protected boolean shouldIndex(HttpField httpField)
@@ -361,12 +410,15 @@ public class QpackEncoder implements Dumpable
             }
         }
 
+        // Only insert a new entry if the field is not already in the table and is encoded often enough.
+        boolean canInsertEntry = canCreateEntry && entry == null && isFrequent(field);
+
         boolean huffman = shouldHuffmanEncode(field);
         Entry nameEntry = _context.get(field.getName());
         if (referenceEntry(nameEntry, streamInfo))
         {
             // Should we copy this entry
-            if (canCreateEntry)
+            if (canInsertEntry)
             {
                 int index = _context.indexOf(nameEntry);
                 Entry newEntry = new Entry(field);
@@ -382,7 +434,7 @@ public class QpackEncoder implements Dumpable
         }
         else
         {
-            if (canCreateEntry)
+            if (canInsertEntry)
             {
                 Entry newEntry = new Entry(field);
                 dynamicTable.add(newEntry);
@@ -437,6 +489,39 @@ public class QpackEncoder implements Dumpable
         return false;
     }
 
+    private boolean isFrequent(HttpField field)
+    {
+        if (_insertionThreshold <= 1)
+            return true;
+
+        Integer frequency = _fieldFrequencies.get(field);
+        int count = frequency == null ? 1 : frequency + 1;
+        if (count >= _insertionThreshold)
+        {
+            _fieldFrequencies.remove(field);
+            return true;
+        }
+
+        // Forget the tracked fields rather than growing without bounds,
+        // the frequent fields will be tracked again quickly.
+        if (frequency == null && _fieldFrequencies.size() >= MAX_TRACKED_FIELDS)
+            _fieldFrequencies.clear();
+        _fieldFrequencies.put(field, count);
+        return false;
+    }
+
+    private void updateBlockedStreams()
+    {
+        // Streams are unblocked when the remote Decoder acknowledges the entries they reference.
+        int blockedStreams = 0;
+        for (StreamInfo streamInfo : _streamInfoMap.values())
+        {
+            if (streamInfo.unblock(_knownInsertCount))
+                blockedStreams++;
+        }
+        _blockedStreams = blockedStreams;
+    }
+
     private static int encodeInsertCount(int reqInsertCount, int maxTableCapacity)
     {
         if (reqInsertCount == 0)
@@ -478,6 +563,8 @@ public class QpackEncoder implements Dumpable
             // If we have no more outstanding section acknowledgments remove the StreamInfo.
             if (streamInfo.isEmpty())
                 _streamInfoMap.remove(streamId);
+
+            updateBlockedStreams();
         }
 
         @Override
@@ -495,6 +582,8 @@ public class QpackEncoder implements Dumpable
             {
                 sectionInfo.release();
             }
+
+            updateBlockedStreams();
         }
 
         @Override
@@ -507,6 +596,8 @@ public class QpackEncoder implements Dumpable
             if (_knownInsertCount + increment > insertCount)
                 throw new QpackException.SessionException(QPACK_ENCODER_STREAM_ERROR, "KnownInsertCount incremented over InsertCount");
             _knownInsertCount += increment;
+
+            updateBlockedStreams();
         }
     }
 
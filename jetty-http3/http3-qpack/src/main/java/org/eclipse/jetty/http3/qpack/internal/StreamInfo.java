@@ -72,6 +72,28 @@ public class StreamInfo implements Iterable<StreamInfo.SectionInfo>
         return false;
     }
 
+    /**
+     * Unblocks the sections whose Required Insert Count is covered by the Known Received Count.
+     *
+     * @param knownInsertCount the Known Received Count of the encoder.
+     * @return whether this stream is still blocked.
+     */
+    public boolean unblock(int knownInsertCount)
+    {
+        boolean blocked = false;
+        for (SectionInfo info : _sectionInfos)
+        {
+            if (info.isBlocking())
+            {
+                if (info.getRequiredInsertCount() <= knownInsertCount)
+                    info._block = false;
+                else
+                    blocked = true;
+            }
+        }
+        return blocked;
+    }
+
     @Override
     public Iterator<SectionInfo> iterator()
     {
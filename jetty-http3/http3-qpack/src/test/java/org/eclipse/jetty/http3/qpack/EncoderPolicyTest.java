@@ -0,0 +1,115 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+
+package org.eclipse.jetty.http3.qpack;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http.MetaData;
+import org.eclipse.jetty.http3.qpack.internal.instruction.LiteralNameEntryInstruction;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class EncoderPolicyTest
+{
+    private static final int MAX_HEADER_SIZE = 1024;
+
+    private QpackEncoder _encoder;
+    private QpackDecoder _decoder;
+    private TestDecoderHandler _decoderHandler;
+    private TestEncoderHandler _encoderHandler;
+
+    @BeforeEach
+    public void before() throws Exception
+    {
+        _encoderHandler = new TestEncoderHandler();
+        _decoderHandler = new TestDecoderHandler();
+        _encoder = new QpackEncoder(_encoderHandler, 1);
+        _decoder = new QpackDecoder(_decoderHandler, MAX_HEADER_SIZE);
+        _encoder.setCapacity(1024);
+        _decoder.parseInstructions(_encoderHandler.getInstructionBuffer());
+    }
+
+    @Test
+    public void testBlockedStreamsAreUnblockedWhenAcknowledged() throws Exception
+    {
+        HttpFields fields1 = HttpFields.build().add("x-custom", "value1");
+        ByteBuffer buffer = encode(0, fields1);
+        // The field was inserted and referenced before being acknowledged.
+        assertThat(_encoder.getBlockedStreams(), is(1));
+
+        _decoder.parseInstructions(_encoderHandler.getInstructionBuffer());
+        assertTrue(decode(0, buffer).getFields().isEqualTo(fields1));
+        _encoder.parseInstructions(_decoderHandler.getInstructionBuffer());
+        assertThat(_encoder.getBlockedStreams(), is(0));
+
+        // Another stream can now risk blocking to reference a new entry.
+        HttpFields fields2 = HttpFields.build().add("x-custom", "value2");
+        buffer = encode(4, fields2);
+        assertThat(_encoder.getBlockedStreams(), is(1));
+
+        _decoder.parseInstructions(_encoderHandler.getInstructionBuffer());
+        assertTrue(decode(4, buffer).getFields().isEqualTo(fields2));
+        _encoder.parseInstructions(_decoderHandler.getInstructionBuffer());
+        assertThat(_encoder.getBlockedStreams(), is(0));
+    }
+
+    @Test
+    public void testInsertionThreshold() throws Exception
+    {
+        _encoder.setInsertionThreshold(2);
+        HttpFields fields = HttpFields.build().add("x-custom", "value");
+
+        // The first time the field is encoded as a literal, without inserting it.
+        ByteBuffer buffer = encode(0, fields);
+        assertTrue(_encoderHandler.isEmpty());
+        assertTrue(decode(0, buffer).getFields().isEqualTo(fields));
+        _encoder.parseInstructions(_decoderHandler.getInstructionBuffer());
+
+        // The second time the field is inserted in the Dynamic Table.
+        buffer = encode(4, fields);
+        Instruction instruction = _encoderHandler.getInstruction();
+        assertThat(instruction, instanceOf(LiteralNameEntryInstruction.class));
+        assertTrue(_encoderHandler.isEmpty());
+        _decoder.parseInstructions(QpackTestUtil.toBuffer(List.of(instruction)));
+        assertTrue(decode(4, buffer).getFields().isEqualTo(fields));
+        _encoder.parseInstructions(_decoderHandler.getInstructionBuffer());
+
+        // The third time the field is referenced from the Dynamic Table.
+        buffer = encode(8, fields);
+        assertTrue(_encoderHandler.isEmpty());
+        assertTrue(decode(8, buffer).getFields().isEqualTo(fields));
+    }
+
+    private ByteBuffer encode(long streamId, HttpFields fields) throws QpackException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        _encoder.encode(buffer, streamId, new MetaData(HttpVersion.HTTP_3, fields));
+        return buffer.flip();
+    }
+
+    private MetaData decode(long streamId, ByteBuffer buffer) throws QpackException
+    {
+        assertTrue(_decoder.decode(streamId, buffer, _decoderHandler));
+        return _decoderHandler.getMetaData();
+    }
+}
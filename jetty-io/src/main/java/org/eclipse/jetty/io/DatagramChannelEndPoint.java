@@ -73,6 +73,49 @@ public class DatagramChannelEndPoint extends SelectableChannelEndPoint
         return peer;
     }
 
+    /**
+     * <p>Receives datagrams into the given buffers, one datagram per buffer,
+     * until either there are no more datagrams to receive, or all the given
+     * buffers are filled.</p>
+     * <p>The address of the peer that sent the datagram received in
+     * {@code buffers[i]} is stored in {@code addresses[i]}.</p>
+     * <p>This method should be used to receive UDP data in batches, to drain
+     * the socket receive buffer in a single pass.</p>
+     *
+     * @param buffers the buffers to fill with data, one datagram per buffer
+     * @param addresses the array to store the peer addresses into, at least as long as {@code buffers}
+     * @return the number of datagrams received, or -1 if the input is shutdown
+     * @throws IOException if the receive fails
+     * @see #receive(ByteBuffer)
+     */
+    public int receive(ByteBuffer[] buffers, SocketAddress[] addresses) throws IOException
+    {
+        if (isInputShutdown())
+            return -1;
+
+        DatagramChannel channel = getChannel();
+        int received = 0;
+        long filled = 0;
+        while (received < buffers.length)
+        {
+            ByteBuffer buffer = buffers[received];
+            int pos = BufferUtil.flipToFill(buffer);
+            SocketAddress peer = channel.receive(buffer);
+            BufferUtil.flipToFlush(buffer, pos);
+            if (peer == null)
+                break;
+            addresses[received++] = peer;
+            filled += buffer.remaining();
+        }
+
+        if (received > 0)
+            notIdle();
+
+        if (LOG.isDebugEnabled())
+            LOG.debug("filled {} datagram(s) with {} byte(s)", received, filled);
+        return received;
+    }
+
     /**
      * <p>Sends to the given address the data in the given buffers.</p>
      * <p>This methods should be used to send UDP data.</p>
@@ -28,7 +28,6 @@ import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Deque;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
@@ -38,6 +37,8 @@ import java.util.concurrent.Executor;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 import org.eclipse.jetty.util.IO;
 import org.eclipse.jetty.util.annotation.ManagedAttribute;
@@ -83,19 +84,24 @@ public class ManagedSelector extends ContainerLifeCycle implements Dumpable
     private boolean _selecting;
     private final SelectorManager _selectorManager;
     private final int _id;
+    private final SelectorProducer _producer;
     private final ExecutionStrategy _strategy;
     private Selector _selector;
     private Deque<SelectorUpdate> _updates = new ArrayDeque<>();
     private Deque<SelectorUpdate> _updateable = new ArrayDeque<>();
     private final SampleStatistic _keyStats = new SampleStatistic();
+    private final LongAdder _wakeups = new LongAdder();
+    private final boolean _legacySelect;
 
     public ManagedSelector(SelectorManager selectorManager, int id)
     {
         _selectorManager = selectorManager;
         _id = id;
-        SelectorProducer producer = new SelectorProducer();
+        _legacySelect = overrides(getClass(), "nioSelect", Selector.class, boolean.class) ||
+            overrides(getClass(), "select", Selector.class);
+        _producer = new SelectorProducer();
         Executor executor = selectorManager.getExecutor();
-        _strategy = new AdaptiveExecutionStrategy(producer, executor);
+        _strategy = new AdaptiveExecutionStrategy(_producer, executor);
         addBean(_strategy, true);
     }
 
@@ -169,17 +175,56 @@ public class ManagedSelector extends ContainerLifeCycle implements Dumpable
         return _keyStats.getCount();
     }
 
+    @ManagedAttribute(value = "Total number of selector wakeups", readonly = true)
+    public long getWakeupCount()
+    {
+        return _wakeups.sum();
+    }
+
     @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
     public void resetStats()
     {
         _keyStats.reset();
+        _wakeups.reset();
     }
 
+    private static boolean overrides(Class<?> klass, String name, Class<?>... parameterTypes)
+    {
+        for (Class<?> c = klass; c != ManagedSelector.class; c = c.getSuperclass())
+        {
+            try
+            {
+                c.getDeclaredMethod(name, parameterTypes);
+                return true;
+            }
+            catch (NoSuchMethodException x)
+            {
+                // Try the superclass.
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param selector the selector to select with
+     * @param now whether to select without blocking
+     * @return the number of keys added to the selected-key set
+     * @throws IOException if the select operation fails
+     * @deprecated use {@link #nioSelect(Selector, boolean, Consumer)} instead
+     */
+    @Deprecated
     protected int nioSelect(Selector selector, boolean now) throws IOException
     {
         return now ? selector.selectNow() : selector.select();
     }
 
+    /**
+     * @param selector the selector to select with
+     * @return the number of keys added to the selected-key set
+     * @throws IOException if the select failure cannot be recovered
+     * @deprecated use {@link #select(Selector, Consumer)} instead
+     */
+    @Deprecated
     protected int select(Selector selector) throws IOException
     {
         try
@@ -209,6 +254,79 @@ public class ManagedSelector extends ContainerLifeCycle implements Dumpable
         }
     }
 
+    /**
+     * <p>Selects the ready keys, passing each of them to the given action.</p>
+     * <p>Ready keys are passed to the action rather than being added to the
+     * {@link Selector#selectedKeys() selected-key set}, so that they can be
+     * collected in a single batch without the cost of the set operations.</p>
+     *
+     * @param selector the selector to select with
+     * @param now whether to select without blocking
+     * @param action the action to perform on each ready key
+     * @return the number of keys whose ready sets have been updated
+     * @throws IOException if the select operation fails
+     * @see Selector#select(Consumer)
+     */
+    protected int nioSelect(Selector selector, boolean now, Consumer<SelectionKey> action) throws IOException
+    {
+        return now ? selector.selectNow(action) : selector.select(action);
+    }
+
+    /**
+     * <p>Selects the ready keys, passing each of them to the given action,
+     * and recovers from select failures.</p>
+     * <p>If a subclass overrides the deprecated {@link #select(Selector)} or
+     * {@link #nioSelect(Selector, boolean)}, they are called instead, and the
+     * keys of the selected-key set are passed to the action.</p>
+     *
+     * @param selector the selector to select with
+     * @param action the action to perform on each ready key
+     * @return the number of keys whose ready sets have been updated
+     * @throws IOException if the select failure cannot be recovered
+     */
+    protected int select(Selector selector, Consumer<SelectionKey> action) throws IOException
+    {
+        if (_legacySelect)
+            return legacySelect(selector, action);
+
+        try
+        {
+            int selected = nioSelect(selector, false, action);
+            if (selected == 0)
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Selector {} woken with none selected", selector);
+
+                if (Thread.interrupted() && !isRunning())
+                    throw new ClosedSelectorException();
+
+                if (FORCE_SELECT_NOW)
+                    selected = nioSelect(selector, true, action);
+            }
+            return selected;
+        }
+        catch (ClosedSelectorException x)
+        {
+            throw x;
+        }
+        catch (Throwable x)
+        {
+            handleSelectFailure(selector, x);
+            return 0;
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private int legacySelect(Selector selector, Consumer<SelectionKey> action) throws IOException
+    {
+        int selected = select(selector);
+        // The selector may have been recreated by the failure handling.
+        Set<SelectionKey> keys = selector.isOpen() ? selector.selectedKeys() : Collections.emptySet();
+        keys.forEach(action);
+        keys.clear();
+        return selected;
+    }
+
     protected void handleSelectFailure(Selector selector, Throwable failure) throws IOException
     {
         LOG.info("Caught select() failure, trying to recover: {}", failure.toString());
@@ -299,6 +417,7 @@ public class ManagedSelector extends ContainerLifeCycle implements Dumpable
         {
             if (LOG.isDebugEnabled())
                 LOG.debug("Wakeup on submit {}", this);
+            _wakeups.increment();
             selector.wakeup();
         }
     }
@@ -319,7 +438,10 @@ public class ManagedSelector extends ContainerLifeCycle implements Dumpable
         }
 
         if (selector != null)
+        {
+            _wakeups.increment();
             selector.wakeup();
+        }
     }
 
     private void execute(Runnable task)
@@ -487,7 +609,7 @@ public class ManagedSelector extends ContainerLifeCycle implements Dumpable
             super.toString(),
             _id,
             selector != null && selector.isOpen() ? selector.keys().size() : -1,
-            selector != null && selector.isOpen() ? selector.selectedKeys().size() : -1,
+            selector != null && selector.isOpen() ? _producer._keys.size() : -1,
             getActionSize());
     }
 
@@ -522,8 +644,10 @@ public class ManagedSelector extends ContainerLifeCycle implements Dumpable
 
     private class SelectorProducer implements ExecutionStrategy.Producer
     {
-        private Set<SelectionKey> _keys = Collections.emptySet();
-        private Iterator<SelectionKey> _cursor = Collections.emptyIterator();
+        // The keys selected in a select cycle, reused across cycles.
+        private final List<SelectionKey> _keys = new ArrayList<>();
+        private final Consumer<SelectionKey> _collector = _keys::add;
+        private int _cursor;
 
         @Override
         public Runnable produce()
@@ -588,6 +712,7 @@ public class ManagedSelector extends ContainerLifeCycle implements Dumpable
             {
                 if (LOG.isDebugEnabled())
                     LOG.debug("wakeup on updates {}", this);
+                _wakeups.increment();
                 selector.wakeup();
             }
         }
@@ -601,13 +726,16 @@ public class ManagedSelector extends ContainerLifeCycle implements Dumpable
                 {
                     if (LOG.isDebugEnabled())
                         LOG.debug("Selector {} waiting with {} keys", selector, selector.keys().size());
-                    int selected = ManagedSelector.this.select(selector);
-                    // The selector may have been recreated.
+                    int selected = ManagedSelector.this.select(selector, _collector);
+                    // The selector may have been recreated, and the
+                    // keys collected from the old selector cancelled.
+                    if (selector != _selector)
+                        _keys.clear();
                     selector = _selector;
                     if (selector != null)
                     {
                         if (LOG.isDebugEnabled())
-                            LOG.debug("Selector {} woken up from select, {}/{}/{} selected", selector, selected, selector.selectedKeys().size(), selector.keys().size());
+                            LOG.debug("Selector {} woken up from select, {}/{}/{} selected", selector, selected, _keys.size(), selector.keys().size());
 
                         int updates;
                         try (AutoLock l = _lock.lock())
@@ -617,11 +745,10 @@ public class ManagedSelector extends ContainerLifeCycle implements Dumpable
                             updates = _updates.size();
                         }
 
-                        _keys = selector.selectedKeys();
                         int selectedKeys = _keys.size();
                         if (selectedKeys > 0)
                             _keyStats.record(selectedKeys);
-                        _cursor = selectedKeys > 0 ? _keys.iterator() : Collections.emptyIterator();
+                        _cursor = 0;
                         if (LOG.isDebugEnabled())
                             LOG.debug("Selector {} processing {} keys, {} updates", selector, selectedKeys, updates);
 
@@ -652,9 +779,9 @@ public class ManagedSelector extends ContainerLifeCycle implements Dumpable
 
         private Runnable processSelected()
         {
-            while (_cursor.hasNext())
+            while (_cursor < _keys.size())
             {
-                SelectionKey key = _cursor.next();
+                SelectionKey key = _keys.get(_cursor++);
                 Object attachment = key.attachment();
                 SelectableChannel channel = key.channel();
                 if (key.isValid())
@@ -713,6 +840,7 @@ public class ManagedSelector extends ContainerLifeCycle implements Dumpable
                     ((Selectable)attachment).updateKey();
             }
             _keys.clear();
+            _cursor = 0;
         }
 
         @Override
@@ -15,6 +15,7 @@ package org.eclipse.jetty.io;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 
@@ -67,6 +68,14 @@ public class NetworkTrafficSocketChannelEndPoint extends SocketChannelEndPoint
         return flushed;
     }
 
+    @Override
+    public long transferFrom(FileChannel file, long position, long count)
+    {
+        // Listeners must be notified of the outgoing bytes,
+        // so they must be written via flush(ByteBuffer...).
+        return -1;
+    }
+
     @Override
     public void onOpen()
     {
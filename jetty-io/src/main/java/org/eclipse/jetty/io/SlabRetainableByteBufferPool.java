@@ -0,0 +1,674 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.Pool;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.component.Dumpable;
+import org.eclipse.jetty.util.component.DumpableCollection;
+import org.eclipse.jetty.util.thread.AutoLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>A {@link RetainableByteBufferPool} that carves fixed-size buffers out of large
+ * pre-allocated memory regions, called slabs.</p>
+ * <p>Like {@link ArrayRetainableByteBufferPool}, buffers are held in buckets whose
+ * capacities are multiples of the capacity {@code factor}.
+ * Rather than allocating each pooled buffer separately, a bucket allocates a slab and
+ * slices it into buffers of the bucket capacity.
+ * Slabs are allocated lazily: the first slab of a bucket holds a single buffer, and each
+ * following slab doubles in size up to {@code slabCapacity}, so that buckets that are
+ * rarely used retain little memory.
+ * Once sliced, the buffers are recycled through the bucket, so the memory used by the pool
+ * only grows in slab-sized steps up to the configured maximum, and no {@code Cleaner}
+ * work is generated in steady state.</p>
+ * <p>{@link #clear()} retires the current slabs: the idle buffers of a retired slab are
+ * discarded, and the slab memory is released once the last of its buffers in use is released.</p>
+ * <p>Direct slabs may be memory-mapped from temporary files in a given directory
+ * rather than being allocated with {@link ByteBuffer#allocateDirect(int)}.</p>
+ * <p>Each bucket may be split into a number of bounded lanes; each thread is assigned a lane
+ * of this pool, in round-robin order, the first time it acquires a buffer, so that, with as
+ * many lanes as selector threads, each selector thread recycles its own buffers without
+ * contending with the others.</p>
+ * <p>Requests that cannot be satisfied from a bucket, because the capacity is out of range,
+ * because the lane is full or because the maximum memory has been reached, are served by
+ * non-pooled buffers.</p>
+ */
+@ManagedObject
+public class SlabRetainableByteBufferPool implements RetainableByteBufferPool, Dumpable
+{
+    private static final Logger LOG = LoggerFactory.getLogger(SlabRetainableByteBufferPool.class);
+    private static final int DEFAULT_MAX_BUCKET_SIZE = 1024;
+    private static final int IDLE = 0;
+    private static final int IN_USE = 1;
+    private static final int DISCARDED = -1;
+
+    private final AtomicInteger _laneIds = new AtomicInteger();
+    private final ThreadLocal<Integer> _lane;
+    private final Bucket[] _direct;
+    private final Bucket[] _indirect;
+    private final int _minCapacity;
+    private final int _maxCapacity;
+    private final int _factor;
+    private final int _maxBucketSize;
+    private final int _slabCapacity;
+    private final int _lanes;
+    private final long _maxHeapMemory;
+    private final long _maxDirectMemory;
+    private final Path _mappedDirectory;
+    private final AtomicLong _currentHeapMemory = new AtomicLong();
+    private final AtomicLong _currentDirectMemory = new AtomicLong();
+
+    /**
+     * Creates a new SlabRetainableByteBufferPool with a default configuration.
+     */
+    public SlabRetainableByteBufferPool()
+    {
+        this(0, -1, -1, -1, -1L, -1L);
+    }
+
+    /**
+     * Creates a new SlabRetainableByteBufferPool with the given configuration.
+     *
+     * @param minCapacity the minimum pooled buffer capacity
+     * @param factor the capacity factor
+     * @param maxCapacity the maximum pooled buffer capacity
+     * @param slabCapacity the max capacity of a slab, or -1 for a default of 1 MiB
+     * @param maxHeapMemory the max heap memory in bytes held by slabs, -1 for unlimited memory
+     * @param maxDirectMemory the max direct memory in bytes held by slabs, -1 for unlimited memory
+     */
+    public SlabRetainableByteBufferPool(int minCapacity, int factor, int maxCapacity, int slabCapacity, long maxHeapMemory, long maxDirectMemory)
+    {
+        this(minCapacity, factor, maxCapacity, -1, slabCapacity, maxHeapMemory, maxDirectMemory, 1, null);
+    }
+
+    /**
+     * Creates a new SlabRetainableByteBufferPool with the given configuration.
+     *
+     * @param minCapacity the minimum pooled buffer capacity
+     * @param factor the capacity factor
+     * @param maxCapacity the maximum pooled buffer capacity
+     * @param maxBucketSize the max number of buffers in each bucket, shared among its lanes,
+     * or -1 for a default of 1024
+     * @param slabCapacity the max capacity of a slab, or -1 for a default of 1 MiB
+     * @param maxHeapMemory the max heap memory in bytes held by slabs, -1 for unlimited memory
+     * @param maxDirectMemory the max direct memory in bytes held by slabs, -1 for unlimited memory
+     * @param lanes the number of lanes each bucket is split into, typically the number of selectors
+     * @param mappedDirectory the directory where to create the files backing direct slabs,
+     * or null to allocate direct slabs with {@link ByteBuffer#allocateDirect(int)}
+     */
+    public SlabRetainableByteBufferPool(int minCapacity, int factor, int maxCapacity, int maxBucketSize, int slabCapacity, long maxHeapMemory, long maxDirectMemory, int lanes, Path mappedDirectory)
+    {
+        if (minCapacity <= 0)
+            minCapacity = 0;
+        if (maxCapacity <= 0)
+            maxCapacity = 64 * 1024;
+        if (maxBucketSize <= 0)
+            maxBucketSize = DEFAULT_MAX_BUCKET_SIZE;
+        if (slabCapacity <= 0)
+            slabCapacity = 1024 * 1024;
+        if (lanes <= 0)
+            lanes = 1;
+
+        int f = factor <= 0 ? 1024 : factor;
+        if ((maxCapacity % f) != 0 || f >= maxCapacity)
+            throw new IllegalArgumentException("The capacity factor must be a divisor of maxCapacity");
+        if (slabCapacity < maxCapacity)
+            throw new IllegalArgumentException("The slab capacity must not be less than maxCapacity");
+
+        int laneSize = Math.max(1, (maxBucketSize + lanes - 1) / lanes);
+        int length = maxCapacity / f;
+        Bucket[] directArray = new Bucket[length];
+        Bucket[] indirectArray = new Bucket[length];
+        for (int i = 0; i < length; i++)
+        {
+            int capacity = (i + 1) * f;
+            directArray[i] = new Bucket(capacity, true, slabCapacity, lanes, laneSize);
+            indirectArray[i] = new Bucket(capacity, false, slabCapacity, lanes, laneSize);
+        }
+
+        int laneCount = lanes;
+        _lane = ThreadLocal.withInitial(() -> Math.floorMod(_laneIds.getAndIncrement(), laneCount));
+        _minCapacity = minCapacity;
+        _maxCapacity = maxCapacity;
+        _factor = f;
+        _maxBucketSize = maxBucketSize;
+        _slabCapacity = slabCapacity;
+        _lanes = lanes;
+        _direct = directArray;
+        _indirect = indirectArray;
+        _maxHeapMemory = maxHeapMemory;
+        _maxDirectMemory = maxDirectMemory;
+        _mappedDirectory = mappedDirectory;
+    }
+
+    @ManagedAttribute("The minimum pooled buffer capacity")
+    public int getMinCapacity()
+    {
+        return _minCapacity;
+    }
+
+    @ManagedAttribute("The maximum pooled buffer capacity")
+    public int getMaxCapacity()
+    {
+        return _maxCapacity;
+    }
+
+    @ManagedAttribute("The max number of buffers in each bucket")
+    public int getMaxBucketSize()
+    {
+        return _maxBucketSize;
+    }
+
+    @ManagedAttribute("The max capacity of a slab")
+    public int getSlabCapacity()
+    {
+        return _slabCapacity;
+    }
+
+    @ManagedAttribute("The number of lanes of each bucket")
+    public int getLanes()
+    {
+        return _lanes;
+    }
+
+    @ManagedAttribute("Whether direct slabs are memory-mapped")
+    public boolean isMapped()
+    {
+        return _mappedDirectory != null;
+    }
+
+    @Override
+    public RetainableByteBuffer acquire(int size, boolean direct)
+    {
+        Bucket bucket = bucketFor(size, direct);
+        if (bucket == null)
+            return newRetainableByteBuffer(size, direct);
+
+        Pool<Slice> lane = bucket.lane(_lane.get());
+        while (true)
+        {
+            Pool<Slice>.Entry entry = lane.acquire();
+            if (entry == null)
+                break;
+            Slice slice = entry.getPooled();
+            if (slice.tryAcquire())
+                return slice._buffer;
+        }
+
+        Pool<Slice>.Entry reservedEntry = lane.reserve();
+        if (reservedEntry == null)
+            return newRetainableByteBuffer(size, direct);
+
+        Slice slice = bucket.newSlice(reservedEntry);
+        if (slice == null)
+        {
+            reservedEntry.remove();
+            return newRetainableByteBuffer(size, direct);
+        }
+
+        slice._buffer.acquire();
+        reservedEntry.enable(slice, true);
+        return slice._buffer;
+    }
+
+    private RetainableByteBuffer newRetainableByteBuffer(int capacity, boolean direct)
+    {
+        ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        BufferUtil.clear(buffer);
+        RetainableByteBuffer retainableByteBuffer = new RetainableByteBuffer(buffer, byteBuffer -> {});
+        retainableByteBuffer.acquire();
+        return retainableByteBuffer;
+    }
+
+    private Bucket bucketFor(int capacity, boolean direct)
+    {
+        if (capacity < _minCapacity)
+            return null;
+        int idx = (capacity - 1) / _factor;
+        Bucket[] buckets = direct ? _direct : _indirect;
+        if (idx >= buckets.length)
+            return null;
+        return buckets[idx];
+    }
+
+    private ByteBuffer newSlab(int capacity, int minCapacity, boolean direct)
+    {
+        AtomicLong memory = direct ? _currentDirectMemory : _currentHeapMemory;
+        long maxMemory = direct ? _maxDirectMemory : _maxHeapMemory;
+        int slabCapacity;
+        while (true)
+        {
+            long current = memory.get();
+            slabCapacity = capacity;
+            if (maxMemory > 0 && current + slabCapacity > maxMemory)
+            {
+                // Use the memory that is left, in multiples of the bucket capacity.
+                slabCapacity = (int)((maxMemory - current) / minCapacity) * minCapacity;
+                if (slabCapacity <= 0)
+                {
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("cannot allocate {} {} slab bytes, max memory {} reached", capacity, direct ? "direct" : "heap", maxMemory);
+                    return null;
+                }
+            }
+            if (memory.compareAndSet(current, current + slabCapacity))
+                break;
+        }
+
+        try
+        {
+            if (!direct)
+                return ByteBuffer.allocate(slabCapacity);
+            if (_mappedDirectory == null)
+                return ByteBuffer.allocateDirect(slabCapacity);
+            return map(slabCapacity);
+        }
+        catch (Throwable x)
+        {
+            memory.addAndGet(-slabCapacity);
+            throw x;
+        }
+    }
+
+    private void freeSlab(ByteBuffer slab)
+    {
+        AtomicLong memory = slab.isDirect() ? _currentDirectMemory : _currentHeapMemory;
+        memory.addAndGet(-slab.capacity());
+    }
+
+    private ByteBuffer map(int capacity)
+    {
+        try
+        {
+            Path file = Files.createTempFile(_mappedDirectory, "slab-", ".bin");
+            // The mapping outlives the channel and the deleted file.
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE))
+            {
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            }
+        }
+        catch (IOException x)
+        {
+            throw new RuntimeIOException(x);
+        }
+    }
+
+    @ManagedAttribute("The number of direct slabs")
+    public long getDirectSlabCount()
+    {
+        return getSlabCount(true);
+    }
+
+    @ManagedAttribute("The number of heap slabs")
+    public long getHeapSlabCount()
+    {
+        return getSlabCount(false);
+    }
+
+    private long getSlabCount(boolean direct)
+    {
+        Bucket[] buckets = direct ? _direct : _indirect;
+        return Arrays.stream(buckets).mapToLong(Bucket::getSlabCount).sum();
+    }
+
+    @ManagedAttribute("The number of pooled direct ByteBuffers")
+    public long getDirectByteBufferCount()
+    {
+        return getByteBufferCount(true);
+    }
+
+    @ManagedAttribute("The number of pooled heap ByteBuffers")
+    public long getHeapByteBufferCount()
+    {
+        return getByteBufferCount(false);
+    }
+
+    private long getByteBufferCount(boolean direct)
+    {
+        Bucket[] buckets = direct ? _direct : _indirect;
+        return Arrays.stream(buckets).mapToLong(Bucket::getSize).sum();
+    }
+
+    @ManagedAttribute("The number of pooled direct ByteBuffers that are available")
+    public long getAvailableDirectByteBufferCount()
+    {
+        return getAvailableByteBufferCount(true);
+    }
+
+    @ManagedAttribute("The number of pooled heap ByteBuffers that are available")
+    public long getAvailableHeapByteBufferCount()
+    {
+        return getAvailableByteBufferCount(false);
+    }
+
+    private long getAvailableByteBufferCount(boolean direct)
+    {
+        Bucket[] buckets = direct ? _direct : _indirect;
+        return Arrays.stream(buckets).mapToLong(Bucket::getIdleCount).sum();
+    }
+
+    @ManagedAttribute("The bytes retained by direct slabs")
+    public long getDirectMemory()
+    {
+        return _currentDirectMemory.get();
+    }
+
+    @ManagedAttribute("The bytes retained by heap slabs")
+    public long getHeapMemory()
+    {
+        return _currentHeapMemory.get();
+    }
+
+    @ManagedAttribute("The occupancy of the direct buckets")
+    public List<String> getDirectBucketOccupancy()
+    {
+        return getBucketOccupancy(true);
+    }
+
+    @ManagedAttribute("The occupancy of the heap buckets")
+    public List<String> getHeapBucketOccupancy()
+    {
+        return getBucketOccupancy(false);
+    }
+
+    private List<String> getBucketOccupancy(boolean direct)
+    {
+        Bucket[] buckets = direct ? _direct : _indirect;
+        return Arrays.stream(buckets)
+            .filter(bucket -> bucket.getSlabCount() > 0)
+            .map(Bucket::toOccupancyString)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * <p>Retires all the slabs of this pool.</p>
+     * <p>Idle buffers carved from the retired slabs are discarded immediately,
+     * while buffers in use are discarded when they are released; the memory
+     * of a retired slab is released with its last buffer.</p>
+     */
+    @ManagedOperation(value = "Clears this RetainableByteBufferPool", impact = "ACTION")
+    public void clear()
+    {
+        Arrays.stream(_direct).forEach(Bucket::clear);
+        Arrays.stream(_indirect).forEach(Bucket::clear);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s{min=%d,max=%d,slab=%d,lanes=%d,buckets=%d,heap=%d/%d,direct=%d/%d}",
+            super.toString(),
+            _minCapacity, _maxCapacity,
+            _slabCapacity, _lanes,
+            _direct.length,
+            _currentHeapMemory.get(), _maxHeapMemory,
+            _currentDirectMemory.get(), _maxDirectMemory);
+    }
+
+    @Override
+    public void dump(Appendable out, String indent) throws IOException
+    {
+        Dumpable.dumpObjects(
+            out,
+            indent,
+            this,
+            DumpableCollection.fromArray("direct", _direct),
+            DumpableCollection.fromArray("indirect", _indirect));
+    }
+
+    /**
+     * <p>A slab, referenced by the bucket until it is retired and by each of its slices.</p>
+     */
+    private class Slab
+    {
+        private final AtomicInteger _references = new AtomicInteger(1);
+        private final ByteBuffer _buffer;
+        private volatile boolean _retired;
+
+        private Slab(ByteBuffer buffer)
+        {
+            _buffer = buffer;
+        }
+
+        private void retain()
+        {
+            _references.incrementAndGet();
+        }
+
+        private void release()
+        {
+            if (_references.decrementAndGet() == 0)
+                freeSlab(_buffer);
+        }
+
+        private void retire()
+        {
+            _retired = true;
+            release();
+        }
+
+        private boolean isRetired()
+        {
+            return _retired;
+        }
+    }
+
+    /**
+     * <p>A buffer carved from a slab, along with its pool entry.</p>
+     * <p>The slice state, rather than the pool entry state, tells whether the slice
+     * has been discarded because its slab was retired, so that the slab is released
+     * exactly once for each of its slices.</p>
+     */
+    private class Slice
+    {
+        private final AtomicInteger _state = new AtomicInteger(IN_USE);
+        private final Slab _slab;
+        private final Pool<Slice>.Entry _entry;
+        private final RetainableByteBuffer _buffer;
+
+        private Slice(ByteBuffer buffer, Slab slab, Pool<Slice>.Entry entry)
+        {
+            _slab = slab;
+            _entry = entry;
+            _buffer = new RetainableByteBuffer(buffer, this::release);
+        }
+
+        private boolean tryAcquire()
+        {
+            // Fails if clear() discarded this slice, and will remove the entry.
+            if (!_state.compareAndSet(IDLE, IN_USE))
+                return false;
+            if (_slab.isRetired())
+            {
+                discard(IN_USE);
+                return false;
+            }
+            _buffer.acquire();
+            return true;
+        }
+
+        private void release(ByteBuffer byteBuffer)
+        {
+            BufferUtil.reset(byteBuffer);
+            if (_slab.isRetired())
+            {
+                discard(IN_USE);
+                return;
+            }
+            _state.set(IDLE);
+            _entry.release();
+            // The slab may have been retired concurrently,
+            // after clear() has scanned the idle slices.
+            if (_slab.isRetired())
+                discard(IDLE);
+        }
+
+        private void discard(int state)
+        {
+            if (_state.compareAndSet(state, DISCARDED))
+            {
+                _entry.remove();
+                _slab.release();
+            }
+        }
+    }
+
+    private class Bucket
+    {
+        private final AutoLock _lock = new AutoLock();
+        private final List<Slab> _slabs = new ArrayList<>();
+        private final int _capacity;
+        private final boolean _direct;
+        private final int _maxSlabCapacity;
+        private final Pool<Slice>[] _lanes;
+        private Slab _slab;
+        private int _nextSlabCapacity;
+
+        @SuppressWarnings("unchecked")
+        private Bucket(int capacity, boolean direct, int slabCapacity, int lanes, int laneSize)
+        {
+            _capacity = capacity;
+            _direct = direct;
+            // Round the slab capacity down to a multiple of the bucket capacity.
+            _maxSlabCapacity = (slabCapacity / capacity) * capacity;
+            _nextSlabCapacity = capacity;
+            _lanes = new Pool[lanes];
+            for (int i = 0; i < lanes; ++i)
+            {
+                _lanes[i] = new Pool<>(Pool.StrategyType.THREAD_ID, laneSize, true);
+            }
+        }
+
+        private Pool<Slice> lane(int index)
+        {
+            return _lanes[index];
+        }
+
+        private Slice newSlice(Pool<Slice>.Entry entry)
+        {
+            try (AutoLock l = _lock.lock())
+            {
+                if (_slab == null || _slab._buffer.remaining() < _capacity)
+                {
+                    ByteBuffer buffer = newSlab(_nextSlabCapacity, _capacity, _direct);
+                    if (buffer == null)
+                        return null;
+                    _slab = new Slab(buffer);
+                    _slabs.add(_slab);
+                    _nextSlabCapacity = (int)Math.min(2L * _nextSlabCapacity, _maxSlabCapacity);
+                }
+                ByteBuffer slab = _slab._buffer;
+                int position = slab.position();
+                slab.limit(position + _capacity);
+                ByteBuffer slice = slab.slice();
+                slab.limit(slab.capacity());
+                slab.position(position + _capacity);
+                BufferUtil.clear(slice);
+                _slab.retain();
+                return new Slice(slice, _slab, entry);
+            }
+        }
+
+        private void clear()
+        {
+            List<Slab> slabs;
+            try (AutoLock l = _lock.lock())
+            {
+                slabs = new ArrayList<>(_slabs);
+                _slabs.clear();
+                _slab = null;
+                _nextSlabCapacity = _capacity;
+            }
+            slabs.forEach(Slab::retire);
+
+            for (Pool<Slice> lane : _lanes)
+            {
+                for (Pool<Slice>.Entry entry : lane.values())
+                {
+                    Slice slice = entry.getPooled();
+                    if (slice != null && slice._slab.isRetired())
+                        slice.discard(IDLE);
+                }
+            }
+        }
+
+        private int getSlabCount()
+        {
+            try (AutoLock l = _lock.lock())
+            {
+                return _slabs.size();
+            }
+        }
+
+        private long getSliceCount()
+        {
+            try (AutoLock l = _lock.lock())
+            {
+                return _slabs.stream().mapToLong(slab -> slab._buffer.capacity() / _capacity).sum();
+            }
+        }
+
+        private long getSize()
+        {
+            return Arrays.stream(_lanes).mapToLong(Pool::size).sum();
+        }
+
+        private long getIdleCount()
+        {
+            return Arrays.stream(_lanes).mapToLong(Pool::getIdleCount).sum();
+        }
+
+        private long getInUseCount()
+        {
+            return Arrays.stream(_lanes).mapToLong(Pool::getInUseCount).sum();
+        }
+
+        private String toOccupancyString()
+        {
+            long slices = getSliceCount();
+            long inUse = getInUseCount();
+            return String.format("capacity=%d,slabs=%d,slices=%d,pooled=%d,inuse=%d(%d%%)",
+                _capacity,
+                getSlabCount(),
+                slices,
+                getSize(),
+                inUse,
+                slices > 0 ? (inUse * 100) / slices : 0);
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x{%s}", getClass().getSimpleName(), hashCode(), toOccupancyString());
+        }
+    }
+}
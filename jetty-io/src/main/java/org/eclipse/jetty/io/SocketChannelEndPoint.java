@@ -16,6 +16,7 @@ package org.eclipse.jetty.io;
 import java.io.IOException;
 import java.net.SocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 
@@ -127,4 +128,40 @@ public class SocketChannelEndPoint extends SelectableChannelEndPoint
 
         return true;
     }
+
+    /**
+     * <p>Writes bytes from the given file directly to the socket, without copying
+     * them through user space, via {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}.</p>
+     * <p>Like {@link #flush(ByteBuffer...)}, this method does not block: it returns
+     * {@code 0} if the socket cannot accept more bytes, in which case the caller may
+     * write via {@link #write(org.eclipse.jetty.util.Callback, ByteBuffer...)} to be
+     * notified when the socket is writable again.</p>
+     * <p>The caller must ensure that no write is pending on this endpoint.</p>
+     *
+     * @param file the file to read the bytes from
+     * @param position the position in the file of the first byte to transfer
+     * @param count the maximum number of bytes to transfer
+     * @return the number of bytes transferred, possibly 0, or -1 if this endpoint
+     * does not support transfers and the bytes must be written via {@link #flush(ByteBuffer...)}
+     * @throws IOException if the transfer fails
+     */
+    public long transferFrom(FileChannel file, long position, long count) throws IOException
+    {
+        long transferred;
+        try
+        {
+            transferred = file.transferTo(position, count, getChannel());
+            if (LOG.isDebugEnabled())
+                LOG.debug("transferred {}/{} from {} {}", transferred, count, file, this);
+        }
+        catch (IOException e)
+        {
+            throw new EofException(e);
+        }
+
+        if (transferred > 0)
+            notIdle();
+
+        return transferred;
+    }
 }
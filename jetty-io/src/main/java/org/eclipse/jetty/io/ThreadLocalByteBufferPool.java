@@ -0,0 +1,470 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.io;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.ProcessorUtils;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.component.ContainerLifeCycle;
+
+/**
+ * <p>A {@link ByteBufferPool} that caches released buffers in thread-affine magazines
+ * in front of a shared delegate pool.</p>
+ * <p>The magazines are grouped in a fixed number of lanes, by default one per core,
+ * so that there is about one lane per selector thread or per carrier thread of
+ * virtual threads. Each thread always uses the same lane, so that threads that
+ * repeatedly acquire and release buffers of the same capacity, such as selector
+ * threads, are served from their lane without touching the data structures of
+ * the delegate pool. A lane is used by one thread at a time: when it is busy,
+ * buffers are acquired from and released to the delegate pool.</p>
+ * <p>Magazines hold at most {@code magazineSize} buffers per capacity, and all the
+ * lanes together retain at most {@code maxHeapMemory} and {@code maxDirectMemory}
+ * bytes; buffers released to a full magazine overflow to the delegate pool, and
+ * acquires from an empty magazine are served by the delegate pool.
+ * When the delegate pool is an {@link ArrayByteBufferPool}, the bytes retained by
+ * the magazines are included in its memory figures and bounded by its maximums.</p>
+ * <p>The capacities of the cached buffers are multiples of the capacity {@code factor}
+ * up to {@code maxCapacity}, which should be the same as the ones of the delegate
+ * pool, so that the delegate pool returns buffers that can be cached.
+ * Other buffers are always acquired from and released to the delegate pool.</p>
+ */
+@ManagedObject
+public class ThreadLocalByteBufferPool extends ContainerLifeCycle implements ByteBufferPool
+{
+    private final AtomicLong _heapMemory = new AtomicLong();
+    private final AtomicLong _directMemory = new AtomicLong();
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+    private final LongAdder _overflows = new LongAdder();
+    private final ByteBufferPool _delegate;
+    private final int _factor;
+    private final int _maxCapacity;
+    private final int _magazineSize;
+    private final long _maxHeapMemory;
+    private final long _maxDirectMemory;
+    private final Lane[] _lanes;
+
+    /**
+     * Creates a new ThreadLocalByteBufferPool in front of an {@link ArrayByteBufferPool}
+     * with a default configuration.
+     */
+    public ThreadLocalByteBufferPool()
+    {
+        this(new ArrayByteBufferPool(), -1, -1, -1);
+    }
+
+    /**
+     * Creates a new ThreadLocalByteBufferPool with the given configuration,
+     * one lane per core and the default memory limits.
+     *
+     * @param delegate the shared pool that buffers are acquired from when a magazine is empty
+     * and released to when a magazine is full
+     * @param factor the capacity factor, or -1 for a default of 1024
+     * @param maxCapacity the maximum cached buffer capacity, or -1 for a default of 64 KiB
+     * @param magazineSize the maximum number of buffers cached per lane and per capacity, or -1 for a default of 8
+     */
+    public ThreadLocalByteBufferPool(ByteBufferPool delegate, int factor, int maxCapacity, int magazineSize)
+    {
+        this(delegate, factor, maxCapacity, magazineSize, -1, 0, 0);
+    }
+
+    /**
+     * Creates a new ThreadLocalByteBufferPool with the given configuration.
+     *
+     * @param delegate the shared pool that buffers are acquired from when a magazine is empty
+     * and released to when a magazine is full
+     * @param factor the capacity factor, or -1 for a default of 1024
+     * @param maxCapacity the maximum cached buffer capacity, or -1 for a default of 64 KiB
+     * @param magazineSize the maximum number of buffers cached per lane and per capacity, or -1 for a default of 8
+     * @param lanes the number of lanes, or -1 for one lane per core
+     * @param maxHeapMemory the max heap memory in bytes cached by all the lanes, -1 for unlimited memory or 0 to use default heuristic
+     * @param maxDirectMemory the max direct memory in bytes cached by all the lanes, -1 for unlimited memory or 0 to use default heuristic
+     */
+    public ThreadLocalByteBufferPool(ByteBufferPool delegate, int factor, int maxCapacity, int magazineSize, int lanes, long maxHeapMemory, long maxDirectMemory)
+    {
+        if (factor <= 0)
+            factor = 1024;
+        if (maxCapacity <= 0)
+            maxCapacity = 64 * 1024;
+        if (magazineSize < 0)
+            magazineSize = 8;
+        if (lanes <= 0)
+            lanes = ProcessorUtils.availableProcessors();
+        if ((maxCapacity % factor) != 0 || factor >= maxCapacity)
+            throw new IllegalArgumentException("The capacity factor must be a divisor of maxCapacity");
+        _delegate = delegate;
+        _factor = factor;
+        _maxCapacity = maxCapacity;
+        _magazineSize = magazineSize;
+        _maxHeapMemory = (maxHeapMemory != 0) ? maxHeapMemory : Runtime.getRuntime().maxMemory() / 16;
+        _maxDirectMemory = (maxDirectMemory != 0) ? maxDirectMemory : Runtime.getRuntime().maxMemory() / 16;
+        _lanes = new Lane[lanes];
+        for (int i = 0; i < lanes; ++i)
+        {
+            _lanes[i] = new Lane(maxCapacity / factor);
+        }
+        addBean(delegate);
+    }
+
+    public ByteBufferPool getDelegate()
+    {
+        return _delegate;
+    }
+
+    @ManagedAttribute("The capacity factor")
+    public int getCapacityFactor()
+    {
+        return _factor;
+    }
+
+    @ManagedAttribute("The maximum cached buffer capacity")
+    public int getMaxCapacity()
+    {
+        return _maxCapacity;
+    }
+
+    @ManagedAttribute("The maximum number of buffers cached per lane and per capacity")
+    public int getMagazineSize()
+    {
+        return _magazineSize;
+    }
+
+    @ManagedAttribute("The number of lanes")
+    public int getLanes()
+    {
+        return _lanes.length;
+    }
+
+    @ManagedAttribute("The bytes retained by cached direct ByteBuffers")
+    public long getDirectMemory()
+    {
+        return _directMemory.get();
+    }
+
+    @ManagedAttribute("The bytes retained by cached heap ByteBuffers")
+    public long getHeapMemory()
+    {
+        return _heapMemory.get();
+    }
+
+    @ManagedAttribute("The max num of bytes that can be retained by cached direct ByteBuffers")
+    public long getMaxDirectMemory()
+    {
+        return _maxDirectMemory;
+    }
+
+    @ManagedAttribute("The max num of bytes that can be retained by cached heap ByteBuffers")
+    public long getMaxHeapMemory()
+    {
+        return _maxHeapMemory;
+    }
+
+    @ManagedAttribute("The number of acquires served by a magazine")
+    public long getHits()
+    {
+        return _hits.sum();
+    }
+
+    @ManagedAttribute("The number of acquires served by the delegate pool")
+    public long getMisses()
+    {
+        return _misses.sum();
+    }
+
+    @ManagedAttribute("The number of releases to a full magazine, a busy lane or beyond the max memory")
+    public long getOverflows()
+    {
+        return _overflows.sum();
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStats()
+    {
+        _hits.reset();
+        _misses.reset();
+        _overflows.reset();
+    }
+
+    @Override
+    public ByteBuffer acquire(int size, boolean direct)
+    {
+        int index = indexFor(size);
+        if (index >= 0)
+        {
+            ByteBuffer buffer = null;
+            Lane lane = lane();
+            if (lane.tryLock())
+            {
+                try
+                {
+                    buffer = lane.poll(index, direct);
+                }
+                finally
+                {
+                    lane.unlock();
+                }
+            }
+            if (buffer != null)
+            {
+                updateMemory(-buffer.capacity(), direct);
+                _hits.increment();
+                return buffer;
+            }
+            _misses.increment();
+        }
+        return _delegate.acquire(size, direct);
+    }
+
+    @Override
+    public void release(ByteBuffer buffer)
+    {
+        if (buffer == null)
+            return;
+
+        int capacity = buffer.capacity();
+        int index = indexFor(capacity);
+        // Only cache buffers whose capacity is exactly the one of their index.
+        if (index >= 0 && capacity == (index + 1) * _factor)
+        {
+            boolean direct = buffer.isDirect();
+            if (reserveMemory(capacity, direct))
+            {
+                BufferUtil.reset(buffer);
+                boolean cached = false;
+                Lane lane = lane();
+                if (lane.tryLock())
+                {
+                    try
+                    {
+                        cached = lane.offer(index, buffer);
+                    }
+                    finally
+                    {
+                        lane.unlock();
+                    }
+                }
+                if (cached)
+                    return;
+                updateMemory(-capacity, direct);
+            }
+            _overflows.increment();
+        }
+        _delegate.release(buffer);
+    }
+
+    @Override
+    public void remove(ByteBuffer buffer)
+    {
+        _delegate.remove(buffer);
+    }
+
+    @Override
+    public ByteBuffer newByteBuffer(int capacity, boolean direct)
+    {
+        return _delegate.newByteBuffer(capacity, direct);
+    }
+
+    /**
+     * <p>Discards the buffers cached by all the lanes.</p>
+     * <p>Lanes that are in use are discarded as soon as the thread using them
+     * has completed its acquire or release.</p>
+     */
+    @ManagedOperation(value = "Discards the buffers cached by all the lanes", impact = "ACTION")
+    public void clear()
+    {
+        for (Lane lane : _lanes)
+        {
+            lane.lock();
+            try
+            {
+                lane.clear();
+            }
+            finally
+            {
+                lane.unlock();
+            }
+        }
+    }
+
+    private Lane lane()
+    {
+        return _lanes[(int)(Thread.currentThread().getId() % _lanes.length)];
+    }
+
+    private int indexFor(int capacity)
+    {
+        if (capacity <= 0 || capacity > _maxCapacity)
+            return -1;
+        return (capacity - 1) / _factor;
+    }
+
+    /**
+     * <p>Reserves the memory for a buffer to cache, if that does not exceed
+     * the max memory of this pool and of the delegate pool.</p>
+     *
+     * @param capacity the capacity of the buffer to cache
+     * @param direct whether the buffer is direct
+     * @return whether the memory has been reserved
+     */
+    private boolean reserveMemory(int capacity, boolean direct)
+    {
+        long maxMemory = direct ? _maxDirectMemory : _maxHeapMemory;
+        AbstractByteBufferPool delegate = _delegate instanceof AbstractByteBufferPool ? (AbstractByteBufferPool)_delegate : null;
+        if (delegate != null)
+        {
+            // The delegate pool must never need to release the bytes cached
+            // by the lanes to satisfy its own limit, as it cannot release them.
+            long delegateMaxMemory = direct ? delegate.getMaxDirectMemory() : delegate.getMaxHeapMemory();
+            if (delegateMaxMemory > 0)
+            {
+                if (delegate.getMemory(direct) + capacity > delegateMaxMemory)
+                    return false;
+                maxMemory = maxMemory > 0 ? Math.min(maxMemory, delegateMaxMemory) : delegateMaxMemory;
+            }
+        }
+
+        AtomicLong memory = direct ? _directMemory : _heapMemory;
+        while (true)
+        {
+            long current = memory.get();
+            long next = current + capacity;
+            if (maxMemory > 0 && next > maxMemory)
+                return false;
+            if (memory.compareAndSet(current, next))
+                break;
+        }
+        if (delegate != null)
+            delegate.updateMemory(direct).accept(capacity);
+        return true;
+    }
+
+    private void updateMemory(int delta, boolean direct)
+    {
+        (direct ? _directMemory : _heapMemory).addAndGet(delta);
+        if (_delegate instanceof AbstractByteBufferPool)
+            ((AbstractByteBufferPool)_delegate).updateMemory(direct).accept(delta);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{factor=%d,max=%d,magazine=%d,lanes=%d,heap=%d/%d,direct=%d/%d,hits=%d,misses=%d,overflows=%d,delegate=%s}",
+            getClass().getSimpleName(),
+            hashCode(),
+            _factor,
+            _maxCapacity,
+            _magazineSize,
+            _lanes.length,
+            getHeapMemory(),
+            getMaxHeapMemory(),
+            getDirectMemory(),
+            getMaxDirectMemory(),
+            getHits(),
+            getMisses(),
+            getOverflows(),
+            _delegate);
+    }
+
+    /**
+     * <p>The magazines of a lane, one per capacity and directness.</p>
+     * <p>Only accessed while holding the lane, which is non-blocking for
+     * acquires and releases, so that a busy lane is skipped rather than
+     * waited for.</p>
+     */
+    private class Lane
+    {
+        private final AtomicBoolean _busy = new AtomicBoolean();
+        private final ArrayDeque<ByteBuffer>[] _direct;
+        private final ArrayDeque<ByteBuffer>[] _indirect;
+
+        @SuppressWarnings("unchecked")
+        private Lane(int length)
+        {
+            _direct = new ArrayDeque[length];
+            _indirect = new ArrayDeque[length];
+        }
+
+        private boolean tryLock()
+        {
+            return !_busy.get() && _busy.compareAndSet(false, true);
+        }
+
+        private void lock()
+        {
+            while (!tryLock())
+            {
+                Thread.onSpinWait();
+            }
+        }
+
+        private void unlock()
+        {
+            _busy.set(false);
+        }
+
+        private ByteBuffer poll(int index, boolean direct)
+        {
+            ArrayDeque<ByteBuffer> magazine = (direct ? _direct : _indirect)[index];
+            return magazine == null ? null : magazine.pollLast();
+        }
+
+        private boolean offer(int index, ByteBuffer buffer)
+        {
+            boolean direct = buffer.isDirect();
+            ArrayDeque<ByteBuffer>[] magazines = direct ? _direct : _indirect;
+            ArrayDeque<ByteBuffer> magazine = magazines[index];
+            if (magazine == null)
+            {
+                if (_magazineSize == 0)
+                    return false;
+                magazine = new ArrayDeque<>(_magazineSize);
+                magazines[index] = magazine;
+            }
+            if (magazine.size() >= _magazineSize)
+                return false;
+            magazine.offerLast(buffer);
+            return true;
+        }
+
+        private void clear()
+        {
+            for (int i = 0; i < _direct.length; ++i)
+            {
+                clear(_direct[i], true);
+                clear(_indirect[i], false);
+            }
+        }
+
+        private void clear(ArrayDeque<ByteBuffer> magazine, boolean direct)
+        {
+            if (magazine == null)
+                return;
+            while (true)
+            {
+                ByteBuffer buffer = magazine.pollLast();
+                if (buffer == null)
+                    break;
+                updateMemory(-buffer.capacity(), direct);
+            }
+        }
+    }
+}
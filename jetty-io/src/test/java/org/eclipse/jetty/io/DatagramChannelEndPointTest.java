@@ -0,0 +1,83 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.io;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.util.BufferUtil;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DatagramChannelEndPointTest
+{
+    @Test
+    public void testBatchedReceive() throws Exception
+    {
+        try (DatagramChannel senderChannel = DatagramChannel.open();
+             DatagramChannel receiverChannel = DatagramChannel.open())
+        {
+            InetAddress loopback = InetAddress.getLoopbackAddress();
+            senderChannel.bind(new InetSocketAddress(loopback, 0));
+            receiverChannel.bind(new InetSocketAddress(loopback, 0));
+            senderChannel.configureBlocking(false);
+            receiverChannel.configureBlocking(false);
+            DatagramChannelEndPoint sender = new DatagramChannelEndPoint(senderChannel, null, null, null);
+            DatagramChannelEndPoint receiver = new DatagramChannelEndPoint(receiverChannel, null, null, null);
+
+            int count = 5;
+            ByteBuffer[] buffers = new ByteBuffer[count];
+            for (int i = 0; i < count; ++i)
+            {
+                buffers[i] = BufferUtil.toBuffer("datagram" + i, StandardCharsets.UTF_8);
+            }
+            assertTrue(sender.send(receiverChannel.getLocalAddress(), buffers));
+
+            ByteBuffer[] received = new ByteBuffer[count + 1];
+            SocketAddress[] peers = new SocketAddress[received.length];
+            int total = 0;
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (total < count && System.nanoTime() < deadline)
+            {
+                ByteBuffer[] remaining = new ByteBuffer[received.length - total];
+                for (int i = 0; i < remaining.length; ++i)
+                {
+                    remaining[i] = BufferUtil.allocate(64);
+                }
+                int filled = receiver.receive(remaining, peers);
+                for (int i = 0; i < filled; ++i)
+                {
+                    assertEquals(senderChannel.getLocalAddress(), peers[i]);
+                    received[total++] = remaining[i];
+                }
+            }
+
+            // Each datagram is received in its own buffer.
+            assertEquals(count, total);
+            for (int i = 0; i < count; ++i)
+            {
+                assertEquals("datagram" + i, BufferUtil.toString(received[i], StandardCharsets.UTF_8));
+            }
+            assertNull(received[count]);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.io;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.TimerScheduler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+public class ManagedSelectorTest
+{
+    private final QueuedThreadPool executor = new QueuedThreadPool();
+    private final TimerScheduler scheduler = new TimerScheduler();
+    private SelectorManager selectorManager;
+
+    @BeforeEach
+    public void prepare() throws Exception
+    {
+        executor.start();
+        scheduler.start();
+    }
+
+    @AfterEach
+    public void dispose() throws Exception
+    {
+        if (selectorManager != null)
+            selectorManager.stop();
+        scheduler.stop();
+        executor.stop();
+    }
+
+    @Test
+    public void testSelectNowPassesReadyKeysToAction() throws Exception
+    {
+        ManagedSelector managedSelector = new ManagedSelector(new TestSelectorManager(null), 0);
+        try (Selector selector = Selector.open())
+        {
+            Pipe pipe = Pipe.open();
+            try (Pipe.SourceChannel source = pipe.source(); Pipe.SinkChannel sink = pipe.sink())
+            {
+                source.configureBlocking(false);
+                SelectionKey key = source.register(selector, SelectionKey.OP_READ);
+
+                List<SelectionKey> keys = new ArrayList<>();
+                assertEquals(0, managedSelector.nioSelect(selector, true, keys::add));
+                assertThat(keys, empty());
+
+                sink.write(BufferUtil.toBuffer("x"));
+                // Wait for the pipe to be readable.
+                assertEquals(1, managedSelector.nioSelect(selector, false, keys::add));
+                assertThat(keys, contains(key));
+                // Ready keys are not added to the selected-key set.
+                assertThat(selector.selectedKeys(), empty());
+
+                // The key is still ready, and passed again to the action.
+                keys.clear();
+                assertEquals(1, managedSelector.nioSelect(selector, true, keys::add));
+                assertThat(keys, contains(key));
+            }
+        }
+    }
+
+    @Test
+    public void testInterestUpdatesAndWakeups() throws Exception
+    {
+        AtomicInteger selects = new AtomicInteger();
+        selectorManager = new TestSelectorManager(id -> new ManagedSelector(selectorManager, id)
+        {
+            @Override
+            protected int select(Selector selector, Consumer<SelectionKey> action) throws IOException
+            {
+                selects.incrementAndGet();
+                return super.select(selector, action);
+            }
+        });
+        selectorManager.start();
+
+        testEcho();
+
+        assertThat(selects.get(), greaterThan(0));
+        ManagedSelector managedSelector = selectorManager.getBean(ManagedSelector.class);
+        // Registering the channel and each fill interest update wake up the selector.
+        assertThat(managedSelector.getWakeupCount(), greaterThan(0L));
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testDeprecatedSelectOverrideIsCalled() throws Exception
+    {
+        AtomicInteger selects = new AtomicInteger();
+        selectorManager = new TestSelectorManager(id -> new ManagedSelector(selectorManager, id)
+        {
+            @Override
+            protected int select(Selector selector) throws IOException
+            {
+                selects.incrementAndGet();
+                return super.select(selector);
+            }
+        });
+        selectorManager.start();
+
+        testEcho();
+
+        assertThat(selects.get(), greaterThan(0));
+    }
+
+    private void testEcho() throws Exception
+    {
+        try (ServerSocketChannel server = ServerSocketChannel.open())
+        {
+            server.bind(new InetSocketAddress("localhost", 0));
+            try (SocketChannel client = SocketChannel.open(server.getLocalAddress()))
+            {
+                SocketChannel channel = server.accept();
+                channel.configureBlocking(false);
+                selectorManager.accept(channel);
+
+                // Each line is read after a new fill interest update.
+                for (int i = 0; i < 3; i++)
+                {
+                    String line = "line" + i;
+                    client.write(BufferUtil.toBuffer(line, StandardCharsets.UTF_8));
+                    String read = ((TestSelectorManager)selectorManager).lines.poll(5, TimeUnit.SECONDS);
+                    assertNotNull(read);
+                    assertThat(read, is(line));
+                }
+            }
+        }
+    }
+
+    private class TestSelectorManager extends SelectorManager
+    {
+        private final BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+        private final IntFunction<ManagedSelector> selectorFactory;
+
+        private TestSelectorManager(IntFunction<ManagedSelector> selectorFactory)
+        {
+            super(executor, scheduler, 1);
+            this.selectorFactory = selectorFactory;
+        }
+
+        @Override
+        protected ManagedSelector newSelector(int id)
+        {
+            return selectorFactory == null ? super.newSelector(id) : selectorFactory.apply(id);
+        }
+
+        @Override
+        protected EndPoint newEndPoint(SelectableChannel channel, ManagedSelector selector, SelectionKey key)
+        {
+            return new SocketChannelEndPoint((SocketChannel)channel, selector, key, getScheduler());
+        }
+
+        @Override
+        public Connection newConnection(SelectableChannel channel, EndPoint endpoint, Object attachment)
+        {
+            return new AbstractConnection(endpoint, executor)
+            {
+                @Override
+                public void onOpen()
+                {
+                    super.onOpen();
+                    fillInterested();
+                }
+
+                @Override
+                public void onFillable()
+                {
+                    try
+                    {
+                        ByteBuffer buffer = BufferUtil.allocate(1024);
+                        int filled = getEndPoint().fill(buffer);
+                        if (filled > 0)
+                            lines.offer(BufferUtil.toString(buffer, StandardCharsets.UTF_8));
+                        if (filled >= 0)
+                            fillInterested();
+                    }
+                    catch (IOException x)
+                    {
+                        close();
+                    }
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,186 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.io;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jetty.toolchain.test.FS;
+import org.eclipse.jetty.toolchain.test.MavenTestingUtils;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.core.Is.is;
+
+public class SlabRetainableByteBufferPoolTest
+{
+    @Test
+    public void testBuffersAreSlicedFromGrowingSlabs()
+    {
+        SlabRetainableByteBufferPool pool = new SlabRetainableByteBufferPool(0, 10, 20, 100, -1, -1);
+
+        // Touching a bucket allocates a slab for a single buffer.
+        List<RetainableByteBuffer> buffers = new ArrayList<>();
+        buffers.add(pool.acquire(10, true));
+        assertThat(buffers.get(0).capacity(), is(10));
+        assertThat(buffers.get(0).isDirect(), is(true));
+        assertThat(buffers.get(0).remaining(), is(0));
+        assertThat(pool.getDirectSlabCount(), is(1L));
+        assertThat(pool.getDirectMemory(), is(10L));
+
+        // Following slabs double in size: 20, 40, 80, then are capped at 100.
+        for (int i = 1; i < 15; i++)
+        {
+            buffers.add(pool.acquire(10, true));
+        }
+        assertThat(pool.getDirectSlabCount(), is(4L));
+        assertThat(pool.getDirectMemory(), is(150L));
+        assertThat(pool.getDirectByteBufferCount(), is(15L));
+        assertThat(pool.getAvailableDirectByteBufferCount(), is(0L));
+
+        buffers.add(pool.acquire(10, true));
+        assertThat(pool.getDirectSlabCount(), is(5L));
+        assertThat(pool.getDirectMemory(), is(250L));
+        assertThat(pool.getDirectBucketOccupancy(), hasSize(1));
+
+        buffers.forEach(RetainableByteBuffer::release);
+        assertThat(pool.getAvailableDirectByteBufferCount(), is(16L));
+        assertThat(pool.getDirectMemory(), is(250L));
+    }
+
+    @Test
+    public void testReleasedBufferIsReused()
+    {
+        SlabRetainableByteBufferPool pool = new SlabRetainableByteBufferPool(0, 10, 20, 100, -1, -1);
+
+        RetainableByteBuffer buffer1 = pool.acquire(15, false);
+        assertThat(buffer1.capacity(), is(20));
+        buffer1.getBuffer().limit(1).put(0, (byte)1);
+        assertThat(buffer1.release(), is(true));
+
+        RetainableByteBuffer buffer2 = pool.acquire(20, false);
+        assertThat(buffer2, sameInstance(buffer1));
+        assertThat(buffer2.remaining(), is(0));
+        assertThat(pool.getHeapSlabCount(), is(1L));
+        assertThat(pool.getHeapByteBufferCount(), is(1L));
+        buffer2.release();
+    }
+
+    @Test
+    public void testMaxMemoryDoesNotPool()
+    {
+        SlabRetainableByteBufferPool pool = new SlabRetainableByteBufferPool(0, 10, 20, 40, -1, 40);
+
+        List<RetainableByteBuffer> buffers = new ArrayList<>();
+        for (int i = 0; i < 6; i++)
+        {
+            buffers.add(pool.acquire(10, true));
+        }
+
+        // Slabs of 10 and 20 bytes, then the 10 bytes left.
+        assertThat(pool.getDirectSlabCount(), is(3L));
+        assertThat(pool.getDirectMemory(), is(40L));
+        assertThat(pool.getDirectByteBufferCount(), is(4L));
+
+        buffers.forEach(RetainableByteBuffer::release);
+        assertThat(pool.getAvailableDirectByteBufferCount(), is(4L));
+
+        pool.clear();
+        assertThat(pool.getDirectSlabCount(), is(0L));
+        assertThat(pool.getDirectMemory(), is(0L));
+        assertThat(pool.getDirectByteBufferCount(), is(0L));
+    }
+
+    @Test
+    public void testClearRetiresSlabsInUse()
+    {
+        SlabRetainableByteBufferPool pool = new SlabRetainableByteBufferPool(0, 10, 20, 100, -1, -1);
+
+        RetainableByteBuffer buffer1 = pool.acquire(10, false);
+        RetainableByteBuffer buffer2 = pool.acquire(10, false);
+        buffer2.release();
+        assertThat(pool.getHeapMemory(), is(30L));
+
+        pool.clear();
+        // The idle buffer is discarded, the one in use keeps its slab.
+        assertThat(pool.getHeapSlabCount(), is(0L));
+        assertThat(pool.getHeapByteBufferCount(), is(1L));
+        assertThat(pool.getHeapMemory(), is(10L));
+
+        // Releasing the last buffer frees the retired slab without re-pooling the buffer.
+        buffer1.release();
+        assertThat(pool.getHeapByteBufferCount(), is(0L));
+        assertThat(pool.getHeapMemory(), is(0L));
+
+        RetainableByteBuffer buffer3 = pool.acquire(10, false);
+        assertThat(buffer3, not(sameInstance(buffer1)));
+        assertThat(pool.getHeapSlabCount(), is(1L));
+        assertThat(pool.getHeapMemory(), is(10L));
+        buffer3.release();
+    }
+
+    @Test
+    public void testLanesAreBounded()
+    {
+        SlabRetainableByteBufferPool pool = new SlabRetainableByteBufferPool(0, 10, 20, 4, 100, -1, -1, 2, null);
+
+        List<RetainableByteBuffer> buffers = new ArrayList<>();
+        for (int i = 0; i < 3; i++)
+        {
+            buffers.add(pool.acquire(10, true));
+        }
+
+        // This thread uses a single lane, bounded to half of the bucket size.
+        assertThat(pool.getDirectByteBufferCount(), is(2L));
+        assertThat(pool.getDirectMemory(), is(30L));
+
+        buffers.forEach(RetainableByteBuffer::release);
+        assertThat(pool.getAvailableDirectByteBufferCount(), is(2L));
+    }
+
+    @Test
+    public void testOutOfRangeDoesNotPool()
+    {
+        SlabRetainableByteBufferPool pool = new SlabRetainableByteBufferPool(10, 10, 20, 100, -1, -1);
+
+        RetainableByteBuffer small = pool.acquire(1, true);
+        assertThat(small.capacity(), is(1));
+        RetainableByteBuffer large = pool.acquire(21, true);
+        assertThat(large.capacity(), is(21));
+        assertThat(pool.getDirectSlabCount(), is(0L));
+
+        small.release();
+        large.release();
+        assertThat(pool.getDirectByteBufferCount(), is(0L));
+    }
+
+    @Test
+    public void testMappedSlabs() throws Exception
+    {
+        Path dir = MavenTestingUtils.getTargetTestingPath(SlabRetainableByteBufferPoolTest.class.getSimpleName());
+        FS.ensureEmpty(dir);
+        SlabRetainableByteBufferPool pool = new SlabRetainableByteBufferPool(0, 10, 20, -1, 100, -1, -1, 2, dir);
+
+        RetainableByteBuffer buffer = pool.acquire(10, true);
+        assertThat(pool.isMapped(), is(true));
+        assertThat(buffer.isDirect(), is(true));
+        assertThat(buffer.capacity(), is(10));
+        assertThat(pool.getDirectSlabCount(), is(1L));
+        buffer.release();
+    }
+}
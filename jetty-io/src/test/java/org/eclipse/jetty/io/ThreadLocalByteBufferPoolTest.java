@@ -0,0 +1,166 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.io;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.core.Is.is;
+
+public class ThreadLocalByteBufferPoolTest
+{
+    @Test
+    public void testReleasedBufferIsReusedBySameThread()
+    {
+        ArrayByteBufferPool delegate = new ArrayByteBufferPool(0, 10, 100);
+        ThreadLocalByteBufferPool pool = new ThreadLocalByteBufferPool(delegate, 10, 100, 2);
+
+        ByteBuffer buffer = pool.acquire(15, true);
+        assertThat(buffer.capacity(), is(20));
+        assertThat(pool.getMisses(), is(1L));
+        buffer.limit(5);
+        pool.release(buffer);
+
+        // The buffer is cached by this thread, not in the delegate.
+        assertThat(delegate.getDirectByteBufferCount(), is(0L));
+
+        ByteBuffer again = pool.acquire(20, true);
+        assertThat(again, sameInstance(buffer));
+        assertThat(again.remaining(), is(0));
+        assertThat(pool.getHits(), is(1L));
+    }
+
+    @Test
+    public void testFullMagazineOverflowsToDelegate()
+    {
+        ArrayByteBufferPool delegate = new ArrayByteBufferPool(0, 10, 100);
+        ThreadLocalByteBufferPool pool = new ThreadLocalByteBufferPool(delegate, 10, 100, 2);
+
+        List<ByteBuffer> buffers = new ArrayList<>();
+        for (int i = 0; i < 3; i++)
+        {
+            buffers.add(pool.acquire(10, false));
+        }
+        buffers.forEach(pool::release);
+
+        assertThat(pool.getOverflows(), is(1L));
+        assertThat(delegate.getHeapByteBufferCount(), is(1L));
+    }
+
+    @Test
+    public void testThreadsOfSameLaneShareCachedBuffers() throws Exception
+    {
+        ArrayByteBufferPool delegate = new ArrayByteBufferPool(0, 10, 100);
+        ThreadLocalByteBufferPool pool = new ThreadLocalByteBufferPool(delegate, 10, 100, 2, 1, -1, -1);
+
+        ByteBuffer buffer = pool.acquire(10, true);
+        pool.release(buffer);
+
+        AtomicReference<ByteBuffer> other = new AtomicReference<>();
+        Thread thread = new Thread(() -> other.set(pool.acquire(10, true)));
+        thread.start();
+        thread.join();
+
+        assertThat(other.get(), sameInstance(buffer));
+        assertThat(pool.acquire(10, true), not(sameInstance(buffer)));
+    }
+
+    @Test
+    public void testClearDiscardsCachedBuffers()
+    {
+        ArrayByteBufferPool delegate = new ArrayByteBufferPool(0, 10, 100);
+        ThreadLocalByteBufferPool pool = new ThreadLocalByteBufferPool(delegate, 10, 100, 2);
+
+        ByteBuffer buffer = pool.acquire(10, true);
+        pool.release(buffer);
+        assertThat(pool.getDirectMemory(), is(10L));
+        assertThat(delegate.getDirectMemory(), is(10L));
+
+        pool.clear();
+        assertThat(pool.getDirectMemory(), is(0L));
+        assertThat(delegate.getDirectMemory(), is(0L));
+
+        assertThat(pool.acquire(10, true), not(sameInstance(buffer)));
+        assertThat(pool.getHits(), is(0L));
+    }
+
+    @Test
+    public void testCachedMemoryIsBounded()
+    {
+        ArrayByteBufferPool delegate = new ArrayByteBufferPool(0, 10, 100);
+        ThreadLocalByteBufferPool pool = new ThreadLocalByteBufferPool(delegate, 10, 100, 8, 1, 30, -1);
+
+        List<ByteBuffer> buffers = new ArrayList<>();
+        for (int i = 0; i < 4; i++)
+        {
+            buffers.add(pool.acquire(10, false));
+        }
+        buffers.forEach(pool::release);
+
+        // Only 3 buffers fit in 30 bytes, the last one goes to the delegate.
+        assertThat(pool.getHeapMemory(), is(30L));
+        assertThat(pool.getOverflows(), is(1L));
+        assertThat(delegate.getHeapByteBufferCount(), is(1L));
+        assertThat(delegate.getHeapMemory(), is(40L));
+
+        // Acquiring a cached buffer gives back its memory.
+        pool.acquire(10, false);
+        assertThat(pool.getHeapMemory(), is(20L));
+        assertThat(delegate.getHeapMemory(), is(30L));
+    }
+
+    @Test
+    public void testCachedMemoryIsBoundedByDelegate()
+    {
+        ArrayByteBufferPool delegate = new ArrayByteBufferPool(0, 10, 100, -1, -1, 20);
+        ThreadLocalByteBufferPool pool = new ThreadLocalByteBufferPool(delegate, 10, 100, 8, 1, -1, -1);
+
+        List<ByteBuffer> buffers = new ArrayList<>();
+        for (int i = 0; i < 3; i++)
+        {
+            buffers.add(pool.acquire(10, true));
+        }
+        buffers.forEach(pool::release);
+
+        // The first 2 buffers are cached, the last one overflows to the
+        // delegate, which discards it to stay within its own limit.
+        assertThat(pool.getDirectMemory(), is(20L));
+        assertThat(pool.getOverflows(), is(1L));
+        assertThat(delegate.getDirectMemory(), is(20L));
+        assertThat(delegate.getDirectByteBufferCount(), is(0L));
+    }
+
+    @Test
+    public void testOutOfRangeBufferGoesToDelegate()
+    {
+        ArrayByteBufferPool delegate = new ArrayByteBufferPool(0, 10, 100);
+        ThreadLocalByteBufferPool pool = new ThreadLocalByteBufferPool(delegate, 10, 100, 2);
+
+        ByteBuffer buffer = pool.acquire(101, true);
+        pool.release(buffer);
+        assertThat(pool.getMisses(), is(0L));
+
+        // Capacity not a multiple of the factor.
+        pool.release(ByteBuffer.allocateDirect(15));
+        ByteBuffer acquired = pool.acquire(15, true);
+        assertThat(acquired.capacity(), is(20));
+    }
+}
@@ -16,6 +16,7 @@ package org.eclipse.jetty.proxy;
 import java.net.InetAddress;
 import java.net.URI;
 import java.net.UnknownHostException;
+import java.nio.file.Paths;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -71,7 +72,9 @@ import org.slf4j.LoggerFactory;
  * <li>blackList - comma-separated list of forbidden proxy hosts</li>
  * </ul>
  * <p>In addition, see {@link #createHttpClient()} for init parameters
- * used to configure the {@link HttpClient} instance.</p>
+ * used to configure the {@link HttpClient} instance, and
+ * {@link #createHttpCache()} for init parameters used to configure
+ * the optional {@link HttpCache}.</p>
  * <p>NOTE: By default the Host header sent to the server by this proxy
  * servlet is the server's host name. However, this breaks redirects.
  * Set {@code preserveHost} to {@code true} to make redirects working,
@@ -102,6 +105,7 @@ public abstract class AbstractProxyServlet extends HttpServlet
     private String _hostHeader;
     private String _viaHost;
     private HttpClient _client;
+    private HttpCache _cache;
     private long _timeout;
 
     @Override
@@ -126,6 +130,10 @@ public abstract class AbstractProxyServlet extends HttpServlet
             // Put the HttpClient in the context to leverage ContextHandler.MANAGED_ATTRIBUTES
             getServletContext().setAttribute(config.getServletName() + ".HttpClient", _client);
 
+            HttpCache cache = createHttpCache();
+            if (cache != null)
+                setHttpCache(cache);
+
             String whiteList = config.getInitParameter("whiteList");
             if (whiteList != null)
                 getWhiteListHosts().addAll(parseList(whiteList));
@@ -143,6 +151,8 @@ public abstract class AbstractProxyServlet extends HttpServlet
     @Override
     public void destroy()
     {
+        if (_cache != null)
+            _cache.clear();
         try
         {
             _client.stop();
@@ -181,6 +191,23 @@ public abstract class AbstractProxyServlet extends HttpServlet
         return _timeout;
     }
 
+    public HttpCache getHttpCache()
+    {
+        return _cache;
+    }
+
+    /**
+     * <p>Sets the cache used to store the responses received from the server,
+     * so that they can be reused for subsequent requests.</p>
+     * <p>The cache is cleared when this servlet is destroyed.</p>
+     *
+     * @param cache the cache, or null to send all requests to the server
+     */
+    public void setHttpCache(HttpCache cache)
+    {
+        _cache = cache;
+    }
+
     public void setTimeout(long timeout)
     {
         this._timeout = timeout;
@@ -364,6 +391,77 @@ public abstract class AbstractProxyServlet extends HttpServlet
         return new HttpClient(new HttpClientTransportDynamic(clientConnector));
     }
 
+    /**
+     * <p>Creates a {@link HttpCache} instance, configured with init parameters of this servlet.</p>
+     * <p>The init parameters used to configure the {@link HttpCache} instance are:</p>
+     * <table>
+     * <caption>Init Parameters</caption>
+     * <thead>
+     * <tr>
+     * <th>init-param</th>
+     * <th>default</th>
+     * <th>description</th>
+     * </tr>
+     * </thead>
+     * <tbody>
+     * <tr>
+     * <td>cache</td>
+     * <td>false</td>
+     * <td>Whether responses are cached, see {@link #setHttpCache(HttpCache)}</td>
+     * </tr>
+     * <tr>
+     * <td>cacheMaxMemorySize</td>
+     * <td>HttpCache's default</td>
+     * <td>The max number of content bytes stored in memory, see {@link HttpCache#setMaxMemorySize(long)}</td>
+     * </tr>
+     * <tr>
+     * <td>cacheMaxEntrySize</td>
+     * <td>HttpCache's default</td>
+     * <td>The max content length of a stored response, see {@link HttpCache#setMaxEntrySize(int)}</td>
+     * </tr>
+     * <tr>
+     * <td>cacheDirectory</td>
+     * <td>none</td>
+     * <td>The directory where responses evicted from memory are stored, see {@link HttpCache#setDiskDirectory(java.nio.file.Path)}</td>
+     * </tr>
+     * <tr>
+     * <td>cacheMaxDiskSize</td>
+     * <td>HttpCache's default</td>
+     * <td>The max number of content bytes stored on disk, see {@link HttpCache#setMaxDiskSize(long)}</td>
+     * </tr>
+     * </tbody>
+     * </table>
+     *
+     * @return a {@link HttpCache} configured from the {@link #getServletConfig() servlet configuration},
+     * or null if responses are not cached
+     */
+    protected HttpCache createHttpCache()
+    {
+        ServletConfig config = getServletConfig();
+        if (!Boolean.parseBoolean(config.getInitParameter("cache")))
+            return null;
+
+        HttpCache cache = new HttpCache(getHttpClient());
+
+        String value = config.getInitParameter("cacheMaxMemorySize");
+        if (value != null)
+            cache.setMaxMemorySize(Long.parseLong(value));
+
+        value = config.getInitParameter("cacheMaxEntrySize");
+        if (value != null)
+            cache.setMaxEntrySize(Integer.parseInt(value));
+
+        value = config.getInitParameter("cacheDirectory");
+        if (value != null)
+            cache.setDiskDirectory(Paths.get(value));
+
+        value = config.getInitParameter("cacheMaxDiskSize");
+        if (value != null)
+            cache.setMaxDiskSize(Long.parseLong(value));
+
+        return cache;
+    }
+
     protected ClientConnector newClientConnector()
     {
         ClientConnector clientConnector = new ClientConnector();
@@ -631,7 +729,12 @@ public abstract class AbstractProxyServlet extends HttpServlet
                 proxyRequest.getHeaders().toString().trim());
         }
 
-        proxyRequest.send(newProxyResponseListener(clientRequest, proxyResponse));
+        Response.CompleteListener listener = newProxyResponseListener(clientRequest, proxyResponse);
+        HttpCache cache = getHttpCache();
+        if (cache == null)
+            proxyRequest.send(listener);
+        else
+            cache.send(proxyRequest, listener);
     }
 
     protected abstract Response.CompleteListener newProxyResponseListener(HttpServletRequest clientRequest, HttpServletResponse proxyResponse);
@@ -45,6 +45,7 @@ import org.eclipse.jetty.client.util.AsyncRequestContent;
 import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.io.RuntimeIOException;
+import org.eclipse.jetty.server.HttpOutput;
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.CountingCallback;
@@ -195,7 +196,14 @@ public class AsyncMiddleManServlet extends AbstractProxyServlet
 
     void writeProxyResponseContent(ServletOutputStream output, ByteBuffer content) throws IOException
     {
-        write(output, content);
+        // Once the response is committed, write direct buffers received from the
+        // server without copying them into a byte array; the buffer is retained until
+        // the write completes, because the content callback is succeeded only afterwards.
+        // Before commit, content is aggregated so that failures can still be reported.
+        if (content.isDirect() && output instanceof HttpOutput && ((HttpOutput)output).getHttpChannel().isCommitted())
+            ((HttpOutput)output).write(content);
+        else
+            write(output, content);
     }
 
     private static void write(OutputStream output, ByteBuffer content) throws IOException
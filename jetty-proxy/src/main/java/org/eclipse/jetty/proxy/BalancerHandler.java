@@ -0,0 +1,1076 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.proxy;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.servlet.AsyncContext;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.AsyncRequestContent;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpHeaderValue;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.server.HttpOutput;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.HttpCookieStore;
+import org.eclipse.jetty.util.IteratingCallback;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.thread.AutoLock;
+import org.eclipse.jetty.util.thread.Scheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>A reverse proxy {@link org.eclipse.jetty.server.Handler} that balances
+ * requests across a set of {@link Backend backends}.</p>
+ * <p>Differently from {@link BalancerServlet}, this handler does not require
+ * a servlet context: requests are proxied asynchronously using {@link HttpClient},
+ * reading the client request content and writing the server response content
+ * with non-blocking I/O.</p>
+ * <p>Backends are selected with a weighted least-request algorithm: two backends
+ * are picked at random among those that are available, and the one with fewer
+ * active requests relative to its weight is chosen.</p>
+ * <p>Backends may be actively health checked by setting the
+ * {@link #setHealthCheckPath(String) health check path}; a backend that fails
+ * a health check is not selected until a subsequent health check succeeds,
+ * and the interval between health checks of a failing backend doubles
+ * up to {@link #getMaxHealthCheckInterval()}.</p>
+ * <p>Backends that fail {@link #getConsecutiveFailures()} consecutive requests
+ * (either failing to respond or responding with a 5xx status code) are ejected
+ * from the available backends for a time that grows with the number of times
+ * they have been ejected, up to {@link #getMaxEjectionTime()}; no more than
+ * {@link #getMaxEjectionPercent()} of the backends are ejected at any time.</p>
+ * <p>Each backend is an {@link HttpClient} destination, so it has its own
+ * connection pool; backends added with {@link HttpVersion#HTTP_2} are contacted
+ * using HTTP/2, and therefore use a multiplexed connection pool, provided that
+ * the {@link HttpClient} is configured with a transport that supports HTTP/2.</p>
+ */
+@ManagedObject("Load balancing reverse proxy handler")
+public class BalancerHandler extends AbstractHandler
+{
+    private static final Logger LOG = LoggerFactory.getLogger(BalancerHandler.class);
+
+    private final List<Backend> backends = new CopyOnWriteArrayList<>();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder unavailable = new LongAdder();
+    private final HttpClient httpClient;
+    private final boolean configureHttpClient;
+    private long timeout;
+    private String healthCheckPath;
+    private long healthCheckInterval = 5000;
+    private long maxHealthCheckInterval = 60000;
+    private long healthCheckTimeout = 2000;
+    private int consecutiveFailures = 5;
+    private long ejectionTime = 30000;
+    private long maxEjectionTime = 300000;
+    private int maxEjectionPercent = 50;
+
+    /**
+     * <p>Creates a balancer with its own {@link HttpClient}, configured to proxy
+     * requests: it does not follow redirects, does not store cookies, does not
+     * decode response content and has no protocol handlers.</p>
+     */
+    public BalancerHandler()
+    {
+        this(new HttpClient(), true);
+    }
+
+    /**
+     * <p>Creates a balancer that proxies requests with the given {@link HttpClient}.</p>
+     * <p>The {@link HttpClient} is not modified by this balancer, so it may be shared,
+     * but it must be configured to proxy requests: its cookie store must be a
+     * {@link HttpCookieStore.Empty}, otherwise cookies of different clients would mix,
+     * and it must have no content decoder factories, otherwise response content would
+     * be decoded but still sent with its {@code Content-Encoding} header; since
+     * {@link HttpClient} adds a content decoder factory when it starts, it must be
+     * started and its content decoder factories cleared before this balancer starts.
+     * If the {@link HttpClient} is not configured as required, starting this balancer
+     * fails with an {@link IllegalStateException}.</p>
+     *
+     * @param httpClient the {@link HttpClient} used to proxy requests
+     */
+    public BalancerHandler(HttpClient httpClient)
+    {
+        this(httpClient, false);
+    }
+
+    private BalancerHandler(HttpClient httpClient, boolean configureHttpClient)
+    {
+        this.httpClient = Objects.requireNonNull(httpClient);
+        this.configureHttpClient = configureHttpClient;
+        addBean(httpClient);
+    }
+
+    public HttpClient getHttpClient()
+    {
+        return httpClient;
+    }
+
+    /**
+     * @param uri the backend URI, for example {@code http://host:8080}
+     * @return the backend added
+     * @see #addBackend(String, int, HttpVersion)
+     */
+    public Backend addBackend(String uri)
+    {
+        return addBackend(uri, 1);
+    }
+
+    /**
+     * @param uri the backend URI, for example {@code http://host:8080}
+     * @param weight the backend weight
+     * @return the backend added
+     * @see #addBackend(String, int, HttpVersion)
+     */
+    public Backend addBackend(String uri, int weight)
+    {
+        return addBackend(uri, weight, HttpVersion.HTTP_1_1);
+    }
+
+    /**
+     * <p>Adds a backend to this balancer.</p>
+     * <p>The URI path of the backend, if any, is prepended to the path
+     * of the requests proxied to the backend.</p>
+     *
+     * @param uri the backend URI, for example {@code http://host:8080}
+     * @param weight the backend weight, must be positive
+     * @param version the HTTP version used to contact the backend
+     * @return the backend added
+     */
+    public Backend addBackend(String uri, int weight, HttpVersion version)
+    {
+        if (weight < 1)
+            throw new IllegalArgumentException("Invalid weight " + weight);
+        Backend backend = new Backend(URI.create(uri), weight, version);
+        backends.add(backend);
+        if (isRunning())
+            backend.scheduleHealthCheck(0);
+        return backend;
+    }
+
+    public boolean removeBackend(Backend backend)
+    {
+        boolean removed = backends.remove(backend);
+        if (removed)
+            backend.cancelHealthCheck();
+        return removed;
+    }
+
+    public List<Backend> getBackends()
+    {
+        return new ArrayList<>(backends);
+    }
+
+    /**
+     * @return the total timeout, in milliseconds, of proxied requests, or 0 for no timeout
+     */
+    @ManagedAttribute("The total timeout in milliseconds of proxied requests")
+    public long getTimeout()
+    {
+        return timeout;
+    }
+
+    /**
+     * @param timeout the total timeout, in milliseconds, of proxied requests, or 0 for no timeout
+     */
+    public void setTimeout(long timeout)
+    {
+        this.timeout = timeout;
+    }
+
+    /**
+     * @return the path requested to backends to check their health, or null if health checks are disabled
+     */
+    @ManagedAttribute("The path requested to backends to check their health")
+    public String getHealthCheckPath()
+    {
+        return healthCheckPath;
+    }
+
+    /**
+     * @param healthCheckPath the path requested to backends to check their health, or null to disable health checks
+     */
+    public void setHealthCheckPath(String healthCheckPath)
+    {
+        this.healthCheckPath = healthCheckPath;
+    }
+
+    /**
+     * @return the interval, in milliseconds, between health checks of a healthy backend
+     */
+    @ManagedAttribute("The interval in milliseconds between health checks")
+    public long getHealthCheckInterval()
+    {
+        return healthCheckInterval;
+    }
+
+    /**
+     * @param healthCheckInterval the interval, in milliseconds, between health checks of a healthy backend
+     */
+    public void setHealthCheckInterval(long healthCheckInterval)
+    {
+        this.healthCheckInterval = healthCheckInterval;
+    }
+
+    /**
+     * @return the max interval, in milliseconds, between health checks of an unhealthy backend
+     */
+    @ManagedAttribute("The max interval in milliseconds between health checks of an unhealthy backend")
+    public long getMaxHealthCheckInterval()
+    {
+        return maxHealthCheckInterval;
+    }
+
+    /**
+     * @param maxHealthCheckInterval the max interval, in milliseconds, between health checks of an unhealthy backend
+     */
+    public void setMaxHealthCheckInterval(long maxHealthCheckInterval)
+    {
+        this.maxHealthCheckInterval = maxHealthCheckInterval;
+    }
+
+    /**
+     * @return the timeout, in milliseconds, of health check requests
+     */
+    @ManagedAttribute("The timeout in milliseconds of health check requests")
+    public long getHealthCheckTimeout()
+    {
+        return healthCheckTimeout;
+    }
+
+    /**
+     * @param healthCheckTimeout the timeout, in milliseconds, of health check requests
+     */
+    public void setHealthCheckTimeout(long healthCheckTimeout)
+    {
+        this.healthCheckTimeout = healthCheckTimeout;
+    }
+
+    /**
+     * @return the number of consecutive failed requests after which a backend is ejected, or 0 to disable ejection
+     */
+    @ManagedAttribute("The number of consecutive failed requests after which a backend is ejected")
+    public int getConsecutiveFailures()
+    {
+        return consecutiveFailures;
+    }
+
+    /**
+     * @param consecutiveFailures the number of consecutive failed requests after which a backend is ejected, or 0 to disable ejection
+     */
+    public void setConsecutiveFailures(int consecutiveFailures)
+    {
+        this.consecutiveFailures = consecutiveFailures;
+    }
+
+    /**
+     * @return the time, in milliseconds, a backend is ejected for the first time
+     */
+    @ManagedAttribute("The time in milliseconds a backend is ejected for the first time")
+    public long getEjectionTime()
+    {
+        return ejectionTime;
+    }
+
+    /**
+     * @param ejectionTime the time, in milliseconds, a backend is ejected for the first time
+     */
+    public void setEjectionTime(long ejectionTime)
+    {
+        this.ejectionTime = ejectionTime;
+    }
+
+    /**
+     * @return the max time, in milliseconds, a backend is ejected
+     */
+    @ManagedAttribute("The max time in milliseconds a backend is ejected")
+    public long getMaxEjectionTime()
+    {
+        return maxEjectionTime;
+    }
+
+    /**
+     * @param maxEjectionTime the max time, in milliseconds, a backend is ejected
+     */
+    public void setMaxEjectionTime(long maxEjectionTime)
+    {
+        this.maxEjectionTime = maxEjectionTime;
+    }
+
+    /**
+     * @return the max percentage of backends that may be ejected at any time
+     */
+    @ManagedAttribute("The max percentage of backends that may be ejected")
+    public int getMaxEjectionPercent()
+    {
+        return maxEjectionPercent;
+    }
+
+    /**
+     * @param maxEjectionPercent the max percentage of backends that may be ejected at any time
+     */
+    public void setMaxEjectionPercent(int maxEjectionPercent)
+    {
+        this.maxEjectionPercent = maxEjectionPercent;
+    }
+
+    @ManagedAttribute("The number of requests proxied")
+    public long getRequests()
+    {
+        return requests.longValue();
+    }
+
+    @ManagedAttribute("The number of proxied requests that failed")
+    public long getFailures()
+    {
+        return failures.longValue();
+    }
+
+    @ManagedAttribute("The number of requests rejected because no backend was available")
+    public long getUnavailable()
+    {
+        return unavailable.longValue();
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        requests.reset();
+        failures.reset();
+        unavailable.reset();
+        backends.forEach(backend -> backend.requests.reset());
+    }
+
+    @Override
+    protected void doStart() throws Exception
+    {
+        if (configureHttpClient)
+        {
+            // Redirects must be proxied as is, not followed.
+            httpClient.setFollowRedirects(false);
+            // Must not store cookies, otherwise cookies of different clients will mix.
+            httpClient.setCookieStore(new HttpCookieStore.Empty());
+        }
+        else if (!(httpClient.getCookieStore() instanceof HttpCookieStore.Empty))
+        {
+            throw new IllegalStateException("HttpClient must not store cookies " + httpClient);
+        }
+        super.doStart();
+        if (configureHttpClient)
+        {
+            // Content must not be decoded and responses must be passed as they are.
+            httpClient.getContentDecoderFactories().clear();
+            httpClient.getProtocolHandlers().clear();
+        }
+        else if (!httpClient.getContentDecoderFactories().isEmpty())
+        {
+            throw new IllegalStateException("HttpClient must not decode content " + httpClient);
+        }
+        backends.forEach(backend -> backend.scheduleHealthCheck(0));
+    }
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        backends.forEach(Backend::cancelHealthCheck);
+        super.doStop();
+    }
+
+    @Override
+    public void handle(String target, org.eclipse.jetty.server.Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+    {
+        baseRequest.setHandled(true);
+
+        Backend backend = select(request);
+        if (backend == null)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("No backend available for {}", request);
+            unavailable.increment();
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE_503);
+            return;
+        }
+
+        Request proxyRequest = httpClient.newRequest(rewriteTarget(backend, request))
+            .method(request.getMethod())
+            .version(backend.getHttpVersion())
+            // Redirects must be proxied as is, not followed.
+            .followRedirects(false);
+        copyRequestHeaders(request, proxyRequest);
+        addXForwardedHeaders(request, proxyRequest);
+        if (timeout > 0)
+            proxyRequest.timeout(timeout, TimeUnit.MILLISECONDS);
+
+        AsyncContext asyncContext = request.startAsync();
+        // We do not want the async context to timeout, the proxy request has its own timeout.
+        asyncContext.setTimeout(0);
+
+        requests.increment();
+        backend.requests.increment();
+        backend.active.incrementAndGet();
+
+        if (LOG.isDebugEnabled())
+            LOG.debug("Proxying {} to {}", request, backend);
+
+        ProxyResponseListener listener = new ProxyResponseListener(request, response, backend);
+        if (hasContent(request))
+        {
+            AsyncRequestContent content = new AsyncRequestContent();
+            proxyRequest.body(content);
+            request.getInputStream().setReadListener(new ProxyReader(request, proxyRequest, content, listener));
+        }
+        proxyRequest.send(listener);
+    }
+
+    /**
+     * <p>Selects the backend for the given request among the available backends,
+     * choosing the less loaded, relative to their weight, of two random backends.</p>
+     *
+     * @param request the client request
+     * @return the backend to proxy the request to, or null if no backend is available
+     */
+    protected Backend select(HttpServletRequest request)
+    {
+        long now = System.nanoTime();
+        List<Backend> available = new ArrayList<>(backends.size());
+        for (Backend backend : backends)
+        {
+            if (backend.isAvailable(now))
+                available.add(backend);
+        }
+        int size = available.size();
+        if (size == 0)
+            return null;
+        if (size == 1)
+            return available.get(0);
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int index1 = random.nextInt(size);
+        int index2 = random.nextInt(size - 1);
+        if (index2 >= index1)
+            ++index2;
+        Backend backend1 = available.get(index1);
+        Backend backend2 = available.get(index2);
+        // Compare (active + 1) / weight without divisions.
+        long load1 = (backend1.active.get() + 1L) * backend2.weight;
+        long load2 = (backend2.active.get() + 1L) * backend1.weight;
+        return load1 <= load2 ? backend1 : backend2;
+    }
+
+    protected String rewriteTarget(Backend backend, HttpServletRequest request)
+    {
+        URI uri = backend.getURI();
+        StringBuilder builder = new StringBuilder();
+        builder.append(uri.getScheme()).append("://").append(uri.getRawAuthority());
+        String basePath = uri.getRawPath();
+        if (basePath != null && basePath.endsWith("/"))
+            basePath = basePath.substring(0, basePath.length() - 1);
+        if (basePath != null)
+            builder.append(basePath);
+        builder.append(request.getRequestURI());
+        String query = request.getQueryString();
+        if (query != null)
+            builder.append("?").append(query);
+        return builder.toString();
+    }
+
+    protected void copyRequestHeaders(HttpServletRequest clientRequest, Request proxyRequest)
+    {
+        Set<String> connectionHeaders = findConnectionHeaders(clientRequest);
+        proxyRequest.headers(headers ->
+        {
+            headers.clear();
+            for (Enumeration<String> headerNames = clientRequest.getHeaderNames(); headerNames.hasMoreElements(); )
+            {
+                String headerName = headerNames.nextElement();
+                String lowerHeaderName = headerName.toLowerCase(Locale.ENGLISH);
+                // The Host header is that of the backend.
+                if (HttpHeader.HOST.is(headerName))
+                    continue;
+                // The 100 Continue is handled by the server when the content is read.
+                if (HttpHeader.EXPECT.is(headerName))
+                    continue;
+                if (AbstractProxyServlet.HOP_HEADERS.contains(lowerHeaderName))
+                    continue;
+                if (connectionHeaders != null && connectionHeaders.contains(lowerHeaderName))
+                    continue;
+                for (Enumeration<String> headerValues = clientRequest.getHeaders(headerName); headerValues.hasMoreElements(); )
+                {
+                    String headerValue = headerValues.nextElement();
+                    if (headerValue != null)
+                        headers.add(headerName, headerValue);
+                }
+            }
+        });
+    }
+
+    private Set<String> findConnectionHeaders(HttpServletRequest clientRequest)
+    {
+        Set<String> result = null;
+        Enumeration<String> connectionHeaders = clientRequest.getHeaders(HttpHeader.CONNECTION.asString());
+        while (connectionHeaders.hasMoreElements())
+        {
+            for (String name : connectionHeaders.nextElement().split(","))
+            {
+                if (result == null)
+                    result = new HashSet<>();
+                result.add(name.trim().toLowerCase(Locale.ENGLISH));
+            }
+        }
+        return result;
+    }
+
+    protected void addXForwardedHeaders(HttpServletRequest clientRequest, Request proxyRequest)
+    {
+        proxyRequest.headers(headers ->
+        {
+            headers.add(HttpHeader.X_FORWARDED_FOR, clientRequest.getRemoteAddr());
+            headers.add(HttpHeader.X_FORWARDED_PROTO, clientRequest.getScheme());
+            String hostHeader = clientRequest.getHeader(HttpHeader.HOST.asString());
+            if (hostHeader != null)
+                headers.add(HttpHeader.X_FORWARDED_HOST, hostHeader);
+            String localName = clientRequest.getLocalName();
+            if (localName != null)
+                headers.add(HttpHeader.X_FORWARDED_SERVER, localName);
+        });
+    }
+
+    protected void copyResponseHeaders(Response serverResponse, HttpServletResponse proxyResponse)
+    {
+        for (HttpField field : serverResponse.getHeaders())
+        {
+            String headerName = field.getName();
+            if (AbstractProxyServlet.HOP_HEADERS.contains(headerName.toLowerCase(Locale.ENGLISH)))
+                continue;
+            proxyResponse.addHeader(headerName, field.getValue());
+        }
+    }
+
+    protected boolean hasContent(HttpServletRequest clientRequest)
+    {
+        // HTTP/2 and HTTP/3 requests do not use Transfer-Encoding, so
+        // content without Content-Length is detected by its Content-Type.
+        return clientRequest.getContentLengthLong() > 0 ||
+            clientRequest.getContentType() != null ||
+            clientRequest.getHeader(HttpHeader.TRANSFER_ENCODING.asString()) != null;
+    }
+
+    /**
+     * @param backend the backend that processed the request
+     * @param status the response status, or 0 if the backend did not respond
+     * @return whether the result counts as a failure of the backend
+     */
+    protected boolean isBackendFailure(Backend backend, int status)
+    {
+        return status == 0 || status >= HttpStatus.INTERNAL_SERVER_ERROR_500;
+    }
+
+    private boolean canEject()
+    {
+        int percent = getMaxEjectionPercent();
+        if (percent <= 0)
+            return false;
+        long now = System.nanoTime();
+        int ejected = 0;
+        for (Backend backend : backends)
+        {
+            if (backend.isEjected(now))
+                ++ejected;
+        }
+        int maxEjected = Math.max(1, backends.size() * percent / 100);
+        return ejected < maxEjected;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x%s", getClass().getSimpleName(), hashCode(), backends);
+    }
+
+    /**
+     * <p>A server that requests are balanced to.</p>
+     */
+    @ManagedObject("A balancer backend")
+    public class Backend
+    {
+        private final AutoLock lock = new AutoLock();
+        private final AtomicInteger active = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private final LongAdder requests = new LongAdder();
+        private final URI uri;
+        private final int weight;
+        private final HttpVersion version;
+        private volatile boolean healthy = true;
+        private volatile long ejectedUntil;
+        private int ejections;
+        private long healthCheckDelay;
+        private Scheduler.Task healthCheckTask;
+
+        private Backend(URI uri, int weight, HttpVersion version)
+        {
+            this.uri = uri;
+            this.weight = weight;
+            this.version = Objects.requireNonNull(version);
+        }
+
+        public URI getURI()
+        {
+            return uri;
+        }
+
+        @ManagedAttribute("The backend weight")
+        public int getWeight()
+        {
+            return weight;
+        }
+
+        @ManagedAttribute("The HTTP version used to contact the backend")
+        public HttpVersion getHttpVersion()
+        {
+            return version;
+        }
+
+        @ManagedAttribute("The number of active requests")
+        public int getActiveRequests()
+        {
+            return active.get();
+        }
+
+        @ManagedAttribute("The number of requests proxied to the backend")
+        public long getRequests()
+        {
+            return requests.longValue();
+        }
+
+        @ManagedAttribute("Whether the last health check succeeded")
+        public boolean isHealthy()
+        {
+            return healthy;
+        }
+
+        @ManagedAttribute("Whether the backend is ejected")
+        public boolean isEjected()
+        {
+            return isEjected(System.nanoTime());
+        }
+
+        private boolean isEjected(long now)
+        {
+            long until = ejectedUntil;
+            return until != 0 && until - now > 0;
+        }
+
+        private boolean isAvailable(long now)
+        {
+            return healthy && !isEjected(now);
+        }
+
+        private void onResult(int status)
+        {
+            int maxFailures = getConsecutiveFailures();
+            if (!isBackendFailure(this, status))
+            {
+                failures.set(0);
+                return;
+            }
+            failures.incrementAndGet();
+            if (maxFailures <= 0)
+                return;
+            try (AutoLock l = lock.lock())
+            {
+                long now = System.nanoTime();
+                if (failures.get() < maxFailures || isEjected(now) || !canEject())
+                    return;
+                // Forget past ejections if the backend behaved for long enough.
+                long maxEjection = TimeUnit.MILLISECONDS.toNanos(getMaxEjectionTime());
+                if (ejectedUntil != 0 && now - ejectedUntil > maxEjection)
+                    ejections = 0;
+                ++ejections;
+                long ejection = Math.min(TimeUnit.MILLISECONDS.toNanos(getEjectionTime()) * ejections, maxEjection);
+                ejectedUntil = now + ejection;
+                failures.set(0);
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Ejected for {} ms {}", TimeUnit.NANOSECONDS.toMillis(ejection), this);
+            }
+        }
+
+        private void scheduleHealthCheck(long delay)
+        {
+            String path = getHealthCheckPath();
+            if (path == null)
+                return;
+            try (AutoLock l = lock.lock())
+            {
+                if (!isRunning() || !backends.contains(this))
+                    return;
+                healthCheckTask = httpClient.getScheduler().schedule(() -> healthCheck(path), delay, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void cancelHealthCheck()
+        {
+            try (AutoLock l = lock.lock())
+            {
+                if (healthCheckTask != null)
+                    healthCheckTask.cancel();
+                healthCheckTask = null;
+            }
+        }
+
+        private void healthCheck(String path)
+        {
+            httpClient.newRequest(uri.resolve(path))
+                .method(HttpMethod.GET)
+                .version(version)
+                .followRedirects(false)
+                .timeout(getHealthCheckTimeout(), TimeUnit.MILLISECONDS)
+                .send(result ->
+                {
+                    boolean success = result.isSucceeded() && result.getResponse().getStatus() < HttpStatus.BAD_REQUEST_400;
+                    onHealthCheck(success, result.getFailure());
+                });
+        }
+
+        private void onHealthCheck(boolean success, Throwable failure)
+        {
+            long delay;
+            try (AutoLock l = lock.lock())
+            {
+                long interval = getHealthCheckInterval();
+                if (success)
+                    healthCheckDelay = interval;
+                else
+                    healthCheckDelay = Math.min(Math.max(healthCheckDelay, interval) * 2, Math.max(interval, getMaxHealthCheckInterval()));
+                delay = healthCheckDelay;
+            }
+            if (healthy != success && LOG.isDebugEnabled())
+                LOG.debug("Health check {} for {}", success ? "succeeded" : "failed", this, failure);
+            healthy = success;
+            scheduleHealthCheck(delay);
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x[%s,weight=%d,active=%d,healthy=%b,ejected=%b]",
+                getClass().getSimpleName(),
+                hashCode(),
+                uri,
+                weight,
+                getActiveRequests(),
+                isHealthy(),
+                isEjected());
+        }
+    }
+
+    private class ProxyReader extends IteratingCallback implements ReadListener
+    {
+        private final byte[] buffer = new byte[httpClient.getRequestBufferSize()];
+        private final HttpServletRequest clientRequest;
+        private final Request proxyRequest;
+        private final AsyncRequestContent content;
+        private final ProxyResponseListener listener;
+
+        private ProxyReader(HttpServletRequest clientRequest, Request proxyRequest, AsyncRequestContent content, ProxyResponseListener listener)
+        {
+            this.clientRequest = clientRequest;
+            this.proxyRequest = proxyRequest;
+            this.content = content;
+            this.listener = listener;
+        }
+
+        @Override
+        public void onDataAvailable()
+        {
+            iterate();
+        }
+
+        @Override
+        public void onAllDataRead()
+        {
+            content.close();
+        }
+
+        @Override
+        public void onError(Throwable failure)
+        {
+            listener.clientFailed = true;
+            content.fail(failure);
+            proxyRequest.abort(failure);
+        }
+
+        @Override
+        protected Action process() throws Exception
+        {
+            ServletInputStream input = clientRequest.getInputStream();
+            while (input.isReady())
+            {
+                int read = input.read(buffer);
+                if (read < 0)
+                    return Action.SUCCEEDED;
+                if (read > 0)
+                {
+                    // The buffer is reused when the content has been sent.
+                    content.offer(ByteBuffer.wrap(buffer, 0, read), this);
+                    return Action.SCHEDULED;
+                }
+            }
+            return input.isFinished() ? Action.SUCCEEDED : Action.IDLE;
+        }
+
+        @Override
+        protected void onCompleteFailure(Throwable failure)
+        {
+            onError(failure);
+        }
+    }
+
+    private class ProxyResponseListener extends Response.Listener.Adapter
+    {
+        private final HttpServletRequest clientRequest;
+        private final HttpServletResponse proxyResponse;
+        private final Backend backend;
+        private volatile boolean clientFailed;
+        private ProxyWriter writer;
+
+        private ProxyResponseListener(HttpServletRequest clientRequest, HttpServletResponse proxyResponse, Backend backend)
+        {
+            this.clientRequest = clientRequest;
+            this.proxyResponse = proxyResponse;
+            this.backend = backend;
+        }
+
+        @Override
+        public void onBegin(Response serverResponse)
+        {
+            proxyResponse.setStatus(serverResponse.getStatus());
+        }
+
+        @Override
+        public void onHeaders(Response serverResponse)
+        {
+            copyResponseHeaders(serverResponse, proxyResponse);
+        }
+
+        @Override
+        public void onContent(Response serverResponse, ByteBuffer content, Callback callback)
+        {
+            try
+            {
+                if (writer == null)
+                {
+                    writer = new ProxyWriter(serverResponse);
+                    writer.offer(content, callback);
+                    // Setting the WriteListener triggers an invocation
+                    // to onWritePossible(), possibly on another thread.
+                    proxyResponse.getOutputStream().setWriteListener(writer);
+                }
+                else
+                {
+                    writer.offer(content, callback);
+                    writer.onWritePossible();
+                }
+            }
+            catch (Throwable x)
+            {
+                callback.failed(x);
+            }
+        }
+
+        @Override
+        public void onComplete(Result result)
+        {
+            backend.active.decrementAndGet();
+            Response serverResponse = result.getResponse();
+            int status = serverResponse == null ? 0 : serverResponse.getStatus();
+            if (!clientFailed)
+                backend.onResult(result.isFailed() && status < HttpStatus.INTERNAL_SERVER_ERROR_500 ? 0 : status);
+
+            if (result.isSucceeded())
+            {
+                if (writer == null)
+                {
+                    clientRequest.getAsyncContext().complete();
+                }
+                else
+                {
+                    try
+                    {
+                        writer.offer(BufferUtil.EMPTY_BUFFER, Callback.from(() -> clientRequest.getAsyncContext().complete()));
+                        writer.onWritePossible();
+                    }
+                    catch (Throwable x)
+                    {
+                        onFailure(x);
+                    }
+                }
+            }
+            else
+            {
+                onFailure(result.getFailure());
+            }
+        }
+
+        private void onFailure(Throwable failure)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Proxying failed to {}", backend, failure);
+            failures.increment();
+            try
+            {
+                if (proxyResponse.isCommitted())
+                {
+                    // Aborts the response.
+                    proxyResponse.sendError(-1);
+                }
+                else
+                {
+                    proxyResponse.resetBuffer();
+                    proxyResponse.setHeader(HttpHeader.CONNECTION.asString(), HttpHeaderValue.CLOSE.asString());
+                    proxyResponse.sendError(failure instanceof TimeoutException ? HttpStatus.GATEWAY_TIMEOUT_504 : HttpStatus.BAD_GATEWAY_502);
+                }
+            }
+            catch (Throwable x)
+            {
+                LOG.trace("IGNORED", x);
+            }
+            finally
+            {
+                if (clientRequest.isAsyncStarted())
+                    clientRequest.getAsyncContext().complete();
+            }
+        }
+
+        private class ProxyWriter implements WriteListener
+        {
+            private final Queue<Chunk> chunks = new ArrayDeque<>();
+            private final Response serverResponse;
+            private Chunk chunk;
+            private boolean writePending;
+
+            private ProxyWriter(Response serverResponse)
+            {
+                this.serverResponse = serverResponse;
+            }
+
+            private void offer(ByteBuffer content, Callback callback)
+            {
+                chunks.offer(new Chunk(content, callback));
+            }
+
+            @Override
+            public void onWritePossible() throws IOException
+            {
+                ServletOutputStream output = proxyResponse.getOutputStream();
+
+                if (writePending)
+                {
+                    writePending = false;
+                    if (succeed(chunk.callback))
+                        return;
+                }
+
+                Chunk chunk = null;
+                while (output.isReady())
+                {
+                    if (chunk != null)
+                    {
+                        if (succeed(chunk.callback))
+                            return;
+                    }
+
+                    this.chunk = chunk = chunks.poll();
+                    if (chunk == null)
+                        return;
+
+                    if (chunk.buffer.hasRemaining())
+                    {
+                        // Avoid copying the content into a byte array when possible.
+                        if (output instanceof HttpOutput)
+                            ((HttpOutput)output).write(chunk.buffer);
+                        else
+                            output.write(BufferUtil.toArray(chunk.buffer));
+                    }
+                }
+                writePending = true;
+            }
+
+            private boolean succeed(Callback callback)
+            {
+                // Succeeding the callback may reenter onWritePossible(),
+                // see AsyncMiddleManServlet.ProxyWriter for details.
+                callback.succeeded();
+                return writePending;
+            }
+
+            @Override
+            public void onError(Throwable failure)
+            {
+                clientFailed = true;
+                Chunk chunk = this.chunk;
+                if (chunk != null)
+                    chunk.callback.failed(failure);
+                else
+                    serverResponse.abort(failure);
+            }
+        }
+    }
+
+    private static class Chunk
+    {
+        private final ByteBuffer buffer;
+        private final Callback callback;
+
+        private Chunk(ByteBuffer buffer, Callback callback)
+        {
+            this.buffer = Objects.requireNonNull(buffer);
+            this.callback = Objects.requireNonNull(callback);
+        }
+    }
+}
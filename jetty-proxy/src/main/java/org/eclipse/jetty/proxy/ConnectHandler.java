@@ -25,6 +25,8 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -47,9 +49,13 @@ import org.eclipse.jetty.server.HttpChannel;
 import org.eclipse.jetty.server.HttpTransport;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.handler.HandlerWrapper;
+import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.HostPort;
 import org.eclipse.jetty.util.Promise;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
 import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
 import org.eclipse.jetty.util.thread.Scheduler;
 import org.slf4j.Logger;
@@ -58,6 +64,7 @@ import org.slf4j.LoggerFactory;
 /**
  * <p>Implementation of a {@link Handler} that supports HTTP CONNECT.</p>
  */
+@ManagedObject("Handler that supports HTTP CONNECT")
 public class ConnectHandler extends HandlerWrapper
 {
     protected static final Logger LOG = LoggerFactory.getLogger(ConnectHandler.class);
@@ -71,6 +78,11 @@ public class ConnectHandler extends HandlerWrapper
     private long connectTimeout = 15000;
     private long idleTimeout = 30000;
     private int bufferSize = 4096;
+    private int maxGatheredBuffers = 1;
+    private final AtomicLong tunnels = new AtomicLong();
+    private final LongAdder tunnelsTotal = new LongAdder();
+    private final LongAdder bytesToServer = new LongAdder();
+    private final LongAdder bytesToClient = new LongAdder();
 
     public ConnectHandler()
     {
@@ -146,6 +158,7 @@ public class ConnectHandler extends HandlerWrapper
         this.idleTimeout = idleTimeout;
     }
 
+    @ManagedAttribute("The size of the buffers used to tunnel data")
     public int getBufferSize()
     {
         return bufferSize;
@@ -156,6 +169,62 @@ public class ConnectHandler extends HandlerWrapper
         this.bufferSize = bufferSize;
     }
 
+    /**
+     * @return the max number of buffers read from a tunnel peer before writing them to the other peer
+     */
+    @ManagedAttribute("The max number of buffers read from a tunnel peer before writing them to the other peer")
+    public int getMaxGatheredBuffers()
+    {
+        return maxGatheredBuffers;
+    }
+
+    /**
+     * <p>Sets the max number of buffers read from a tunnel peer before writing them to the other peer.</p>
+     * <p>The default value is 1, so that every read is followed by a write.
+     * With larger values, bulk transfers such as TLS tunnels fill more buffers
+     * while data is available, and write them with a single gathering write
+     * via {@link #write(EndPoint, Callback, ConcurrentMap, ByteBuffer...)},
+     * reducing the number of write system calls.</p>
+     *
+     * @param maxGatheredBuffers the max number of buffers read before writing them
+     */
+    public void setMaxGatheredBuffers(int maxGatheredBuffers)
+    {
+        this.maxGatheredBuffers = maxGatheredBuffers;
+    }
+
+    @ManagedAttribute("The number of tunnels currently open")
+    public long getTunnels()
+    {
+        return tunnels.get();
+    }
+
+    @ManagedAttribute("The total number of tunnels opened")
+    public long getTunnelsTotal()
+    {
+        return tunnelsTotal.longValue();
+    }
+
+    @ManagedAttribute("The number of bytes tunneled from clients to servers")
+    public long getBytesToServer()
+    {
+        return bytesToServer.longValue();
+    }
+
+    @ManagedAttribute("The number of bytes tunneled from servers to clients")
+    public long getBytesToClient()
+    {
+        return bytesToClient.longValue();
+    }
+
+    @ManagedOperation(value = "Resets the tunnel statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        tunnelsTotal.reset();
+        bytesToServer.reset();
+        bytesToClient.reset();
+    }
+
     @Override
     protected void doStart() throws Exception
     {
@@ -338,6 +407,9 @@ public class ConnectHandler extends HandlerWrapper
         EndPoint downstreamEndPoint = connectContext.getEndPoint();
         DownstreamConnection downstreamConnection = newDownstreamConnection(downstreamEndPoint, context);
         downstreamConnection.setInputBufferSize(getBufferSize());
+        downstreamConnection.setMaxGatheredBuffers(getMaxGatheredBuffers());
+        tunnels.incrementAndGet();
+        tunnelsTotal.increment();
 
         upstreamConnection.setConnection(downstreamConnection);
         downstreamConnection.setConnection(upstreamConnection);
@@ -449,6 +521,24 @@ public class ConnectHandler extends HandlerWrapper
         endPoint.write(callback, buffer);
     }
 
+    /**
+     * <p>Writes (with non-blocking semantic) the given buffers of data onto the given endPoint
+     * with a single gathering write.</p>
+     * <p>This method is invoked only when {@link #getMaxGatheredBuffers()} is greater than 1,
+     * and more than one buffer has been read.</p>
+     *
+     * @param endPoint the endPoint to write to
+     * @param callback the completion callback to invoke
+     * @param context the context information related to the connection
+     * @param buffers the buffers to write
+     */
+    protected void write(EndPoint endPoint, Callback callback, ConcurrentMap<String, Object> context, ByteBuffer... buffers)
+    {
+        if (LOG.isDebugEnabled())
+            LOG.debug("{} writing {} bytes in {} buffers", this, BufferUtil.remaining(buffers), buffers.length);
+        endPoint.write(callback, buffers);
+    }
+
     public Set<String> getWhiteListHosts()
     {
         return whiteList;
@@ -513,6 +603,7 @@ public class ConnectHandler extends HandlerWrapper
             ConnectContext connectContext = (ConnectContext)attachment;
             UpstreamConnection connection = newUpstreamConnection(endpoint, connectContext);
             connection.setInputBufferSize(getBufferSize());
+            connection.setMaxGatheredBuffers(getMaxGatheredBuffers());
             return connection;
         }
 
@@ -585,10 +676,22 @@ public class ConnectHandler extends HandlerWrapper
             fillInterested();
         }
 
+        @Override
+        public void onClose(Throwable cause)
+        {
+            super.onClose(cause);
+            // The tunnel is counted when the connection to the server is established.
+            if (getConnection() != null)
+                tunnels.decrementAndGet();
+        }
+
         @Override
         protected int read(EndPoint endPoint, ByteBuffer buffer) throws IOException
         {
-            return ConnectHandler.this.read(endPoint, buffer, getContext());
+            int read = ConnectHandler.this.read(endPoint, buffer, getContext());
+            if (read > 0)
+                bytesToClient.add(read);
+            return read;
         }
 
         @Override
@@ -596,6 +699,12 @@ public class ConnectHandler extends HandlerWrapper
         {
             ConnectHandler.this.write(endPoint, buffer, callback, getContext());
         }
+
+        @Override
+        protected void write(EndPoint endPoint, Callback callback, ByteBuffer... buffers)
+        {
+            ConnectHandler.this.write(endPoint, callback, getContext(), buffers);
+        }
     }
 
     public class DownstreamConnection extends ProxyConnection implements Connection.UpgradeTo
@@ -651,7 +760,10 @@ public class ConnectHandler extends HandlerWrapper
         @Override
         protected int read(EndPoint endPoint, ByteBuffer buffer) throws IOException
         {
-            return ConnectHandler.this.read(endPoint, buffer, getContext());
+            int read = ConnectHandler.this.read(endPoint, buffer, getContext());
+            if (read > 0)
+                bytesToServer.add(read);
+            return read;
         }
 
         @Override
@@ -659,5 +771,11 @@ public class ConnectHandler extends HandlerWrapper
         {
             ConnectHandler.this.write(endPoint, buffer, callback, getContext());
         }
+
+        @Override
+        protected void write(EndPoint endPoint, Callback callback, ByteBuffer... buffers)
+        {
+            ConnectHandler.this.write(endPoint, callback, getContext(), buffers);
+        }
     }
 }
@@ -0,0 +1,1160 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.proxy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.HttpResponse;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.BufferingResponseListener;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.util.ByteArrayOutputStream2;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.QuotedStringTokenizer;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.thread.AutoLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>A shared HTTP cache, as defined by RFC 9111, for responses received by {@link HttpClient}.</p>
+ * <p>Requests are sent via {@link #send(Request, Response.CompleteListener)} rather than
+ * via {@link Request#send(Response.CompleteListener)}; when a fresh response is stored
+ * in this cache, the listener is notified of the stored response and the request
+ * is not sent to the server.</p>
+ * <p>Stored responses that are stale are revalidated with a conditional request
+ * based on their {@code ETag} and {@code Last-Modified} headers; if the server
+ * responds with a {@code 304}, the stored response is updated and the listener
+ * is notified of the stored response.
+ * Stale responses with the {@code stale-while-revalidate} directive are
+ * returned immediately, while they are revalidated in background.</p>
+ * <p>Responses are stored in memory, up to {@link #getMaxMemorySize()} bytes of content;
+ * if a {@link #setDiskDirectory(Path) disk directory} is configured, the least recently
+ * used responses are moved from memory to disk, up to {@link #getMaxDiskSize()} bytes
+ * of content, otherwise they are evicted.</p>
+ * <p>Responses with the {@code Vary} header are stored per variant.
+ * Responses with the {@code Set-Cookie} header are not stored.</p>
+ *
+ * @see AbstractProxyServlet#setHttpCache(HttpCache)
+ */
+@ManagedObject("Shared HTTP cache")
+public class HttpCache
+{
+    private static final Logger LOG = LoggerFactory.getLogger(HttpCache.class);
+    // The status codes that are heuristically cacheable, see RFC 9110 section 15.1.
+    private static final Set<Integer> CACHEABLE_STATUSES = Set.of(200, 203, 204, 300, 301, 308, 404, 405, 410, 414, 501);
+    private static final long MAX_HEURISTIC_FRESHNESS = TimeUnit.DAYS.toMillis(1);
+
+    private final AutoLock lock = new AutoLock();
+    private final HttpClient httpClient;
+    private final Map<String, List<Entry>> entries = new HashMap<>();
+    private final Map<Entry, Entry> memory = new LinkedHashMap<>(16, 0.75F, true);
+    private final Map<Entry, Entry> disk = new LinkedHashMap<>(16, 0.75F, true);
+    private final AtomicLong ids = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+    private long memorySize;
+    private long diskSize;
+    private long maxMemorySize = 64 * 1024 * 1024;
+    private int maxEntrySize = 1024 * 1024;
+    private Path diskDirectory;
+    private long maxDiskSize = 1024 * 1024 * 1024;
+
+    /**
+     * @param httpClient the {@link HttpClient} used to revalidate stale responses in background
+     */
+    public HttpCache(HttpClient httpClient)
+    {
+        this.httpClient = Objects.requireNonNull(httpClient);
+    }
+
+    /**
+     * @return the max number of content bytes stored in memory
+     */
+    @ManagedAttribute("The max number of content bytes stored in memory")
+    public long getMaxMemorySize()
+    {
+        return maxMemorySize;
+    }
+
+    /**
+     * @param maxMemorySize the max number of content bytes stored in memory
+     */
+    public void setMaxMemorySize(long maxMemorySize)
+    {
+        this.maxMemorySize = maxMemorySize;
+    }
+
+    /**
+     * @return the max content length of a response for it to be stored
+     */
+    @ManagedAttribute("The max content length of a stored response")
+    public int getMaxEntrySize()
+    {
+        return maxEntrySize;
+    }
+
+    /**
+     * @param maxEntrySize the max content length of a response for it to be stored
+     */
+    public void setMaxEntrySize(int maxEntrySize)
+    {
+        this.maxEntrySize = maxEntrySize;
+    }
+
+    /**
+     * @return the directory where responses evicted from memory are stored, or null if there is no disk tier
+     */
+    public Path getDiskDirectory()
+    {
+        return diskDirectory;
+    }
+
+    /**
+     * <p>Sets the directory where responses evicted from memory are stored.</p>
+     * <p>The stored responses are only indexed in memory, so they are not
+     * reused across restarts; {@link #clear()} deletes them from the directory.</p>
+     *
+     * @param diskDirectory the directory where responses evicted from memory are stored, or null if there is no disk tier
+     */
+    public void setDiskDirectory(Path diskDirectory)
+    {
+        this.diskDirectory = diskDirectory;
+    }
+
+    /**
+     * @return the max number of content bytes stored on disk
+     */
+    @ManagedAttribute("The max number of content bytes stored on disk")
+    public long getMaxDiskSize()
+    {
+        return maxDiskSize;
+    }
+
+    /**
+     * @param maxDiskSize the max number of content bytes stored on disk
+     */
+    public void setMaxDiskSize(long maxDiskSize)
+    {
+        this.maxDiskSize = maxDiskSize;
+    }
+
+    @ManagedAttribute("The number of content bytes stored in memory")
+    public long getMemorySize()
+    {
+        try (AutoLock l = lock.lock())
+        {
+            return memorySize;
+        }
+    }
+
+    @ManagedAttribute("The number of content bytes stored on disk")
+    public long getDiskSize()
+    {
+        try (AutoLock l = lock.lock())
+        {
+            return diskSize;
+        }
+    }
+
+    @ManagedAttribute("The number of stored responses")
+    public int getSize()
+    {
+        try (AutoLock l = lock.lock())
+        {
+            return entries.values().stream().mapToInt(List::size).sum();
+        }
+    }
+
+    @ManagedAttribute("The number of requests served by stored responses")
+    public long getHits()
+    {
+        return hits.longValue();
+    }
+
+    @ManagedAttribute("The number of requests without a usable stored response")
+    public long getMisses()
+    {
+        return misses.longValue();
+    }
+
+    @ManagedAttribute("The number of conditional requests sent to revalidate stored responses")
+    public long getRevalidations()
+    {
+        return revalidations.longValue();
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        hits.reset();
+        misses.reset();
+        revalidations.reset();
+    }
+
+    /**
+     * <p>Removes all the stored responses.</p>
+     */
+    @ManagedOperation(value = "Removes all the stored responses", impact = "ACTION")
+    public void clear()
+    {
+        List<Path> deletes = new ArrayList<>();
+        try (AutoLock l = lock.lock())
+        {
+            for (List<Entry> list : entries.values())
+            {
+                for (Entry entry : list)
+                {
+                    entry.removed = true;
+                    if (entry.body instanceof Path)
+                        deletes.add((Path)entry.body);
+                }
+            }
+            entries.clear();
+            memory.clear();
+            disk.clear();
+            memorySize = 0;
+            diskSize = 0;
+        }
+        delete(deletes);
+    }
+
+    /**
+     * <p>Sends the given request, unless a stored response can be used,
+     * in which case the listener is notified of the stored response.</p>
+     * <p>The listener must be a {@link Response.Listener} for responses
+     * to be stored; other listeners bypass this cache.</p>
+     *
+     * @param request the request to send
+     * @param listener the listener notified of the response
+     */
+    public void send(Request request, Response.CompleteListener listener)
+    {
+        if (!(listener instanceof Response.Listener))
+        {
+            request.send(listener);
+            return;
+        }
+
+        String key = key(request);
+        String method = request.getMethod();
+        boolean head = HttpMethod.HEAD.is(method);
+        if (!HttpMethod.GET.is(method) && !head || request.getBody() != null)
+        {
+            // Unsafe methods invalidate the stored responses, see RFC 9111 section 4.4.
+            HttpMethod httpMethod = HttpMethod.fromString(method);
+            if (httpMethod == null || !httpMethod.isSafe())
+            {
+                request.onResponseSuccess(response ->
+                {
+                    if (response.getStatus() < HttpStatus.BAD_REQUEST_400)
+                        invalidate(key);
+                });
+            }
+            request.send(listener);
+            return;
+        }
+
+        Response.Listener responseListener = (Response.Listener)listener;
+        HttpFields requestHeaders = request.getHeaders();
+        Map<String, String> cacheControl = cacheControl(requestHeaders);
+        boolean noCache = cacheControl.containsKey("no-cache") || requestHeaders.contains(HttpHeader.PRAGMA, "no-cache");
+        Conditions conditions = new Conditions(requestHeaders);
+
+        Entry entry = lookup(key, requestHeaders);
+        if (entry != null)
+        {
+            Metadata metadata = entry.metadata;
+            long age = metadata.currentAge(System.currentTimeMillis());
+            long maxAge = seconds(cacheControl, "max-age");
+            boolean acceptable = !noCache && !metadata.noCache && (maxAge < 0 || age <= TimeUnit.SECONDS.toMillis(maxAge));
+            if (acceptable && age < metadata.freshness)
+            {
+                byte[] content = read(entry);
+                if (content != null)
+                {
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("Fresh hit for {} {}", request, entry);
+                    hits.increment();
+                    replay(request, responseListener, metadata, content, conditions);
+                    return;
+                }
+            }
+            else if (acceptable && !head && metadata.isStaleWhileRevalidate(age))
+            {
+                byte[] content = read(entry);
+                if (content != null)
+                {
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("Stale hit for {} {}", request, entry);
+                    hits.increment();
+                    if (entry.revalidating.compareAndSet(false, true))
+                    {
+                        revalidations.increment();
+                        Request revalidation = newRevalidationRequest(request, metadata);
+                        revalidation.send(new RevalidationListener(revalidation, key, entry));
+                    }
+                    replay(request, responseListener, metadata, content, conditions);
+                    return;
+                }
+            }
+            else if (!head && metadata.isRevalidatable())
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Revalidating {} {}", request, entry);
+                revalidations.increment();
+                makeConditional(request, metadata);
+                request.send(new CachingListener(request, responseListener, key, entry, conditions));
+                return;
+            }
+        }
+
+        misses.increment();
+        if (head)
+            request.send(listener);
+        else
+            request.send(new CachingListener(request, responseListener, key, null, conditions));
+    }
+
+    /**
+     * <p>Removes the stored responses for the given URI.</p>
+     *
+     * @param uri the URI of the stored responses to remove
+     */
+    public void invalidate(String uri)
+    {
+        List<Path> deletes = new ArrayList<>();
+        try (AutoLock l = lock.lock())
+        {
+            List<Entry> list = entries.get(uri);
+            if (list != null)
+            {
+                for (Entry entry : new ArrayList<>(list))
+                {
+                    remove(entry, deletes);
+                }
+            }
+        }
+        delete(deletes);
+    }
+
+    private static String key(Request request)
+    {
+        return request.getURI().toString();
+    }
+
+    private Entry lookup(String key, HttpFields requestHeaders)
+    {
+        try (AutoLock l = lock.lock())
+        {
+            List<Entry> list = entries.get(key);
+            if (list == null)
+                return null;
+            for (Entry entry : list)
+            {
+                if (entry.matches(requestHeaders))
+                {
+                    // Update the access order.
+                    if (memory.get(entry) == null)
+                        disk.get(entry);
+                    return entry;
+                }
+            }
+            return null;
+        }
+    }
+
+    private void makeConditional(Request request, Metadata metadata)
+    {
+        request.headers(headers ->
+        {
+            headers.remove(HttpHeader.IF_NONE_MATCH);
+            headers.remove(HttpHeader.IF_MODIFIED_SINCE);
+            if (metadata.etag != null)
+                headers.put(HttpHeader.IF_NONE_MATCH, metadata.etag);
+            String lastModified = metadata.headers.get(HttpHeader.LAST_MODIFIED);
+            if (lastModified != null)
+                headers.put(HttpHeader.IF_MODIFIED_SINCE, lastModified);
+        });
+    }
+
+    /**
+     * <p>Creates the conditional request that revalidates a stale response in background.</p>
+     * <p>The given request is not sent, as the stored response is replayed for it,
+     * so its end-to-end headers are copied to a new request.</p>
+     *
+     * @param request the request served with the stale response
+     * @param metadata the metadata of the stale response
+     * @return a new conditional request for the stale response
+     */
+    private Request newRevalidationRequest(Request request, Metadata metadata)
+    {
+        Request revalidation = httpClient.newRequest(request.getURI())
+            .method(HttpMethod.GET)
+            .version(request.getVersion())
+            .followRedirects(false)
+            .idleTimeout(request.getIdleTimeout(), TimeUnit.MILLISECONDS)
+            .timeout(request.getTimeout(), TimeUnit.MILLISECONDS);
+        revalidation.headers(headers ->
+        {
+            for (HttpField field : request.getHeaders())
+            {
+                HttpHeader header = field.getHeader();
+                if (header == HttpHeader.IF_MATCH || header == HttpHeader.IF_UNMODIFIED_SINCE || header == HttpHeader.IF_RANGE)
+                    continue;
+                if (AbstractProxyServlet.HOP_HEADERS.contains(field.getLowerCaseName()))
+                    continue;
+                headers.add(field);
+            }
+        });
+        makeConditional(revalidation, metadata);
+        return revalidation;
+    }
+
+    private boolean isStorable(Request request, Response response)
+    {
+        int status = response.getStatus();
+        if (status < HttpStatus.OK_200 || status == HttpStatus.PARTIAL_CONTENT_206 || status == HttpStatus.NOT_MODIFIED_304)
+            return false;
+        HttpFields headers = response.getHeaders();
+        Map<String, String> cacheControl = cacheControl(headers);
+        if (cacheControl.containsKey("no-store") || cacheControl.containsKey("private"))
+            return false;
+        if (cacheControl(request.getHeaders()).containsKey("no-store"))
+            return false;
+        if (headers.getCSV(HttpHeader.VARY, false).contains("*"))
+            return false;
+        // Do not share responses that establish a session.
+        if (headers.contains(HttpHeader.SET_COOKIE))
+            return false;
+        if (request.getHeaders().contains(HttpHeader.AUTHORIZATION) &&
+            !cacheControl.containsKey("public") && !cacheControl.containsKey("s-maxage") && !cacheControl.containsKey("must-revalidate"))
+            return false;
+        long contentLength = headers.getLongField(HttpHeader.CONTENT_LENGTH);
+        if (contentLength > getMaxEntrySize())
+            return false;
+        boolean explicit = cacheControl.containsKey("public") ||
+            cacheControl.containsKey("max-age") ||
+            cacheControl.containsKey("s-maxage") ||
+            headers.contains(HttpHeader.EXPIRES);
+        return explicit || CACHEABLE_STATUSES.contains(status);
+    }
+
+    private void store(String key, Request request, Metadata metadata, byte[] content)
+    {
+        if (metadata.freshness <= 0 && !metadata.isRevalidatable())
+            return;
+
+        Map<String, String> vary = new HashMap<>();
+        for (String name : metadata.headers.getCSV(HttpHeader.VARY, false))
+        {
+            vary.put(name.toLowerCase(Locale.ENGLISH), varyValue(request.getHeaders(), name));
+        }
+        Entry entry = new Entry(key, vary, metadata, content);
+
+        List<Entry> spills = new ArrayList<>();
+        List<Path> deletes = new ArrayList<>();
+        try (AutoLock l = lock.lock())
+        {
+            List<Entry> list = entries.get(key);
+            if (list != null)
+            {
+                for (Entry existing : new ArrayList<>(list))
+                {
+                    if (existing.vary.equals(vary))
+                        remove(existing, deletes);
+                }
+            }
+            entries.computeIfAbsent(key, k -> new ArrayList<>()).add(entry);
+            memory.put(entry, entry);
+            memorySize += entry.size;
+            evictMemory(spills);
+        }
+        if (LOG.isDebugEnabled())
+            LOG.debug("Stored {} for {}", entry, key);
+        spill(spills, deletes);
+    }
+
+    private void update(Entry entry, Metadata metadata)
+    {
+        try (AutoLock l = lock.lock())
+        {
+            entry.metadata = metadata;
+        }
+        if (LOG.isDebugEnabled())
+            LOG.debug("Updated {}", entry);
+    }
+
+    private void remove(Entry entry, List<Path> deletes)
+    {
+        assert lock.isHeldByCurrentThread();
+        if (entry.removed)
+            return;
+        entry.removed = true;
+        List<Entry> list = entries.get(entry.key);
+        if (list != null)
+        {
+            list.remove(entry);
+            if (list.isEmpty())
+                entries.remove(entry.key);
+        }
+        if (memory.remove(entry) != null)
+            memorySize -= entry.size;
+        if (disk.remove(entry) != null)
+        {
+            diskSize -= entry.size;
+            deletes.add((Path)entry.body);
+        }
+    }
+
+    private void evictMemory(List<Entry> spills)
+    {
+        assert lock.isHeldByCurrentThread();
+        Iterator<Entry> iterator = memory.keySet().iterator();
+        while (memorySize > getMaxMemorySize() && iterator.hasNext())
+        {
+            Entry eldest = iterator.next();
+            iterator.remove();
+            memorySize -= eldest.size;
+            if (getDiskDirectory() != null && eldest.size <= getMaxDiskSize())
+            {
+                // The entry remains indexed, and its content
+                // is still in memory until it is written to disk.
+                spills.add(eldest);
+            }
+            else
+            {
+                remove(eldest, new ArrayList<>());
+            }
+        }
+    }
+
+    private void evictDisk(List<Path> deletes)
+    {
+        assert lock.isHeldByCurrentThread();
+        Iterator<Entry> iterator = disk.keySet().iterator();
+        while (diskSize > getMaxDiskSize() && iterator.hasNext())
+        {
+            remove(iterator.next(), deletes);
+            iterator = disk.keySet().iterator();
+        }
+    }
+
+    private void spill(List<Entry> spills, List<Path> deletes)
+    {
+        Path directory = getDiskDirectory();
+        for (Entry entry : spills)
+        {
+            Path path = null;
+            try
+            {
+                byte[] content = (byte[])entry.body;
+                path = Files.createDirectories(directory).resolve("entry-" + entry.id + ".cache");
+                Files.write(path, content);
+            }
+            catch (Throwable x)
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Could not write {} to {}", entry, directory, x);
+                if (path != null)
+                    deletes.add(path);
+                path = null;
+            }
+
+            try (AutoLock l = lock.lock())
+            {
+                if (path == null)
+                {
+                    remove(entry, deletes);
+                }
+                else if (entry.removed)
+                {
+                    deletes.add(path);
+                }
+                else
+                {
+                    entry.body = path;
+                    disk.put(entry, entry);
+                    diskSize += entry.size;
+                    evictDisk(deletes);
+                }
+            }
+        }
+        delete(deletes);
+    }
+
+    private byte[] read(Entry entry)
+    {
+        Object body = entry.body;
+        if (body instanceof byte[])
+            return (byte[])body;
+
+        Path path = (Path)body;
+        byte[] content;
+        try
+        {
+            content = Files.readAllBytes(path);
+        }
+        catch (IOException x)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Could not read {} from {}", entry, path, x);
+            List<Path> deletes = new ArrayList<>();
+            try (AutoLock l = lock.lock())
+            {
+                remove(entry, deletes);
+            }
+            delete(deletes);
+            return null;
+        }
+
+        // Move the entry back to memory.
+        List<Entry> spills = new ArrayList<>();
+        List<Path> deletes = new ArrayList<>();
+        try (AutoLock l = lock.lock())
+        {
+            if (!entry.removed && entry.body == path)
+            {
+                entry.body = content;
+                disk.remove(entry);
+                diskSize -= entry.size;
+                deletes.add(path);
+                memory.put(entry, entry);
+                memorySize += entry.size;
+                evictMemory(spills);
+            }
+        }
+        spill(spills, deletes);
+        return content;
+    }
+
+    private void delete(List<Path> paths)
+    {
+        for (Path path : paths)
+        {
+            try
+            {
+                Files.deleteIfExists(path);
+            }
+            catch (IOException x)
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Could not delete {}", path, x);
+            }
+        }
+    }
+
+    /**
+     * <p>Notifies the listener of the stored response, as if it was received from the server.</p>
+     */
+    private void replay(Request request, Response.Listener listener, Metadata metadata, byte[] content, Conditions conditions)
+    {
+        boolean notModified = conditions.isNotModified(metadata);
+        HttpResponse response = new HttpResponse(request, List.of())
+            .version(metadata.version)
+            .status(notModified ? HttpStatus.NOT_MODIFIED_304 : metadata.status)
+            .reason(notModified ? HttpStatus.getMessage(HttpStatus.NOT_MODIFIED_304) : metadata.reason);
+        long age = TimeUnit.MILLISECONDS.toSeconds(metadata.currentAge(System.currentTimeMillis()));
+        response.headers(headers ->
+        {
+            headers.add(metadata.headers);
+            headers.put(HttpHeader.AGE, Long.toString(Math.max(0, age)));
+            if (notModified)
+                headers.remove(HttpHeader.CONTENT_LENGTH);
+        });
+
+        boolean hasContent = content.length > 0 && !notModified && !HttpMethod.HEAD.is(request.getMethod());
+        try
+        {
+            listener.onBegin(response);
+            for (HttpField field : response.getHeaders())
+            {
+                listener.onHeader(response, field);
+            }
+            listener.onHeaders(response);
+            if (hasContent)
+            {
+                LongConsumer demand = n -> {};
+                listener.onBeforeContent(response, demand);
+                listener.onContent(response, demand, ByteBuffer.wrap(content), Callback.from(() -> succeed(listener, response), x -> fail(listener, response, x)));
+            }
+        }
+        catch (Throwable x)
+        {
+            fail(listener, response, x);
+            return;
+        }
+        if (!hasContent)
+            succeed(listener, response);
+    }
+
+    private void succeed(Response.Listener listener, Response response)
+    {
+        listener.onSuccess(response);
+        listener.onComplete(new Result(response.getRequest(), response));
+    }
+
+    private void fail(Response.Listener listener, Response response, Throwable failure)
+    {
+        listener.onFailure(response, failure);
+        listener.onComplete(new Result(response.getRequest(), response, failure));
+    }
+
+    private static Metadata newMetadata(Response response, long requestTime, long responseTime)
+    {
+        HttpFields headers = response.getHeaders();
+        return new Metadata(response.getVersion(), response.getStatus(), response.getReason(), storedHeaders(headers), headers.get(HttpHeader.AGE), requestTime, responseTime);
+    }
+
+    private static Metadata updateMetadata(Metadata metadata, Response response, long requestTime, long responseTime)
+    {
+        // Update the stored headers with those of the 304 response, see RFC 9111 section 3.2.
+        HttpFields notModified = response.getHeaders();
+        HttpFields.Mutable headers = HttpFields.build(metadata.headers);
+        for (String name : notModified.getFieldNamesCollection())
+        {
+            if (!HttpHeader.CONTENT_LENGTH.is(name))
+                headers.remove(name);
+        }
+        for (HttpField field : notModified)
+        {
+            if (!HttpHeader.CONTENT_LENGTH.is(field.getName()))
+                headers.add(field);
+        }
+        return new Metadata(metadata.version, metadata.status, metadata.reason, storedHeaders(headers), notModified.get(HttpHeader.AGE), requestTime, responseTime);
+    }
+
+    private static HttpFields storedHeaders(HttpFields headers)
+    {
+        HttpFields.Mutable result = HttpFields.build();
+        for (HttpField field : headers)
+        {
+            String name = field.getName().toLowerCase(Locale.ENGLISH);
+            // The Age header is computed when the stored response is used.
+            if (AbstractProxyServlet.HOP_HEADERS.contains(name) || HttpHeader.AGE.is(name))
+                continue;
+            result.add(field);
+        }
+        return result.asImmutable();
+    }
+
+    private static String varyValue(HttpFields headers, String name)
+    {
+        List<String> values = headers.getValuesList(name);
+        return values.isEmpty() ? null : String.join(",", values);
+    }
+
+    private static Map<String, String> cacheControl(HttpFields headers)
+    {
+        Map<String, String> result = new HashMap<>();
+        for (String directive : headers.getCSV(HttpHeader.CACHE_CONTROL, true))
+        {
+            int equal = directive.indexOf('=');
+            String name = (equal < 0 ? directive : directive.substring(0, equal)).trim().toLowerCase(Locale.ENGLISH);
+            String value = equal < 0 ? "" : QuotedStringTokenizer.unquote(directive.substring(equal + 1).trim());
+            result.putIfAbsent(name, value);
+        }
+        return result;
+    }
+
+    private static long seconds(Map<String, String> cacheControl, String directive)
+    {
+        String value = cacheControl.get(directive);
+        if (value == null)
+            return -1;
+        try
+        {
+            return Math.max(0, Long.parseLong(value));
+        }
+        catch (NumberFormatException x)
+        {
+            return -1;
+        }
+    }
+
+    private static boolean matchesETag(String etag, String tag)
+    {
+        // Weak comparison, see RFC 9110 section 8.8.3.2.
+        return stripWeak(etag).equals(stripWeak(tag));
+    }
+
+    private static String stripWeak(String etag)
+    {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    private class Entry
+    {
+        private final long id = ids.incrementAndGet();
+        private final AtomicBoolean revalidating = new AtomicBoolean();
+        private final String key;
+        private final Map<String, String> vary;
+        private final int size;
+        private volatile Metadata metadata;
+        // Either a byte[] if in memory, or a Path if on disk.
+        private volatile Object body;
+        private boolean removed;
+
+        private Entry(String key, Map<String, String> vary, Metadata metadata, byte[] content)
+        {
+            this.key = key;
+            this.vary = vary;
+            this.metadata = metadata;
+            this.body = content;
+            this.size = content.length;
+        }
+
+        private boolean matches(HttpFields requestHeaders)
+        {
+            for (Map.Entry<String, String> entry : vary.entrySet())
+            {
+                if (!Objects.equals(entry.getValue(), varyValue(requestHeaders, entry.getKey())))
+                    return false;
+            }
+            return true;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x[status=%d,size=%d,vary=%s,%s]", getClass().getSimpleName(), hashCode(), metadata.status, size, vary, body instanceof Path ? "disk" : "memory");
+        }
+    }
+
+    private static class Metadata
+    {
+        private final HttpVersion version;
+        private final int status;
+        private final String reason;
+        private final HttpFields headers;
+        private final long responseTime;
+        private final long correctedInitialAge;
+        private final long freshness;
+        private final long staleWhileRevalidate;
+        private final boolean mustRevalidate;
+        private final boolean noCache;
+        private final String etag;
+
+        private Metadata(HttpVersion version, int status, String reason, HttpFields headers, String age, long requestTime, long responseTime)
+        {
+            this.version = version;
+            this.status = status;
+            this.reason = reason;
+            this.headers = headers;
+            this.responseTime = responseTime;
+
+            // See RFC 9111 section 4.2.3.
+            long date = headers.getDateField(HttpHeader.DATE.asString());
+            if (date < 0)
+                date = responseTime;
+            long apparentAge = Math.max(0, responseTime - date);
+            long ageValue = 0;
+            try
+            {
+                if (age != null)
+                    ageValue = TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(age.trim())));
+            }
+            catch (NumberFormatException ignored)
+            {
+            }
+            long correctedAgeValue = ageValue + (responseTime - requestTime);
+            this.correctedInitialAge = Math.max(apparentAge, correctedAgeValue);
+
+            // See RFC 9111 section 4.2.1.
+            Map<String, String> cacheControl = cacheControl(headers);
+            long sMaxAge = seconds(cacheControl, "s-maxage");
+            long maxAge = seconds(cacheControl, "max-age");
+            long expires = headers.getDateField(HttpHeader.EXPIRES.asString());
+            long lastModified = headers.getDateField(HttpHeader.LAST_MODIFIED.asString());
+            if (sMaxAge >= 0)
+                freshness = TimeUnit.SECONDS.toMillis(sMaxAge);
+            else if (maxAge >= 0)
+                freshness = TimeUnit.SECONDS.toMillis(maxAge);
+            else if (headers.contains(HttpHeader.EXPIRES))
+                freshness = Math.max(0, expires - date);
+            else if (lastModified >= 0 && CACHEABLE_STATUSES.contains(status))
+                freshness = Math.min(Math.max(0, date - lastModified) / 10, MAX_HEURISTIC_FRESHNESS);
+            else
+                freshness = 0;
+
+            long swr = seconds(cacheControl, "stale-while-revalidate");
+            staleWhileRevalidate = swr < 0 ? 0 : TimeUnit.SECONDS.toMillis(swr);
+            mustRevalidate = cacheControl.containsKey("must-revalidate") || cacheControl.containsKey("proxy-revalidate") || sMaxAge >= 0;
+            noCache = cacheControl.containsKey("no-cache");
+            etag = headers.get(HttpHeader.ETAG);
+        }
+
+        private long currentAge(long now)
+        {
+            return correctedInitialAge + (now - responseTime);
+        }
+
+        private boolean isRevalidatable()
+        {
+            return etag != null || headers.contains(HttpHeader.LAST_MODIFIED);
+        }
+
+        private boolean isStaleWhileRevalidate(long age)
+        {
+            return !mustRevalidate && !noCache && age - freshness < staleWhileRevalidate;
+        }
+    }
+
+    /**
+     * <p>The conditional headers sent by the client, evaluated against stored responses.</p>
+     */
+    private static class Conditions
+    {
+        private final List<String> ifNoneMatch;
+        private final long ifModifiedSince;
+
+        private Conditions(HttpFields headers)
+        {
+            ifNoneMatch = headers.getCSV(HttpHeader.IF_NONE_MATCH, true);
+            ifModifiedSince = headers.getDateField(HttpHeader.IF_MODIFIED_SINCE.asString());
+        }
+
+        private boolean isNotModified(Metadata metadata)
+        {
+            if (metadata.status != HttpStatus.OK_200)
+                return false;
+            // See RFC 9110 section 13.2.2.
+            if (!ifNoneMatch.isEmpty())
+            {
+                if (metadata.etag == null)
+                    return false;
+                for (String tag : ifNoneMatch)
+                {
+                    if ("*".equals(tag) || matchesETag(metadata.etag, tag))
+                        return true;
+                }
+                return false;
+            }
+            if (ifModifiedSince >= 0)
+            {
+                long lastModified = metadata.headers.getDateField(HttpHeader.LAST_MODIFIED.asString());
+                return lastModified >= 0 && lastModified <= ifModifiedSince;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * <p>Forwards the response to the listener, storing it if possible,
+     * or replays the stored response if the server revalidated it.</p>
+     */
+    private class CachingListener implements Response.Listener
+    {
+        private final long requestTime = System.currentTimeMillis();
+        private final Request request;
+        private final Response.Listener listener;
+        private final String key;
+        private final Entry entry;
+        private final Conditions conditions;
+        private long responseTime;
+        private boolean notModified;
+        private ByteArrayOutputStream2 content;
+
+        private CachingListener(Request request, Response.Listener listener, String key, Entry entry, Conditions conditions)
+        {
+            this.request = request;
+            this.listener = listener;
+            this.key = key;
+            this.entry = entry;
+            this.conditions = conditions;
+        }
+
+        @Override
+        public void onBegin(Response response)
+        {
+            notModified = entry != null && response.getStatus() == HttpStatus.NOT_MODIFIED_304;
+            if (!notModified)
+                listener.onBegin(response);
+        }
+
+        @Override
+        public boolean onHeader(Response response, HttpField field)
+        {
+            return notModified || listener.onHeader(response, field);
+        }
+
+        @Override
+        public void onHeaders(Response response)
+        {
+            responseTime = System.currentTimeMillis();
+            if (notModified)
+                return;
+            if (isStorable(request, response))
+                content = new ByteArrayOutputStream2();
+            else if (entry != null)
+                invalidate(key);
+            listener.onHeaders(response);
+        }
+
+        @Override
+        public void onBeforeContent(Response response, LongConsumer demand)
+        {
+            if (notModified)
+                demand.accept(1);
+            else
+                listener.onBeforeContent(response, demand);
+        }
+
+        @Override
+        public void onContent(Response response, ByteBuffer content)
+        {
+            // Not invoked, see onContent(Response, LongConsumer, ByteBuffer, Callback).
+        }
+
+        @Override
+        public void onContent(Response response, LongConsumer demand, ByteBuffer content, Callback callback)
+        {
+            if (notModified)
+            {
+                callback.succeeded();
+                demand.accept(1);
+                return;
+            }
+            ByteArrayOutputStream2 output = this.content;
+            if (output != null)
+            {
+                int length = content.remaining();
+                if (output.size() + length > getMaxEntrySize())
+                {
+                    this.content = null;
+                }
+                else
+                {
+                    ByteBuffer slice = content.slice();
+                    byte[] bytes = new byte[length];
+                    slice.get(bytes);
+                    output.write(bytes, 0, length);
+                }
+            }
+            listener.onContent(response, demand, content, callback);
+        }
+
+        @Override
+        public void onSuccess(Response response)
+        {
+            if (notModified)
+                return;
+            ByteArrayOutputStream2 output = content;
+            if (output != null)
+                store(key, request, newMetadata(response, requestTime, responseTime), output.toByteArray());
+            listener.onSuccess(response);
+        }
+
+        @Override
+        public void onFailure(Response response, Throwable failure)
+        {
+            if (!notModified)
+                listener.onFailure(response, failure);
+        }
+
+        @Override
+        public void onComplete(Result result)
+        {
+            if (notModified && result.isSucceeded())
+            {
+                Metadata metadata = updateMetadata(entry.metadata, result.getResponse(), requestTime, responseTime);
+                update(entry, metadata);
+                byte[] content = read(entry);
+                if (content != null)
+                {
+                    hits.increment();
+                    replay(request, listener, metadata, content, conditions);
+                    return;
+                }
+                // The stored content could not be read.
+                result = new Result(result, new IOException("Stored response content not available"));
+            }
+            listener.onComplete(result);
+        }
+    }
+
+    /**
+     * <p>Updates or replaces a stored response revalidated in background.</p>
+     */
+    private class RevalidationListener extends BufferingResponseListener
+    {
+        private final long requestTime = System.currentTimeMillis();
+        private final Request request;
+        private final String key;
+        private final Entry entry;
+        private long responseTime;
+
+        private RevalidationListener(Request request, String key, Entry entry)
+        {
+            super(getMaxEntrySize());
+            this.request = request;
+            this.key = key;
+            this.entry = entry;
+        }
+
+        @Override
+        public void onHeaders(Response response)
+        {
+            responseTime = System.currentTimeMillis();
+            super.onHeaders(response);
+        }
+
+        @Override
+        public void onComplete(Result result)
+        {
+            entry.revalidating.set(false);
+            if (result.isFailed())
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Revalidation failed for {}", entry, result.getFailure());
+                return;
+            }
+            Response response = result.getResponse();
+            if (response.getStatus() == HttpStatus.NOT_MODIFIED_304)
+                update(entry, updateMetadata(entry.metadata, response, requestTime, responseTime));
+            else if (isStorable(request, response))
+                store(key, request, newMetadata(response, requestTime, responseTime), getContent());
+            else
+                invalidate(key);
+        }
+    }
+}
@@ -15,6 +15,8 @@ package org.eclipse.jetty.proxy;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
 
@@ -22,6 +24,7 @@ import org.eclipse.jetty.io.AbstractConnection;
 import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.io.Connection;
 import org.eclipse.jetty.io.EndPoint;
+import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.IteratingCallback;
 import org.slf4j.Logger;
@@ -33,6 +36,7 @@ public abstract class ProxyConnection extends AbstractConnection
     private final ByteBufferPool bufferPool;
     private final ConcurrentMap<String, Object> context;
     private ProxyConnection connection;
+    private int maxGatheredBuffers = 1;
 
     protected ProxyConnection(EndPoint endp, Executor executor, ByteBufferPool bufferPool, ConcurrentMap<String, Object> context)
     {
@@ -61,6 +65,27 @@ public abstract class ProxyConnection extends AbstractConnection
         this.connection = connection;
     }
 
+    /**
+     * @return the max number of buffers that are filled before writing them to the other peer
+     */
+    public int getMaxGatheredBuffers()
+    {
+        return maxGatheredBuffers;
+    }
+
+    /**
+     * <p>Sets the max number of buffers that are filled before writing them to the other peer.</p>
+     * <p>When a read fills a whole buffer, more data is likely available, so another buffer
+     * is filled, up to this number of buffers, and then all the buffers are written at once
+     * with {@link #write(EndPoint, Callback, ByteBuffer...) a gathering write}.</p>
+     *
+     * @param maxGatheredBuffers the max number of buffers that are filled before writing them
+     */
+    public void setMaxGatheredBuffers(int maxGatheredBuffers)
+    {
+        this.maxGatheredBuffers = Math.max(1, maxGatheredBuffers);
+    }
+
     @Override
     public void onFillable()
     {
@@ -71,6 +96,18 @@ public abstract class ProxyConnection extends AbstractConnection
 
     protected abstract void write(EndPoint endPoint, ByteBuffer buffer, Callback callback);
 
+    /**
+     * <p>Writes the given buffers to the given endPoint with a single gathering write.</p>
+     *
+     * @param endPoint the endPoint to write to
+     * @param callback the completion callback to invoke
+     * @param buffers the buffers to write
+     */
+    protected void write(EndPoint endPoint, Callback callback, ByteBuffer... buffers)
+    {
+        endPoint.write(callback, buffers);
+    }
+
     protected void close(Throwable failure)
     {
         getEndPoint().close(failure);
@@ -89,52 +126,93 @@ public abstract class ProxyConnection extends AbstractConnection
 
     private class ProxyIteratingCallback extends IteratingCallback
     {
-        private ByteBuffer buffer;
+        private final List<ByteBuffer> buffers = new ArrayList<>();
         private int filled;
 
         @Override
         protected Action process()
         {
-            buffer = bufferPool.acquire(getInputBufferSize(), true);
             try
             {
-                int filled = this.filled = read(getEndPoint(), buffer);
-                if (LOG.isDebugEnabled())
-                    LOG.debug("{} filled {} bytes", ProxyConnection.this, filled);
-                if (filled > 0)
-                {
-                    write(connection.getEndPoint(), buffer, this);
-                    return Action.SCHEDULED;
-                }
-                else if (filled == 0)
+                // Fill as many buffers as available data allows, up to
+                // the max gathered buffers, then write them all at once.
+                int filled = this.filled = 0;
+                int count = 0;
+                while (true)
                 {
-                    bufferPool.release(buffer);
-                    fillInterested();
-                    return Action.IDLE;
-                }
-                else
-                {
-                    bufferPool.release(buffer);
-                    connection.getEndPoint().shutdownOutput();
-                    return Action.SUCCEEDED;
+                    ByteBuffer buffer = count < buffers.size() ? buffers.get(count) : acquireBuffer();
+                    int read = read(getEndPoint(), buffer);
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("{} filled {} bytes", ProxyConnection.this, read);
+                    if (read > 0)
+                    {
+                        this.filled = filled += read;
+                        ++count;
+                        // Only a full buffer is a hint that there is more data to read.
+                        if (BufferUtil.space(buffer) == 0 && count < maxGatheredBuffers)
+                            continue;
+                        write(count);
+                        return Action.SCHEDULED;
+                    }
+                    else if (count > 0)
+                    {
+                        // Write the data read so far, the next iteration will read again.
+                        write(count);
+                        return Action.SCHEDULED;
+                    }
+                    else if (read == 0)
+                    {
+                        releaseBuffers();
+                        fillInterested();
+                        return Action.IDLE;
+                    }
+                    else
+                    {
+                        releaseBuffers();
+                        connection.getEndPoint().shutdownOutput();
+                        return Action.SUCCEEDED;
+                    }
                 }
             }
             catch (IOException x)
             {
                 if (LOG.isDebugEnabled())
                     LOG.debug("{} could not fill", ProxyConnection.this, x);
-                bufferPool.release(buffer);
+                releaseBuffers();
                 disconnect(x);
                 return Action.SUCCEEDED;
             }
         }
 
+        private ByteBuffer acquireBuffer()
+        {
+            ByteBuffer buffer = bufferPool.acquire(getInputBufferSize(), true);
+            buffers.add(buffer);
+            return buffer;
+        }
+
+        private void write(int count)
+        {
+            if (count == 1)
+                ProxyConnection.this.write(connection.getEndPoint(), buffers.get(0), this);
+            else
+                ProxyConnection.this.write(connection.getEndPoint(), this, buffers.subList(0, count).toArray(ByteBuffer[]::new));
+        }
+
+        private void releaseBuffers()
+        {
+            buffers.forEach(bufferPool::release);
+            buffers.clear();
+        }
+
         @Override
         public void succeeded()
         {
             if (LOG.isDebugEnabled())
                 LOG.debug("{} wrote {} bytes", ProxyConnection.this, filled);
-            bufferPool.release(buffer);
+            // Keep the buffers while data flows, to avoid
+            // releasing and acquiring them at every iteration.
+            buffers.forEach(BufferUtil::clear);
             super.succeeded();
         }
 
@@ -148,7 +226,7 @@ public abstract class ProxyConnection extends AbstractConnection
         {
             if (LOG.isDebugEnabled())
                 LOG.debug("{} failed to write {} bytes", ProxyConnection.this, filled, x);
-            bufferPool.release(buffer);
+            releaseBuffers();
             disconnect(x);
         }
 
@@ -0,0 +1,370 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.proxy;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.util.BytesRequestContent;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.HttpCookieStore;
+import org.eclipse.jetty.util.IO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BalancerHandlerTest
+{
+    private final List<Server> servers = new ArrayList<>();
+    private Server balancer;
+    private BalancerHandler balancerHandler;
+    private HttpClient client;
+
+    @BeforeEach
+    public void prepare() throws Exception
+    {
+        client = new HttpClient();
+        client.start();
+    }
+
+    @AfterEach
+    public void dispose() throws Exception
+    {
+        if (balancer != null)
+            balancer.stop();
+        for (Server server : servers)
+        {
+            server.stop();
+        }
+        client.stop();
+    }
+
+    private Backend startBackend(String name) throws Exception
+    {
+        Backend backend = new Backend(name);
+        Server server = new Server();
+        ServerConnector connector = new ServerConnector(server);
+        server.addConnector(connector);
+        server.setHandler(backend);
+        server.start();
+        servers.add(server);
+        backend.port = connector.getLocalPort();
+        return backend;
+    }
+
+    private void startBalancer(Backend... backends) throws Exception
+    {
+        balancer = new Server();
+        ServerConnector connector = new ServerConnector(balancer);
+        balancer.addConnector(connector);
+        for (Backend backend : backends)
+        {
+            balancerHandler.addBackend("http://localhost:" + backend.port);
+        }
+        balancer.setHandler(balancerHandler);
+        balancer.start();
+    }
+
+    private ContentResponse send(String path) throws Exception
+    {
+        return client.newRequest("localhost", ((ServerConnector)balancer.getConnectors()[0]).getLocalPort())
+            .path(path)
+            .timeout(5, TimeUnit.SECONDS)
+            .send();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean())
+        {
+            assertTrue(System.nanoTime() < deadline, "condition not met");
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testRequestsAreBalanced() throws Exception
+    {
+        Backend backend1 = startBackend("node1");
+        Backend backend2 = startBackend("node2");
+        balancerHandler = new BalancerHandler();
+        startBalancer(backend1, backend2);
+
+        int count = 20;
+        for (int i = 0; i < count; ++i)
+        {
+            ContentResponse response = send("/path?param=" + i);
+            assertEquals(HttpStatus.OK_200, response.getStatus());
+            assertTrue(Arrays.asList("node1", "node2").contains(response.getContentAsString()));
+        }
+
+        assertThat(backend1.requests.get(), greaterThan(0));
+        assertThat(backend2.requests.get(), greaterThan(0));
+        assertEquals(count, backend1.requests.get() + backend2.requests.get());
+        assertEquals(count, balancerHandler.getRequests());
+        for (BalancerHandler.Backend backend : balancerHandler.getBackends())
+        {
+            assertEquals(0, backend.getActiveRequests());
+        }
+    }
+
+    @Test
+    public void testRequestAndResponseContentAreProxied() throws Exception
+    {
+        Backend backend = startBackend("node1");
+        balancerHandler = new BalancerHandler();
+        startBalancer(backend);
+
+        byte[] content = new byte[512 * 1024];
+        for (int i = 0; i < content.length; ++i)
+        {
+            content[i] = (byte)('a' + i % 26);
+        }
+        ContentResponse response = client.newRequest("localhost", ((ServerConnector)balancer.getConnectors()[0]).getLocalPort())
+            .method(HttpMethod.POST)
+            .path("/echo")
+            .body(new BytesRequestContent(content))
+            .timeout(5, TimeUnit.SECONDS)
+            .send();
+
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertArrayEquals(content, response.getContent());
+    }
+
+    @Test
+    public void testUnhealthyBackendIsNotSelected() throws Exception
+    {
+        Backend backend1 = startBackend("node1");
+        Backend backend2 = startBackend("node2");
+        balancerHandler = new BalancerHandler();
+        balancerHandler.setHealthCheckPath("/health");
+        balancerHandler.setHealthCheckInterval(50);
+        balancerHandler.setMaxHealthCheckInterval(200);
+        backend1.health.set(HttpStatus.SERVICE_UNAVAILABLE_503);
+        startBalancer(backend1, backend2);
+
+        BalancerHandler.Backend unhealthy = balancerHandler.getBackends().get(0);
+        await(() -> !unhealthy.isHealthy());
+
+        for (int i = 0; i < 10; ++i)
+        {
+            ContentResponse response = send("/");
+            assertEquals("node2", response.getContentAsString());
+        }
+        assertEquals(0, backend1.requests.get());
+
+        // The backend recovers.
+        backend1.health.set(HttpStatus.OK_200);
+        await(unhealthy::isHealthy);
+    }
+
+    @Test
+    public void testNoBackendAvailable() throws Exception
+    {
+        Backend backend = startBackend("node1");
+        backend.health.set(HttpStatus.INTERNAL_SERVER_ERROR_500);
+        balancerHandler = new BalancerHandler();
+        balancerHandler.setHealthCheckPath("/health");
+        balancerHandler.setHealthCheckInterval(50);
+        startBalancer(backend);
+
+        await(() -> !balancerHandler.getBackends().get(0).isHealthy());
+
+        ContentResponse response = send("/");
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE_503, response.getStatus());
+        assertEquals(1, balancerHandler.getUnavailable());
+    }
+
+    @Test
+    public void testFailingBackendIsEjected() throws Exception
+    {
+        Backend backend1 = startBackend("node1");
+        Backend backend2 = startBackend("node2");
+        backend1.status.set(HttpStatus.INTERNAL_SERVER_ERROR_500);
+        balancerHandler = new BalancerHandler();
+        balancerHandler.setConsecutiveFailures(2);
+        startBalancer(backend1, backend2);
+
+        BalancerHandler.Backend failing = balancerHandler.getBackends().get(0);
+        for (int i = 0; i < 50 && !failing.isEjected(); ++i)
+        {
+            send("/");
+        }
+        assertTrue(failing.isEjected());
+        assertEquals(2, backend1.requests.get());
+
+        for (int i = 0; i < 10; ++i)
+        {
+            ContentResponse response = send("/");
+            assertEquals(HttpStatus.OK_200, response.getStatus());
+            assertEquals("node2", response.getContentAsString());
+        }
+
+        // The other backend cannot be ejected, because at most 50% of backends can be ejected.
+        backend2.status.set(HttpStatus.INTERNAL_SERVER_ERROR_500);
+        for (int i = 0; i < 10; ++i)
+        {
+            send("/");
+        }
+        assertFalse(balancerHandler.getBackends().get(1).isEjected());
+    }
+
+    @Test
+    public void testBackendDown() throws Exception
+    {
+        int port;
+        try (ServerSocket serverSocket = new ServerSocket(0))
+        {
+            port = serverSocket.getLocalPort();
+        }
+        balancerHandler = new BalancerHandler();
+        balancerHandler.setConsecutiveFailures(1);
+        balancer = new Server();
+        ServerConnector connector = new ServerConnector(balancer);
+        balancer.addConnector(connector);
+        balancerHandler.addBackend("http://localhost:" + port);
+        balancer.setHandler(balancerHandler);
+        balancer.start();
+
+        ContentResponse response = send("/");
+        assertEquals(HttpStatus.BAD_GATEWAY_502, response.getStatus());
+        assertEquals(1, balancerHandler.getFailures());
+        assertTrue(balancerHandler.getBackends().get(0).isEjected());
+
+        // The only backend is ejected.
+        response = send("/");
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE_503, response.getStatus());
+    }
+
+    @Test
+    public void testRequestWithContentTypeHasContent()
+    {
+        // HTTP/2 and HTTP/3 requests may have content without Content-Length.
+        HttpServletRequest request = (HttpServletRequest)Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{HttpServletRequest.class}, (proxy, method, args) ->
+        {
+            switch (method.getName())
+            {
+                case "getContentLengthLong":
+                    return -1L;
+                case "getContentType":
+                    return "application/json";
+                default:
+                    return null;
+            }
+        });
+        assertTrue(new BalancerHandler().hasContent(request));
+    }
+
+    @Test
+    public void testApplicationHttpClientIsNotModified() throws Exception
+    {
+        HttpClient httpClient = new HttpClient();
+        httpClient.setCookieStore(new HttpCookieStore.Empty());
+        httpClient.start();
+        httpClient.getContentDecoderFactories().clear();
+        try
+        {
+            Backend backend = startBackend("node1");
+            balancerHandler = new BalancerHandler(httpClient);
+            startBalancer(backend);
+
+            // The redirect is proxied, not followed.
+            ContentResponse response = client.newRequest("localhost", ((ServerConnector)balancer.getConnectors()[0]).getLocalPort())
+                .path("/redirect")
+                .followRedirects(false)
+                .timeout(5, TimeUnit.SECONDS)
+                .send();
+            assertEquals(HttpStatus.FOUND_302, response.getStatus());
+            assertTrue(httpClient.isFollowRedirects());
+            assertNotNull(httpClient.getProtocolHandlers().find(httpClient.newRequest("http://localhost/"), response));
+        }
+        finally
+        {
+            httpClient.stop();
+        }
+    }
+
+    @Test
+    public void testApplicationHttpClientMustNotStoreCookies()
+    {
+        balancerHandler = new BalancerHandler(new HttpClient());
+        balancer = new Server();
+        balancer.setHandler(balancerHandler);
+        assertThrows(IllegalStateException.class, balancerHandler::start);
+    }
+
+    private static class Backend extends AbstractHandler
+    {
+        private final AtomicInteger requests = new AtomicInteger();
+        private final AtomicInteger status = new AtomicInteger(HttpStatus.OK_200);
+        private final AtomicInteger health = new AtomicInteger(HttpStatus.OK_200);
+        private final String name;
+        private int port;
+
+        private Backend(String name)
+        {
+            this.name = name;
+        }
+
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+        {
+            baseRequest.setHandled(true);
+            if ("/health".equals(target))
+            {
+                response.setStatus(health.get());
+                return;
+            }
+
+            requests.incrementAndGet();
+            if ("/redirect".equals(target))
+            {
+                response.sendRedirect("/");
+                return;
+            }
+            response.setStatus(status.get());
+            if ("/echo".equals(target))
+                IO.copy(request.getInputStream(), response.getOutputStream());
+            else
+                response.getOutputStream().write(name.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -26,6 +26,7 @@ import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 import java.util.Locale;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import javax.servlet.ServletException;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
@@ -46,6 +47,8 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -609,6 +612,30 @@ public class ConnectHandlerTest extends AbstractConnectHandlerTest
     @Test
     public void testCONNECTAndPOSTWithBigBody() throws Exception
     {
+        testCONNECTAndPOSTWithBigBody(1);
+    }
+
+    @Test
+    public void testCONNECTAndPOSTWithBigBodyGatheringWrites() throws Exception
+    {
+        int length = testCONNECTAndPOSTWithBigBody(4);
+
+        assertEquals(1, connectHandler.getTunnelsTotal());
+        assertThat(connectHandler.getBytesToServer(), greaterThan((long)length));
+        assertThat(connectHandler.getBytesToClient(), greaterThan((long)length));
+        // The tunnel is closed when the client closes the socket.
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (connectHandler.getTunnels() > 0 && System.nanoTime() < end)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(0, connectHandler.getTunnels());
+    }
+
+    private int testCONNECTAndPOSTWithBigBody(int maxGatheredBuffers) throws Exception
+    {
+        connectHandler.setMaxGatheredBuffers(maxGatheredBuffers);
+
         // Use a longer idle timeout since this test
         // may take a long time on slower machines.
         long idleTimeout = 5 * 60 * 1000;
@@ -655,6 +682,7 @@ public class ConnectHandlerTest extends AbstractConnectHandlerTest
             response = HttpTester.parseResponse(in);
             assertEquals(HttpStatus.OK_200, response.getStatus());
             assertEquals("POST /echo\r\n" + body, response.getContent());
+            return body.length();
         }
     }
 
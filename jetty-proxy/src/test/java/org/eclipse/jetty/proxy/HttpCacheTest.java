@@ -0,0 +1,324 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.proxy;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.toolchain.test.jupiter.WorkDir;
+import org.eclipse.jetty.toolchain.test.jupiter.WorkDirExtension;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(WorkDirExtension.class)
+public class HttpCacheTest
+{
+    public WorkDir workDir;
+    private final AtomicInteger serverRequests = new AtomicInteger();
+    private Server server;
+    private ServerConnector serverConnector;
+    private Server proxy;
+    private ServerConnector proxyConnector;
+    private AbstractProxyServlet proxyServlet;
+    private HttpClient client;
+
+    public static Stream<AbstractProxyServlet> proxies()
+    {
+        return Stream.of(new ProxyServlet.Transparent(), new AsyncMiddleManServlet.Transparent());
+    }
+
+    private void startServer(Handler handler) throws Exception
+    {
+        server = new Server();
+        serverConnector = new ServerConnector(server);
+        server.addConnector(serverConnector);
+        server.setHandler(handler);
+        server.start();
+    }
+
+    private void startProxy(AbstractProxyServlet servlet, Map<String, String> initParams) throws Exception
+    {
+        proxyServlet = servlet;
+        proxy = new Server();
+        proxyConnector = new ServerConnector(proxy);
+        proxy.addConnector(proxyConnector);
+        ServletContextHandler context = new ServletContextHandler(proxy, "/", false, false);
+        ServletHolder holder = new ServletHolder(servlet);
+        holder.setInitParameters(initParams);
+        holder.setInitParameter("proxyTo", "http://localhost:" + serverConnector.getLocalPort());
+        holder.setInitParameter("cache", "true");
+        context.addServlet(holder, "/*");
+        proxy.start();
+
+        client = new HttpClient();
+        client.start();
+    }
+
+    private void startProxy() throws Exception
+    {
+        startProxy(new ProxyServlet.Transparent(), Map.of());
+    }
+
+    @AfterEach
+    public void dispose() throws Exception
+    {
+        if (client != null)
+            client.stop();
+        if (proxy != null)
+            proxy.stop();
+        if (server != null)
+            server.stop();
+    }
+
+    private org.eclipse.jetty.client.api.Request newRequest(String path)
+    {
+        return client.newRequest("localhost", proxyConnector.getLocalPort())
+            .path(path)
+            .timeout(5, TimeUnit.SECONDS);
+    }
+
+    @ParameterizedTest
+    @MethodSource("proxies")
+    public void testFreshResponseIsServedFromCache(AbstractProxyServlet servlet) throws Exception
+    {
+        startServer(new ContentHandler("max-age=60", null));
+        startProxy(servlet, Map.of());
+
+        for (int i = 0; i < 3; ++i)
+        {
+            ContentResponse response = newRequest("/fresh").send();
+            assertEquals(HttpStatus.OK_200, response.getStatus());
+            assertEquals("hello", response.getContentAsString());
+        }
+
+        assertEquals(1, serverRequests.get());
+        HttpCache cache = proxyServlet.getHttpCache();
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testStoredResponseHasAgeHeader() throws Exception
+    {
+        startServer(new ContentHandler("max-age=60", null));
+        startProxy();
+
+        assertEquals("hello", newRequest("/age").send().getContentAsString());
+        ContentResponse response = newRequest("/age").send();
+
+        assertEquals("hello", response.getContentAsString());
+        assertNotNull(response.getHeaders().get(HttpHeader.AGE));
+        assertEquals(1, serverRequests.get());
+    }
+
+    @Test
+    public void testNoStoreResponseIsNotCached() throws Exception
+    {
+        startServer(new ContentHandler("no-store, max-age=60", null));
+        startProxy();
+
+        for (int i = 0; i < 2; ++i)
+        {
+            assertEquals("hello", newRequest("/nostore").send().getContentAsString());
+        }
+
+        assertEquals(2, serverRequests.get());
+        assertEquals(0, proxyServlet.getHttpCache().getSize());
+    }
+
+    @Test
+    public void testStaleResponseIsRevalidated() throws Exception
+    {
+        ContentHandler handler = new ContentHandler("max-age=0", "\"v1\"");
+        startServer(handler);
+        startProxy();
+
+        assertEquals("hello", newRequest("/stale").send().getContentAsString());
+        ContentResponse response = newRequest("/stale").send();
+
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertEquals("hello", response.getContentAsString());
+        assertEquals(2, serverRequests.get());
+        assertEquals(1, handler.notModified.get());
+        assertEquals(1, proxyServlet.getHttpCache().getRevalidations());
+    }
+
+    @Test
+    public void testConditionalRequestIsAnsweredFromCache() throws Exception
+    {
+        startServer(new ContentHandler("max-age=60", "\"v1\""));
+        startProxy();
+
+        assertEquals("hello", newRequest("/conditional").send().getContentAsString());
+        ContentResponse response = newRequest("/conditional")
+            .headers(headers -> headers.put(HttpHeader.IF_NONE_MATCH, "\"v1\""))
+            .send();
+
+        assertEquals(HttpStatus.NOT_MODIFIED_304, response.getStatus());
+        assertEquals(0, response.getContent().length);
+        assertEquals(1, serverRequests.get());
+    }
+
+    @Test
+    public void testStaleWhileRevalidate() throws Exception
+    {
+        ContentHandler handler = new ContentHandler("max-age=0, stale-while-revalidate=60", "\"v1\"");
+        startServer(handler);
+        startProxy();
+
+        assertEquals("hello", newRequest("/swr").send().getContentAsString());
+        ContentResponse response = newRequest("/swr").send();
+
+        // The stale response is returned, and revalidated in background
+        // with a new request that carries the headers of the proxied request.
+        assertEquals("hello", response.getContentAsString());
+        assertTrue(handler.notModifiedLatch.await(5, TimeUnit.SECONDS));
+        assertNotNull(handler.notModifiedForwardedFor);
+        assertEquals(2, serverRequests.get());
+    }
+
+    @Test
+    public void testVariantsAreStoredSeparately() throws Exception
+    {
+        startServer(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                baseRequest.setHandled(true);
+                serverRequests.incrementAndGet();
+                response.setHeader(HttpHeader.CACHE_CONTROL.asString(), "max-age=60");
+                response.setHeader(HttpHeader.VARY.asString(), HttpHeader.ACCEPT_LANGUAGE.asString());
+                response.getOutputStream().write(request.getHeader(HttpHeader.ACCEPT_LANGUAGE.asString()).getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        startProxy();
+
+        for (String language : new String[]{"en", "it", "en", "it"})
+        {
+            ContentResponse response = newRequest("/vary")
+                .headers(headers -> headers.put(HttpHeader.ACCEPT_LANGUAGE, language))
+                .send();
+            assertEquals(language, response.getContentAsString());
+        }
+
+        assertEquals(2, serverRequests.get());
+        assertEquals(2, proxyServlet.getHttpCache().getSize());
+    }
+
+    @Test
+    public void testUnsafeMethodInvalidates() throws Exception
+    {
+        startServer(new ContentHandler("max-age=60", null));
+        startProxy();
+
+        assertEquals("hello", newRequest("/unsafe").send().getContentAsString());
+        assertEquals(HttpStatus.OK_200, newRequest("/unsafe").method(HttpMethod.DELETE).send().getStatus());
+        assertEquals("hello", newRequest("/unsafe").send().getContentAsString());
+
+        assertEquals(3, serverRequests.get());
+    }
+
+    @Test
+    public void testEvictedResponsesAreStoredOnDisk() throws Exception
+    {
+        startServer(new ContentHandler("max-age=60", null));
+        Path directory = workDir.getEmptyPathDir();
+        Map<String, String> initParams = new HashMap<>();
+        initParams.put("cacheMaxMemorySize", "8");
+        initParams.put("cacheDirectory", directory.toString());
+        startProxy(new ProxyServlet.Transparent(), initParams);
+        HttpCache cache = proxyServlet.getHttpCache();
+
+        assertEquals("hello", newRequest("/disk1").send().getContentAsString());
+        assertEquals("hello", newRequest("/disk2").send().getContentAsString());
+        assertEquals(2, serverRequests.get());
+        // Responses are stored after they are forwarded to the client.
+        await().atMost(5, TimeUnit.SECONDS).until(cache::getDiskSize, greaterThan(0L));
+        assertEquals(2, cache.getSize());
+
+        // The response stored on disk is moved back to memory.
+        assertEquals("hello", newRequest("/disk1").send().getContentAsString());
+        assertEquals(2, serverRequests.get());
+        assertEquals(1, cache.getHits());
+    }
+
+    private class ContentHandler extends AbstractHandler
+    {
+        private final AtomicInteger notModified = new AtomicInteger();
+        private final CountDownLatch notModifiedLatch = new CountDownLatch(1);
+        private volatile String notModifiedForwardedFor;
+        private final String cacheControl;
+        private final String etag;
+
+        private ContentHandler(String cacheControl, String etag)
+        {
+            this.cacheControl = cacheControl;
+            this.etag = etag;
+        }
+
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+        {
+            baseRequest.setHandled(true);
+            serverRequests.incrementAndGet();
+            response.setHeader(HttpHeader.CACHE_CONTROL.asString(), cacheControl);
+            if (etag != null)
+            {
+                response.setHeader(HttpHeader.ETAG.asString(), etag);
+                if (etag.equals(request.getHeader(HttpHeader.IF_NONE_MATCH.asString())))
+                {
+                    notModified.incrementAndGet();
+                    notModifiedForwardedFor = request.getHeader(HttpHeader.X_FORWARDED_FOR.asString());
+                    notModifiedLatch.countDown();
+                    response.setStatus(HttpStatus.NOT_MODIFIED_304);
+                    return;
+                }
+            }
+            if (HttpMethod.GET.is(request.getMethod()))
+                response.getOutputStream().write("hello".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -16,7 +16,10 @@ package org.eclipse.jetty.quic.common;
 import java.io.IOException;
 import java.net.SocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.EventListener;
 import java.util.List;
@@ -66,6 +69,12 @@ public abstract class QuicConnection extends AbstractConnection
     private int outputBufferSize = 2048;
     private boolean useInputDirectByteBuffers = true;
     private boolean useOutputDirectByteBuffers = true;
+    private int datagramBatchSize = 16;
+    // Only accessed by the producer thread.
+    private ByteBuffer[] cipherBuffers;
+    private SocketAddress[] remoteAddresses;
+    private int received;
+    private int processed;
 
     protected QuicConnection(Executor executor, Scheduler scheduler, ByteBufferPool byteBufferPool, EndPoint endPoint)
     {
@@ -123,6 +132,28 @@ public abstract class QuicConnection extends AbstractConnection
         this.useOutputDirectByteBuffers = useOutputDirectByteBuffers;
     }
 
+    /**
+     * @return the max number of datagrams received or sent in a single pass
+     */
+    public int getDatagramBatchSize()
+    {
+        return datagramBatchSize;
+    }
+
+    /**
+     * <p>Sets the max number of datagrams received or sent in a single pass.</p>
+     * <p>Receiving datagrams in batches drains the socket receive buffer quickly,
+     * reducing the packets dropped by the kernel during bursts; sending datagrams
+     * in batches coalesces the QUIC packets of one or more {@link QuicSession}s
+     * in a single flush.</p>
+     *
+     * @param datagramBatchSize the max number of datagrams received or sent in a single pass
+     */
+    public void setDatagramBatchSize(int datagramBatchSize)
+    {
+        this.datagramBatchSize = Math.max(1, datagramBatchSize);
+    }
+
     public Collection<QuicSession> getQuicSessions()
     {
         return List.copyOf(sessions.values());
@@ -154,6 +185,7 @@ public abstract class QuicConnection extends AbstractConnection
     @Override
     public void onClose(Throwable cause)
     {
+        flusher.close();
         LifeCycle.stop(strategy);
         super.onClose(cause);
     }
@@ -210,6 +242,23 @@ public abstract class QuicConnection extends AbstractConnection
 
     protected abstract QuicSession createSession(SocketAddress remoteAddress, ByteBuffer cipherBuffer) throws IOException;
 
+    /**
+     * <p>Looks up a session that is not owned by this connection.</p>
+     * <p>This method is called when a packet carries a connection ID that
+     * is unknown to this connection, before trying to create a new session.
+     * Implementations that spread sessions across multiple connections
+     * (for example, one per {@code SO_REUSEPORT} channel) may override
+     * this method to route the packet to the session that owns it, as it
+     * may happen after a connection migration or a NAT rebinding.</p>
+     *
+     * @param connectionId the connection ID carried by the packet
+     * @return the session owning the connection ID, or null if there is no such session
+     */
+    protected QuicSession findSession(QuicheConnectionId connectionId)
+    {
+        return null;
+    }
+
     public void write(Callback callback, SocketAddress remoteAddress, ByteBuffer... buffers)
     {
         flusher.offer(callback, remoteAddress, buffers);
@@ -223,95 +272,135 @@ public abstract class QuicConnection extends AbstractConnection
         if (interested)
             return null;
 
-        ByteBuffer cipherBuffer = byteBufferPool.acquire(getInputBufferSize(), isUseInputDirectByteBuffers());
         try
         {
             while (true)
             {
-                BufferUtil.clear(cipherBuffer);
-                SocketAddress remoteAddress = getEndPoint().receive(cipherBuffer);
-                int fill = remoteAddress == DatagramChannelEndPoint.EOF ? -1 : cipherBuffer.remaining();
-                if (LOG.isDebugEnabled())
-                    LOG.debug("filled cipher buffer with {} byte(s)", fill);
-                // DatagramChannelEndPoint will only return -1 if input is shut down.
-                if (fill < 0)
-                {
-                    byteBufferPool.release(cipherBuffer);
-                    getEndPoint().shutdownOutput();
-                    return null;
-                }
-                if (fill == 0)
-                {
-                    byteBufferPool.release(cipherBuffer);
-                    fillInterested();
-                    return null;
-                }
-
-                if (LOG.isDebugEnabled())
-                    LOG.debug("peer IP address: {}, ciphertext packet size: {}", remoteAddress, cipherBuffer.remaining());
-
-                QuicheConnectionId quicheConnectionId = QuicheConnectionId.fromPacket(cipherBuffer);
-                if (quicheConnectionId == null)
+                if (processed == received)
                 {
+                    int fill = receive();
                     if (LOG.isDebugEnabled())
-                        LOG.debug("packet contains undecipherable connection ID, dropping it");
-                    continue;
-                }
-                if (LOG.isDebugEnabled())
-                    LOG.debug("packet contains connection ID {}", quicheConnectionId);
-
-                QuicSession session = sessions.get(quicheConnectionId);
-                if (session == null)
-                {
-                    if (LOG.isDebugEnabled())
-                        LOG.debug("packet is for unknown session, trying to create a new one");
-                    session = createSession(remoteAddress, cipherBuffer);
-                    if (session != null)
+                        LOG.debug("filled {} cipher buffer(s)", fill);
+                    // DatagramChannelEndPoint will only return -1 if input is shut down.
+                    if (fill < 0)
                     {
-                        if (LOG.isDebugEnabled())
-                            LOG.debug("session created");
-                        session.setConnectionId(quicheConnectionId);
-                        session.setIdleTimeout(getEndPoint().getIdleTimeout());
-                        sessions.put(quicheConnectionId, session);
-                        listeners.forEach(session::addEventListener);
-                        LifeCycle.start(session);
-
-                        // Session creation may have generated a task.
-                        Runnable task = session.pollTask();
-                        if (LOG.isDebugEnabled())
-                            LOG.debug("processing creation task {} on {}", task, session);
-                        if (task != null)
-                        {
-                            byteBufferPool.release(cipherBuffer);
-                            return task;
-                        }
+                        releaseCipherBuffers();
+                        getEndPoint().shutdownOutput();
+                        return null;
                     }
-                    else
+                    if (fill == 0)
                     {
-                        if (LOG.isDebugEnabled())
-                            LOG.debug("session not created");
+                        releaseCipherBuffers();
+                        fillInterested();
+                        return null;
                     }
-                    continue;
                 }
 
-                Runnable task = process(session, remoteAddress, cipherBuffer);
+                // The cipher buffers are reused for the next batch, as
+                // the sessions consume the bytes while processing them.
+                int index = processed++;
+                SocketAddress remoteAddress = remoteAddresses[index];
+                remoteAddresses[index] = null;
+                Runnable task = process(remoteAddress, cipherBuffers[index]);
                 if (task != null)
-                {
-                    byteBufferPool.release(cipherBuffer);
                     return task;
-                }
             }
         }
         catch (Throwable x)
         {
             if (LOG.isDebugEnabled())
                 LOG.debug("receiveAndProcess() failure", x);
-            byteBufferPool.release(cipherBuffer);
+            releaseCipherBuffers();
             onFailure(x);
             return null;
         }
     }
 
+    private int receive() throws IOException
+    {
+        int batchSize = getDatagramBatchSize();
+        if (cipherBuffers == null || cipherBuffers.length != batchSize)
+        {
+            releaseCipherBuffers();
+            cipherBuffers = new ByteBuffer[batchSize];
+            remoteAddresses = new SocketAddress[batchSize];
+        }
+        for (int i = 0; i < batchSize; ++i)
+        {
+            if (cipherBuffers[i] == null)
+                cipherBuffers[i] = byteBufferPool.acquire(getInputBufferSize(), isUseInputDirectByteBuffers());
+            BufferUtil.clear(cipherBuffers[i]);
+        }
+        processed = 0;
+        int fill = getEndPoint().receive(cipherBuffers, remoteAddresses);
+        received = Math.max(0, fill);
+        return fill;
+    }
+
+    private void releaseCipherBuffers()
+    {
+        processed = received = 0;
+        if (cipherBuffers == null)
+            return;
+        for (int i = 0; i < cipherBuffers.length; ++i)
+        {
+            if (cipherBuffers[i] != null)
+                byteBufferPool.release(cipherBuffers[i]);
+            cipherBuffers[i] = null;
+            remoteAddresses[i] = null;
+        }
+    }
+
+    private Runnable process(SocketAddress remoteAddress, ByteBuffer cipherBuffer) throws IOException
+    {
+        if (LOG.isDebugEnabled())
+            LOG.debug("peer IP address: {}, ciphertext packet size: {}", remoteAddress, cipherBuffer.remaining());
+
+        QuicheConnectionId quicheConnectionId = QuicheConnectionId.fromPacket(cipherBuffer);
+        if (quicheConnectionId == null)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("packet contains undecipherable connection ID, dropping it");
+            return null;
+        }
+        if (LOG.isDebugEnabled())
+            LOG.debug("packet contains connection ID {}", quicheConnectionId);
+
+        QuicSession session = sessions.get(quicheConnectionId);
+        if (session == null)
+            session = findSession(quicheConnectionId);
+        if (session == null)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("packet is for unknown session, trying to create a new one");
+            session = createSession(remoteAddress, cipherBuffer);
+            if (session != null)
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("session created");
+                session.setConnectionId(quicheConnectionId);
+                session.setIdleTimeout(getEndPoint().getIdleTimeout());
+                sessions.put(quicheConnectionId, session);
+                listeners.forEach(session::addEventListener);
+                LifeCycle.start(session);
+
+                // Session creation may have generated a task.
+                Runnable task = session.pollTask();
+                if (LOG.isDebugEnabled())
+                    LOG.debug("processing creation task {} on {}", task, session);
+                return task;
+            }
+            else
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("session not created");
+            }
+            return null;
+        }
+
+        return process(session, remoteAddress, cipherBuffer);
+    }
+
     private Runnable process(QuicSession session, SocketAddress remoteAddress, ByteBuffer cipherBuffer)
     {
         try
@@ -327,7 +416,6 @@ public abstract class QuicConnection extends AbstractConnection
         {
             if (LOG.isDebugEnabled())
                 LOG.debug("process failure for {}", session, x);
-            byteBufferPool.release(cipherBuffer);
             session.onFailure(x);
             return null;
         }
@@ -347,61 +435,145 @@ public abstract class QuicConnection extends AbstractConnection
         }
     }
 
+    /**
+     * <p>Sends the datagrams of the {@link QuicSession}s in batches.</p>
+     * <p>Each pass takes up to {@link #getDatagramBatchSize()} queued entries and sends
+     * them directly; only when the socket send buffer is full the unsent buffers of the
+     * entry are written asynchronously, waiting for the socket to be writable again.</p>
+     * <p>When the flusher fails or is closed, the callbacks of the queued entries are
+     * failed, so that the sessions release their cipher buffers.</p>
+     */
     private class Flusher extends IteratingCallback
     {
         private final AutoLock lock = new AutoLock();
         private final ArrayDeque<Entry> queue = new ArrayDeque<>();
+        private final ArrayDeque<Entry> batch = new ArrayDeque<>();
+        private Throwable failure;
         private Entry entry;
 
         public void offer(Callback callback, SocketAddress address, ByteBuffer[] buffers)
         {
+            Throwable failure;
             try (AutoLock l = lock.lock())
             {
-                queue.offer(new Entry(callback, address, buffers));
+                failure = this.failure;
+                if (failure == null)
+                    queue.offer(new Entry(callback, address, buffers));
             }
-            iterate();
+            if (failure == null)
+                iterate();
+            else
+                callback.failed(failure);
         }
 
         @Override
-        protected Action process()
+        protected Action process() throws Throwable
         {
-            try (AutoLock l = lock.lock())
+            DatagramChannelEndPoint endPoint = getEndPoint();
+            while (true)
             {
-                entry = queue.poll();
+                if (batch.isEmpty())
+                {
+                    int batchSize = getDatagramBatchSize();
+                    try (AutoLock l = lock.lock())
+                    {
+                        while (batch.size() < batchSize)
+                        {
+                            Entry queued = queue.poll();
+                            if (queued == null)
+                                break;
+                            batch.offer(queued);
+                        }
+                    }
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("flushing batch of {} entries on {}", batch.size(), QuicConnection.this);
+                }
+
+                entry = batch.poll();
+                if (entry == null)
+                    return Action.IDLE;
+
+                if (!endPoint.send(entry.address, entry.buffers))
+                {
+                    // The socket send buffer is full, wait for it to be writable
+                    // to write the buffers that have not been sent as datagrams.
+                    endPoint.write(this, entry.address, unsent(entry.buffers));
+                    return Action.SCHEDULED;
+                }
+
+                Entry sent = entry;
+                entry = null;
+                sent.callback.succeeded();
             }
-            if (entry == null)
-                return Action.IDLE;
+        }
 
-            getEndPoint().write(this, entry.address, entry.buffers);
-            return Action.SCHEDULED;
+        private ByteBuffer[] unsent(ByteBuffer[] buffers)
+        {
+            for (int i = 0; i < buffers.length; ++i)
+            {
+                if (buffers[i].hasRemaining())
+                    return i == 0 ? buffers : Arrays.copyOfRange(buffers, i, buffers.length);
+            }
+            return new ByteBuffer[0];
         }
 
         @Override
         public void succeeded()
         {
-            entry.callback.succeeded();
+            Entry written = entry;
+            entry = null;
+            written.callback.succeeded();
             super.succeeded();
         }
 
         @Override
         public void failed(Throwable x)
         {
-            entry.callback.failed(x);
+            if (entry != null)
+                entry.callback.failed(x);
+            entry = null;
             super.failed(x);
         }
 
         @Override
         public InvocationType getInvocationType()
         {
-            return entry.callback.getInvocationType();
+            Entry entry = this.entry;
+            return entry == null ? InvocationType.NON_BLOCKING : entry.callback.getInvocationType();
+        }
+
+        @Override
+        public void close()
+        {
+            super.close();
+            fail(new ClosedChannelException());
         }
 
         @Override
         protected void onCompleteFailure(Throwable cause)
         {
+            Entry pending;
+            while ((pending = batch.poll()) != null)
+            {
+                pending.callback.failed(cause);
+            }
+            fail(cause);
             QuicConnection.this.close();
         }
 
+        private void fail(Throwable cause)
+        {
+            List<Entry> pending;
+            try (AutoLock l = lock.lock())
+            {
+                if (failure == null)
+                    failure = cause;
+                pending = new ArrayList<>(queue);
+                queue.clear();
+            }
+            pending.forEach(queued -> queued.callback.failed(cause));
+        }
+
         private class Entry
         {
             private final Callback callback;
@@ -17,6 +17,7 @@ import java.io.IOException;
 import java.net.SocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.EventListener;
@@ -41,6 +42,7 @@ import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.IteratingCallback;
 import org.eclipse.jetty.util.component.ContainerLifeCycle;
 import org.eclipse.jetty.util.component.DumpableCollection;
+import org.eclipse.jetty.util.thread.AutoLock;
 import org.eclipse.jetty.util.thread.Scheduler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -61,6 +63,7 @@ public abstract class QuicSession extends ContainerLifeCycle
 {
     private static final Logger LOG = LoggerFactory.getLogger(QuicSession.class);
 
+    private final AutoLock lock = new AutoLock();
     private final AtomicLong[] ids = new AtomicLong[StreamType.values().length];
     private final ConcurrentMap<Long, QuicStreamEndPoint> endPoints = new ConcurrentHashMap<>();
     private final Executor executor;
@@ -69,7 +72,7 @@ public abstract class QuicSession extends ContainerLifeCycle
     private final QuicheConnection quicheConnection;
     private final QuicConnection connection;
     private final Flusher flusher;
-    private SocketAddress remoteAddress;
+    private volatile SocketAddress remoteAddress;
     private volatile ProtocolSession protocolSession;
     private QuicheConnectionId quicheConnectionId;
     private long idleTimeout;
@@ -297,28 +300,47 @@ public abstract class QuicSession extends ContainerLifeCycle
         this.quicheConnectionId = quicheConnectionId;
     }
 
+    /**
+     * <p>Processes a QUIC packet received from the given remote address.</p>
+     * <p>The packets of a session may be received by different {@link QuicConnection}s,
+     * for example after a connection migration when the server listens on multiple
+     * {@code SO_REUSEPORT} channels, so this method may be called concurrently by
+     * different threads; the packets are processed one at a time.</p>
+     *
+     * @param remoteAddress the address the packet was received from
+     * @param cipherBufferIn the packet bytes
+     * @return a task to run to process the streams, or null if there is no such task
+     * @throws IOException if the packet cannot be processed
+     */
     public Runnable process(SocketAddress remoteAddress, ByteBuffer cipherBufferIn) throws IOException
     {
-        // While the connection ID remains the same,
-        // the remote address may change so store it again.
-        this.remoteAddress = remoteAddress;
+        ProtocolSession protocol = null;
+        try (AutoLock l = lock.lock())
+        {
+            // While the connection ID remains the same,
+            // the remote address may change so store it again.
+            this.remoteAddress = remoteAddress;
 
-        int remaining = cipherBufferIn.remaining();
-        if (LOG.isDebugEnabled())
-            LOG.debug("feeding {} cipher bytes to {}", remaining, this);
-        int accepted = quicheConnection.feedCipherBytes(cipherBufferIn, remoteAddress);
-        if (accepted != remaining)
-            throw new IllegalStateException();
+            int remaining = cipherBufferIn.remaining();
+            if (LOG.isDebugEnabled())
+                LOG.debug("feeding {} cipher bytes to {}", remaining, this);
+            int accepted = quicheConnection.feedCipherBytes(cipherBufferIn, remoteAddress);
+            if (accepted != remaining)
+                throw new IllegalStateException();
 
-        if (isConnectionEstablished())
-        {
-            ProtocolSession protocol = protocolSession;
-            if (protocol == null)
+            if (isConnectionEstablished())
             {
-                protocolSession = protocol = createProtocolSession();
-                addManaged(protocol);
+                protocol = protocolSession;
+                if (protocol == null)
+                {
+                    protocolSession = protocol = createProtocolSession();
+                    addManaged(protocol);
+                }
             }
+        }
 
+        if (protocol != null)
+        {
             if (LOG.isDebugEnabled())
                 LOG.debug("processing {}", protocol);
             // Return a task because we want 1 thread per QUIC connection ID.
@@ -435,7 +457,7 @@ public abstract class QuicSession extends ContainerLifeCycle
     private class Flusher extends IteratingCallback
     {
         private final CyclicTimeout timeout;
-        private ByteBuffer cipherBuffer;
+        private final List<ByteBuffer> cipherBuffers = new ArrayList<>();
 
         public Flusher(Scheduler scheduler)
         {
@@ -465,11 +487,25 @@ public abstract class QuicSession extends ContainerLifeCycle
         @Override
         protected Action process() throws IOException
         {
-            cipherBuffer = byteBufferPool.acquire(connection.getOutputBufferSize(), connection.isUseOutputDirectByteBuffers());
-            int pos = BufferUtil.flipToFill(cipherBuffer);
-            int drained = quicheConnection.drainCipherBytes(cipherBuffer);
+            // Drain multiple QUIC packets, one per buffer, to write them in a single pass.
+            int batchSize = connection.getDatagramBatchSize();
+            long drained = 0;
+            while (cipherBuffers.size() < batchSize)
+            {
+                ByteBuffer cipherBuffer = byteBufferPool.acquire(connection.getOutputBufferSize(), connection.isUseOutputDirectByteBuffers());
+                int pos = BufferUtil.flipToFill(cipherBuffer);
+                int bytes = quicheConnection.drainCipherBytes(cipherBuffer);
+                if (bytes == 0)
+                {
+                    byteBufferPool.release(cipherBuffer);
+                    break;
+                }
+                BufferUtil.flipToFlush(cipherBuffer, pos);
+                cipherBuffers.add(cipherBuffer);
+                drained += bytes;
+            }
             if (LOG.isDebugEnabled())
-                LOG.debug("drained {} byte(s) of cipher bytes from {}", drained, QuicSession.this);
+                LOG.debug("drained {} byte(s) of cipher bytes in {} packet(s) from {}", drained, cipherBuffers.size(), QuicSession.this);
             long nextTimeoutInMs = quicheConnection.nextTimeout();
             if (LOG.isDebugEnabled())
                 LOG.debug("next quiche timeout: {} ms on {}", nextTimeoutInMs, QuicSession.this);
@@ -483,14 +519,11 @@ public abstract class QuicSession extends ContainerLifeCycle
                 Action action = connectionClosed ? Action.SUCCEEDED : Action.IDLE;
                 if (LOG.isDebugEnabled())
                     LOG.debug("connection draining={} closed={}, action={} on {}", quicheConnection.isDraining(), connectionClosed, action, QuicSession.this);
-                if (action == Action.IDLE)
-                    byteBufferPool.release(cipherBuffer);
                 return action;
             }
-            BufferUtil.flipToFlush(cipherBuffer, pos);
             if (LOG.isDebugEnabled())
                 LOG.debug("writing cipher bytes for {} on {}", remoteAddress, QuicSession.this);
-            connection.write(this, remoteAddress, cipherBuffer);
+            connection.write(this, remoteAddress, cipherBuffers.toArray(new ByteBuffer[0]));
             return Action.SCHEDULED;
         }
 
@@ -499,10 +532,16 @@ public abstract class QuicSession extends ContainerLifeCycle
         {
             if (LOG.isDebugEnabled())
                 LOG.debug("written cipher bytes on {}", QuicSession.this);
-            byteBufferPool.release(cipherBuffer);
+            releaseCipherBuffers();
             super.succeeded();
         }
 
+        private void releaseCipherBuffers()
+        {
+            cipherBuffers.forEach(byteBufferPool::release);
+            cipherBuffers.clear();
+        }
+
         @Override
         public InvocationType getInvocationType()
         {
@@ -514,7 +553,7 @@ public abstract class QuicSession extends ContainerLifeCycle
         {
             if (LOG.isDebugEnabled())
                 LOG.debug("connection closed {}", QuicSession.this);
-            byteBufferPool.release(cipherBuffer);
+            releaseCipherBuffers();
             finishOutwardClose(new ClosedChannelException());
         }
 
@@ -523,7 +562,7 @@ public abstract class QuicSession extends ContainerLifeCycle
         {
             if (LOG.isDebugEnabled())
                 LOG.debug("failed to write cipher bytes, closing session on {}", QuicSession.this, failure);
-            byteBufferPool.release(cipherBuffer);
+            releaseCipherBuffers();
             finishOutwardClose(failure);
         }
     }
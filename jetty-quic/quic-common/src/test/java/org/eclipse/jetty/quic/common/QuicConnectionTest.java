@@ -0,0 +1,117 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.quic.common;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.io.DatagramChannelEndPoint;
+import org.eclipse.jetty.io.EndPoint;
+import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.Callback;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class QuicConnectionTest
+{
+    private final SocketAddress address = new InetSocketAddress("localhost", 4433);
+
+    @Test
+    public void testPartialSendWritesUnsentBuffers() throws Exception
+    {
+        try (DatagramChannel channel = DatagramChannel.open())
+        {
+            List<ByteBuffer> written = new ArrayList<>();
+            DatagramChannelEndPoint endPoint = new DatagramChannelEndPoint(channel, null, null, null)
+            {
+                @Override
+                public boolean send(SocketAddress address, ByteBuffer... buffers)
+                {
+                    // Only the first datagram fits in the socket send buffer.
+                    buffers[0].position(buffers[0].limit());
+                    return buffers.length == 1;
+                }
+
+                @Override
+                public void write(Callback callback, SocketAddress address, ByteBuffer... buffers)
+                {
+                    written.addAll(Arrays.asList(buffers));
+                    callback.succeeded();
+                }
+            };
+            QuicConnection connection = new TestQuicConnection(new MappedByteBufferPool(), endPoint);
+
+            ByteBuffer buffer1 = BufferUtil.toBuffer("datagram1");
+            ByteBuffer buffer2 = BufferUtil.toBuffer("datagram2");
+            ByteBuffer buffer3 = BufferUtil.toBuffer("datagram3");
+            Callback.Completable callback = new Callback.Completable();
+            connection.write(callback, address, buffer1, buffer2, buffer3);
+            callback.get(5, TimeUnit.SECONDS);
+
+            // The datagram already sent must not be written again as an empty datagram.
+            assertThat(written, contains(buffer2, buffer3));
+        }
+    }
+
+    @Test
+    public void testWriteAfterCloseFails() throws Exception
+    {
+        try (DatagramChannel channel = DatagramChannel.open())
+        {
+            DatagramChannelEndPoint endPoint = new DatagramChannelEndPoint(channel, null, null, null);
+            QuicConnection connection = new TestQuicConnection(new MappedByteBufferPool(), endPoint);
+            connection.onClose(null);
+
+            // The callback is failed, so that the session can release its buffers.
+            Callback.Completable callback = new Callback.Completable();
+            connection.write(callback, address, BufferUtil.toBuffer("datagram"));
+            ExecutionException failure = assertThrows(ExecutionException.class, () -> callback.get(5, TimeUnit.SECONDS));
+            assertThat(failure.getCause(), instanceOf(ClosedChannelException.class));
+        }
+    }
+
+    private static class TestQuicConnection extends QuicConnection
+    {
+        private TestQuicConnection(ByteBufferPool byteBufferPool, EndPoint endPoint)
+        {
+            super(Runnable::run, null, byteBufferPool, endPoint);
+        }
+
+        @Override
+        public boolean onIdleExpired()
+        {
+            return false;
+        }
+
+        @Override
+        protected QuicSession createSession(SocketAddress remoteAddress, ByteBuffer cipherBuffer)
+        {
+            return null;
+        }
+    }
+}
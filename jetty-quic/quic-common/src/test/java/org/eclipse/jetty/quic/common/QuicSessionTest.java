@@ -0,0 +1,427 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.quic.common;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.io.Connection;
+import org.eclipse.jetty.io.DatagramChannelEndPoint;
+import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.eclipse.jetty.quic.quiche.QuicheBinding;
+import org.eclipse.jetty.quic.quiche.QuicheConfig;
+import org.eclipse.jetty.quic.quiche.QuicheConnection;
+import org.eclipse.jetty.quic.quiche.QuicheConnectionId;
+import org.eclipse.jetty.util.BufferUtil;
+import org.junit.jupiter.api.Test;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class QuicSessionTest
+{
+    private final SocketAddress address1 = new InetSocketAddress("localhost", 4433);
+    private final SocketAddress address2 = new InetSocketAddress("localhost", 4434);
+
+    @Test
+    public void testPacketsReceivedByTwoConnectionsAreProcessedOneAtATime() throws Exception
+    {
+        ByteBufferPool byteBufferPool = new MappedByteBufferPool();
+        TestQuicheConnection quicheConnection = new TestQuicheConnection();
+        // The sessions are shared by the connections, as with SO_REUSEPORT channels.
+        Map<QuicheConnectionId, QuicSession> sessions = new ConcurrentHashMap<>();
+        try (DatagramChannel channel1 = DatagramChannel.open(); DatagramChannel channel2 = DatagramChannel.open())
+        {
+            TestEndPoint endPoint1 = new TestEndPoint(channel1, address1);
+            TestEndPoint endPoint2 = new TestEndPoint(channel2, address2);
+            QuicConnection connection1 = new TestQuicConnection(byteBufferPool, endPoint1, quicheConnection, sessions);
+            new TestQuicConnection(byteBufferPool, endPoint2, quicheConnection, sessions);
+
+            // The first packet creates the session on the first connection.
+            endPoint1.onPacket(newPacket());
+            assertThat(sessions.size(), is(1));
+            TestQuicSession session = (TestQuicSession)sessions.values().iterator().next();
+            assertThat(session.getQuicConnection(), is(connection1));
+
+            // Block the processing of the next packet of the first connection.
+            CountDownLatch feeding = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            quicheConnection.block(feeding, release);
+            Thread thread1 = new Thread(() -> endPoint1.onPacket(newPacket()));
+            thread1.start();
+            assertTrue(feeding.await(5, TimeUnit.SECONDS));
+
+            // A packet for the same session arrives on the second connection,
+            // which must wait for the first connection to be done with the session.
+            Thread thread2 = new Thread(() -> endPoint2.onPacket(newPacket()));
+            thread2.start();
+            await().atMost(5, TimeUnit.SECONDS).until(() ->
+            {
+                Thread.State state = thread2.getState();
+                return state == Thread.State.WAITING || state == Thread.State.TERMINATED;
+            });
+
+            release.countDown();
+            thread1.join(5000);
+            thread2.join(5000);
+
+            assertThat(session.getQuicConnection(), is(connection1));
+            assertThat(quicheConnection.feeds.get(), is(2));
+            assertThat(quicheConnection.maxConcurrentFeeds.get(), is(1));
+            assertThat(session.protocolSessions.get(), is(1));
+            assertThat(session.getRemoteAddress(), is(address2));
+        }
+    }
+
+    private static ByteBuffer newPacket()
+    {
+        // The test binding snoops the connection ID from the first bytes.
+        return BufferUtil.toBuffer("connection_id_1:packet");
+    }
+
+    private static class TestEndPoint extends DatagramChannelEndPoint
+    {
+        private final Queue<ByteBuffer> packets = new ConcurrentLinkedQueue<>();
+        private final SocketAddress remoteAddress;
+
+        private TestEndPoint(DatagramChannel channel, SocketAddress remoteAddress)
+        {
+            super(channel, null, null, null);
+            this.remoteAddress = remoteAddress;
+        }
+
+        private void onPacket(ByteBuffer packet)
+        {
+            // Simulate the selector notifying that a packet is available.
+            packets.offer(packet);
+            getFillInterest().fillable();
+        }
+
+        @Override
+        public int receive(ByteBuffer[] buffers, SocketAddress[] addresses)
+        {
+            int received = 0;
+            while (received < buffers.length)
+            {
+                ByteBuffer packet = packets.poll();
+                if (packet == null)
+                    break;
+                BufferUtil.append(buffers[received], packet);
+                addresses[received] = remoteAddress;
+                ++received;
+            }
+            return received;
+        }
+
+        @Override
+        protected void needsFillInterest()
+        {
+        }
+    }
+
+    private static class TestQuicConnection extends QuicConnection
+    {
+        private final TestQuicheConnection quicheConnection;
+        private final Map<QuicheConnectionId, QuicSession> sessions;
+
+        private TestQuicConnection(ByteBufferPool byteBufferPool, DatagramChannelEndPoint endPoint, TestQuicheConnection quicheConnection, Map<QuicheConnectionId, QuicSession> sessions)
+        {
+            super(Runnable::run, null, byteBufferPool, endPoint);
+            this.quicheConnection = quicheConnection;
+            this.sessions = sessions;
+            addEventListener(new QuicSession.Listener()
+            {
+                @Override
+                public void onOpened(QuicSession session)
+                {
+                    sessions.put(session.getConnectionId(), session);
+                }
+            });
+            onOpen();
+            fillInterested();
+        }
+
+        @Override
+        public boolean onIdleExpired()
+        {
+            return false;
+        }
+
+        @Override
+        protected QuicSession createSession(SocketAddress remoteAddress, ByteBuffer cipherBuffer)
+        {
+            // Consume the packet, as accepting the connection would do.
+            cipherBuffer.position(cipherBuffer.limit());
+            return new TestQuicSession(getByteBufferPool(), quicheConnection, this, remoteAddress);
+        }
+
+        @Override
+        protected QuicSession findSession(QuicheConnectionId connectionId)
+        {
+            return sessions.get(connectionId);
+        }
+    }
+
+    private static class TestQuicSession extends QuicSession
+    {
+        private final AtomicInteger protocolSessions = new AtomicInteger();
+
+        private TestQuicSession(ByteBufferPool byteBufferPool, QuicheConnection quicheConnection, QuicConnection connection, SocketAddress remoteAddress)
+        {
+            super(Runnable::run, null, byteBufferPool, quicheConnection, connection, remoteAddress);
+        }
+
+        @Override
+        protected ProtocolSession createProtocolSession()
+        {
+            protocolSessions.incrementAndGet();
+            return new ProtocolSession(this)
+            {
+                @Override
+                public Runnable getProducerTask()
+                {
+                    return () -> {};
+                }
+
+                @Override
+                protected boolean onReadable(long readableStreamId)
+                {
+                    return false;
+                }
+
+                @Override
+                protected void onClose(long error, String reason)
+                {
+                }
+            };
+        }
+
+        @Override
+        public Connection newConnection(QuicStreamEndPoint endPoint)
+        {
+            return null;
+        }
+    }
+
+    private static class TestQuicheConnection extends QuicheConnection
+    {
+        private final AtomicInteger feeds = new AtomicInteger();
+        private final AtomicInteger concurrentFeeds = new AtomicInteger();
+        private final AtomicInteger maxConcurrentFeeds = new AtomicInteger();
+        private volatile CountDownLatch feeding;
+        private volatile CountDownLatch release;
+
+        private void block(CountDownLatch feeding, CountDownLatch release)
+        {
+            this.release = release;
+            this.feeding = feeding;
+        }
+
+        @Override
+        public int feedCipherBytes(ByteBuffer buffer, SocketAddress peer) throws IOException
+        {
+            feeds.incrementAndGet();
+            maxConcurrentFeeds.accumulateAndGet(concurrentFeeds.incrementAndGet(), Math::max);
+            try
+            {
+                CountDownLatch latch = feeding;
+                if (latch != null)
+                {
+                    feeding = null;
+                    latch.countDown();
+                    release.await(5, TimeUnit.SECONDS);
+                }
+                int remaining = buffer.remaining();
+                buffer.position(buffer.limit());
+                return remaining;
+            }
+            catch (InterruptedException x)
+            {
+                throw new IOException(x);
+            }
+            finally
+            {
+                concurrentFeeds.decrementAndGet();
+            }
+        }
+
+        @Override
+        protected List<Long> iterableStreamIds(boolean write)
+        {
+            return List.of();
+        }
+
+        @Override
+        public int drainCipherBytes(ByteBuffer buffer)
+        {
+            return 0;
+        }
+
+        @Override
+        public boolean isConnectionClosed()
+        {
+            return false;
+        }
+
+        @Override
+        public boolean isConnectionEstablished()
+        {
+            return true;
+        }
+
+        @Override
+        public long nextTimeout()
+        {
+            return -1;
+        }
+
+        @Override
+        public void onTimeout()
+        {
+        }
+
+        @Override
+        public String getNegotiatedProtocol()
+        {
+            return "test";
+        }
+
+        @Override
+        public boolean close(long error, String reason)
+        {
+            return true;
+        }
+
+        @Override
+        public void dispose()
+        {
+        }
+
+        @Override
+        public boolean isDraining()
+        {
+            return false;
+        }
+
+        @Override
+        public int maxLocalStreams()
+        {
+            return 0;
+        }
+
+        @Override
+        public long windowCapacity()
+        {
+            return 0;
+        }
+
+        @Override
+        public long windowCapacity(long streamId)
+        {
+            return 0;
+        }
+
+        @Override
+        public void shutdownStream(long streamId, boolean writeSide, long error)
+        {
+        }
+
+        @Override
+        public int feedClearBytesForStream(long streamId, ByteBuffer buffer, boolean last)
+        {
+            return 0;
+        }
+
+        @Override
+        public int drainClearBytesForStream(long streamId, ByteBuffer buffer)
+        {
+            return 0;
+        }
+
+        @Override
+        public boolean isStreamFinished(long streamId)
+        {
+            return false;
+        }
+
+        @Override
+        public CloseInfo getRemoteCloseInfo()
+        {
+            return null;
+        }
+    }
+
+    /**
+     * <p>A {@link QuicheBinding} that does not need the native quiche library,
+     * registered as a service in the test resources.</p>
+     */
+    public static class TestQuicheBinding implements QuicheBinding
+    {
+        private static final int CONNECTION_ID_LENGTH = 15;
+
+        @Override
+        public boolean isUsable()
+        {
+            return true;
+        }
+
+        @Override
+        public int priority()
+        {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public byte[] fromPacket(ByteBuffer packet)
+        {
+            if (packet.remaining() < CONNECTION_ID_LENGTH)
+                return null;
+            byte[] connectionId = new byte[CONNECTION_ID_LENGTH];
+            packet.slice().get(connectionId);
+            return connectionId;
+        }
+
+        @Override
+        public QuicheConnection connect(QuicheConfig quicheConfig, InetSocketAddress peer, int connectionIdLength)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean negotiate(QuicheConnection.TokenMinter tokenMinter, ByteBuffer packetRead, ByteBuffer packetToSend)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public QuicheConnection tryAccept(QuicheConfig quicheConfig, QuicheConnection.TokenValidator tokenValidator, ByteBuffer packetRead, SocketAddress peer)
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
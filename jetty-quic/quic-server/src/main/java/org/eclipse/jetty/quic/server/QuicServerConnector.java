@@ -16,6 +16,7 @@ package org.eclipse.jetty.quic.server;
 import java.io.File;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
 import java.nio.channels.DatagramChannel;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
@@ -24,6 +25,9 @@ import java.util.EventListener;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
 
 import org.eclipse.jetty.io.ByteBufferPool;
@@ -37,11 +41,13 @@ import org.eclipse.jetty.quic.common.QuicSession;
 import org.eclipse.jetty.quic.common.QuicSessionContainer;
 import org.eclipse.jetty.quic.common.QuicStreamEndPoint;
 import org.eclipse.jetty.quic.quiche.QuicheConfig;
+import org.eclipse.jetty.quic.quiche.QuicheConnectionId;
 import org.eclipse.jetty.quic.quiche.SSLKeyPair;
 import org.eclipse.jetty.server.AbstractNetworkConnector;
 import org.eclipse.jetty.server.ConnectionFactory;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.util.IO;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.eclipse.jetty.util.thread.Scheduler;
 
@@ -51,6 +57,11 @@ import org.eclipse.jetty.util.thread.Scheduler;
  * The protocol is negotiated during the connection establishment by {@link QuicSession}, and for each QUIC stream
  * managed by a {@link QuicSession} a {@link ConnectionFactory} is used to create a {@link Connection} for the
  * correspondent {@link QuicStreamEndPoint}.</p>
+ * <p>When configured with more than one selector, this connector opens one {@link DatagramChannel}
+ * per selector, all bound to the same port via {@code SO_REUSEPORT}, so that the operating system
+ * spreads the QUIC traffic across the channels and each selector processes its own share of
+ * {@link QuicSession}s. Packets that arrive on a channel other than the one owning their session,
+ * for example after a connection migration, are routed to the owning session by connection ID.</p>
  *
  * @see QuicConfiguration
  */
@@ -60,6 +71,9 @@ public class QuicServerConnector extends AbstractNetworkConnector
     private final QuicSessionContainer container = new QuicSessionContainer();
     private final ServerDatagramSelectorManager selectorManager;
     private final SslContextFactory.Server sslContextFactory;
+    private final List<DatagramChannel> datagramChannels = new CopyOnWriteArrayList<>();
+    private final ConcurrentMap<QuicheConnectionId, QuicSession> sessions = new ConcurrentHashMap<>();
+    private final SessionRouter router = new SessionRouter();
     private File privateKeyFile;
     private File certificateChainFile;
     private volatile DatagramChannel datagramChannel;
@@ -68,6 +82,8 @@ public class QuicServerConnector extends AbstractNetworkConnector
     private int outputBufferSize = 2048;
     private boolean useInputDirectByteBuffers = true;
     private boolean useOutputDirectByteBuffers = true;
+    private int datagramBatchSize = 16;
+    private boolean reusePort;
 
     public QuicServerConnector(Server server, SslContextFactory.Server sslContextFactory, ConnectionFactory... factories)
     {
@@ -75,9 +91,23 @@ public class QuicServerConnector extends AbstractNetworkConnector
     }
 
     public QuicServerConnector(Server server, Executor executor, Scheduler scheduler, ByteBufferPool bufferPool, SslContextFactory.Server sslContextFactory, ConnectionFactory... factories)
+    {
+        this(server, executor, scheduler, bufferPool, 1, sslContextFactory, factories);
+    }
+
+    /**
+     * @param server the server this connector is added to
+     * @param executor the executor, or null to use the server's
+     * @param scheduler the scheduler, or null to use the server's
+     * @param bufferPool the buffer pool, or null to use the server's
+     * @param selectors the number of selectors, and of {@code SO_REUSEPORT} channels, or &lt;=0 for a default based on the number of cores
+     * @param sslContextFactory the TLS configuration
+     * @param factories the connection factories
+     */
+    public QuicServerConnector(Server server, Executor executor, Scheduler scheduler, ByteBufferPool bufferPool, int selectors, SslContextFactory.Server sslContextFactory, ConnectionFactory... factories)
     {
         super(server, executor, scheduler, bufferPool, 0, factories);
-        this.selectorManager = new ServerDatagramSelectorManager(getExecutor(), getScheduler(), 1);
+        this.selectorManager = new ServerDatagramSelectorManager(getExecutor(), getScheduler(), selectors);
         addBean(this.selectorManager);
         this.sslContextFactory = sslContextFactory;
         addBean(this.sslContextFactory);
@@ -143,6 +173,38 @@ public class QuicServerConnector extends AbstractNetworkConnector
         this.useOutputDirectByteBuffers = useOutputDirectByteBuffers;
     }
 
+    /**
+     * @return the max number of datagrams received or sent in a single pass
+     * @see org.eclipse.jetty.quic.common.QuicConnection#setDatagramBatchSize(int)
+     */
+    public int getDatagramBatchSize()
+    {
+        return datagramBatchSize;
+    }
+
+    public void setDatagramBatchSize(int datagramBatchSize)
+    {
+        this.datagramBatchSize = datagramBatchSize;
+    }
+
+    /**
+     * @return the number of selectors
+     */
+    @ManagedAttribute("The number of selectors")
+    public int getSelectors()
+    {
+        return selectorManager.getSelectorCount();
+    }
+
+    /**
+     * @return the number of {@link DatagramChannel}s bound by this connector
+     */
+    @ManagedAttribute("The number of bound DatagramChannels")
+    public int getDatagramChannels()
+    {
+        return datagramChannels.size();
+    }
+
     @Override
     public boolean isOpen()
     {
@@ -156,7 +218,10 @@ public class QuicServerConnector extends AbstractNetworkConnector
         for (EventListener l : getBeans(SelectorManager.SelectorManagerListener.class))
             selectorManager.addEventListener(l);
         super.doStart();
-        selectorManager.accept(datagramChannel);
+        for (DatagramChannel channel : datagramChannels)
+        {
+            selectorManager.accept(channel);
+        }
 
         Set<String> aliases = sslContextFactory.getAliases();
         if (aliases.isEmpty())
@@ -183,21 +248,131 @@ public class QuicServerConnector extends AbstractNetworkConnector
     {
         if (datagramChannel == null)
         {
-            datagramChannel = openDatagramChannel();
-            datagramChannel.configureBlocking(false);
-            localPort = datagramChannel.socket().getLocalPort();
-            if (localPort <= 0)
+            int selectors = getSelectors();
+            reusePort = selectors > 1 && isReusePortSupported();
+            if (selectors > 1 && !reusePort)
+                LOG.warn("SO_REUSEPORT not supported, binding a single DatagramChannel for {} selectors", selectors);
+            DatagramChannel channel = openDatagramChannel();
+            channel.configureBlocking(false);
+            int port = channel.socket().getLocalPort();
+            if (port <= 0)
+            {
+                IO.close(channel);
                 throw new IOException("DatagramChannel not bound");
-            addBean(datagramChannel);
+            }
+            try
+            {
+                addDatagramChannel(channel);
+                if (reusePort && !isReusePortEnabled(channel))
+                {
+                    // A subclass opened the first channel without SO_REUSEPORT,
+                    // so no other channel can be bound to the same port.
+                    LOG.warn("SO_REUSEPORT not enabled on {}, binding a single DatagramChannel for {} selectors", channel, selectors);
+                    reusePort = false;
+                }
+                // Bind the other channels to the port actually bound
+                // by the first channel, which may be an ephemeral port.
+                for (int i = 1; reusePort && i < selectors; ++i)
+                {
+                    channel = openDatagramChannel(port, true);
+                    channel.configureBlocking(false);
+                    addDatagramChannel(channel);
+                }
+            }
+            catch (Throwable x)
+            {
+                closeDatagramChannels();
+                throw x;
+            }
+            datagramChannel = datagramChannels.get(0);
+            localPort = port;
         }
     }
 
+    @Override
+    public void close()
+    {
+        closeDatagramChannels();
+        datagramChannel = null;
+        localPort = -2;
+    }
+
+    private boolean isReusePortSupported()
+    {
+        try (DatagramChannel channel = DatagramChannel.open())
+        {
+            return channel.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+        }
+        catch (IOException x)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("could not check SO_REUSEPORT support", x);
+            return false;
+        }
+    }
+
+    private boolean isReusePortEnabled(DatagramChannel channel)
+    {
+        try
+        {
+            return channel.getOption(StandardSocketOptions.SO_REUSEPORT);
+        }
+        catch (IOException | UnsupportedOperationException x)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("could not check SO_REUSEPORT on {}", channel, x);
+            return false;
+        }
+    }
+
+    private void addDatagramChannel(DatagramChannel channel)
+    {
+        datagramChannels.add(channel);
+        addBean(channel);
+    }
+
+    private void closeDatagramChannels()
+    {
+        for (DatagramChannel channel : datagramChannels)
+        {
+            removeBean(channel);
+            IO.close(channel);
+        }
+        datagramChannels.clear();
+    }
+
+    /**
+     * <p>Opens and binds the first {@link DatagramChannel} of this connector.</p>
+     * <p>The default implementation binds to the configured port, enabling
+     * {@code SO_REUSEPORT} when more than one selector is configured, so that
+     * the other channels opened with {@link #openDatagramChannel(int, boolean)}
+     * can be bound to the same port. Overrides that do not enable
+     * {@code SO_REUSEPORT} make this connector bind a single channel.</p>
+     *
+     * @return a bound {@link DatagramChannel}
+     * @throws IOException if the channel cannot be opened or bound
+     */
     protected DatagramChannel openDatagramChannel() throws IOException
     {
-        InetSocketAddress bindAddress = getHost() == null ? new InetSocketAddress(getPort()) : new InetSocketAddress(getHost(), getPort());
+        return openDatagramChannel(getPort(), reusePort);
+    }
+
+    /**
+     * <p>Opens and binds a {@link DatagramChannel} to the given port.</p>
+     *
+     * @param port the port to bind to
+     * @param reusePort whether to enable {@code SO_REUSEPORT} before binding
+     * @return a bound {@link DatagramChannel}
+     * @throws IOException if the channel cannot be opened or bound
+     */
+    protected DatagramChannel openDatagramChannel(int port, boolean reusePort) throws IOException
+    {
+        InetSocketAddress bindAddress = getHost() == null ? new InetSocketAddress(port) : new InetSocketAddress(getHost(), port);
         DatagramChannel datagramChannel = DatagramChannel.open();
         try
         {
+            if (reusePort)
+                datagramChannel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
             datagramChannel.bind(bindAddress);
             return datagramChannel;
         }
@@ -246,7 +421,12 @@ public class QuicServerConnector extends AbstractNetworkConnector
         // We want the DatagramChannel to be stopped by the SelectorManager.
         super.doStop();
 
-        removeBean(datagramChannel);
+        for (DatagramChannel channel : datagramChannels)
+        {
+            removeBean(channel);
+        }
+        datagramChannels.clear();
+        sessions.clear();
         datagramChannel = null;
         localPort = -2;
 
@@ -268,6 +448,17 @@ public class QuicServerConnector extends AbstractNetworkConnector
         }
     }
 
+    /**
+     * <p>Finds the session with the given connection ID among the sessions of all the channels.</p>
+     *
+     * @param connectionId the connection ID
+     * @return the session with the given connection ID, or null if there is no such session
+     */
+    QuicSession findSession(QuicheConnectionId connectionId)
+    {
+        return sessions.get(connectionId);
+    }
+
     @Override
     public CompletableFuture<Void> shutdown()
     {
@@ -306,10 +497,14 @@ public class QuicServerConnector extends AbstractNetworkConnector
         {
             ServerQuicConnection connection = new ServerQuicConnection(QuicServerConnector.this, endpoint);
             connection.addEventListener(container);
+            // Sessions need to be routed across channels only if there are many.
+            if (datagramChannels.size() > 1)
+                connection.addEventListener(router);
             connection.setInputBufferSize(getInputBufferSize());
             connection.setOutputBufferSize(getOutputBufferSize());
             connection.setUseInputDirectByteBuffers(isUseInputDirectByteBuffers());
             connection.setUseOutputDirectByteBuffers(isUseOutputDirectByteBuffers());
+            connection.setDatagramBatchSize(getDatagramBatchSize());
             return connection;
         }
 
@@ -332,4 +527,23 @@ public class QuicServerConnector extends AbstractNetworkConnector
             getConnectedEndPoints().forEach(endPoint -> endPoint.setIdleTimeout(idleTimeout));
         }
     }
+
+    private class SessionRouter implements QuicSession.Listener
+    {
+        @Override
+        public void onOpened(QuicSession session)
+        {
+            QuicheConnectionId connectionId = session.getConnectionId();
+            if (connectionId != null)
+                sessions.put(connectionId, session);
+        }
+
+        @Override
+        public void onClosed(QuicSession session)
+        {
+            QuicheConnectionId connectionId = session.getConnectionId();
+            if (connectionId != null)
+                sessions.remove(connectionId, session);
+        }
+    }
 }
@@ -25,6 +25,7 @@ import org.eclipse.jetty.io.EndPoint;
 import org.eclipse.jetty.quic.common.QuicConnection;
 import org.eclipse.jetty.quic.common.QuicSession;
 import org.eclipse.jetty.quic.quiche.QuicheConnection;
+import org.eclipse.jetty.quic.quiche.QuicheConnectionId;
 import org.eclipse.jetty.quic.server.internal.SimpleTokenMinter;
 import org.eclipse.jetty.quic.server.internal.SimpleTokenValidator;
 import org.eclipse.jetty.util.BufferUtil;
@@ -91,6 +92,12 @@ public class ServerQuicConnection extends QuicConnection
         }
     }
 
+    @Override
+    protected QuicSession findSession(QuicheConnectionId connectionId)
+    {
+        return connector.findSession(connectionId);
+    }
+
     public void schedule(ServerQuicSession session)
     {
         sessionTimeouts.schedule(session);
@@ -99,8 +106,8 @@ public class ServerQuicConnection extends QuicConnection
     @Override
     public boolean onIdleExpired()
     {
-        // The current server architecture only has one listening
-        // DatagramChannelEndPoint, so we ignore idle timeouts.
+        // The listening DatagramChannelEndPoints live as long
+        // as the connector, so we ignore idle timeouts.
         return false;
     }
 
@@ -108,8 +115,8 @@ public class ServerQuicConnection extends QuicConnection
     public void outwardClose(QuicSession session, Throwable failure)
     {
         super.outwardClose(session, failure);
-        // Do nothing else, as the current architecture only has one
-        // listening DatagramChannelEndPoint, so it must not be closed.
+        // Do nothing else, as the listening DatagramChannelEndPoint
+        // is shared by many sessions, so it must not be closed.
     }
 
     private class SessionTimeouts extends CyclicTimeouts<ServerQuicSession>
@@ -15,6 +15,9 @@ package org.eclipse.jetty.quic.server;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.net.StandardSocketOptions;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -29,8 +32,114 @@ import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
 public class ServerQuicConnectorTest
 {
+    @Test
+    public void testManySelectorsBindManyChannels() throws Exception
+    {
+        try (DatagramChannel channel = DatagramChannel.open())
+        {
+            assumeTrue(channel.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT));
+        }
+
+        Server server = new Server();
+        QuicServerConnector connector = new QuicServerConnector(server, null, null, null, 3, new SslContextFactory.Server());
+        try
+        {
+            connector.open();
+
+            assertThat(connector.getSelectors(), is(3));
+            assertThat(connector.getDatagramChannels(), is(3));
+            assertThat(connector.getLocalPort(), greaterThan(0));
+            assertThat(connector.isOpen(), is(true));
+        }
+        finally
+        {
+            connector.close();
+        }
+    }
+
+    @Test
+    public void testOneSelectorBindsOneChannel() throws Exception
+    {
+        Server server = new Server();
+        QuicServerConnector connector = new QuicServerConnector(server, new SslContextFactory.Server());
+        try
+        {
+            connector.open();
+
+            assertThat(connector.getDatagramChannels(), is(1));
+            assertThat(connector.getLocalPort(), greaterThan(0));
+        }
+        finally
+        {
+            connector.close();
+        }
+    }
+
+    @Test
+    public void testOpenDatagramChannelOverrideIsCalled() throws Exception
+    {
+        AtomicInteger opens = new AtomicInteger();
+        Server server = new Server();
+        QuicServerConnector connector = new QuicServerConnector(server, new SslContextFactory.Server())
+        {
+            @Override
+            protected DatagramChannel openDatagramChannel() throws IOException
+            {
+                opens.incrementAndGet();
+                return super.openDatagramChannel();
+            }
+        };
+        try
+        {
+            connector.open();
+
+            assertThat(opens.get(), is(1));
+            assertThat(connector.getDatagramChannels(), is(1));
+        }
+        finally
+        {
+            connector.close();
+        }
+    }
+
+    @Test
+    public void testOpenDatagramChannelOverrideWithoutReusePortBindsOneChannel() throws Exception
+    {
+        try (DatagramChannel channel = DatagramChannel.open())
+        {
+            assumeTrue(channel.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT));
+        }
+
+        Server server = new Server();
+        QuicServerConnector connector = new QuicServerConnector(server, null, null, null, 3, new SslContextFactory.Server())
+        {
+            @Override
+            protected DatagramChannel openDatagramChannel() throws IOException
+            {
+                return openDatagramChannel(getPort(), false);
+            }
+        };
+        try
+        {
+            connector.open();
+
+            assertThat(connector.getSelectors(), is(3));
+            assertThat(connector.getDatagramChannels(), is(1));
+            assertThat(connector.getLocalPort(), greaterThan(0));
+        }
+        finally
+        {
+            connector.close();
+        }
+    }
+
     @Disabled
     @Test
     public void testSmall() throws Exception
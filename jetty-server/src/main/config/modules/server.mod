@@ -54,6 +54,9 @@ etc/jetty.xml
 ## Max per-connection header cache size (in nodes)
 # jetty.httpConfig.headerCacheSize=1024
 
+## Max number of request header fields per connection reused by the next requests (0 to disable)
+# jetty.httpConfig.headerInterningSize=0
+
 ## Whether, for requests with content, delay dispatch until some content has arrived
 # jetty.httpConfig.delayDispatchUntilContent=true
 
@@ -66,6 +69,9 @@ etc/jetty.xml
 ## Whether to use direct ByteBuffers for reading or writing
 # jetty.httpConfig.useInputDirectByteBuffers=true
 # jetty.httpConfig.useOutputDirectByteBuffers=true
+
+## Whether to transfer file content directly to the network (cleartext HTTP/1.1 only)
+# jetty.httpConfig.useOutputFileTransfer=false
 # end::documentation-http-config[]
 
 # tag::documentation-server-compliance[]
@@ -21,12 +21,11 @@ import java.nio.channels.ReadableByteChannel;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.SortedSet;
-import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.eclipse.jetty.http.CompressedContentFormat;
 import org.eclipse.jetty.http.DateGenerator;
@@ -39,11 +38,30 @@ import org.eclipse.jetty.http.PreEncodedHttpField;
 import org.eclipse.jetty.http.PrecompressedHttpContent;
 import org.eclipse.jetty.http.ResourceHttpContent;
 import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
 import org.eclipse.jetty.util.resource.Resource;
 import org.eclipse.jetty.util.resource.ResourceFactory;
+import org.eclipse.jetty.util.thread.AutoLock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * <p>A {@link HttpContent.ContentFactory} that caches the contents of the resources
+ * of a {@link ResourceFactory}, up to {@link #getMaxCachedFiles()} files and
+ * {@link #getMaxCacheSize()} bytes of buffers.</p>
+ * <p>Cached contents are evicted with a segmented LRU policy: newly cached contents
+ * enter a probationary segment and are promoted to a protected segment, holding up
+ * to 80% of the max cached files, when they are accessed again.
+ * Contents are evicted from the least recently used end of the probationary
+ * segment first, so that contents that are accessed only once do not evict the
+ * contents that are accessed frequently.</p>
+ * <p>A cache hit only flags the content as accessed, without locking; accessed
+ * contents are promoted lazily, under the lock, when they reach the least recently
+ * used end of a segment while the cache is shrunk.</p>
+ */
+@ManagedObject("Cache of resource contents")
 public class CachedContentFactory implements HttpContent.ContentFactory
 {
     private static final Logger LOG = LoggerFactory.getLogger(CachedContentFactory.class);
@@ -52,6 +70,12 @@ public class CachedContentFactory implements HttpContent.ContentFactory
     private final ConcurrentMap<String, CachedHttpContent> _cache;
     private final AtomicInteger _cachedSize;
     private final AtomicInteger _cachedFiles;
+    private final AutoLock _lock = new AutoLock();
+    private final Segment _probation = new Segment();
+    private final Segment _protected = new Segment();
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+    private final LongAdder _evictions = new LongAdder();
     private final ResourceFactory _factory;
     private final CachedContentFactory _parent;
     private final MimeTypes _mimeTypes;
@@ -86,16 +110,45 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         _precompressedFormats = precompressedFormats;
     }
 
+    @ManagedAttribute("The size in bytes of the cached buffers")
     public int getCachedSize()
     {
         return _cachedSize.get();
     }
 
+    @ManagedAttribute("The number of cached files")
     public int getCachedFiles()
     {
         return _cachedFiles.get();
     }
 
+    @ManagedAttribute("The number of requests for content found valid in the cache")
+    public long getCacheHits()
+    {
+        return _hits.sum();
+    }
+
+    @ManagedAttribute("The number of requests for content not found valid in the cache")
+    public long getCacheMisses()
+    {
+        return _misses.sum();
+    }
+
+    @ManagedAttribute("The number of contents evicted from the cache to respect its limits")
+    public long getCacheEvictions()
+    {
+        return _evictions.sum();
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStats()
+    {
+        _hits.reset();
+        _misses.reset();
+        _evictions.reset();
+    }
+
+    @ManagedAttribute("The max size in bytes of a cached file")
     public int getMaxCachedFileSize()
     {
         return _maxCachedFileSize;
@@ -107,6 +160,7 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         shrinkCache();
     }
 
+    @ManagedAttribute("The max size in bytes of the cached buffers")
     public int getMaxCacheSize()
     {
         return _maxCacheSize;
@@ -121,6 +175,7 @@ public class CachedContentFactory implements HttpContent.ContentFactory
     /**
      * @return the max number of cached files.
      */
+    @ManagedAttribute("The max number of cached files")
     public int getMaxCachedFiles()
     {
         return _maxCachedFiles;
@@ -140,6 +195,7 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         return _useFileMappedBuffer;
     }
 
+    @ManagedOperation(value = "Flushes the cache", impact = "ACTION")
     public void flushCache()
     {
         while (_cache.size() > 0)
@@ -171,7 +227,11 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         // Is the content in this cache?
         CachedHttpContent content = _cache.get(pathInContext);
         if (content != null && (content).isValid())
+        {
+            _hits.increment();
             return content;
+        }
+        _misses.increment();
 
         // try loading the content from our factory.
         Resource resource = _factory.getResource(pathInContext);
@@ -240,6 +300,10 @@ public class CachedContentFactory implements HttpContent.ContentFactory
                                 compressedContent.invalidate();
                                 compressedContent = added;
                             }
+                            else
+                            {
+                                admit(compressedContent);
+                            }
                         }
                     }
                     if (compressedContent != null)
@@ -257,6 +321,10 @@ public class CachedContentFactory implements HttpContent.ContentFactory
                 content.invalidate();
                 content = added;
             }
+            else
+            {
+                admit(content);
+            }
 
             return content;
         }
@@ -288,34 +356,98 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         return new ResourceHttpContent(resource, mt, maxBufferSize);
     }
 
-    private void shrinkCache()
+    /**
+     * <p>Links a content just added to the cache at the most recently used
+     * end of the probationary segment, then shrinks the cache if needed.</p>
+     *
+     * @param content the content added to the cache
+     */
+    private void admit(CachedHttpContent content)
     {
-        // While we need to shrink
-        while (_cache.size() > 0 && (_cachedFiles.get() > _maxCachedFiles || _cachedSize.get() > _maxCacheSize))
+        try (AutoLock l = _lock.lock())
         {
-            // Scan the entire cache and generate an ordered list by last accessed time.
-            SortedSet<CachedHttpContent> sorted = new TreeSet<>((c1, c2) ->
-            {
-                if (c1._lastAccessed < c2._lastAccessed)
-                    return -1;
+            // The content may have already been removed by another thread.
+            if (content._invalid)
+                return;
+            _probation.addFirst(content);
+        }
+        if (_cachedFiles.get() > _maxCachedFiles)
+            shrinkCache();
+    }
 
-                if (c1._lastAccessed > c2._lastAccessed)
-                    return 1;
+    /**
+     * <p>Promotes an accessed content to the protected segment, demoting the least
+     * recently used protected contents to give them another chance in the probationary segment.</p>
+     * <p>Must be called with the lock held.</p>
+     *
+     * @param content the accessed content
+     */
+    private void promote(CachedHttpContent content)
+    {
+        content._accessed = false;
+        content._segment.remove(content);
+        _protected.addFirst(content);
 
-                if (c1._contentLengthValue < c2._contentLengthValue)
-                    return -1;
+        int maxProtected = (int)(_maxCachedFiles * 4L / 5);
+        while (_protected._size > maxProtected)
+        {
+            CachedHttpContent demoted = _protected.last();
+            _protected.remove(demoted);
+            _probation.addFirst(demoted);
+        }
+    }
 
-                return c1._key.compareTo(c2._key);
-            });
-            sorted.addAll(_cache.values());
+    /**
+     * <p>Finds the content to evict, promoting the accessed contents found
+     * at the least recently used end of the segments.</p>
+     * <p>Must be called with the lock held.</p>
+     *
+     * @return the content to evict, or null if the cache is empty
+     */
+    private CachedHttpContent victim()
+    {
+        while (true)
+        {
+            // Evict from the probationary segment first.
+            CachedHttpContent victim = _probation.last();
+            if (victim == null)
+                victim = _protected.last();
+            // Each promotion clears an access flag, so this loop terminates.
+            if (victim == null || !victim._accessed)
+                return victim;
+            promote(victim);
+        }
+    }
+
+    private void unlink(CachedHttpContent content)
+    {
+        try (AutoLock l = _lock.lock())
+        {
+            content._invalid = true;
+            Segment segment = content._segment;
+            if (segment != null)
+                segment.remove(content);
+        }
+    }
 
-            // Invalidate least recently used first
-            for (CachedHttpContent content : sorted)
+    private void shrinkCache()
+    {
+        // While we need to shrink
+        while (_cachedFiles.get() > _maxCachedFiles || _cachedSize.get() > _maxCacheSize)
+        {
+            CachedHttpContent victim;
+            try (AutoLock l = _lock.lock())
             {
-                if (_cachedFiles.get() <= _maxCachedFiles && _cachedSize.get() <= _maxCacheSize)
+                victim = victim();
+                if (victim == null)
                     break;
-                if (content == _cache.remove(content.getKey()))
-                    content.invalidate();
+                victim._segment.remove(victim);
+            }
+
+            if (_cache.remove(victim.getKey(), victim))
+            {
+                _evictions.increment();
+                victim.invalidate();
             }
         }
     }
@@ -390,7 +522,13 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         private final AtomicReference<ByteBuffer> _indirectBuffer = new AtomicReference<>();
         private final AtomicReference<ByteBuffer> _directBuffer = new AtomicReference<>();
         private final AtomicReference<ByteBuffer> _mappedBuffer = new AtomicReference<>();
-        private volatile long _lastAccessed;
+        // Guarded by the CachedContentFactory lock.
+        private Segment _segment;
+        private CachedHttpContent _prev;
+        private CachedHttpContent _next;
+        private boolean _invalid;
+        // Set on access without the lock, cleared when promoted.
+        private volatile boolean _accessed;
 
         CachedHttpContent(String pathInContext, Resource resource, Map<CompressedContentFormat, CachedHttpContent> precompressedResources)
         {
@@ -410,10 +548,7 @@ public class CachedContentFactory implements HttpContent.ContentFactory
             _contentLengthValue = exists ? resource.length() : 0;
             _contentLength = new PreEncodedHttpField(HttpHeader.CONTENT_LENGTH, Long.toString(_contentLengthValue));
 
-            if (_cachedFiles.incrementAndGet() > _maxCachedFiles)
-                shrinkCache();
-
-            _lastAccessed = System.currentTimeMillis();
+            _cachedFiles.incrementAndGet();
 
             _etag = CachedContentFactory.this._etags ? new PreEncodedHttpField(HttpHeader.ETAG, resource.getWeakETag()) : null;
 
@@ -463,7 +598,9 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         {
             if (_lastModifiedValue == _resource.lastModified() && _contentLengthValue == _resource.length())
             {
-                _lastAccessed = System.currentTimeMillis();
+                // Avoid writing to a shared field on every hit.
+                if (!_accessed)
+                    _accessed = true;
                 return true;
             }
 
@@ -474,6 +611,8 @@ public class CachedContentFactory implements HttpContent.ContentFactory
 
         protected void invalidate()
         {
+            unlink(this);
+
             ByteBuffer indirect = _indirectBuffer.getAndSet(null);
             if (indirect != null)
                 _cachedSize.addAndGet(-BufferUtil.length(indirect));
@@ -712,4 +851,50 @@ public class CachedContentFactory implements HttpContent.ContentFactory
             return "Cached" + super.toString();
         }
     }
+
+    /**
+     * <p>A segment of the cache, as a doubly linked list of contents
+     * ordered from the most recently used to the least recently used.</p>
+     * <p>Guarded by the CachedContentFactory lock.</p>
+     */
+    private static class Segment
+    {
+        private CachedHttpContent _head;
+        private CachedHttpContent _tail;
+        private int _size;
+
+        private void addFirst(CachedHttpContent content)
+        {
+            content._segment = this;
+            content._prev = null;
+            content._next = _head;
+            if (_head == null)
+                _tail = content;
+            else
+                _head._prev = content;
+            _head = content;
+            _size++;
+        }
+
+        private CachedHttpContent last()
+        {
+            return _tail;
+        }
+
+        private void remove(CachedHttpContent content)
+        {
+            if (content._prev == null)
+                _head = content._next;
+            else
+                content._prev._next = content._next;
+            if (content._next == null)
+                _tail = content._prev;
+            else
+                content._next._prev = content._prev;
+            content._segment = null;
+            content._prev = null;
+            content._next = null;
+            _size--;
+        }
+    }
 }
@@ -224,6 +224,17 @@ public abstract class HttpChannel implements Runnable, HttpOutput.Interceptor
         return _written;
     }
 
+    /**
+     * <p>Accounts for response content that has been transferred directly
+     * to the network, bypassing {@link #write(ByteBuffer, boolean, Callback)}.</p>
+     *
+     * @param bytes the number of bytes transferred
+     */
+    void onBytesTransferred(long bytes)
+    {
+        _written += bytes;
+    }
+
     /**
      * @return the number of requests handled by this connection
      */
@@ -58,6 +58,7 @@ public class HttpConfiguration implements Dumpable
     private int _responseHeaderSize = 8 * 1024;
     private int _headerCacheSize = 1024;
     private boolean _headerCacheCaseSensitive = false;
+    private int _headerInterningSize = 0;
     private int _securePort;
     private long _idleTimeout = -1;
     private String _secureScheme = HttpScheme.HTTPS.asString();
@@ -69,6 +70,7 @@ public class HttpConfiguration implements Dumpable
     private int _maxErrorDispatches = 10;
     private boolean _useInputDirectByteBuffers = true;
     private boolean _useOutputDirectByteBuffers = true;
+    private boolean _useOutputFileTransfer;
     private long _minRequestDataRate;
     private long _minResponseDataRate;
     private HttpCompliance _httpCompliance = HttpCompliance.RFC7230;
@@ -130,6 +132,7 @@ public class HttpConfiguration implements Dumpable
         _responseHeaderSize = config._responseHeaderSize;
         _headerCacheSize = config._headerCacheSize;
         _headerCacheCaseSensitive = config._headerCacheCaseSensitive;
+        _headerInterningSize = config._headerInterningSize;
         _secureScheme = config._secureScheme;
         _securePort = config._securePort;
         _idleTimeout = config._idleTimeout;
@@ -141,6 +144,7 @@ public class HttpConfiguration implements Dumpable
         _maxErrorDispatches = config._maxErrorDispatches;
         _useInputDirectByteBuffers = config._useInputDirectByteBuffers;
         _useOutputDirectByteBuffers = config._useOutputDirectByteBuffers;
+        _useOutputFileTransfer = config._useOutputFileTransfer;
         _minRequestDataRate = config._minRequestDataRate;
         _minResponseDataRate = config._minResponseDataRate;
         _httpCompliance = config._httpCompliance;
@@ -217,6 +221,12 @@ public class HttpConfiguration implements Dumpable
         return _headerCacheCaseSensitive;
     }
 
+    @ManagedAttribute("The max number of request header fields per connection reused by the next requests")
+    public int getHeaderInterningSize()
+    {
+        return _headerInterningSize;
+    }
+
     @ManagedAttribute("The port to which Integral or Confidential security constraints are redirected")
     public int getSecurePort()
     {
@@ -364,6 +374,27 @@ public class HttpConfiguration implements Dumpable
         return _useOutputDirectByteBuffers;
     }
 
+    /**
+     * <p>Sets whether file content may be written directly from the file to the network,
+     * with {@link java.nio.channels.FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)},
+     * rather than being copied through ByteBuffers.</p>
+     * <p>File transfer is only used for cleartext HTTP/1.1 responses with a known content
+     * length and no output interceptors; the transferred content is not notified to
+     * {@link HttpChannel.Listener#onResponseContent(Request, java.nio.ByteBuffer)}.</p>
+     *
+     * @param useOutputFileTransfer whether to transfer file content directly to the network
+     */
+    public void setUseOutputFileTransfer(boolean useOutputFileTransfer)
+    {
+        _useOutputFileTransfer = useOutputFileTransfer;
+    }
+
+    @ManagedAttribute("Whether to transfer file content directly to the network")
+    public boolean isUseOutputFileTransfer()
+    {
+        return _useOutputFileTransfer;
+    }
+
     /**
      * <p>Sets the {@link Customizer}s that are invoked for every
      * request received.</p>
@@ -444,6 +475,20 @@ public class HttpConfiguration implements Dumpable
         this._headerCacheCaseSensitive = headerCacheCaseSensitive;
     }
 
+    /**
+     * <p>Sets the max number of request header fields that each connection remembers,
+     * so that the same {@link org.eclipse.jetty.http.HttpField} instances are reused
+     * by the next requests on the same connection that have the same header fields.</p>
+     *
+     * @param headerInterningSize the max number of request header fields remembered per connection,
+     * or 0 to disable header field interning
+     * @see org.eclipse.jetty.http.HttpParser#setHeaderInterningSize(int)
+     */
+    public void setHeaderInterningSize(int headerInterningSize)
+    {
+        _headerInterningSize = headerInterningSize;
+    }
+
     /**
      * <p>Sets the TCP/IP port used for CONFIDENTIAL and INTEGRAL redirections.</p>
      *
@@ -739,6 +784,7 @@ public class HttpConfiguration implements Dumpable
             "requestHeaderSize=" + _requestHeaderSize,
             "responseHeaderSize=" + _responseHeaderSize,
             "headerCacheSize=" + _headerCacheSize,
+            "headerInterningSize=" + _headerInterningSize,
             "secureScheme=" + _secureScheme,
             "securePort=" + _securePort,
             "idleTimeout=" + _idleTimeout,
@@ -15,6 +15,7 @@ package org.eclipse.jetty.server;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.WritePendingException;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.LongAdder;
@@ -36,6 +37,7 @@ import org.eclipse.jetty.io.EndPoint;
 import org.eclipse.jetty.io.EofException;
 import org.eclipse.jetty.io.RetainableByteBuffer;
 import org.eclipse.jetty.io.RetainableByteBufferPool;
+import org.eclipse.jetty.io.SocketChannelEndPoint;
 import org.eclipse.jetty.io.WriteFlusher;
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.Callback;
@@ -132,6 +134,7 @@ public class HttpConnection extends AbstractConnection implements Runnable, Http
         HttpParser parser = new HttpParser(newRequestHandler(), getHttpConfiguration().getRequestHeaderSize(), compliance);
         parser.setHeaderCacheSize(getHttpConfiguration().getHeaderCacheSize());
         parser.setHeaderCacheCaseSensitive(getHttpConfiguration().isHeaderCacheCaseSensitive());
+        parser.setHeaderInterningSize(getHttpConfiguration().getHeaderInterningSize());
         return parser;
     }
 
@@ -617,6 +620,38 @@ public class HttpConnection extends AbstractConnection implements Runnable, Http
         getEndPoint().tryFillInterested(_asyncReadCallback);
     }
 
+    /**
+     * <p>Transfers content from the given file directly to the network, bypassing
+     * the generator and any intermediate buffer.</p>
+     * <p>Content can only be transferred once the response has been committed with
+     * a content length, over a cleartext connection and while no other write is pending.</p>
+     *
+     * @param file the file to transfer the content from
+     * @param position the file position of the content to transfer
+     * @param count the maximum number of bytes to transfer
+     * @return the number of bytes transferred, possibly 0 if the network is congested,
+     * or -1 if the content cannot be transferred and must be written via {@link #send(MetaData.Request, MetaData.Response, ByteBuffer, boolean, Callback)}
+     * @throws IOException if the transfer fails
+     */
+    public long transferFrom(FileChannel file, long position, long count) throws IOException
+    {
+        EndPoint endPoint = getEndPoint();
+        if (!(endPoint instanceof SocketChannelEndPoint) ||
+            !_generator.isState(HttpGenerator.State.COMMITTED) ||
+            _generator.isChunking() ||
+            _generator.isNoContent())
+            return -1;
+
+        long transferred = ((SocketChannelEndPoint)endPoint).transferFrom(file, position, count);
+        if (transferred < 0)
+            return -1;
+        if (transferred > 0)
+            bytesOut.add(transferred);
+        if (LOG.isDebugEnabled())
+            LOG.debug("transferred {}/{} bytes from {} on {}", transferred, count, file, this);
+        return transferred;
+    }
+
     @Override
     public long getBytesIn()
     {
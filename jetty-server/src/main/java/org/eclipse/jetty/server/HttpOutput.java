@@ -17,6 +17,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritePendingException;
 import java.nio.charset.Charset;
@@ -1171,6 +1172,25 @@ public class HttpOutput extends ServletOutputStream implements Runnable
         }
     }
 
+    /**
+     * Blocking send of file content.
+     * The file is not closed after the content is sent.
+     *
+     * @param file The file to send the content of
+     * @param position The file position of the content to send
+     * @param length The length of the content to send
+     * @throws IOException if the send fails
+     * @see HttpConfiguration#setUseOutputFileTransfer(boolean)
+     */
+    public void sendContent(FileChannel file, long position, long length) throws IOException
+    {
+        try (Blocker blocker = _writeBlocker.acquire())
+        {
+            sendContent(file, position, length, blocker);
+            blocker.block();
+        }
+    }
+
     /**
      * Blocking send of HTTP content.
      *
@@ -1249,6 +1269,25 @@ public class HttpOutput extends ServletOutputStream implements Runnable
             new ReadableByteChannelWritingCB(in, callback).iterate();
     }
 
+    /**
+     * Asynchronous send of file content.
+     * The file is not closed after the content is sent.
+     *
+     * @param file The file to send the content of
+     * @param position The file position of the content to send
+     * @param length The length of the content to send
+     * @param callback The callback to use to notify success or failure
+     * @see HttpConfiguration#setUseOutputFileTransfer(boolean)
+     */
+    public void sendContent(FileChannel file, long position, long length, Callback callback)
+    {
+        if (LOG.isDebugEnabled())
+            LOG.debug("sendContent(file={},{},{},{})", file, position, length, callback);
+
+        if (prepareSendContent(0, callback))
+            new FileChannelWritingCB(file, position, length, false, callback).iterate();
+    }
+
     private boolean prepareSendContent(int len, Callback callback)
     {
         try (AutoLock l = _channelState.lock())
@@ -1322,6 +1361,21 @@ public class HttpOutput extends ServletOutputStream implements Runnable
             if (LOG.isDebugEnabled())
                 LOG.debug("Unable to access ReadableByteChannel for content {}", httpContent, x);
         }
+        if (rbc instanceof FileChannel && _channel.getHttpConfiguration().isUseOutputFileTransfer())
+        {
+            long length = httpContent.getContentLengthValue();
+            if (length >= 0)
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("sendContent(file={},{})", rbc, callback);
+                // Close of the file is done by the FileChannelWritingCB
+                if (prepareSendContent(0, callback))
+                    new FileChannelWritingCB((FileChannel)rbc, 0, length, true, callback).iterate();
+                else
+                    IO.close(rbc);
+                return;
+            }
+        }
         if (rbc != null)
         {
             // Close of the rbc is done by the async sendContent
@@ -1532,6 +1586,27 @@ public class HttpOutput extends ServletOutputStream implements Runnable
         }
     }
 
+    /**
+     * @param length the length of the file content to send
+     * @return the connection to transfer file content to, or null if the
+     * content must be written via the {@link Interceptor}
+     */
+    private HttpConnection getFileTransferConnection(long length)
+    {
+        if (!_channel.getHttpConfiguration().isUseOutputFileTransfer())
+            return null;
+        // Interceptors, such as the GzipHandler, must see the content.
+        if (_interceptor != _channel)
+            return null;
+        if (!(_channel.getHttpTransport() instanceof HttpConnection))
+            return null;
+        if (_channel.getRequest().isHead())
+            return null;
+        if (_channel.getResponse().getLongContentLength() != length)
+            return null;
+        return (HttpConnection)_channel.getHttpTransport();
+    }
+
     private abstract class ChannelWriteCB extends IteratingCallback
     {
         final boolean _last;
@@ -1867,6 +1942,119 @@ public class HttpOutput extends ServletOutputStream implements Runnable
         }
     }
 
+    /**
+     * An iterating callback that will take content from a
+     * FileChannel and write it to the {@link HttpChannel}.
+     * If {@link HttpConfiguration#isUseOutputFileTransfer()} is true and the
+     * response is eligible, the content is transferred directly to the network with
+     * {@link HttpConnection#transferFrom(FileChannel, long, long)}; when the network
+     * is congested, or the response is not eligible, the content is read into a
+     * {@link ByteBuffer} of size {@link HttpOutput#getBufferSize()} and written to
+     * the {@link HttpChannel} like {@link ReadableByteChannelWritingCB} does.
+     */
+    private class FileChannelWritingCB extends NestedChannelWriteCB
+    {
+        private final FileChannel _file;
+        private final long _end;
+        private final boolean _close;
+        private HttpConnection _connection;
+        private long _position;
+        private ByteBuffer _buffer;
+        private boolean _completed;
+
+        private FileChannelWritingCB(FileChannel file, long position, long length, boolean close, Callback callback)
+        {
+            super(callback, true);
+            _file = file;
+            _position = position;
+            _end = position + length;
+            _close = close;
+            _connection = getFileTransferConnection(length);
+        }
+
+        @Override
+        protected Action process() throws Exception
+        {
+            if (_completed)
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("EOF of {}", this);
+                release();
+                return Action.SUCCEEDED;
+            }
+
+            if (_connection != null)
+            {
+                // The response must be committed before content can be transferred.
+                if (!_channel.isCommitted())
+                {
+                    channelWrite(BufferUtil.EMPTY_BUFFER, false, this);
+                    return Action.SCHEDULED;
+                }
+
+                while (_position < _end)
+                {
+                    long transferred = _connection.transferFrom(_file, _position, _end - _position);
+                    if (transferred < 0)
+                    {
+                        _connection = null;
+                        break;
+                    }
+                    // The network is congested, write a buffer to wait until it is writable.
+                    if (transferred == 0)
+                        break;
+                    _position += transferred;
+                    _written += transferred;
+                    _channel.onBytesTransferred(transferred);
+                }
+
+                if (_position == _end)
+                {
+                    _completed = true;
+                    channelWrite(BufferUtil.EMPTY_BUFFER, true, this);
+                    return Action.SCHEDULED;
+                }
+            }
+
+            // Read from the file until buffer full or end of the content
+            if (_buffer == null)
+                _buffer = _channel.getByteBufferPool().acquire(getBufferSize(), _channel.isUseOutputDirectByteBuffers());
+            BufferUtil.clearToFill(_buffer);
+            _buffer.limit((int)Math.min(_buffer.capacity(), _end - _position));
+            while (_buffer.hasRemaining())
+            {
+                if (_file.read(_buffer, _position + _buffer.position()) < 0)
+                    throw new EofException("Unexpected end of file " + _file);
+            }
+
+            // write what we have
+            BufferUtil.flipToFlush(_buffer, 0);
+            _position += _buffer.remaining();
+            _written += _buffer.remaining();
+            _completed = _position == _end;
+            channelWrite(_buffer, _completed, this);
+            return Action.SCHEDULED;
+        }
+
+        @Override
+        public void onCompleteFailure(Throwable x)
+        {
+            release();
+            super.onCompleteFailure(x);
+        }
+
+        private void release()
+        {
+            if (_buffer != null)
+            {
+                _channel.getByteBufferPool().release(_buffer);
+                _buffer = null;
+            }
+            if (_close)
+                IO.close(_file);
+        }
+    }
+
     private static class WriteBlocker extends SharedBlockingCallback
     {
         private final HttpChannel _channel;
@@ -857,13 +857,20 @@ public class ResourceService
             }
         }
 
-        // Use a ranged writer
-        try (InputStreamRangeWriter rangeWriter = new InputStreamRangeWriter(() -> content.getInputStream()))
+        // Use a ranged writer, that may transfer the file content without copy if configured
+        try (RangeWriter rangeWriter = isUseOutputFileTransfer(out)
+            ? HttpContentRangeWriter.newRangeWriter(content)
+            : new InputStreamRangeWriter(() -> content.getInputStream()))
         {
             rangeWriter.writeTo(out, start, contentLength);
         }
     }
 
+    private static boolean isUseOutputFileTransfer(OutputStream out)
+    {
+        return out instanceof HttpOutput && ((HttpOutput)out).getHttpChannel().getHttpConfiguration().isUseOutputFileTransfer();
+    }
+
     protected void putHeaders(HttpServletResponse response, HttpContent content, long contentLength)
     {
         if (response instanceof Response)
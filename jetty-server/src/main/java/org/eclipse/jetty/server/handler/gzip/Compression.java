@@ -0,0 +1,142 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server.handler.gzip;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.eclipse.jetty.http.CompressedContentFormat;
+import org.eclipse.jetty.util.compression.CompressionPool;
+
+/**
+ * <p>A content encoding, other than {@code gzip}, that a {@link GzipHandler} can negotiate
+ * with clients via the {@code Accept-Encoding} request header.</p>
+ * <p>A Compression is a pool of {@link Encoder}s for its {@link #getFormat() format},
+ * so that encoders, which may hold large native buffers, are reused across responses.
+ * Implementations for encodings such as {@code br} or {@code zstd} typically wrap
+ * a compression library in an {@link Encoder}.</p>
+ *
+ * @see GzipHandler#addCompression(Compression)
+ */
+public abstract class Compression extends CompressionPool<Compression.Encoder>
+{
+    private final CompressedContentFormat _format;
+
+    /**
+     * @param format the format of the compressed content
+     * @param capacity the max number of pooled encoders, as per {@link CompressionPool#CompressionPool(int)}
+     */
+    protected Compression(CompressedContentFormat format, int capacity)
+    {
+        super(capacity);
+        _format = format;
+    }
+
+    /**
+     * @return the format of the compressed content
+     */
+    public CompressedContentFormat getFormat()
+    {
+        return _format;
+    }
+
+    /**
+     * @return the content encoding, as used in the {@code Accept-Encoding} and {@code Content-Encoding} headers
+     */
+    public String getEncoding()
+    {
+        return _format.getEncoding();
+    }
+
+    /**
+     * @return a new encoder for this compression
+     */
+    protected abstract Encoder newEncoder();
+
+    @Override
+    protected Encoder newPooled()
+    {
+        return newEncoder();
+    }
+
+    @Override
+    protected void end(Encoder encoder)
+    {
+        encoder.end();
+    }
+
+    @Override
+    protected void reset(Encoder encoder)
+    {
+        encoder.reset();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s[%s]", super.toString(), getEncoding());
+    }
+
+    /**
+     * <p>A stateful encoder that compresses a stream of bytes.</p>
+     * <p>Output buffers are in flush mode, and the compressed bytes are
+     * appended after their limit, as done by {@link org.eclipse.jetty.util.BufferUtil#append(ByteBuffer, ByteBuffer)}.</p>
+     */
+    public interface Encoder
+    {
+        /**
+         * <p>Compresses the bytes of the input buffer until either the input
+         * buffer is consumed or the output buffer is full.</p>
+         * <p>The encoder may buffer compressed bytes internally, so this method
+         * may consume input without producing output.</p>
+         *
+         * @param input the bytes to compress
+         * @param output the buffer to append the compressed bytes to
+         * @throws IOException if the bytes cannot be compressed
+         */
+        void encode(ByteBuffer input, ByteBuffer output) throws IOException;
+
+        /**
+         * <p>Appends the compressed bytes buffered by the encoder to the output buffer,
+         * so that the content compressed so far can be decoded by the client.</p>
+         *
+         * @param output the buffer to append the compressed bytes to
+         * @return true if all the buffered bytes have been flushed, false if the output buffer is full
+         * and this method must be called again with more space
+         * @throws IOException if the bytes cannot be flushed
+         */
+        boolean flush(ByteBuffer output) throws IOException;
+
+        /**
+         * <p>Appends the remaining compressed bytes and the end of stream marker, if any,
+         * to the output buffer.</p>
+         *
+         * @param output the buffer to append the compressed bytes to
+         * @return true if the compressed stream is complete, false if the output buffer is full
+         * and this method must be called again with more space
+         * @throws IOException if the stream cannot be finished
+         */
+        boolean finish(ByteBuffer output) throws IOException;
+
+        /**
+         * <p>Resets this encoder so that it can compress a new stream.</p>
+         */
+        void reset();
+
+        /**
+         * <p>Releases the resources of this encoder, which cannot be used anymore.</p>
+         */
+        void end();
+    }
+}
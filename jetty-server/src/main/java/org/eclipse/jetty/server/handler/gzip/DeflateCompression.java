@@ -0,0 +1,135 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server.handler.gzip;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+
+import org.eclipse.jetty.http.CompressedContentFormat;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.compression.CompressionPool;
+
+/**
+ * <p>A {@link Compression} for the {@code deflate} content encoding,
+ * that is the zlib format defined by RFC 1950.</p>
+ */
+public class DeflateCompression extends Compression
+{
+    public static final CompressedContentFormat DEFLATE = new CompressedContentFormat(GzipHandler.DEFLATE, ".zz");
+
+    private final int _compressionLevel;
+
+    public DeflateCompression()
+    {
+        this(CompressionPool.DEFAULT_CAPACITY, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param capacity the max number of pooled encoders
+     * @param compressionLevel the compression level of the {@link Deflater}s
+     */
+    public DeflateCompression(int capacity, int compressionLevel)
+    {
+        super(DEFLATE, capacity);
+        _compressionLevel = compressionLevel;
+    }
+
+    public int getCompressionLevel()
+    {
+        return _compressionLevel;
+    }
+
+    @Override
+    protected Encoder newEncoder()
+    {
+        return new DeflateEncoder(new Deflater(_compressionLevel));
+    }
+
+    private static class DeflateEncoder implements Encoder
+    {
+        private final Deflater _deflater;
+
+        private DeflateEncoder(Deflater deflater)
+        {
+            _deflater = deflater;
+        }
+
+        @Override
+        public void encode(ByteBuffer input, ByteBuffer output)
+        {
+            int pos = BufferUtil.flipToFill(output);
+            try
+            {
+                _deflater.setInput(input);
+                while (input.hasRemaining() && output.hasRemaining())
+                {
+                    _deflater.deflate(output, Deflater.NO_FLUSH);
+                }
+            }
+            finally
+            {
+                // Do not retain the input buffer, that may be reused by the application.
+                _deflater.setInput(BufferUtil.EMPTY_BUFFER);
+                BufferUtil.flipToFlush(output, pos);
+            }
+        }
+
+        @Override
+        public boolean flush(ByteBuffer output)
+        {
+            int pos = BufferUtil.flipToFill(output);
+            try
+            {
+                _deflater.deflate(output, Deflater.SYNC_FLUSH);
+                // A full output buffer may have more bytes to flush.
+                return output.hasRemaining();
+            }
+            finally
+            {
+                BufferUtil.flipToFlush(output, pos);
+            }
+        }
+
+        @Override
+        public boolean finish(ByteBuffer output)
+        {
+            int pos = BufferUtil.flipToFill(output);
+            try
+            {
+                _deflater.finish();
+                while (!_deflater.finished() && output.hasRemaining())
+                {
+                    _deflater.deflate(output);
+                }
+                return _deflater.finished();
+            }
+            finally
+            {
+                BufferUtil.flipToFlush(output, pos);
+            }
+        }
+
+        @Override
+        public void reset()
+        {
+            _deflater.reset();
+        }
+
+        @Override
+        public void end()
+        {
+            _deflater.end();
+        }
+    }
+}
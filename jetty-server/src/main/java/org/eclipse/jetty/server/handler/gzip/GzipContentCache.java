@@ -0,0 +1,256 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.server.handler.gzip;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.thread.AutoLock;
+
+/**
+ * <p>A bounded, least recently used, cache of gzip compressed response contents.</p>
+ * <p>When a {@link GzipHandler} has a content cache, the content of cacheable responses
+ * is compressed only once and stored in the cache, keyed by the request host and URI and by
+ * the response {@code ETag} or {@code Last-Modified} validator.
+ * Later responses with the same key are served with the cached compressed bytes,
+ * without compressing the content again.</p>
+ * <p>Responses are cacheable if they are successful responses to {@code GET} requests,
+ * have a validator, do not have a {@code Cache-Control: no-store} directive and do not vary
+ * on request headers other than {@code Accept-Encoding}.</p>
+ *
+ * @see GzipHandler#setContentCache(GzipContentCache)
+ */
+@ManagedObject("A cache of gzip compressed response contents")
+public class GzipContentCache
+{
+    private final AutoLock _lock = new AutoLock();
+    private final Map<String, ByteBuffer> _entries = new LinkedHashMap<>(16, 0.75F, true);
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+    private long _size;
+    private int _maxEntries = 1024;
+    private long _maxSize = 32 * 1024 * 1024;
+    private int _maxEntrySize = 2 * 1024 * 1024;
+
+    @ManagedAttribute("The max number of cached entries")
+    public int getMaxEntries()
+    {
+        return _maxEntries;
+    }
+
+    /**
+     * @param maxEntries the max number of cached entries
+     */
+    public void setMaxEntries(int maxEntries)
+    {
+        _maxEntries = maxEntries;
+        shrink();
+    }
+
+    @ManagedAttribute("The max size in bytes of all the cached entries")
+    public long getMaxSize()
+    {
+        return _maxSize;
+    }
+
+    /**
+     * @param maxSize the max size in bytes of all the cached entries
+     */
+    public void setMaxSize(long maxSize)
+    {
+        _maxSize = maxSize;
+        shrink();
+    }
+
+    @ManagedAttribute("The max compressed size in bytes of a cached entry")
+    public int getMaxEntrySize()
+    {
+        return _maxEntrySize;
+    }
+
+    /**
+     * @param maxEntrySize the max compressed size in bytes of a cached entry
+     */
+    public void setMaxEntrySize(int maxEntrySize)
+    {
+        _maxEntrySize = maxEntrySize;
+    }
+
+    @ManagedAttribute("The number of cached entries")
+    public int getEntries()
+    {
+        try (AutoLock l = _lock.lock())
+        {
+            return _entries.size();
+        }
+    }
+
+    @ManagedAttribute("The size in bytes of all the cached entries")
+    public long getSize()
+    {
+        try (AutoLock l = _lock.lock())
+        {
+            return _size;
+        }
+    }
+
+    @ManagedAttribute("The number of responses served from the cache")
+    public long getHits()
+    {
+        return _hits.sum();
+    }
+
+    @ManagedAttribute("The number of cacheable responses not found in the cache")
+    public long getMisses()
+    {
+        return _misses.sum();
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStats()
+    {
+        _hits.reset();
+        _misses.reset();
+    }
+
+    @ManagedOperation(value = "Clears the cache", impact = "ACTION")
+    public void clear()
+    {
+        try (AutoLock l = _lock.lock())
+        {
+            _entries.clear();
+            _size = 0;
+        }
+    }
+
+    /**
+     * <p>Computes the cache key of a response about to be compressed.</p>
+     *
+     * @param request the request
+     * @param response the response, not yet committed
+     * @return the cache key, or null if the response is not cacheable
+     */
+    protected String getKey(Request request, Response response)
+    {
+        if (!HttpMethod.GET.is(request.getMethod()) || response.getStatus() != HttpStatus.OK_200)
+            return null;
+
+        HttpFields fields = response.getHttpFields();
+        String validator = fields.get(HttpHeader.ETAG);
+        if (validator == null)
+            validator = fields.get(HttpHeader.LAST_MODIFIED);
+        if (validator == null)
+            return null;
+
+        if (fields.contains(HttpHeader.CACHE_CONTROL, "no-store"))
+            return null;
+
+        for (HttpField field : fields)
+        {
+            if (field.getHeader() != HttpHeader.VARY)
+                continue;
+            for (String value : field.getValues())
+            {
+                if (!HttpHeader.ACCEPT_ENCODING.is(value))
+                    return null;
+            }
+        }
+
+        return request.getServerName() + request.getHttpURI().getPathQuery() + '|' + validator;
+    }
+
+    /**
+     * @param key the cache key
+     * @return a read-only buffer with the cached compressed content, or null if there is no cached entry for the key
+     */
+    public ByteBuffer get(String key)
+    {
+        ByteBuffer content;
+        try (AutoLock l = _lock.lock())
+        {
+            content = _entries.get(key);
+        }
+        if (content == null)
+        {
+            _misses.increment();
+            return null;
+        }
+        _hits.increment();
+        return content.slice();
+    }
+
+    /**
+     * <p>Caches the given compressed content, evicting the least recently used
+     * entries if the cache is full.</p>
+     *
+     * @param key the cache key
+     * @param content the compressed content
+     */
+    public void put(String key, ByteBuffer content)
+    {
+        int length = content.remaining();
+        if (length > _maxEntrySize || length > _maxSize || _maxEntries <= 0)
+            return;
+
+        ByteBuffer entry = content.asReadOnlyBuffer();
+        try (AutoLock l = _lock.lock())
+        {
+            ByteBuffer previous = _entries.put(key, entry);
+            if (previous != null)
+                _size -= previous.remaining();
+            _size += length;
+        }
+        shrink();
+    }
+
+    private void shrink()
+    {
+        try (AutoLock l = _lock.lock())
+        {
+            Iterator<ByteBuffer> iterator = _entries.values().iterator();
+            while (iterator.hasNext() && (_entries.size() > _maxEntries || _size > _maxSize))
+            {
+                _size -= iterator.next().remaining();
+                iterator.remove();
+            }
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{entries=%d/%d,size=%d/%d,hits=%d,misses=%d}",
+            getClass().getSimpleName(),
+            hashCode(),
+            getEntries(),
+            _maxEntries,
+            getSize(),
+            _maxSize,
+            getHits(),
+            getMisses());
+    }
+}
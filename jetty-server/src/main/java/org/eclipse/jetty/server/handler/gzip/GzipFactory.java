@@ -21,4 +21,25 @@ public interface GzipFactory
     DeflaterPool.Entry getDeflaterEntry(Request request, long contentLength);
 
     boolean isMimeTypeGzipable(String mimetype);
+
+    /**
+     * <p>Negotiates a compression other than gzip for the response to the given request.</p>
+     *
+     * @param request the request
+     * @param contentLength the content length of the response, or -1 if unknown
+     * @return the compression to use, or null to compress with gzip as per
+     * {@link #getDeflaterEntry(Request, long)} or not at all
+     */
+    default Compression getCompression(Request request, long contentLength)
+    {
+        return null;
+    }
+
+    /**
+     * @return the cache of compressed contents, or null if compressed contents are not cached
+     */
+    default GzipContentCache getContentCache()
+    {
+        return null;
+    }
 }
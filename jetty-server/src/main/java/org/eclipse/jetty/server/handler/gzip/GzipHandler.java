@@ -14,8 +14,11 @@
 package org.eclipse.jetty.server.handler.gzip;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Set;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -34,6 +37,7 @@ import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.http.MimeTypes;
 import org.eclipse.jetty.http.PreEncodedHttpField;
+import org.eclipse.jetty.http.QuotedQualityCSV;
 import org.eclipse.jetty.http.pathmap.PathSpecSet;
 import org.eclipse.jetty.server.HttpOutput;
 import org.eclipse.jetty.server.Request;
@@ -170,6 +174,9 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
     private final IncludeExclude<String> _paths = new IncludeExclude<>(PathSpecSet.class);
     private final IncludeExclude<String> _mimeTypes = new IncludeExclude<>(AsciiLowerCaseSet.class);
     private HttpField _vary = GzipHttpOutputInterceptor.VARY_ACCEPT_ENCODING;
+    private GzipContentCache _contentCache;
+    private final List<Compression> _compressions = new ArrayList<>();
+    private String[] _preferredEncodings = {GZIP};
 
     /**
      * Instantiates a new GzipHandler.
@@ -440,6 +447,45 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
         }
     }
 
+    @Override
+    public Compression getCompression(Request request, long contentLength)
+    {
+        if (_compressions.isEmpty())
+            return null;
+
+        if (contentLength >= 0 && contentLength < _minGzipSize)
+            return null;
+
+        // Values of equal quality are ordered as the compressions, then gzip.
+        QuotedQualityCSV acceptEncodings = null;
+        for (HttpField field : request.getHttpFields())
+        {
+            if (field.getHeader() == HttpHeader.ACCEPT_ENCODING)
+            {
+                if (acceptEncodings == null)
+                    acceptEncodings = new QuotedQualityCSV(_preferredEncodings);
+                acceptEncodings.addValue(field.getValue());
+            }
+        }
+        if (acceptEncodings == null)
+            return null;
+
+        for (String encoding : acceptEncodings)
+        {
+            if (GZIP.equalsIgnoreCase(encoding))
+                return null;
+            for (Compression compression : _compressions)
+            {
+                if (compression.getEncoding().equalsIgnoreCase(encoding))
+                {
+                    LOG.debug("{} compression {} {}", this, compression, request);
+                    return compression;
+                }
+            }
+        }
+        return null;
+    }
+
     @Override
     public DeflaterPool.Entry getDeflaterEntry(Request request, long contentLength)
     {
@@ -626,6 +672,10 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
                     {
                         String etags = field.getValue();
                         String etagsNoSuffix = CompressedContentFormat.GZIP.stripSuffixes(etags);
+                        for (Compression compression : _compressions)
+                        {
+                            etagsNoSuffix = compression.getFormat().stripSuffixes(etagsNoSuffix);
+                        }
                         if (etagsNoSuffix.equals(etags))
                             newFields.add(field);
                         else
@@ -966,6 +1016,67 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
         _inflaterPool = inflaterPool;
     }
 
+    /**
+     * @return the cache of compressed contents, or null if compressed contents are not cached
+     */
+    @Override
+    public GzipContentCache getContentCache()
+    {
+        return _contentCache;
+    }
+
+    /**
+     * <p>Sets the cache of compressed contents.</p>
+     * <p>With a content cache, the content of cacheable responses, such as static
+     * resources with an {@code ETag} or {@code Last-Modified} header, is compressed
+     * once and later responses with the same URI and validator are served with the
+     * cached compressed bytes. This should be called before starting.</p>
+     *
+     * @param contentCache the cache of compressed contents, or null to not cache compressed contents
+     */
+    public void setContentCache(GzipContentCache contentCache)
+    {
+        if (isStarted())
+            throw new IllegalStateException(getState());
+
+        updateBean(_contentCache, contentCache);
+        _contentCache = contentCache;
+    }
+
+    /**
+     * @return the compressions, other than gzip, that may be negotiated with clients
+     */
+    public List<Compression> getCompressions()
+    {
+        return Collections.unmodifiableList(_compressions);
+    }
+
+    /**
+     * <p>Adds a compression, such as {@code br} or {@code zstd}, that may be negotiated with
+     * clients via the quality values of the {@code Accept-Encoding} request header.</p>
+     * <p>When the client accepts several encodings with the same quality, the compressions are
+     * preferred in the order they have been added, and are preferred over gzip.
+     * This should be called before starting.</p>
+     *
+     * @param compression the compression to add
+     */
+    public void addCompression(Compression compression)
+    {
+        if (isStarted())
+            throw new IllegalStateException(getState());
+
+        _compressions.add(compression);
+        addBean(compression, true);
+
+        String[] preferredEncodings = new String[_compressions.size() + 1];
+        for (int i = 0; i < _compressions.size(); ++i)
+        {
+            preferredEncodings[i] = _compressions.get(i).getEncoding();
+        }
+        preferredEncodings[_compressions.size()] = GZIP;
+        _preferredEncodings = preferredEncodings;
+    }
+
     /**
      * Gets the maximum number of Deflaters that the DeflaterPool can hold.
      *
@@ -19,6 +19,7 @@ import java.util.concurrent.atomic.AtomicReference;
 import java.util.zip.CRC32;
 import java.util.zip.Deflater;
 
+import org.eclipse.jetty.http.CompressedContentFormat;
 import org.eclipse.jetty.http.HttpField;
 import org.eclipse.jetty.http.HttpFields;
 import org.eclipse.jetty.http.HttpHeader;
@@ -28,8 +29,10 @@ import org.eclipse.jetty.server.HttpChannel;
 import org.eclipse.jetty.server.HttpOutput;
 import org.eclipse.jetty.server.Response;
 import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.ByteArrayOutputStream2;
 import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.IteratingNestedCallback;
+import org.eclipse.jetty.util.compression.CompressionPool;
 import org.eclipse.jetty.util.compression.DeflaterPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,7 +48,7 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
 
     private enum GZState
     {
-        MIGHT_COMPRESS, NOT_COMPRESSING, COMMITTING, COMPRESSING, FINISHED
+        MIGHT_COMPRESS, NOT_COMPRESSING, COMMITTING, COMPRESSING, CACHED, FINISHED
     }
 
     private final AtomicReference<GZState> _state = new AtomicReference<>(GZState.MIGHT_COMPRESS);
@@ -59,7 +62,11 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
     private final boolean _syncFlush;
 
     private DeflaterPool.Entry _deflaterEntry;
+    private Compression _compression;
+    private CompressionPool<Compression.Encoder>.Entry _encoderEntry;
     private ByteBuffer _buffer;
+    private String _cacheKey;
+    private ByteArrayOutputStream2 _cacheContent;
 
     public GzipHttpOutputInterceptor(GzipFactory factory, HttpChannel channel, HttpOutput.Interceptor next, boolean syncFlush)
     {
@@ -105,7 +112,23 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
                 break;
 
             case COMPRESSING:
-                gzip(content, complete, callback);
+                if (_compression != null)
+                    encode(content, complete, callback);
+                else
+                    gzip(content, complete, callback);
+                break;
+
+            case CACHED:
+                // The cached compressed content has already been written, discard the content.
+                if (complete)
+                {
+                    _state.set(GZState.FINISHED);
+                    _interceptor.write(BufferUtil.EMPTY_BUFFER, true, callback);
+                }
+                else
+                {
+                    callback.succeeded();
+                }
                 break;
 
             default:
@@ -128,6 +151,14 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
             callback.succeeded();
     }
 
+    private void encode(ByteBuffer content, boolean complete, Callback callback)
+    {
+        if (content.hasRemaining() || complete || _syncFlush)
+            new EncoderBufferCB(content, complete, callback).iterate();
+        else
+            callback.succeeded();
+    }
+
     protected void commit(ByteBuffer content, boolean complete, Callback callback)
     {
         // Are we excluding because of status?
@@ -144,7 +175,8 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
                 String responseEtag = response.getHttpFields().get(HttpHeader.ETAG);
                 if (requestEtags != null && responseEtag != null)
                 {
-                    String responseEtagGzip = etagGzip(responseEtag);
+                    Compression compression = _factory.getCompression(_channel.getRequest(), -1);
+                    String responseEtagGzip = compression == null ? etagGzip(responseEtag) : compression.getFormat().etag(responseEtag);
                     if (requestEtags.contains(responseEtagGzip))
                         response.getHttpFields().put(HttpHeader.ETAG, responseEtagGzip);
                 }
@@ -190,6 +222,14 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
             if (contentLength < 0 && complete)
                 contentLength = content.remaining();
 
+            // Has a compression other than gzip been negotiated?
+            Compression compression = _factory.getCompression(_channel.getRequest(), contentLength);
+            if (compression != null)
+            {
+                compress(compression, content, complete, callback);
+                return;
+            }
+
             _deflaterEntry = _factory.getDeflaterEntry(_channel.getRequest(), contentLength);
             if (_deflaterEntry == null)
             {
@@ -199,6 +239,25 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
                 return;
             }
 
+            // Is the compressed content cached?
+            GzipContentCache cache = _factory.getContentCache();
+            if (cache != null)
+            {
+                _cacheKey = cache.getKey(_channel.getRequest(), response);
+                if (_cacheKey != null)
+                {
+                    ByteBuffer cached = cache.get(_cacheKey);
+                    if (cached != null)
+                    {
+                        _deflaterEntry.release();
+                        _deflaterEntry = null;
+                        writeCached(cached, complete, callback);
+                        return;
+                    }
+                    _cacheContent = new ByteArrayOutputStream2();
+                }
+            }
+
             fields.put(GZIP.getContentEncoding());
             _crc.reset();
 
@@ -225,6 +284,82 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
             callback.failed(new WritePendingException());
     }
 
+    private void compress(Compression compression, ByteBuffer content, boolean complete, Callback callback)
+    {
+        _compression = compression;
+        _encoderEntry = compression.acquire();
+
+        // Adjust headers
+        CompressedContentFormat format = compression.getFormat();
+        Response response = _channel.getResponse();
+        HttpFields.Mutable fields = response.getHttpFields();
+        fields.put(format.getContentEncoding());
+        response.setContentLength(-1);
+        String etag = fields.get(HttpHeader.ETAG);
+        if (etag != null)
+            fields.put(HttpHeader.ETAG, format.etag(etag));
+
+        LOG.debug("{} compressing {} {}", this, compression, _encoderEntry);
+        _state.set(GZState.COMPRESSING);
+
+        if (BufferUtil.isEmpty(content) && !complete)
+        {
+            // We are committing, but have no content to compress, so flush empty buffer to write headers.
+            _interceptor.write(BufferUtil.EMPTY_BUFFER, false, callback);
+        }
+        else
+        {
+            encode(content, complete, callback);
+        }
+    }
+
+    private void writeCached(ByteBuffer cached, boolean complete, Callback callback)
+    {
+        LOG.debug("{} cached {}", this, _cacheKey);
+        Response response = _channel.getResponse();
+        HttpFields.Mutable fields = response.getHttpFields();
+        fields.put(GZIP.getContentEncoding());
+        String etag = fields.get(HttpHeader.ETAG);
+        if (etag != null)
+            fields.put(HttpHeader.ETAG, etagGzip(etag));
+
+        if (complete)
+        {
+            // All the content has been written, so the cached content can be sent with its length.
+            // The uncompressed bytes already written may exceed the compressed length, so the
+            // header is set directly rather than with Response.setContentLength(int).
+            response.setContentLength(-1);
+            fields.putLongField(HttpHeader.CONTENT_LENGTH, cached.remaining());
+            _state.set(GZState.FINISHED);
+            _interceptor.write(cached, true, callback);
+        }
+        else
+        {
+            // The rest of the content will be discarded.
+            response.setContentLength(-1);
+            _state.set(GZState.CACHED);
+            _interceptor.write(cached, false, callback);
+        }
+    }
+
+    private void cacheContent(ByteBuffer compressed, long contentLength)
+    {
+        _cacheContent.write(compressed.array(), compressed.arrayOffset() + compressed.position(), compressed.remaining());
+        if (_cacheContent.getCount() > _factory.getContentCache().getMaxEntrySize())
+        {
+            // Too large to be cached.
+            _cacheContent = null;
+        }
+        else if (contentLength >= 0)
+        {
+            // Only cache the compressed content if it is smaller than the content,
+            // as the cached content may be sent with a Content-Length header.
+            if (_cacheContent.getCount() < contentLength)
+                _factory.getContentCache().put(_cacheKey, ByteBuffer.wrap(_cacheContent.getBuf(), 0, _cacheContent.getCount()));
+            _cacheContent = null;
+        }
+    }
+
     private String etagGzip(String etag)
     {
         return GZIP.etag(etag);
@@ -369,15 +504,21 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
             }
 
             // If we have finished deflation and there is room for the trailer.
+            long contentLength = -1;
             if (deflater.finished() && BufferUtil.space(_buffer) >= 8)
             {
                 // add the trailer and recycle the deflator to flag that we will have had completeSuccess when
                 // the write below completes.
                 addTrailer();
+                contentLength = deflater.getBytesRead();
                 _deflaterEntry.release();
                 _deflaterEntry = null;
             }
 
+            // copy the compressed buffer to the cache before it is written and reused.
+            if (_cacheContent != null)
+                cacheContent(_buffer, contentLength);
+
             // write the compressed buffer.
             _interceptor.write(_buffer, _deflaterEntry == null, this);
             return Action.SCHEDULED;
@@ -396,4 +537,90 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
                 _deflaterEntry != null && _deflaterEntry.get().finished() ? "(finished)" : "");
         }
     }
+
+    private class EncoderBufferCB extends IteratingNestedCallback
+    {
+        private final ByteBuffer _content;
+        private final boolean _last;
+        private boolean _flushed;
+
+        public EncoderBufferCB(ByteBuffer content, boolean complete, Callback callback)
+        {
+            super(callback);
+            _content = content;
+            _last = complete;
+        }
+
+        @Override
+        protected void onCompleteFailure(Throwable x)
+        {
+            if (_encoderEntry != null)
+            {
+                _encoderEntry.release();
+                _encoderEntry = null;
+            }
+            super.onCompleteFailure(x);
+        }
+
+        @Override
+        protected Action process() throws Exception
+        {
+            // If we have no encoder, then the end of the compressed
+            // content has been written, so cleanup and succeed.
+            if (_encoderEntry == null)
+            {
+                if (_buffer != null)
+                {
+                    _channel.getByteBufferPool().release(_buffer);
+                    _buffer = null;
+                }
+                return Action.SUCCEEDED;
+            }
+
+            if (_buffer == null)
+                _buffer = _channel.getByteBufferPool().acquire(_bufferSize, false);
+            else
+                BufferUtil.clear(_buffer);
+
+            Compression.Encoder encoder = _encoderEntry.get();
+            if (_content.hasRemaining())
+                encoder.encode(_content, _buffer);
+
+            boolean finished = false;
+            if (!_content.hasRemaining())
+            {
+                if (_last)
+                    finished = encoder.finish(_buffer);
+                else if (_syncFlush && !_flushed)
+                    _flushed = encoder.flush(_buffer);
+            }
+
+            if (finished)
+            {
+                // Release the encoder to flag that we will have
+                // had completeSuccess when the write below completes.
+                _encoderEntry.release();
+                _encoderEntry = null;
+            }
+            else if (BufferUtil.isEmpty(_buffer) && !_content.hasRemaining())
+            {
+                // All the content has been consumed by the encoder.
+                return Action.SUCCEEDED;
+            }
+
+            _interceptor.write(_buffer, finished, this);
+            return Action.SCHEDULED;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s[content=%s last=%b buffer=%s encoder=%s]",
+                super.toString(),
+                BufferUtil.toDetailString(_content),
+                _last,
+                BufferUtil.toDetailString(_buffer),
+                _encoderEntry);
+        }
+    }
 }
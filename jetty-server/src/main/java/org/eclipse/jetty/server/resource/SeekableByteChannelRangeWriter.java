@@ -16,8 +16,11 @@ package org.eclipse.jetty.server.resource;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
 
+import org.eclipse.jetty.server.HttpChannel;
+import org.eclipse.jetty.server.HttpOutput;
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.IO;
 
@@ -62,6 +65,15 @@ public class SeekableByteChannelRangeWriter implements RangeWriter
     @Override
     public void writeTo(OutputStream outputStream, long skipTo, long length) throws IOException
     {
+        open();
+
+        // send file content directly to the HttpOutput, possibly without copy
+        if (channel instanceof FileChannel && isFileTransfer(outputStream))
+        {
+            ((HttpOutput)outputStream).sendContent((FileChannel)channel, skipTo, length);
+            return;
+        }
+
         skipTo(skipTo);
 
         // copy from channel to output stream
@@ -79,13 +91,29 @@ public class SeekableByteChannelRangeWriter implements RangeWriter
         }
     }
 
-    private void skipTo(long skipTo) throws IOException
+    private void open() throws IOException
     {
         if (channel == null)
         {
             channel = channelSupplier.newSeekableByteChannel();
             pos = 0;
         }
+    }
+
+    private boolean isFileTransfer(OutputStream outputStream)
+    {
+        if (!(outputStream instanceof HttpOutput))
+            return false;
+        HttpOutput httpOutput = (HttpOutput)outputStream;
+        HttpChannel httpChannel = httpOutput.getHttpChannel();
+        return httpChannel.getHttpConfiguration().isUseOutputFileTransfer() &&
+            !httpOutput.isWritten() &&
+            !httpChannel.isCommitted();
+    }
+
+    private void skipTo(long skipTo) throws IOException
+    {
+        open();
 
         if (defaultSeekMode)
         {
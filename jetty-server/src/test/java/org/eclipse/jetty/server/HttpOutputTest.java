@@ -18,13 +18,17 @@ import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
+import java.net.Socket;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
 import javax.servlet.WriteListener;
@@ -32,6 +36,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.io.NetworkTrafficListener;
 import org.eclipse.jetty.server.HttpOutput.Interceptor;
 import org.eclipse.jetty.server.LocalConnector.LocalEndPoint;
 import org.eclipse.jetty.server.handler.AbstractHandler;
@@ -39,6 +44,7 @@ import org.eclipse.jetty.server.handler.HotSwapHandler;
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.FuturePromise;
+import org.eclipse.jetty.util.IO;
 import org.eclipse.jetty.util.resource.Resource;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.AfterEach;
@@ -216,6 +222,85 @@ public class HttpOutputTest
         assertThat(response, endsWith(toUTF8String(big)));
     }
 
+    @Test
+    public void testSendFileChannelRange() throws Exception
+    {
+        Resource big = Resource.newClassPathResource("simple/big.txt");
+        String content = toUTF8String(big);
+        try (FileChannel file = FileChannel.open(big.getFile().toPath(), StandardOpenOption.READ))
+        {
+            FileChannelHandler handler = new FileChannelHandler(file, 100, content.length() - 200);
+            _swap.setHandler(handler);
+            handler.start();
+            String response = _connector.getResponse("GET / HTTP/1.0\nHost: localhost:80\n\n");
+            assertThat(response, containsString("HTTP/1.1 200 OK"));
+            assertThat(response, containsString("Content-Length: " + (content.length() - 200)));
+            assertThat(response, endsWith(content.substring(100, content.length() - 100)));
+            assertTrue(file.isOpen());
+        }
+    }
+
+    @Test
+    public void testSendFileChannelTransfer() throws Exception
+    {
+        HttpConfiguration config = new HttpConfiguration();
+        config.setUseOutputFileTransfer(true);
+        ServerConnector connector = new ServerConnector(_server, new HttpConnectionFactory(config));
+        _server.addConnector(connector);
+        connector.start();
+
+        Resource big = Resource.newClassPathResource("simple/big.txt");
+        String content = toUTF8String(big);
+        try (FileChannel file = FileChannel.open(big.getFile().toPath(), StandardOpenOption.READ);
+             Socket socket = new Socket("localhost", connector.getLocalPort()))
+        {
+            FileChannelHandler handler = new FileChannelHandler(file, 100, content.length() - 200);
+            _swap.setHandler(handler);
+            handler.start();
+            socket.getOutputStream().write("GET / HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+            String response = IO.toString(socket.getInputStream(), StandardCharsets.UTF_8);
+            assertThat(response, containsString("HTTP/1.1 200 OK"));
+            assertThat(response, containsString("Content-Length: " + (content.length() - 200)));
+            assertThat(response, endsWith(content.substring(100, content.length() - 100)));
+        }
+    }
+
+    @Test
+    public void testSendFileChannelTransferNetworkTraffic() throws Exception
+    {
+        HttpConfiguration config = new HttpConfiguration();
+        config.setUseOutputFileTransfer(true);
+        NetworkTrafficServerConnector connector = new NetworkTrafficServerConnector(_server, new HttpConnectionFactory(config));
+        AtomicLong outgoing = new AtomicLong();
+        connector.setNetworkTrafficListener(new NetworkTrafficListener()
+        {
+            @Override
+            public void outgoing(Socket socket, ByteBuffer bytes)
+            {
+                outgoing.addAndGet(bytes.remaining());
+            }
+        });
+        _server.addConnector(connector);
+        connector.start();
+
+        Resource big = Resource.newClassPathResource("simple/big.txt");
+        String content = toUTF8String(big);
+        try (FileChannel file = FileChannel.open(big.getFile().toPath(), StandardOpenOption.READ);
+             Socket socket = new Socket("localhost", connector.getLocalPort()))
+        {
+            FileChannelHandler handler = new FileChannelHandler(file, 100, content.length() - 200);
+            _swap.setHandler(handler);
+            handler.start();
+            socket.getOutputStream().write("GET / HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+            String response = IO.toString(socket.getInputStream(), StandardCharsets.UTF_8);
+            assertThat(response, containsString("HTTP/1.1 200 OK"));
+            assertThat(response, containsString("Content-Length: " + (content.length() - 200)));
+            assertThat(response, endsWith(content.substring(100, content.length() - 100)));
+            // The content is not transferred, so that the listener is notified of all the bytes.
+            assertThat(outgoing.get(), is((long)response.getBytes(StandardCharsets.UTF_8).length));
+        }
+    }
+
     @Test
     public void testSendBigDirect() throws Exception
     {
@@ -1192,6 +1277,29 @@ public class HttpOutputTest
         void setNext(Interceptor interceptor);
     }
 
+    static class FileChannelHandler extends AbstractHandler
+    {
+        private final FileChannel _file;
+        private final long _position;
+        private final long _length;
+
+        FileChannelHandler(FileChannel file, long position, long length)
+        {
+            _file = file;
+            _position = position;
+            _length = length;
+        }
+
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+        {
+            baseRequest.setHandled(true);
+            response.setContentType("text/plain");
+            response.setContentLengthLong(_length);
+            ((HttpOutput)response.getOutputStream()).sendContent(_file, _position, _length);
+        }
+    }
+
     static class ContentHandler extends AbstractHandler
     {
         AtomicInteger _owp = new AtomicInteger();
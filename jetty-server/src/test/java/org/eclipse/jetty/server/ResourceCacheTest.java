@@ -41,6 +41,7 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -342,6 +343,49 @@ public class ResourceCacheTest
         cache.flushCache();
     }
 
+    @Test
+    public void testFrequentlyUsedSurviveScan() throws Exception
+    {
+        Path basePath = workDir.getEmptyPathDir();
+        for (int i = 0; i < 10; i++)
+        {
+            makeFile(basePath.resolve("F-" + i + ".txt"), "file " + i);
+        }
+
+        CachedContentFactory cache = new CachedContentFactory(null, new PathResource(basePath), new MimeTypes(), false, false, CompressedContentFormat.NONE);
+        cache.setMaxCachedFiles(5);
+
+        // Load and access the first two files again, so that they are protected.
+        HttpContent f0 = cache.getContent("F-0.txt", 4096);
+        HttpContent f1 = cache.getContent("F-1.txt", 4096);
+        assertThat(cache.getContent("F-0.txt", 4096), sameInstance(f0));
+        assertThat(cache.getContent("F-1.txt", 4096), sameInstance(f1));
+        assertEquals(2, cache.getCacheHits());
+        assertEquals(2, cache.getCacheMisses());
+
+        // Scan the other files only once.
+        for (int i = 2; i < 10; i++)
+        {
+            assertThat(cache.getContent("F-" + i + ".txt", 4096), is(not(nullValue())));
+        }
+        assertEquals(5, cache.getCachedFiles());
+        assertEquals(5, cache.getCacheEvictions());
+
+        // The frequently used files have not been evicted by the scan.
+        assertThat(cache.getContent("F-0.txt", 4096), sameInstance(f0));
+        assertThat(cache.getContent("F-1.txt", 4096), sameInstance(f1));
+        assertEquals(4, cache.getCacheHits());
+
+        // The least recently used scanned files have been evicted.
+        assertThat(cache.getContent("F-2.txt", 4096), is(not(nullValue())));
+        assertEquals(11, cache.getCacheMisses());
+        assertEquals(6, cache.getCacheEvictions());
+        assertEquals(5, cache.getCachedFiles());
+
+        cache.flushCache();
+        assertEquals(0, cache.getCachedFiles());
+    }
+
     @Test
     public void testNoextension() throws Exception
     {
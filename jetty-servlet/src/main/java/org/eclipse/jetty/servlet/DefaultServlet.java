@@ -260,6 +260,7 @@ public class DefaultServlet extends HttpServlet implements ResourceFactory, Welc
                 if (maxCachedFiles >= -1)
                     _cache.setMaxCachedFiles(maxCachedFiles);
                 _servletContext.setAttribute(resourceCache == null ? "resourceCache" : resourceCache, _cache);
+                _contextHandler.addBean(_cache);
             }
         }
         catch (Exception e)
@@ -476,7 +477,10 @@ public class DefaultServlet extends HttpServlet implements ResourceFactory, Welc
     public void destroy()
     {
         if (_cache != null)
+        {
             _cache.flushCache();
+            _contextHandler.removeBean(_cache);
+        }
         super.destroy();
     }
 
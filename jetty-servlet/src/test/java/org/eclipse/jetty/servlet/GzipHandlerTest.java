@@ -24,6 +24,7 @@ import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.Enumeration;
 import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 import java.util.zip.GZIPOutputStream;
 import javax.servlet.AsyncContext;
 import javax.servlet.DispatcherType;
@@ -44,6 +45,8 @@ import org.eclipse.jetty.http.HttpTester;
 import org.eclipse.jetty.server.HttpOutput;
 import org.eclipse.jetty.server.LocalConnector;
 import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.gzip.DeflateCompression;
+import org.eclipse.jetty.server.handler.gzip.GzipContentCache;
 import org.eclipse.jetty.server.handler.gzip.GzipHandler;
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.IO;
@@ -581,6 +584,86 @@ public class GzipHandlerTest
         assertThat(response.get("ETag"), is(__contentETag));
     }
 
+    @Test
+    public void testContentCache() throws Exception
+    {
+        _server.stop();
+        GzipContentCache cache = new GzipContentCache();
+        gzipHandler.setContentCache(cache);
+        _server.start();
+
+        HttpTester.Request request = HttpTester.newRequest();
+        request.setMethod("GET");
+        request.setURI("/ctx/content");
+        request.setVersion("HTTP/1.0");
+        request.setHeader("Host", "tester");
+        request.setHeader("accept-encoding", "gzip");
+
+        // The first response is compressed and cached.
+        HttpTester.Response response = HttpTester.parseResponse(_connector.getResponse(request.generate()));
+        assertThat(response.getStatus(), is(200));
+        assertThat(response.get("Content-Encoding"), Matchers.equalToIgnoringCase("gzip"));
+        assertThat(response.get("ETag"), is(__contentETagGzip));
+        byte[] compressed = response.getContentBytes();
+        assertEquals(__content, IO.toString(new GZIPInputStream(new ByteArrayInputStream(compressed)), StandardCharsets.UTF_8));
+        assertEquals(1, cache.getEntries());
+        assertEquals(0, cache.getHits());
+
+        // The second response is served from the cache.
+        response = HttpTester.parseResponse(_connector.getResponse(request.generate()));
+        assertThat(response.getStatus(), is(200));
+        assertThat(response.get("Content-Encoding"), Matchers.equalToIgnoringCase("gzip"));
+        assertThat(response.get("ETag"), is(__contentETagGzip));
+        assertThat(response.getCSV("Vary", false), contains("Accept-Encoding"));
+        assertThat(response.getLongField("Content-Length"), is((long)compressed.length));
+        assertThat(response.getContentBytes(), is(compressed));
+        assertEquals(1, cache.getHits());
+
+        // Responses that vary on other headers are not cached.
+        request.setURI("/ctx/content?vary=Other");
+        response = HttpTester.parseResponse(_connector.getResponse(request.generate()));
+        assertThat(response.getStatus(), is(200));
+        assertThat(response.get("Content-Encoding"), Matchers.equalToIgnoringCase("gzip"));
+        assertEquals(1, cache.getEntries());
+    }
+
+    @Test
+    public void testCompressionNegotiation() throws Exception
+    {
+        _server.stop();
+        gzipHandler.addCompression(new DeflateCompression());
+        _server.start();
+
+        HttpTester.Request request = HttpTester.newRequest();
+        request.setMethod("GET");
+        request.setURI("/ctx/content");
+        request.setVersion("HTTP/1.0");
+        request.setHeader("Host", "tester");
+
+        // With equal quality, the added compression is preferred over gzip.
+        request.setHeader("accept-encoding", "gzip, deflate");
+        HttpTester.Response response = HttpTester.parseResponse(_connector.getResponse(request.generate()));
+        assertThat(response.getStatus(), is(200));
+        assertThat(response.get("Content-Encoding"), Matchers.equalToIgnoringCase("deflate"));
+        assertThat(response.get("ETag"), is(DeflateCompression.DEFLATE.etag(__contentETag)));
+        assertThat(response.getCSV("Vary", false), contains("Accept-Encoding"));
+        assertEquals(__content, IO.toString(new InflaterInputStream(new ByteArrayInputStream(response.getContentBytes())), StandardCharsets.UTF_8));
+
+        // Quality values are honored.
+        request.setHeader("accept-encoding", "deflate;q=0.5, gzip");
+        response = HttpTester.parseResponse(_connector.getResponse(request.generate()));
+        assertThat(response.getStatus(), is(200));
+        assertThat(response.get("Content-Encoding"), Matchers.equalToIgnoringCase("gzip"));
+        assertEquals(__content, IO.toString(new GZIPInputStream(new ByteArrayInputStream(response.getContentBytes())), StandardCharsets.UTF_8));
+
+        // Compressed ETags are recognized in conditional requests.
+        request.setHeader("accept-encoding", "deflate");
+        request.setHeader("If-None-Match", DeflateCompression.DEFLATE.etag(__contentETag));
+        response = HttpTester.parseResponse(_connector.getResponse(request.generate()));
+        assertThat(response.getStatus(), is(304));
+        assertThat(response.get("ETag"), is(DeflateCompression.DEFLATE.etag(__contentETag)));
+    }
+
     @Test
     public void testETagGzipHandler() throws Exception
     {
@@ -460,6 +460,22 @@ public class Pool<T> implements AutoCloseable, Dumpable
         return entry.enable(value, true) ? entry : null;
     }
 
+    /**
+     * <p>Acquires the given entry, if it is available.</p>
+     * <p>This method allows to implement selection policies that are not
+     * expressible with a {@link StrategyType}, by inspecting the entries
+     * returned by {@link #values()} and then acquiring the chosen one.</p>
+     *
+     * @param entry the entry to acquire
+     * @return whether the entry was acquired
+     */
+    public boolean acquire(Entry entry)
+    {
+        if (closed)
+            return false;
+        return entry.tryAcquire();
+    }
+
     /**
      * <p>Releases an {@link #acquire() acquired} entry to the pool.</p>
      * <p>Entries that are acquired from the pool but never released
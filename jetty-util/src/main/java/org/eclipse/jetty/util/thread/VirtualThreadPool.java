@@ -0,0 +1,477 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.util.thread;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.component.ContainerLifeCycle;
+import org.eclipse.jetty.util.component.DumpableCollection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>A {@link ThreadPool.SizedThreadPool} that runs each task on a new JDK virtual thread.</p>
+ * <p>Virtual threads are cheap to create and to block, so this pool does not keep idle
+ * threads: a thread is started for each task and terminates when no more queued tasks
+ * are available.
+ * The {@link #getMaxThreads() max threads} limits the number of tasks that may run
+ * concurrently; tasks submitted when the limit is reached are queued and run by the
+ * next thread that completes its task.</p>
+ * <p>Because a thread can always be started immediately while below the limit, this
+ * pool is also a {@link TryExecutor} and does not need a {@link ReservedThreadExecutor},
+ * so that {@link org.eclipse.jetty.util.thread.strategy.AdaptiveExecutionStrategy}
+ * can hand off tasks directly to a new virtual thread.
+ * Threads leased via the {@link ThreadPoolBudget} are accounted against the max threads
+ * exactly as for other sized thread pools.</p>
+ * <p>Virtual threads are only available from Java 21 (or earlier releases with preview
+ * features enabled); they are looked up reflectively and, if the runtime does not support
+ * them, this pool falls back to starting a platform thread for each task.</p>
+ *
+ * @see #isVirtualThreadsSupported()
+ */
+@ManagedObject("A thread pool of virtual threads")
+public class VirtualThreadPool extends ContainerLifeCycle implements ThreadPool.SizedThreadPool, TryExecutor
+{
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualThreadPool.class);
+    private static final Method OF_VIRTUAL = ofVirtualMethod();
+
+    private final AtomicInteger _threads = new AtomicInteger();
+    private final Set<Thread> _running = ConcurrentHashMap.newKeySet();
+    private final Queue<Runnable> _jobs = new ConcurrentLinkedQueue<>();
+    private final AutoLock.WithCondition _joinLock = new AutoLock.WithCondition();
+    private final ThreadPoolBudget _budget;
+    private String _name = "vtp" + hashCode();
+    private int _minThreads;
+    private int _maxThreads;
+    private boolean _detailedDump;
+    private long _stopTimeout = 5000;
+    private ThreadFactory _threadFactory;
+
+    public VirtualThreadPool()
+    {
+        this(10_000);
+    }
+
+    public VirtualThreadPool(int maxThreads)
+    {
+        if (maxThreads <= 0)
+            throw new IllegalArgumentException("max threads (" + maxThreads + ") must be positive");
+        _maxThreads = maxThreads;
+        _budget = new ThreadPoolBudget(this);
+    }
+
+    /**
+     * @return whether the runtime supports virtual threads
+     */
+    public static boolean isVirtualThreadsSupported()
+    {
+        return OF_VIRTUAL != null;
+    }
+
+    private static Method ofVirtualMethod()
+    {
+        try
+        {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            // Preview API in Java 19/20 throws UnsupportedOperationException if preview features are not enabled.
+            ofVirtual.invoke(null);
+            return ofVirtual;
+        }
+        catch (Throwable x)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Virtual threads not supported", x);
+            return null;
+        }
+    }
+
+    private static ThreadFactory newVirtualThreadFactory(String name) throws Exception
+    {
+        Object builder = OF_VIRTUAL.invoke(null);
+        Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+        builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + "-", 0L);
+        return (ThreadFactory)builderClass.getMethod("factory").invoke(builder);
+    }
+
+    /**
+     * @return the name of the this thread pool
+     */
+    @ManagedAttribute("name of this thread pool")
+    public String getName()
+    {
+        return _name;
+    }
+
+    /**
+     * @param name the name of this thread pool, used to name threads
+     */
+    public void setName(String name)
+    {
+        if (isRunning())
+            throw new IllegalStateException(getState());
+        _name = name;
+    }
+
+    /**
+     * <p>Virtual threads are not pooled, so the minimum number of threads
+     * is only recorded for configuration compatibility.</p>
+     *
+     * @return the minimum number of threads
+     */
+    @Override
+    @ManagedAttribute("minimum number of threads in the pool")
+    public int getMinThreads()
+    {
+        return _minThreads;
+    }
+
+    @Override
+    public void setMinThreads(int threads)
+    {
+        _minThreads = threads;
+    }
+
+    /**
+     * @return the maximum number of tasks that may run concurrently
+     */
+    @Override
+    @ManagedAttribute("maximum number of concurrent threads")
+    public int getMaxThreads()
+    {
+        return _maxThreads;
+    }
+
+    @Override
+    public void setMaxThreads(int threads)
+    {
+        if (threads <= 0)
+            throw new IllegalArgumentException("max threads (" + threads + ") must be positive");
+        if (_budget != null)
+            _budget.check(threads);
+        _maxThreads = threads;
+    }
+
+    public void setStopTimeout(long stopTimeout)
+    {
+        _stopTimeout = stopTimeout;
+    }
+
+    public long getStopTimeout()
+    {
+        return _stopTimeout;
+    }
+
+    @ManagedAttribute("reports additional details in the dump")
+    public boolean isDetailedDump()
+    {
+        return _detailedDump;
+    }
+
+    public void setDetailedDump(boolean detailedDump)
+    {
+        _detailedDump = detailedDump;
+    }
+
+    /**
+     * @return whether this pool runs tasks on virtual threads, or falls back to platform threads
+     */
+    @ManagedAttribute("whether tasks are run by virtual threads")
+    public boolean isVirtual()
+    {
+        return isVirtualThreadsSupported();
+    }
+
+    @Override
+    @ManagedAttribute("number of threads running tasks")
+    public int getThreads()
+    {
+        return Math.max(0, _threads.get());
+    }
+
+    /**
+     * @return always 0, as virtual threads are never idle in the pool
+     */
+    @Override
+    @ManagedAttribute("number of idle threads in the pool")
+    public int getIdleThreads()
+    {
+        return 0;
+    }
+
+    @ManagedAttribute("size of the job queue")
+    public int getQueueSize()
+    {
+        return _jobs.size();
+    }
+
+    @Override
+    @ManagedAttribute(value = "thread pool is low on threads", readonly = true)
+    public boolean isLowOnThreads()
+    {
+        return getMaxThreads() - getThreads() - getQueueSize() <= 0;
+    }
+
+    @Override
+    public ThreadPoolBudget getThreadPoolBudget()
+    {
+        return _budget;
+    }
+
+    @Override
+    protected void doStart() throws Exception
+    {
+        if (isVirtualThreadsSupported())
+        {
+            _threadFactory = newVirtualThreadFactory(getName());
+        }
+        else
+        {
+            LOG.warn("Virtual threads are not supported by Java {}, using platform threads for {}", System.getProperty("java.version"), this);
+            AtomicInteger ids = new AtomicInteger();
+            _threadFactory = task ->
+            {
+                Thread thread = new Thread(task, getName() + "-" + ids.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+        super.doStart();
+    }
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        super.doStop();
+
+        long timeout = getStopTimeout();
+        if (timeout > 0)
+        {
+            long stopBy = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+            for (Thread thread : _running)
+            {
+                long canWait = TimeUnit.NANOSECONDS.toMillis(stopBy - System.nanoTime());
+                if (canWait > 0)
+                    thread.join(canWait);
+            }
+        }
+
+        for (Thread thread : _running)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Interrupting {}", thread);
+            thread.interrupt();
+        }
+
+        // Close any un-executed jobs.
+        Runnable job;
+        while ((job = _jobs.poll()) != null)
+        {
+            if (job instanceof Closeable)
+            {
+                try
+                {
+                    ((Closeable)job).close();
+                }
+                catch (Throwable x)
+                {
+                    LOG.warn("Unable to close job: {}", job, x);
+                }
+            }
+            else
+            {
+                LOG.warn("Stopped without executing or closing {}", job);
+            }
+        }
+
+        _budget.reset();
+
+        try (AutoLock.WithCondition l = _joinLock.lock())
+        {
+            l.signalAll();
+        }
+    }
+
+    @Override
+    public void join() throws InterruptedException
+    {
+        try (AutoLock.WithCondition l = _joinLock.lock())
+        {
+            while (isRunning() || isStopping())
+            {
+                l.await();
+            }
+        }
+    }
+
+    @Override
+    public void execute(Runnable task)
+    {
+        if (!isRunning())
+            throw new RejectedExecutionException(toString());
+        if (startThread(task))
+            return;
+        _jobs.offer(task);
+        // A thread may have completed between the failed start and the offer,
+        // so try again to start a thread to run the queued task.
+        startThread(null);
+    }
+
+    @Override
+    public boolean tryExecute(Runnable task)
+    {
+        return isRunning() && startThread(task);
+    }
+
+    private boolean startThread(Runnable task)
+    {
+        while (true)
+        {
+            int threads = _threads.get();
+            if (threads >= getMaxThreads())
+                return false;
+            if (_threads.compareAndSet(threads, threads + 1))
+                break;
+        }
+
+        try
+        {
+            Thread thread = _threadFactory.newThread(() -> runJobs(task));
+            if (LOG.isDebugEnabled())
+                LOG.debug("Starting {} for {}", thread, task);
+            thread.start();
+            return true;
+        }
+        catch (Throwable x)
+        {
+            _threads.decrementAndGet();
+            throw x;
+        }
+    }
+
+    private void runJobs(Runnable task)
+    {
+        Thread thread = Thread.currentThread();
+        _running.add(thread);
+        try
+        {
+            Runnable job = task;
+            while (true)
+            {
+                if (job == null)
+                    job = _jobs.poll();
+
+                if (job == null)
+                {
+                    // No more jobs, give back the thread, unless a job
+                    // was queued while we were giving it back.
+                    _threads.decrementAndGet();
+                    if (_jobs.isEmpty() || !reacquireThread())
+                        return;
+                    continue;
+                }
+
+                runJob(job);
+                job = null;
+            }
+        }
+        finally
+        {
+            _running.remove(thread);
+        }
+    }
+
+    private boolean reacquireThread()
+    {
+        while (true)
+        {
+            int threads = _threads.get();
+            if (threads >= getMaxThreads())
+                return false;
+            if (_threads.compareAndSet(threads, threads + 1))
+                return true;
+        }
+    }
+
+    /**
+     * <p>Runs the given job in the current thread.</p>
+     * <p>Subclasses may override to perform pre/post actions before/after the job is run.</p>
+     *
+     * @param job the job to run
+     */
+    protected void runJob(Runnable job)
+    {
+        try
+        {
+            job.run();
+        }
+        catch (Throwable x)
+        {
+            LOG.warn("Job failed", x);
+        }
+        finally
+        {
+            // Clear any interrupted status.
+            Thread.interrupted();
+        }
+    }
+
+    @Override
+    public void dump(Appendable out, String indent) throws IOException
+    {
+        List<Object> threads = new ArrayList<>();
+        for (Thread thread : _running)
+        {
+            StackTraceElement[] frames = thread.getStackTrace();
+            String info = thread.getName() + " " + thread.getState();
+            if (isDetailedDump())
+                threads.add(new DumpableCollection(info, List.of(frames)));
+            else
+                threads.add(info + " @ " + (frames.length > 0 ? String.valueOf(frames[0]) : "<no_stack_frames>"));
+        }
+
+        List<Runnable> jobs = Collections.emptyList();
+        if (isDetailedDump())
+            jobs = new ArrayList<>(_jobs);
+        dumpObjects(out, indent, new DumpableCollection("threads", threads), new DumpableCollection("jobs", jobs));
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s[%s]@%x{%s,%d<=%d,q=%d,virtual=%b}",
+            getClass().getSimpleName(),
+            getName(),
+            hashCode(),
+            getState(),
+            getThreads(),
+            getMaxThreads(),
+            getQueueSize(),
+            isVirtual());
+    }
+}
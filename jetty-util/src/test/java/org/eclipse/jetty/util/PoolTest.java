@@ -120,6 +120,31 @@ public class PoolTest
         assertThrows(IllegalStateException.class, () -> pool.release(e2));
     }
 
+    @ParameterizedTest
+    @MethodSource(value = "strategy")
+    public void testAcquireEntry(Factory factory)
+    {
+        Pool<CloseableHolder> pool = factory.getPool(2);
+        pool.reserve().enable(new CloseableHolder("aaa"), false);
+        pool.reserve().enable(new CloseableHolder("bbb"), false);
+
+        Pool<CloseableHolder>.Entry entry = pool.values().stream()
+            .filter(e -> e.getPooled().value.equals("bbb"))
+            .findFirst()
+            .orElseThrow();
+        assertThat(pool.acquire(entry), is(true));
+        assertThat(pool.getInUseCount(), is(1));
+        assertThat(pool.acquire(entry), is(false));
+
+        Pool<CloseableHolder>.Entry other = pool.acquire();
+        assertThat(other.getPooled().value, equalTo("aaa"));
+
+        entry.release();
+        other.release();
+        pool.close();
+        assertThat(pool.acquire(entry), is(false));
+    }
+
     @ParameterizedTest
     @MethodSource(value = "strategy")
     public void testRemoveBeforeRelease(Factory factory)
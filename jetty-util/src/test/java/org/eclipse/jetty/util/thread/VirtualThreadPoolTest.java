@@ -0,0 +1,101 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.util.thread;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.util.thread.ThreadPool.SizedThreadPool;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class VirtualThreadPoolTest extends AbstractThreadPoolTest
+{
+    @Override
+    protected SizedThreadPool newPool(int max)
+    {
+        return new VirtualThreadPool(max);
+    }
+
+    @Test
+    public void testExecuteQueuesWhenMaxThreadsReached() throws Exception
+    {
+        VirtualThreadPool pool = new VirtualThreadPool(2);
+        pool.start();
+        try
+        {
+            CountDownLatch block = new CountDownLatch(1);
+            CountDownLatch done = new CountDownLatch(4);
+            Runnable job = () ->
+            {
+                try
+                {
+                    block.await();
+                    done.countDown();
+                }
+                catch (InterruptedException x)
+                {
+                    throw new RuntimeException(x);
+                }
+            };
+
+            assertTrue(pool.tryExecute(job));
+            pool.execute(job);
+            assertThat(pool.getThreads(), is(2));
+            assertTrue(pool.isLowOnThreads());
+
+            // No more threads available, tasks are queued.
+            assertFalse(pool.tryExecute(job));
+            pool.execute(job);
+            pool.execute(job);
+            assertThat(pool.getQueueSize(), is(2));
+
+            block.countDown();
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        }
+        finally
+        {
+            pool.stop();
+        }
+    }
+
+    @Test
+    public void testThreadsTerminateWhenIdle() throws Exception
+    {
+        VirtualThreadPool pool = new VirtualThreadPool(4);
+        pool.start();
+        try
+        {
+            CountDownLatch latch = new CountDownLatch(1);
+            pool.execute(latch::countDown);
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+            long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (pool.getThreads() > 0 && System.nanoTime() < end)
+            {
+                Thread.sleep(10);
+            }
+            assertThat(pool.getThreads(), is(0));
+            assertFalse(pool.isLowOnThreads());
+        }
+        finally
+        {
+            pool.stop();
+        }
+    }
+}
@@ -0,0 +1,217 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.http.jmh;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpGenerator;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpHeaderValue;
+import org.eclipse.jetty.http.HttpURI;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http.MetaData;
+import org.eclipse.jetty.http.PreEncodedHttpField;
+import org.eclipse.jetty.util.BufferUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <p>Measures the time and, with the GC profiler, the allocation needed to generate
+ * a message with {@link HttpGenerator}, for a corpus of realistic responses and requests.</p>
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HttpGeneratorBenchmark
+{
+    private static final PreEncodedHttpField SERVER = new PreEncodedHttpField(HttpHeader.SERVER, "Jetty(10.0)");
+    private static final PreEncodedHttpField CONTENT_TYPE_JSON = new PreEncodedHttpField(HttpHeader.CONTENT_TYPE, "application/json");
+
+    @Param({"MINIMAL", "BROWSER", "API", "CHUNKED"})
+    public String corpus;
+
+    private final HttpGenerator generator = new HttpGenerator();
+    private final ByteBuffer header = BufferUtil.allocate(8 * 1024);
+    private final ByteBuffer chunk = BufferUtil.allocate(HttpGenerator.CHUNK_SIZE);
+    private final ByteBuffer trailer = BufferUtil.allocate(1024);
+    private MetaData.Response response;
+    private ByteBuffer[] contents;
+    private MetaData.Request request;
+    private ByteBuffer requestContent;
+
+    @Setup(Level.Trial)
+    public void setupTrial()
+    {
+        HttpFields.Mutable fields = HttpFields.build();
+        fields.add(SERVER);
+        fields.add(HttpHeader.DATE, "Mon, 17 Oct 2022 10:00:00 GMT");
+        long contentLength;
+        switch (corpus)
+        {
+            case "MINIMAL":
+                contents = new ByteBuffer[0];
+                contentLength = 0;
+                break;
+            case "BROWSER":
+                fields.add(HttpHeader.CONTENT_TYPE, "text/html;charset=utf-8");
+                fields.add(HttpHeader.CACHE_CONTROL, "no-cache");
+                fields.add(HttpHeader.VARY, HttpHeader.ACCEPT_ENCODING.asString());
+                fields.add(HttpHeader.LAST_MODIFIED, "Sun, 16 Oct 2022 08:00:00 GMT");
+                fields.add(HttpHeader.ETAG, "W/\"1a2b3c4d5e\"");
+                fields.add(HttpHeader.SET_COOKIE, "JSESSIONID=node01x4dyb6ydc8nh1u0pf3djh0g3z0.node0; Path=/; Secure; HttpOnly");
+                fields.add("Strict-Transport-Security", "max-age=31536000; includeSubDomains");
+                fields.add("X-Content-Type-Options", "nosniff");
+                fields.add("X-Frame-Options", "SAMEORIGIN");
+                fields.add("Content-Security-Policy", "default-src 'self'; img-src 'self' data:; script-src 'self'");
+                contents = new ByteBuffer[]{content(4096)};
+                contentLength = 4096;
+                break;
+            case "API":
+                fields.add(CONTENT_TYPE_JSON);
+                fields.add(HttpHeader.CACHE_CONTROL, "no-store");
+                fields.add("X-Request-Id", "5c3d9a1e-6f3b-4e8a-9d6c-2b1f7e4a8c90");
+                contents = new ByteBuffer[]{content(512)};
+                contentLength = 512;
+                break;
+            case "CHUNKED":
+                fields.add(CONTENT_TYPE_JSON);
+                fields.add(HttpHeader.CACHE_CONTROL, "no-store");
+                contents = new ByteBuffer[]{content(1024), content(1024), content(1024), content(512)};
+                contentLength = -1;
+                break;
+            default:
+                throw new IllegalArgumentException(corpus);
+        }
+        response = new MetaData.Response(HttpVersion.HTTP_1_1, 200, fields, contentLength);
+
+        HttpFields requestFields = HttpFields.build()
+            .add(HttpHeader.HOST, "api.example.com")
+            .add(HttpHeader.USER_AGENT, "Jetty/10.0")
+            .add(HttpHeader.ACCEPT_ENCODING, HttpHeaderValue.GZIP.asString())
+            .add(CONTENT_TYPE_JSON);
+        request = new MetaData.Request("POST", HttpURI.from("http://api.example.com/api/v1/orders?validate=true"), HttpVersion.HTTP_1_1, requestFields, 256);
+        requestContent = content(256);
+    }
+
+    private static ByteBuffer content(int length)
+    {
+        byte[] bytes = new byte[length];
+        Arrays.fill(bytes, (byte)'x');
+        return BufferUtil.toBuffer(bytes);
+    }
+
+    /**
+     * Generates one phase of a message, until the generator needs more content.
+     *
+     * @param info the message metadata
+     * @param content the content to generate
+     * @param last whether the content is the last content
+     * @return the number of bytes generated
+     */
+    private long generate(MetaData info, ByteBuffer content, boolean last) throws IOException
+    {
+        long bytes = 0;
+        ByteBuffer chunk = null;
+        while (true)
+        {
+            HttpGenerator.Result result = info instanceof MetaData.Request
+                ? generator.generateRequest((MetaData.Request)info, header, chunk, content, last)
+                : generator.generateResponse((MetaData.Response)info, false, header, chunk, content, last);
+            switch (result)
+            {
+                case NEED_CHUNK:
+                    chunk = this.chunk;
+                    break;
+                case NEED_CHUNK_TRAILER:
+                    chunk = trailer;
+                    break;
+                case FLUSH:
+                    // Simulate the write of the generated buffers.
+                    bytes += header.remaining() + BufferUtil.length(chunk) + BufferUtil.length(content);
+                    BufferUtil.clear(header);
+                    BufferUtil.clear(chunk);
+                    if (content != null)
+                        content.position(content.limit());
+                    break;
+                case CONTINUE:
+                case SHUTDOWN_OUT:
+                    break;
+                case DONE:
+                    return bytes;
+                default:
+                    throw new IllegalStateException(result.toString());
+            }
+        }
+    }
+
+    @Benchmark
+    public long testGenerateResponse() throws IOException
+    {
+        generator.reset();
+        long bytes = 0;
+        if (contents.length == 0)
+            return generate(response, null, true);
+        for (int i = 0; i < contents.length; ++i)
+        {
+            ByteBuffer content = contents[i];
+            content.position(0);
+            bytes += generate(response, content, i == contents.length - 1 && response.getContentLength() >= 0);
+        }
+        if (response.getContentLength() < 0)
+            bytes += generate(response, null, true);
+        return bytes;
+    }
+
+    @Benchmark
+    public long testGenerateRequest() throws IOException
+    {
+        generator.reset();
+        requestContent.position(0);
+        return generate(request, requestContent, true);
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+            .include(HttpGeneratorBenchmark.class.getSimpleName())
+            .warmupIterations(5)
+            .measurementIterations(5)
+            .addProfiler(GCProfiler.class)
+            .forks(1)
+            .threads(1)
+            .build();
+
+        new Runner(opt).run();
+    }
+}
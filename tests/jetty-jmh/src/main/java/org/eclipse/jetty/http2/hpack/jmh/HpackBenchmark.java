@@ -0,0 +1,137 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.http2.hpack.jmh;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http.MetaData;
+import org.eclipse.jetty.http.PreEncodedHttpField;
+import org.eclipse.jetty.http2.hpack.HpackDecoder;
+import org.eclipse.jetty.http2.hpack.HpackEncoder;
+import org.eclipse.jetty.http2.hpack.HpackException;
+import org.eclipse.jetty.util.BufferUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+public class HpackBenchmark
+{
+    private static final PreEncodedHttpField SERVER = new PreEncodedHttpField(HttpHeader.SERVER, "Jetty");
+
+    @Param({"0", "16"})
+    public int maxHeaderBlocks;
+
+    @Param({"false", "true"})
+    public boolean adaptiveIndexing;
+
+    private HpackEncoder encoder;
+    private HpackDecoder decoder;
+    private ByteBuffer buffer;
+    private ByteBuffer encoded;
+    private long requests;
+
+    @Setup(Level.Trial)
+    public void setupTrial() throws Exception
+    {
+        encoder = new HpackEncoder();
+        encoder.setMaxHeaderBlocks(maxHeaderBlocks);
+        encoder.setAdaptiveIndexing(adaptiveIndexing);
+        decoder = new HpackDecoder(4096, 8192);
+        buffer = BufferUtil.allocateDirect(16 * 1024);
+
+        // The first header block populates the dynamic table of the decoder.
+        HpackEncoder warmEncoder = new HpackEncoder();
+        decoder.decode(BufferUtil.toBuffer(BufferUtil.toArray(encode(warmEncoder, newResponse(0)))));
+        // The second header block only references the dynamic table, so it can be decoded repeatedly.
+        encoded = BufferUtil.toBuffer(BufferUtil.toArray(encode(warmEncoder, newResponse(0))));
+    }
+
+    private static MetaData.Response newResponse(long requestId)
+    {
+        // A typical API response: the same headers for every response,
+        // except for a request identifier that is never repeated.
+        HttpFields fields = HttpFields.build()
+            .add(SERVER)
+            .add(HttpHeader.DATE, "Mon, 17 Oct 2022 10:00:00 GMT")
+            .add(HttpHeader.CONTENT_TYPE, "application/json;charset=utf-8")
+            .add(HttpHeader.CACHE_CONTROL, "no-cache, no-store, must-revalidate")
+            .add(HttpHeader.VARY, "Accept-Encoding, Origin")
+            .add("Access-Control-Allow-Origin", "*")
+            .add("Strict-Transport-Security", "max-age=31536000; includeSubDomains")
+            .add(HttpHeader.X_FORWARDED_FOR, requestId < 0 ? "0" : Long.toString(requestId % 1024));
+        return new MetaData.Response(HttpVersion.HTTP_2, 200, fields, 512);
+    }
+
+    private ByteBuffer encode(HpackEncoder encoder, MetaData metaData) throws HpackException
+    {
+        BufferUtil.clearToFill(buffer);
+        encoder.encode(buffer, metaData);
+        BufferUtil.flipToFlush(buffer, 0);
+        return buffer;
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput})
+    public ByteBuffer testEncodeRepeatedResponse() throws HpackException
+    {
+        return encode(encoder, newResponse(-1));
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput})
+    public ByteBuffer testEncodeVaryingResponse() throws HpackException
+    {
+        return encode(encoder, newResponse(requests++));
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput})
+    public MetaData testDecodeResponse() throws HpackException
+    {
+        return decoder.decode(encoded.slice());
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+            .include(HpackBenchmark.class.getSimpleName())
+            .warmupIterations(5)
+            .measurementIterations(5)
+            .addProfiler(GCProfiler.class)
+            .forks(1)
+            .threads(1)
+            .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,258 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.http2.jmh;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpURI;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http.MetaData;
+import org.eclipse.jetty.http2.AdaptiveFlowControlStrategy;
+import org.eclipse.jetty.http2.BufferingFlowControlStrategy;
+import org.eclipse.jetty.http2.FlowControlStrategy;
+import org.eclipse.jetty.http2.api.Stream;
+import org.eclipse.jetty.http2.api.server.ServerSessionListener;
+import org.eclipse.jetty.http2.frames.DataFrame;
+import org.eclipse.jetty.http2.frames.HeadersFrame;
+import org.eclipse.jetty.http2.frames.PingFrame;
+import org.eclipse.jetty.http2.frames.SettingsFrame;
+import org.eclipse.jetty.http2.frames.WindowUpdateFrame;
+import org.eclipse.jetty.http2.generator.Generator;
+import org.eclipse.jetty.http2.parser.Parser;
+import org.eclipse.jetty.http2.server.HTTP2ServerSession;
+import org.eclipse.jetty.io.ByteArrayEndPoint;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <p>Measures the time to upload content to a server session over a simulated
+ * link with the given round trip time and unlimited bandwidth, so that the
+ * upload time only depends on how large the receive windows of the server are.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class FlowControlStrategyBenchmark
+{
+    private static final byte[] CONTENT = new byte[16 * 1024];
+
+    @Param({"BUFFERING", "ADAPTIVE"})
+    public String strategy;
+
+    @Param({"20", "50"})
+    public long roundTripTime;
+
+    @Param({"4194304"})
+    public int length;
+
+    private ByteBufferPool byteBufferPool;
+    private ScheduledExecutorScheduler scheduler;
+    private ScheduledExecutorService toServer;
+    private ScheduledExecutorService toClient;
+
+    @Setup(Level.Trial)
+    public void setupTrial() throws Exception
+    {
+        byteBufferPool = new MappedByteBufferPool();
+        scheduler = new ScheduledExecutorScheduler();
+        scheduler.start();
+        toServer = Executors.newSingleThreadScheduledExecutor();
+        toClient = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() throws Exception
+    {
+        toClient.shutdownNow();
+        toServer.shutdownNow();
+        scheduler.stop();
+    }
+
+    @Benchmark
+    public long testUpload() throws Exception
+    {
+        FlowControlStrategy flowControl = "ADAPTIVE".equals(strategy) ? new AdaptiveFlowControlStrategy() : new BufferingFlowControlStrategy(0.5F);
+        Link link = new Link(flowControl);
+        link.start();
+        if (!link.await())
+            throw new IllegalStateException("Upload not completed: " + flowControl);
+        return link.received;
+    }
+
+    /**
+     * <p>A simulated client that uploads content to a server session,
+     * delaying the frames in both directions by half the round trip time.</p>
+     */
+    private class Link extends Parser.Listener.Adapter
+    {
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private final long delay = TimeUnit.MILLISECONDS.toNanos(roundTripTime) / 2;
+        private final HTTP2ServerSession session;
+        private final Parser parser;
+        // Only accessed by the toClient thread.
+        private int sessionSendWindow = FlowControlStrategy.DEFAULT_WINDOW_SIZE;
+        private int streamSendWindow = FlowControlStrategy.DEFAULT_WINDOW_SIZE;
+        private int initialStreamSendWindow = FlowControlStrategy.DEFAULT_WINDOW_SIZE;
+        private int remaining = length;
+        // Only accessed by the toServer thread.
+        private long received;
+
+        private Link(FlowControlStrategy flowControl)
+        {
+            ByteArrayEndPoint endPoint = new ByteArrayEndPoint()
+            {
+                @Override
+                public boolean flush(ByteBuffer... buffers)
+                {
+                    int size = 0;
+                    for (ByteBuffer buffer : buffers)
+                    {
+                        size += buffer.remaining();
+                    }
+                    ByteBuffer bytes = ByteBuffer.allocate(size);
+                    for (ByteBuffer buffer : buffers)
+                    {
+                        bytes.put(buffer);
+                    }
+                    bytes.flip();
+                    toClient.schedule(() -> parser.parse(bytes), delay, TimeUnit.NANOSECONDS);
+                    return true;
+                }
+            };
+            ServerSessionListener listener = new ServerSessionListener.Adapter()
+            {
+                @Override
+                public Stream.Listener onNewStream(Stream stream, HeadersFrame frame)
+                {
+                    return new Stream.Listener.Adapter()
+                    {
+                        @Override
+                        public void onData(Stream stream, DataFrame frame, Callback callback)
+                        {
+                            received += frame.remaining();
+                            callback.succeeded();
+                            if (frame.isEndStream())
+                                latch.countDown();
+                        }
+                    };
+                }
+            };
+            session = new HTTP2ServerSession(scheduler, endPoint, new Generator(byteBufferPool), listener, flowControl);
+            session.setInitialSessionRecvWindow(FlowControlStrategy.DEFAULT_WINDOW_SIZE);
+            parser = new Parser(byteBufferPool, this, 4096, 8192);
+            parser.init(UnaryOperator.identity());
+        }
+
+        private void start()
+        {
+            toServer.execute(() ->
+            {
+                session.onPreface();
+                MetaData.Request request = new MetaData.Request("POST", HttpURI.from("http://localhost/upload"), HttpVersion.HTTP_2, HttpFields.EMPTY);
+                session.onHeaders(new HeadersFrame(1, request, null, false));
+            });
+            // The client may send DATA frames without waiting for the server SETTINGS frame.
+            toClient.schedule(this::send, delay, TimeUnit.NANOSECONDS);
+        }
+
+        private boolean await() throws InterruptedException
+        {
+            return latch.await(1, TimeUnit.MINUTES);
+        }
+
+        private void send()
+        {
+            while (remaining > 0)
+            {
+                int size = Math.min(CONTENT.length, Math.min(remaining, Math.min(sessionSendWindow, streamSendWindow)));
+                if (size <= 0)
+                    return;
+                sessionSendWindow -= size;
+                streamSendWindow -= size;
+                remaining -= size;
+                DataFrame frame = new DataFrame(1, ByteBuffer.wrap(CONTENT, 0, size), remaining == 0);
+                toServer.schedule(() -> session.onData(frame), delay, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        @Override
+        public void onSettings(SettingsFrame frame)
+        {
+            if (frame.isReply())
+                return;
+            Integer initialWindowSize = frame.getSettings().get(SettingsFrame.INITIAL_WINDOW_SIZE);
+            if (initialWindowSize != null)
+            {
+                streamSendWindow += initialWindowSize - initialStreamSendWindow;
+                initialStreamSendWindow = initialWindowSize;
+            }
+            toServer.schedule(() -> session.onSettings(new SettingsFrame(Map.of(), true)), delay, TimeUnit.NANOSECONDS);
+            send();
+        }
+
+        @Override
+        public void onWindowUpdate(WindowUpdateFrame frame)
+        {
+            if (frame.getStreamId() == 0)
+                sessionSendWindow += frame.getWindowDelta();
+            else
+                streamSendWindow += frame.getWindowDelta();
+            send();
+        }
+
+        @Override
+        public void onPing(PingFrame frame)
+        {
+            if (!frame.isReply())
+                toServer.schedule(() -> session.onPing(new PingFrame(frame.getPayload(), true)), delay, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+            .include(FlowControlStrategyBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build();
+        new Runner(opt).run();
+    }
+}
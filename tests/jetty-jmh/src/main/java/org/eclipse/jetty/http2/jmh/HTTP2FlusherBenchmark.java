@@ -0,0 +1,117 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.http2.jmh;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.http2.BufferingFlowControlStrategy;
+import org.eclipse.jetty.http2.frames.PingFrame;
+import org.eclipse.jetty.http2.frames.SettingsFrame;
+import org.eclipse.jetty.http2.generator.Generator;
+import org.eclipse.jetty.http2.server.HTTP2ServerSession;
+import org.eclipse.jetty.http2.api.server.ServerSessionListener;
+import org.eclipse.jetty.io.ByteArrayEndPoint;
+import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <p>Measures the throughput of many threads queuing frames to the flusher
+ * of the same session, as concurrent streams do, with an endpoint that
+ * discards the bytes written.</p>
+ * <p>Each thread waits for its frame to be written before queuing the next,
+ * so that the threads contend to queue frames while the flusher drains them.</p>
+ */
+@State(Scope.Benchmark)
+@Threads(16)
+@Warmup(iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+public class HTTP2FlusherBenchmark
+{
+    private static final SettingsFrame SETTINGS_REPLY = new SettingsFrame(Map.of(), true);
+
+    private ScheduledExecutorScheduler scheduler;
+    private HTTP2ServerSession session;
+
+    @Setup(Level.Trial)
+    public void setupTrial() throws Exception
+    {
+        scheduler = new ScheduledExecutorScheduler();
+        scheduler.start();
+        ByteArrayEndPoint endPoint = new ByteArrayEndPoint()
+        {
+            @Override
+            public boolean flush(ByteBuffer... buffers)
+            {
+                for (ByteBuffer buffer : buffers)
+                {
+                    buffer.position(buffer.limit());
+                }
+                return true;
+            }
+        };
+        Generator generator = new Generator(new MappedByteBufferPool());
+        session = new HTTP2ServerSession(scheduler, endPoint, generator, new ServerSessionListener.Adapter(), new BufferingFlowControlStrategy(0.5F));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() throws Exception
+    {
+        scheduler.stop();
+    }
+
+    @Benchmark
+    public void testAppend() throws Exception
+    {
+        // Appended to the flusher queue; waits for the write
+        // to complete, like a stream writing content does.
+        Callback.Completable callback = new Callback.Completable();
+        session.settings(SETTINGS_REPLY, callback);
+        callback.get();
+    }
+
+    @Benchmark
+    public void testPrepend() throws Exception
+    {
+        // Prepended to the flusher queue.
+        Callback.Completable callback = new Callback.Completable();
+        session.ping(new PingFrame(false), callback);
+        callback.get();
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+            .include(HTTP2FlusherBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build();
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,169 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+
+package org.eclipse.jetty.http3.qpack.jmh;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.http.HostPortHttpField;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http.MetaData;
+import org.eclipse.jetty.http3.qpack.Instruction;
+import org.eclipse.jetty.http3.qpack.QpackDecoder;
+import org.eclipse.jetty.http3.qpack.QpackEncoder;
+import org.eclipse.jetty.http3.qpack.QpackException;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.io.NullByteBufferPool;
+import org.eclipse.jetty.util.BufferUtil;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <p>Measures the cost of encoding and decoding HTTP/3 request headers with QPACK,
+ * including the exchange of the instructions over the encoder and decoder streams.</p>
+ * <p>The {@link Bytes} counters report the bytes written to the request streams
+ * and to the encoder stream; divided by the operation rate, they give the number
+ * of bytes per request and therefore the compression ratio of each configuration.</p>
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+public class QpackBenchmark
+{
+    private static final int CAPACITY = 4096;
+    private static final HostPortHttpField AUTHORITY = new HostPortHttpField("www.example.com");
+
+    @Param({"0", "16"})
+    public int maxBlockedStreams;
+
+    @Param({"1", "2"})
+    public int insertionThreshold;
+
+    private final List<Instruction> encoderInstructions = new ArrayList<>();
+    private final List<Instruction> decoderInstructions = new ArrayList<>();
+    private final ByteBufferPool bufferPool = new NullByteBufferPool();
+    private QpackEncoder encoder;
+    private QpackDecoder decoder;
+    private QpackDecoder.Handler handler;
+    private ByteBuffer buffer;
+    private long streamId;
+    private long requests;
+
+    @Setup(Level.Trial)
+    public void setupTrial() throws Exception
+    {
+        encoder = new QpackEncoder(encoderInstructions::addAll, maxBlockedStreams);
+        encoder.setInsertionThreshold(insertionThreshold);
+        decoder = new QpackDecoder(decoderInstructions::addAll, 8192);
+        decoder.setMaxBlockedStreams(maxBlockedStreams);
+        handler = (streamId, metaData) -> {};
+        buffer = BufferUtil.allocateDirect(16 * 1024);
+        encoder.setCapacity(CAPACITY);
+        decoder.parseInstructions(toBuffer(encoderInstructions));
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Bytes
+    {
+        public long fieldBytes;
+        public long instructionBytes;
+    }
+
+    private static MetaData.Request newRequest(long requestId)
+    {
+        // A typical browser request: the same headers for every request,
+        // except for the path and a request identifier that are never repeated.
+        HttpFields fields = HttpFields.build()
+            .add(HttpHeader.USER_AGENT, "Mozilla/5.0 (X11; Linux x86_64; rv:105.0) Gecko/20100101 Firefox/105.0")
+            .add(HttpHeader.ACCEPT, "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8")
+            .add(HttpHeader.ACCEPT_LANGUAGE, "en-US,en;q=0.5")
+            .add(HttpHeader.ACCEPT_ENCODING, "gzip, deflate, br")
+            .add(HttpHeader.COOKIE, "session=8a7d9f6e5c4b3a2918273645")
+            .add("X-Request-Id", requestId < 0 ? "0" : Long.toString(requestId));
+        String path = requestId < 0 ? "/index.html" : "/items/" + requestId;
+        return new MetaData.Request("GET", "https", AUTHORITY, path, HttpVersion.HTTP_3, fields, -1);
+    }
+
+    private ByteBuffer toBuffer(List<Instruction> instructions)
+    {
+        ByteBufferPool.Lease lease = new ByteBufferPool.Lease(bufferPool);
+        instructions.forEach(instruction -> instruction.encode(lease));
+        instructions.clear();
+        ByteBuffer result = BufferUtil.allocate(Math.toIntExact(lease.getTotalLength()));
+        lease.getByteBuffers().forEach(b -> BufferUtil.append(result, b));
+        return result;
+    }
+
+    private void exchange(MetaData.Request request, Bytes bytes) throws QpackException
+    {
+        long id = streamId;
+        streamId += 4;
+
+        BufferUtil.clearToFill(buffer);
+        encoder.encode(buffer, id, request);
+        BufferUtil.flipToFlush(buffer, 0);
+        bytes.fieldBytes += buffer.remaining();
+
+        ByteBuffer instructions = toBuffer(encoderInstructions);
+        bytes.instructionBytes += instructions.remaining();
+        decoder.parseInstructions(instructions);
+        decoder.decode(id, buffer, handler);
+        encoder.parseInstructions(toBuffer(decoderInstructions));
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput})
+    public void testRepeatedRequest(Bytes bytes) throws QpackException
+    {
+        exchange(newRequest(-1), bytes);
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput})
+    public void testVaryingRequest(Bytes bytes) throws QpackException
+    {
+        exchange(newRequest(requests++), bytes);
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+            .include(QpackBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .forks(1)
+            .build();
+
+        new Runner(opt).run();
+    }
+}
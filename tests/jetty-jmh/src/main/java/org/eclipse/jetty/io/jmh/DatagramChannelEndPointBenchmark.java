@@ -0,0 +1,159 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+
+package org.eclipse.jetty.io.jmh;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.io.DatagramChannelEndPoint;
+import org.eclipse.jetty.util.BufferUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <p>Measures the datagram throughput over loopback of {@link DatagramChannelEndPoint},
+ * sending and receiving datagrams either one per call, or in batches.</p>
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+public class DatagramChannelEndPointBenchmark
+{
+    private static final int DATAGRAMS = 64;
+
+    @Param({"1", "16"})
+    public int batchSize;
+
+    @Param({"1200"})
+    public int datagramSize;
+
+    private DatagramChannel senderChannel;
+    private DatagramChannel receiverChannel;
+    private DatagramChannelEndPoint sender;
+    private DatagramChannelEndPoint receiver;
+    private SocketAddress address;
+    private ByteBuffer[] outputs;
+    private ByteBuffer[] inputs;
+    private SocketAddress[] peers;
+
+    @Setup(Level.Trial)
+    public void setupTrial() throws Exception
+    {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        senderChannel = DatagramChannel.open().bind(new InetSocketAddress(loopback, 0));
+        senderChannel.configureBlocking(false);
+        receiverChannel = DatagramChannel.open().bind(new InetSocketAddress(loopback, 0));
+        receiverChannel.configureBlocking(false);
+        sender = new DatagramChannelEndPoint(senderChannel, null, null, null);
+        receiver = new DatagramChannelEndPoint(receiverChannel, null, null, null);
+
+        address = receiverChannel.getLocalAddress();
+        outputs = new ByteBuffer[batchSize];
+        inputs = new ByteBuffer[batchSize];
+        peers = new SocketAddress[batchSize];
+        for (int i = 0; i < batchSize; ++i)
+        {
+            outputs[i] = BufferUtil.allocateDirect(datagramSize);
+            inputs[i] = BufferUtil.allocateDirect(2048);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() throws Exception
+    {
+        senderChannel.close();
+        receiverChannel.close();
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput})
+    @OperationsPerInvocation(DATAGRAMS)
+    public int testSendReceive() throws IOException
+    {
+        int received = 0;
+        for (int sent = 0; sent < DATAGRAMS; sent += batchSize)
+        {
+            for (ByteBuffer output : outputs)
+            {
+                output.position(0).limit(datagramSize);
+            }
+            if (batchSize == 1)
+            {
+                sender.send(address, outputs[0]);
+                received += receiveOne();
+            }
+            else
+            {
+                sender.send(address, outputs);
+                received += receiveBatch();
+            }
+        }
+        return received;
+    }
+
+    private int receiveOne() throws IOException
+    {
+        while (true)
+        {
+            BufferUtil.clear(inputs[0]);
+            if (receiver.receive(inputs[0]) != null)
+                return 1;
+        }
+    }
+
+    private int receiveBatch() throws IOException
+    {
+        int received = 0;
+        while (received < batchSize)
+        {
+            for (ByteBuffer input : inputs)
+            {
+                BufferUtil.clear(input);
+            }
+            received += receiver.receive(inputs, peers);
+        }
+        return received;
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+            .include(DatagramChannelEndPointBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .forks(1)
+            .build();
+        new Runner(opt).run();
+    }
+}
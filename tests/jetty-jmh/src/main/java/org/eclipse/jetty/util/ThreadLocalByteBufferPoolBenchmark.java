@@ -0,0 +1,103 @@
+//
+// ========================================================================
+// Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//
+// This program and the accompanying materials are made available under the
+// terms of the Eclipse Public License v. 2.0 which is available at
+// https://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+// which is available at https://www.apache.org/licenses/LICENSE-2.0.
+//
+// SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+// ========================================================================
+//
+
+package org.eclipse.jetty.util;
+
+import java.nio.ByteBuffer;
+
+import org.eclipse.jetty.io.ArrayByteBufferPool;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.io.ThreadLocalByteBufferPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+@State(Scope.Benchmark)
+public class ThreadLocalByteBufferPoolBenchmark
+{
+    @Param({
+        "ArrayByteBufferPool",
+        "ThreadLocalByteBufferPool",
+    })
+    public static String POOL_TYPE;
+
+    private ByteBufferPool pool;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        switch (POOL_TYPE)
+        {
+            case "ArrayByteBufferPool":
+                pool = new ArrayByteBufferPool();
+                break;
+            case "ThreadLocalByteBufferPool":
+                pool = new ThreadLocalByteBufferPool();
+                break;
+            default:
+                throw new IllegalStateException();
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        pool = null;
+    }
+
+    @Benchmark
+    public void testAcquireRelease()
+    {
+        ByteBuffer buffer = pool.acquire(2048, true);
+        pool.release(buffer);
+    }
+
+    @Benchmark
+    public void testAcquireAcquireReleaseRelease()
+    {
+        ByteBuffer buffer1 = pool.acquire(2048, true);
+        ByteBuffer buffer2 = pool.acquire(8192, true);
+        pool.release(buffer2);
+        pool.release(buffer1);
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        // Run with an increasing number of threads, up to the number of cores,
+        // to show how the pools scale with contention.
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cores; threads *= 2)
+        {
+            Options opt = new OptionsBuilder()
+                .include(ThreadLocalByteBufferPoolBenchmark.class.getSimpleName())
+                .warmupIterations(3)
+                .measurementIterations(3)
+                .forks(1)
+                .threads(threads)
+                .resultFormat(ResultFormatType.JSON)
+                .result("/tmp/threadLocalByteBufferPool-" + threads + "-" + System.currentTimeMillis() + ".json")
+                // .addProfiler(GCProfiler.class)
+                .build();
+
+            new Runner(opt).run();
+        }
+    }
+}